@@ -1,7 +1,12 @@
 @ECHO OFF
+if "%SEED_DIR%"=="" set SEED_DIR=seed
 echo Dropping DB dev
 mongosh dev --eval "db.dropDatabase()"
-for %%f in (seed\*.json) do (
+for %%f in (%SEED_DIR%\*.json) do (
   echo Seeding %%~nf from %%f in DB dev
   mongoimport --db=dev --collection=%%~nf --file=%%f --jsonArray
 )
+for %%f in (%SEED_DIR%\*.ndjson) do (
+  echo Seeding %%~nf from %%f in DB dev
+  mongoimport --db=dev --collection=%%~nf --file=%%f --numInsertionWorkers=4
+)
@@ -1,11 +1,21 @@
 #!/usr/bin/env bash
 
 seed_db="${MONGO_DB:-dev}"
+# The directory to seed from (relative to this script). This defaults to
+# `seed`, but can point at, e.g., data made with `./gradlew generateSeedData`.
+seed_dir="$(dirname "$BASH_SOURCE")/${SEED_DIR:-seed}"
 echo Dropping DB "$seed_db"
 mongosh "$seed_db" --eval "db.dropDatabase()"
-for file in "$(dirname "$BASH_SOURCE")"/seed/*.json; do
+for file in "$seed_dir"/*.json; do
   if [[ -f "$file" ]]; then
     echo Seeding "$(basename "$file" ".json")" from "$file" in DB "$seed_db"
     mongoimport --db="$seed_db" --collection="$(basename "$file" ".json")" --file="$file" --jsonArray
   fi
 done
+# Newline-delimited JSON files have one document per line, so they don't need `--jsonArray`.
+for file in "$seed_dir"/*.ndjson; do
+  if [[ -f "$file" ]]; then
+    echo Seeding "$(basename "$file" ".ndjson")" from "$file" in DB "$seed_db"
+    mongoimport --db="$seed_db" --collection="$(basename "$file" ".ndjson")" --file="$file" --numInsertionWorkers=4
+  fi
+done
@@ -0,0 +1,326 @@
+package umm3601;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Deadline;
+import umm3601.tracing.Tracer;
+
+/**
+ * Controller for `/api/batch`, which runs several API requests in one.
+ *
+ * A page of the client app needs six to ten requests (todos, users, users
+ * by company, and some details) before it can show anything, and on a slow
+ * mobile connection it's the round trips, not the work, that take the time.
+ * With this it can send them all as one request:
+ *
+ *     {"requests": [
+ *       {"id": "todos", "method": "GET", "path": "/api/todos?status=complete"},
+ *       {"id": "sam", "method": "GET", "path": "/api/users/588935f57546a2daea44de7c"}
+ *     ]}
+ *
+ * and get back a response for each, in the same order, with its own status:
+ *
+ *     {"responses": [
+ *       {"id": "todos", "status": 200, "body": [...]},
+ *       {"id": "sam", "status": 404, "body": {"title": "The requested user was not found", ...}}
+ *     ]}
+ *
+ * The sub-requests run in parallel, each on its own virtual thread, and each
+ * is sent back to this server, at the address and port the batch itself
+ * arrived on (so it works whatever the server is bound to). That way they go
+ * through exactly the same routes, handlers, validation, and error handling
+ * as if the client had sent them itself. Javalin doesn't have a public way
+ * to call a route's handler without a real request. The extra hop stays on
+ * this machine, so it costs far less than the round trips it saves.
+ */
+public class BatchController implements Controller {
+
+  private static final String API_BATCH = "/api/batch";
+
+  // More than any page needs, so one batch can't tie up the whole server.
+  static final int MAX_REQUESTS = 20;
+
+  // How long to wait for a request's response, if the batch has no deadline.
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+  private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "DELETE");
+
+  /**
+   * One of the requests in a batch.
+   *
+   * @param id the client's name for the request, copied to its response
+   * @param method the HTTP method, e.g., `GET`
+   * @param path the path and query string, e.g., `/api/todos?limit=10`
+   * @param body the JSON body, for `POST` and `PUT`, or `null`
+   */
+  public record SubRequest(String id, String method, String path, JsonNode body) {
+  }
+
+  /**
+   * The response to one of the requests in a batch.
+   *
+   * @param id the client's name for the request
+   * @param status the HTTP status of the response
+   * @param body the (JSON) body of the response, or `null` if it was empty
+   */
+  public record SubResponse(String id, int status, JsonNode body) {
+  }
+
+  /**
+   * The body of a request to `/api/batch`.
+   *
+   * @param requests the requests to run
+   */
+  public record Batch(List<SubRequest> requests) {
+  }
+
+  /**
+   * The body of the response from `/api/batch`.
+   *
+   * @param responses the responses, in the same order as the requests
+   */
+  public record BatchResponse(List<SubResponse> responses) {
+  }
+
+  // Where to send the requests, or `null` to send them wherever the batch came in.
+  private final URI base;
+  private final HttpClient client = HttpClient.newBuilder()
+    .version(HttpClient.Version.HTTP_1_1)
+    .connectTimeout(TIMEOUT)
+    .build();
+
+  /**
+   * Construct a controller for batches that sends each batch's requests
+   * back to the local address and port the batch arrived on.
+   */
+  public BatchController() {
+    this(null);
+  }
+
+  /**
+   * Construct a controller for batches that sends the requests to a fixed
+   * server, e.g., a stand-in for this one in tests.
+   *
+   * @param base where to send the requests, e.g., `http://localhost:4567`
+   */
+  public BatchController(URI base) {
+    this.base = base;
+  }
+
+  /**
+   * Run all the requests in the JSON body of the request (a `Batch`), and
+   * respond with a `BatchResponse`. The status is 200 (OK) as long as the
+   * batch itself was legal, whatever the statuses of the requests in it.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void runBatch(Context ctx) {
+    Batch batch;
+    try {
+      batch = JsonMappers.http().readValue(ctx.body(), Batch.class);
+    } catch (JsonProcessingException e) {
+      throw new BadRequestResponse("The batch wasn't legal JSON: " + e.getOriginalMessage());
+    }
+    check(batch);
+    URI target = base != null ? base : localAddress(ctx);
+    ctx.json(new BatchResponse(dispatch(target, batch.requests())));
+    ctx.status(HttpStatus.OK);
+  }
+
+  // The address (and port) of this server that a request arrived on, which
+  // is one we're certainly listening on, whatever we're bound to.
+  private static URI localAddress(Context ctx) {
+    String host = ctx.req().getLocalAddr();
+    if (host.indexOf(':') >= 0) {
+      // An IPv6 address, without a zone, which doesn't belong in a URI.
+      host = "[" + host.replaceFirst("%.*", "") + "]";
+    }
+    return URI.create("http://" + host + ":" + ctx.req().getLocalPort());
+  }
+
+  /**
+   * Send all the requests to the server at once, and wait for them to finish.
+   *
+   * @param requests the requests, which have already been checked
+   * @return the responses, in the same order
+   */
+  List<SubResponse> dispatch(List<SubRequest> requests) {
+    return dispatch(base, requests);
+  }
+
+  private List<SubResponse> dispatch(URI target, List<SubRequest> requests) {
+    List<SubResponse> responses = new ArrayList<>(requests.size());
+    // The requests get whatever's left of the batch's own deadline. This has
+    // to be read here, since the deadline belongs to this thread. The batch's
+    // deadline comes from `REQUEST_TIMEOUT_MS` if the client didn't set one,
+    // which can be longer than the header allows.
+    long deadlineMillis = Math.min(Deadline.maxTimeMillis(), RequestDeadlines.MAX_TIMEOUT_MILLIS);
+    // And they join its trace, if it's being traced.
+    String traceparent = Tracer.traceparent();
+    // Closing the executor waits for all the requests, and a virtual
+    // thread that's just waiting for a response costs next to nothing.
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<SubResponse>> running = new ArrayList<>(requests.size());
+      for (SubRequest request : requests) {
+        running.add(executor.submit(() -> send(target, request, deadlineMillis, traceparent)));
+      }
+      for (int i = 0; i < requests.size(); i++) {
+        responses.add(await(requests.get(i), running.get(i)));
+      }
+    }
+    return responses;
+  }
+
+  private SubResponse send(URI target, SubRequest request, long deadlineMillis, String traceparent)
+      throws IOException, InterruptedException {
+    HttpRequest.BodyPublisher body = request.body() == null
+      ? HttpRequest.BodyPublishers.noBody()
+      : HttpRequest.BodyPublishers.ofByteArray(JsonMappers.http().writeValueAsBytes(request.body()));
+    HttpRequest.Builder httpRequest = HttpRequest.newBuilder(target.resolve(request.path()))
+      .method(request.method(), body)
+      // We put the bodies in a JSON response, so they have to be JSON too.
+      .header(Header.ACCEPT, ContentType.APPLICATION_JSON.getMimeType())
+      .header(Header.CONTENT_TYPE, ContentType.APPLICATION_JSON.getMimeType())
+      // Don't wait for a response any longer than the batch has left.
+      .timeout(deadlineMillis > 0 ? Duration.ofMillis(deadlineMillis) : TIMEOUT);
+    if (deadlineMillis > 0) {
+      httpRequest.header(RequestDeadlines.TIMEOUT_HEADER, Long.toString(deadlineMillis));
+    }
+    if (traceparent != null) {
+      httpRequest.header(Tracer.TRACEPARENT_HEADER, traceparent);
+    }
+    HttpResponse<byte[]> response = client.send(httpRequest.build(), HttpResponse.BodyHandlers.ofByteArray());
+    return new SubResponse(request.id(), response.statusCode(), parseBody(response.body()));
+  }
+
+  private static SubResponse await(SubRequest request, Future<SubResponse> response) {
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return failed(request, HttpStatus.SERVICE_UNAVAILABLE, "The batch was interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof HttpTimeoutException) {
+        return failed(request, HttpStatus.GATEWAY_TIMEOUT, "The request took too long");
+      }
+      return failed(request, HttpStatus.BAD_GATEWAY, "The request failed: " + e.getCause());
+    }
+  }
+
+  private static SubResponse failed(SubRequest request, HttpStatus status, String message) {
+    return new SubResponse(request.id(), status.getCode(),
+      JsonMappers.http().valueToTree(Map.of("title", message, "status", status.getCode())));
+  }
+
+  private static JsonNode parseBody(byte[] body) throws IOException {
+    if (body.length == 0) {
+      return null;
+    }
+    try {
+      return JsonMappers.http().readTree(body);
+    } catch (JsonProcessingException e) {
+      // Not JSON after all (e.g., a plain text error), so pass it on as a string.
+      return JsonMappers.http().getNodeFactory().textNode(new String(body, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Check that a batch is something we're willing to run.
+   *
+   * @param batch the batch
+   * @throws BadRequestResponse if it's empty or too big, or any of its
+   *   requests has an unknown method or a path outside the API
+   */
+  static void check(Batch batch) {
+    if (batch == null || batch.requests() == null || batch.requests().isEmpty()) {
+      throw new BadRequestResponse("A batch must have a non-empty list of requests");
+    }
+    if (batch.requests().size() > MAX_REQUESTS) {
+      throw new BadRequestResponse("A batch can have at most " + MAX_REQUESTS + " requests; this one had "
+        + batch.requests().size());
+    }
+    for (SubRequest request : batch.requests()) {
+      if (request == null || request.method() == null || !METHODS.contains(request.method())) {
+        throw new BadRequestResponse("Each request's method must be one of " + METHODS);
+      }
+      // Only our own API, and no batches inside batches.
+      String path = routedPath(request.path());
+      if (!path.startsWith("/api/") || path.toLowerCase(Locale.ROOT).startsWith(API_BATCH)) {
+        throw new BadRequestResponse("Each request's path must be in the API (and not another batch); got "
+          + request.path());
+      }
+    }
+  }
+
+  /**
+   * The path a request's URI will be routed by, checking that it's already
+   * in its plain, canonical form.
+   *
+   * The server decodes and normalizes the path before it picks a route, so
+   * if `/api/%62atch` or `/api/x/../batch` were allowed, they'd get past a
+   * check of the text as it was sent and run a batch inside the batch (and
+   * so on, each level multiplying the requests by `MAX_REQUESTS`). None of
+   * our paths need any of that, so rather than trying to decode the way the
+   * server would, paths with percent-encoding, dot or empty segments, path
+   * parameters (`;`), or backslashes are turned down. (The query string
+   * can be encoded however it likes.)
+   *
+   * @param path the path and query string of a request in a batch
+   * @return the path, without the query string
+   * @throws BadRequestResponse if the path isn't a plain, absolute path
+   */
+  static String routedPath(String path) {
+    URI uri;
+    try {
+      uri = path == null ? null : new URI(path);
+    } catch (URISyntaxException e) {
+      throw new BadRequestResponse("Each request's path must be a legal URI (with its query string encoded); got "
+        + path);
+    }
+    if (uri == null || uri.isAbsolute() || uri.getRawAuthority() != null || uri.getRawFragment() != null
+        || uri.getRawPath() == null || !uri.getRawPath().startsWith("/")) {
+      throw new BadRequestResponse("Each request's path must be a path on this server, like /api/todos; got " + path);
+    }
+    String raw = uri.getRawPath();
+    boolean plain = raw.indexOf('%') < 0 && raw.indexOf(';') < 0 && raw.indexOf('\\') < 0;
+    for (String segment : raw.substring(1).split("/", -1)) {
+      plain &= !segment.isEmpty() && !segment.equals(".") && !segment.equals("..");
+    }
+    if (!plain) {
+      throw new BadRequestResponse("Each request's path must be plain, without percent-encoding, "
+        + "`.` or `..` segments, `//`, or `;`; got " + path);
+    }
+    return raw;
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    // Run several API requests in one
+    server.post(API_BATCH, this::runBatch);
+  }
+}
@@ -0,0 +1,181 @@
+package umm3601;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Repository;
+
+/**
+ * Looks up a list of items by ID in one go, for the batch endpoints.
+ *
+ * The client app often has dozens of IDs to resolve at once, and used to
+ * send a separate `GET` for each of them. This checks all the IDs up front,
+ * fetches the items with a single `Repository.findByIds()` (one `$in` query
+ * in MongoDB), and responds with a `Result` for each ID, in the order they
+ * were asked for, saying whether it was found.
+ */
+public final class BatchGet {
+
+  // Enough for any page of the client app, without letting one request
+  // turn into an unbounded `$in`.
+  public static final int MAX_IDS = 1_000;
+
+  // How many illegal IDs to name in the error message.
+  private static final int MAX_REPORTED_IDS = 10;
+
+  /**
+   * What we found for one of the requested IDs.
+   *
+   * @param id the ID, as it was requested
+   * @param found whether there's an item with that ID
+   * @param item the item, or `null` if it wasn't found
+   * @param <T> the type of the items
+   */
+  public record Result<T>(String id, boolean found, T item) {
+  }
+
+  private BatchGet() {
+  }
+
+  /**
+   * Look up the items with the given IDs, and respond with a list of
+   * `Result`s in the same order as the IDs (repeats and all).
+   *
+   * The body is JSON unless the `Accept` header asks for one of the other
+   * `ResponseFormat`s.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param repository where to look for the items
+   * @param ids the IDs to look up
+   * @param idOf gets an item's `_id`
+   * @param <T> the type of the items
+   * @throws BadRequestResponse if there are no IDs, too many, or any that
+   *   aren't legal ObjectIds
+   * @throws IOException if there's a problem encoding the response
+   */
+  public static <T> void respond(Context ctx, Repository<T> repository, List<String> ids, Function<T, String> idOf)
+      throws IOException {
+    List<Result<T>> results = fetch(repository, ids, idOf);
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    if (format != ResponseFormat.JSON) {
+      format.write(ctx, results);
+    } else {
+      ctx.json(results);
+    }
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Look up the items with the given IDs.
+   *
+   * @param repository where to look for the items
+   * @param ids the IDs to look up
+   * @param idOf gets an item's `_id`
+   * @param <T> the type of the items
+   * @return a `Result` for each ID, in the same order
+   * @throws BadRequestResponse if there are no IDs, too many, or any that
+   *   aren't legal ObjectIds
+   */
+  static <T> List<Result<T>> fetch(Repository<T> repository, List<String> ids, Function<T, String> idOf) {
+    check(ids);
+    // ObjectIds are case-insensitive, but the repository always gives them
+    // back in lower case. Each one only needs looking up once.
+    Set<String> distinct = new LinkedHashSet<>();
+    for (String id : ids) {
+      distinct.add(id.toLowerCase(Locale.ROOT));
+    }
+    Map<String, T> found = new HashMap<>();
+    for (T item : repository.findByIds(distinct)) {
+      found.put(idOf.apply(item).toLowerCase(Locale.ROOT), item);
+    }
+
+    List<Result<T>> results = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      T item = found.get(id.toLowerCase(Locale.ROOT));
+      results.add(new Result<>(id, item != null, item));
+    }
+    return results;
+  }
+
+  /**
+   * Get the IDs from the query parameter values of a `GET` request, each of
+   * which may be a comma-separated list of IDs (e.g., `?ids=a,b&ids=c`).
+   *
+   * @param values the values of the query parameter
+   * @return the IDs, in order
+   */
+  public static List<String> idsFromQuery(List<String> values) {
+    List<String> ids = new ArrayList<>();
+    for (String value : values) {
+      for (String id : value.split(",")) {
+        if (!id.isBlank()) {
+          ids.add(id.trim());
+        }
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Get the IDs from the JSON body of a `POST` request, which should look
+   * like `{"ids": ["...", "..."]}`.
+   *
+   * @param body the request body
+   * @return the IDs, in order
+   * @throws BadRequestResponse if the body isn't like that
+   */
+  public static List<String> idsFromBody(String body) {
+    JsonNode ids;
+    try {
+      ids = JsonMappers.http().readTree(body).path("ids");
+    } catch (JsonProcessingException e) {
+      throw new BadRequestResponse("The body wasn't legal JSON: " + e.getOriginalMessage());
+    }
+    if (!ids.isArray()) {
+      throw new BadRequestResponse("The body must have an array of ids");
+    }
+    List<String> result = new ArrayList<>(ids.size());
+    for (JsonNode id : ids) {
+      if (!id.isTextual()) {
+        throw new BadRequestResponse("The ids must all be strings");
+      }
+      result.add(id.asText());
+    }
+    return result;
+  }
+
+  private static void check(List<String> ids) {
+    if (ids.isEmpty()) {
+      throw new BadRequestResponse("At least one id is required");
+    }
+    if (ids.size() > MAX_IDS) {
+      throw new BadRequestResponse("At most " + MAX_IDS + " ids can be looked up at once; you gave " + ids.size());
+    }
+    List<String> illegal = new ArrayList<>();
+    for (String id : ids) {
+      if (!ObjectId.isValid(id)) {
+        illegal.add(id);
+      }
+    }
+    if (!illegal.isEmpty()) {
+      throw new BadRequestResponse("These ids aren't legal Mongo Object IDs: "
+        + String.join(", ", illegal.subList(0, Math.min(illegal.size(), MAX_REPORTED_IDS)))
+        + (illegal.size() > MAX_REPORTED_IDS ? ", ..." : ""));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package umm3601;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Repository;
+
+/**
+ * Streams a request body full of new items into a repository, for the
+ * `/import` endpoints.
+ *
+ * The body can either be a JSON array of items or newline-delimited JSON
+ * (one item per line, like the `/export` endpoints produce). Either way it's
+ * parsed one item at a time, straight off the request's input stream, and
+ * the items are inserted in batches of `BATCH_SIZE`.
+ *
+ * The inserts happen on the request's thread, so we only read more of the
+ * body once the previous batch is in the database. That's our backpressure:
+ * while a batch is being inserted nothing is reading from the connection,
+ * TCP's flow control makes the client wait, and at most one batch is ever
+ * held in memory, however big the upload is.
+ *
+ * Items that fail validation (or that the database refuses, e.g., because
+ * of a duplicate `_id`) are counted and skipped rather than failing the
+ * whole import, and the response summarises what happened.
+ */
+public final class BulkImport {
+
+  public static final int BATCH_SIZE = 1_000;
+
+  // So a file that's entirely garbage doesn't produce an enormous response.
+  static final int MAX_REPORTED_ERRORS = 100;
+
+  /**
+   * What happened during an import.
+   *
+   * @param inserted the number of items added to the repository
+   * @param rejected the number of items that weren't added
+   * @param complete `false` if the body wasn't legal JSON, in which case
+   *   we stopped reading at the first problem (but kept what came before it)
+   * @param errors why items were rejected, up to `MAX_REPORTED_ERRORS` of them
+   */
+  public record Summary(long inserted, long rejected, boolean complete, List<String> errors) {
+  }
+
+  private BulkImport() {
+  }
+
+  /**
+   * Import the items in the request body into `repository`, and respond
+   * with a `Summary`. The status is 200 (OK) if the whole body was read,
+   * even if some items were rejected, and 400 (Bad Request) if the body
+   * wasn't legal JSON.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param repository where to put the items
+   * @param converter turns each item's JSON into an item, throwing an
+   *   `IllegalArgumentException` (whose message says why) if it isn't legal
+   * @param <T> the type of the items
+   * @throws IOException if there's a problem reading the request body
+   */
+  public static <T> void importInto(Context ctx, Repository<T> repository, Function<JsonNode, T> converter)
+      throws IOException {
+    Summary summary = run(ctx.bodyInputStream(), repository, converter);
+    ctx.json(summary);
+    ctx.status(summary.complete() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+  }
+
+  /**
+   * Import the items in a stream of JSON into `repository`.
+   *
+   * @param in the JSON, either an array of items or one item per line
+   * @param repository where to put the items
+   * @param converter turns each item's JSON into an item, throwing an
+   *   `IllegalArgumentException` (whose message says why) if it isn't legal
+   * @param <T> the type of the items
+   * @return what happened
+   * @throws IOException if there's a problem reading from `in`
+   */
+  public static <T> Summary run(InputStream in, Repository<T> repository, Function<JsonNode, T> converter)
+      throws IOException {
+    Batches<T> batches = new Batches<>(repository);
+    boolean complete = false;
+    try (JsonParser parser = JsonMappers.http().createParser(in)) {
+      JsonToken token = parser.nextToken();
+      boolean array = token == JsonToken.START_ARRAY;
+      if (array) {
+        token = parser.nextToken();
+      }
+      long record = 0;
+      // Jackson reads a sequence of whitespace-separated values at the top
+      // level as happily as it reads the elements of an array.
+      while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+        record++;
+        JsonNode json = parser.readValueAsTree();
+        try {
+          batches.add(converter.apply(json), record);
+        } catch (IllegalArgumentException e) {
+          batches.reject(1, "Record " + record + ": " + e.getMessage());
+        }
+        token = parser.nextToken();
+      }
+      complete = true;
+    } catch (JsonProcessingException e) {
+      JsonLocation location = e.getLocation();
+      batches.reject(0, "The body isn't legal JSON at line " + location.getLineNr()
+        + ", column " + location.getColumnNr() + " (" + e.getOriginalMessage() + "); stopped reading there");
+    }
+    batches.flush();
+    return new Summary(batches.inserted, batches.rejected, complete, batches.errors);
+  }
+
+  /**
+   * Collects items into batches, and keeps count of what happens to them.
+   */
+  private static final class Batches<T> {
+    private final Repository<T> repository;
+    private final List<String> errors = new ArrayList<>();
+    private List<T> batch = new ArrayList<>(BATCH_SIZE);
+    private long lastRecord;
+    private long inserted;
+    private long rejected;
+
+    Batches(Repository<T> repository) {
+      this.repository = repository;
+    }
+
+    void add(T item, long record) {
+      batch.add(item);
+      lastRecord = record;
+      if (batch.size() == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    void reject(int count, String error) {
+      rejected += count;
+      if (errors.size() < MAX_REPORTED_ERRORS) {
+        errors.add(error);
+      }
+    }
+
+    void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      int added = repository.insertAll(batch);
+      inserted += added;
+      if (added < batch.size()) {
+        reject(batch.size() - added, (batch.size() - added) + " of the records up to record " + lastRecord
+          + " were refused by the database (e.g., because their `_id` was already taken)");
+      }
+      batch = new ArrayList<>(BATCH_SIZE);
+    }
+  }
+}
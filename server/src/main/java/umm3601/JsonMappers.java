@@ -0,0 +1,84 @@
+package umm3601;
+
+import org.mongojack.ObjectMapperConfigurer;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+import umm3601.storage.CreatedAt;
+import umm3601.todos.Todo;
+import umm3601.user.User;
+
+/**
+ * The Jackson `ObjectMapper`s shared by the whole server.
+ *
+ * Every todo and user goes through Jackson twice on its way to a client:
+ * MongoJack decodes it from BSON, and Javalin encodes it as JSON. By default
+ * each of them makes its own `ObjectMapper`, which means two copies of all of
+ * Jackson's (per-mapper) caches of serializers and deserializers, both of
+ * which read and write fields using reflection.
+ *
+ * Both mappers here register the `BlackbirdModule`, which replaces those
+ * reflective field and method accesses with `LambdaMetafactory`-generated
+ * accessors the JIT can inline, and they're each created once and reused
+ * for the life of the server. (Building an `ObjectMapper` and its caches is
+ * expensive, so making them per request or per collection would throw that
+ * work away.)
+ *
+ * There are two mappers, rather than one, because MongoJack needs its own
+ * module registered (`ObjectMapperConfigurer`) to read and write BSON
+ * types like `ObjectId` and dates. We don't want those rules applied when
+ * writing JSON to HTTP clients, so the HTTP mapper has the same tuning
+ * without the MongoJack module. The MongoDB mapper also leaves out fields
+ * that are worked out from others rather than stored, like `createdAt`.
+ */
+public final class JsonMappers {
+
+  private static final ObjectMapper HTTP_MAPPER = tuned(new ObjectMapper());
+  private static final ObjectMapper MONGO_MAPPER = ObjectMapperConfigurer.configureObjectMapper(
+    tuned(new ObjectMapper()))
+    .addMixIn(Todo.class, Derived.class)
+    .addMixIn(User.class, Derived.class);
+
+  // Mixed into the model classes for MongoDB, so their derived fields aren't written to the database.
+  @JsonIgnoreProperties(CreatedAt.FIELD)
+  private abstract static class Derived {
+  }
+
+  private JsonMappers() {
+  }
+
+  /**
+   * Apply the settings shared by all our mappers.
+   *
+   * @param mapper the mapper to configure
+   * @return the same mapper, for chaining
+   */
+  static ObjectMapper tuned(ObjectMapper mapper) {
+    return mapper.registerModule(new BlackbirdModule());
+  }
+
+  /**
+   * @return the mapper used to read and write JSON request and response bodies
+   */
+  public static ObjectMapper http() {
+    return HTTP_MAPPER;
+  }
+
+  /**
+   * @return the mapper to give to `JacksonMongoCollection.builder().withObjectMapper()`
+   */
+  public static ObjectMapper mongo() {
+    return MONGO_MAPPER;
+  }
+
+  /**
+   * @return a Javalin `JsonMapper` that uses the `http()` mapper
+   */
+  public static JsonMapper javalin() {
+    return new JavalinJackson(HTTP_MAPPER, false);
+  }
+}
@@ -1,14 +1,39 @@
 package umm3601;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoDatabase;
 
+import umm3601.logging.AccessLog;
+import umm3601.profiling.HandlerEvents;
+import umm3601.storage.KnownIds;
+import umm3601.storage.SortPlanner;
+import umm3601.storage.WriteCoalescer;
+import umm3601.storage.WriteLog;
+import umm3601.todos.InMemoryTodoRepository;
+import umm3601.todos.KnownIdsTodoRepository;
+import umm3601.todos.MongoTodoRepository;
+import umm3601.todos.Todo;
 import umm3601.todos.TodoController;
+import umm3601.todos.TodoRepository;
+import umm3601.tracing.OtlpJsonFileExporter;
+import umm3601.tracing.Tracer;
+import umm3601.user.InMemoryUserRepository;
+import umm3601.user.KnownIdsUserRepository;
+import umm3601.user.MongoUserRepository;
 import umm3601.user.UserController;
+import umm3601.user.UserRepository;
+import umm3601.user.WriteBehindUserRepository;
 
 public class Main {
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     // Get the MongoDB address and database name from environment variables and
     // if they aren't set, use the defaults of "localhost" and "dev".
     String mongoAddr = Main.getEnvOrDefault("MONGO_ADDR", "localhost");
@@ -50,21 +75,138 @@ public class Main {
    * implements the `Controller` interface. You'll add your own controllers
    * in to the array returned by this method as you create them.
    *
+   * If the `STORAGE` environment variable is set to `memory`, the controllers
+   * are given in-memory copies of the database's collections (taken when the
+   * server starts), so the server acts as a fast, read-mostly replica that
+   * doesn't touch MongoDB again after startup. Otherwise (the default) they
+   * use the database directly.
+   *
    * @param database The MongoDB database object used by the controllers
    *               to access the database.
    * @return An array of implementations of `Controller` for the server.
+   * @throws IOException if there's a problem opening the write-behind log or the trace file
    */
-  static Controller[] getControllers(MongoDatabase database) {
-    Controller[] controllers = new Controller[] {
+  static Controller[] getControllers(MongoDatabase database) throws IOException {
+    UserRepository userRepository = new MongoUserRepository(database);
+    TodoRepository todoRepository = new MongoTodoRepository(database);
+    if (Main.getEnvOrDefault("STORAGE", "mongo").equals("memory")) {
+      userRepository = InMemoryUserRepository.copyOf(userRepository);
+      todoRepository = InMemoryTodoRepository.copyOf(todoRepository);
+    }
+
+    // If `WRITE_BEHIND_LOG` names a directory, new users are written to a log there and
+    // acknowledged straight away, and added to the database in the background (see
+    // `WriteBehindRepository`), so they keep working while the database is briefly down.
+    String writeBehindLog = Main.getEnvOrDefault("WRITE_BEHIND_LOG", "");
+    if (!writeBehindLog.isEmpty()) {
+      userRepository = new WriteBehindUserRepository(userRepository,
+        new WriteLog(Path.of(writeBehindLog, "users"), WriteLog.DEFAULT_SEGMENT_SIZE, true));
+    }
+
+    // If `KNOWN_ID_FILTER` is `true`, lookups of IDs that don't exist are answered from
+    // a Bloom filter of the IDs and a short-lived cache of recent misses, without asking the
+    // database (see `KnownIdsRepository`). Items inserted by anything but this server only show
+    // up when the IDs are read again, every `KNOWN_ID_REFRESH_SECONDS`, so until then they'd
+    // get a 404; that's why it's off unless asked for.
+    Map<String, KnownIds> knownIds = Map.of();
+    if (Boolean.parseBoolean(Main.getEnvOrDefault("KNOWN_ID_FILTER", "false"))) {
+      long refresh = Long.parseLong(Main.getEnvOrDefault("KNOWN_ID_REFRESH_SECONDS", "60"));
+      KnownIdsUserRepository knownUsers = new KnownIdsUserRepository(userRepository, refresh, TimeUnit.SECONDS);
+      KnownIdsTodoRepository knownTodos = new KnownIdsTodoRepository(todoRepository, refresh, TimeUnit.SECONDS);
+      knownIds = Map.of("users", knownUsers.knownIds(), "todos", knownTodos.knownIds());
+      userRepository = knownUsers;
+      todoRepository = knownTodos;
+    }
+
+    // Unless `PASSTHROUGH_READS` is `false`, the read endpoints send the JSON the
+    // repositories produce straight to the client, without building model objects.
+    boolean passthroughReads = Boolean.parseBoolean(Main.getEnvOrDefault("PASSTHROUGH_READS", "true"));
+
+    // Single-todo writes from concurrent requests are grouped into batches of up to
+    // `WRITE_BATCH_SIZE`, waiting at most `WRITE_BATCH_WINDOW_MICROS` for a batch to fill.
+    // A batch size of 1 turns this off, so each write goes to the database on its own.
+    int writeBatchSize = Integer.parseInt(Main.getEnvOrDefault("WRITE_BATCH_SIZE", "256"));
+    long writeBatchWindow = Long.parseLong(Main.getEnvOrDefault("WRITE_BATCH_WINDOW_MICROS", "1000"));
+    WriteCoalescer<Todo> todoWrites = new WriteCoalescer<>(
+      todoRepository, writeBatchSize, writeBatchWindow, TimeUnit.MICROSECONDS);
+
+    // If `SINGLE_FLIGHT_READS` is `true`, identical list requests that arrive while one
+    // is already running share its query and response (see `SingleFlight`). That means
+    // buffering the response rather than streaming it, so it's off unless asked for.
+    // `GET /api/metrics/single-flight` reports how many requests were collapsed this way.
+    boolean singleFlightReads = Boolean.parseBoolean(Main.getEnvOrDefault("SINGLE_FLIGHT_READS", "false"));
+    SingleFlight<SingleFlight.RequestKey, byte[]> userReads = new SingleFlight<>();
+    SingleFlight<SingleFlight.RequestKey, byte[]> todoReads = new SingleFlight<>();
+
+    // Every request gets a deadline, `REQUEST_TIMEOUT_MS` unless it asks for less (or more, up
+    // to 30 seconds) with an `X-Request-Timeout` header, which MongoDB enforces on each of its
+    // queries (see `RequestDeadlines`). The exports and imports work through whole collections,
+    // so they're only limited if they ask to be. A timeout of 0 turns this off.
+    long requestTimeout = Long.parseLong(Main.getEnvOrDefault("REQUEST_TIMEOUT_MS", "2000"));
+    RequestDeadlines deadlines = new RequestDeadlines(requestTimeout, Map.of(
+      "/api/todos/export", 0L,
+      "/api/todos/import", 0L,
+      "/api/users/export", 0L));
+
+    // Sorts that no index supports either run with `allowDiskUse` (if `UNINDEXED_SORTS`
+    // is `disk`, the default) or are rejected (if it's `reject`); either way they're counted.
+    boolean unindexedSortsOnDisk = !Main.getEnvOrDefault("UNINDEXED_SORTS", "disk").equals("reject");
+    SortPlanner userSorts = UserController.sortPlanner(unindexedSortsOnDisk);
+    SortPlanner todoSorts = TodoController.sortPlanner(unindexedSortsOnDisk);
+
+    // `GET /api/todos/stats` responses are kept for `TODO_STATS_TTL_MS` (see `TtlCache`),
+    // so a busy overview page costs one aggregation every few seconds. 0 turns this off.
+    long todoStatsTtl = Long.parseLong(Main.getEnvOrDefault("TODO_STATS_TTL_MS", "5000"));
+    TtlCache<SingleFlight.RequestKey, byte[]> todoStats = todoStatsTtl > 0
+      ? new TtlCache<>(todoStatsTtl, TimeUnit.MILLISECONDS)
+      : null;
+
+    // If `TRACE_FILE` names a file, requests are traced (see `Tracer`), and a random
+    // `TRACE_SAMPLE_RATE` of the traces, plus all the ones slower than `TRACE_SLOW_MS` or
+    // that failed, are appended to it in OTLP/JSON.
+    // It goes first, so its handlers run around everyone else's.
+    String traceFile = Main.getEnvOrDefault("TRACE_FILE", "");
+    List<Controller> controllers = new ArrayList<>();
+    if (!traceFile.isEmpty()) {
+      controllers.add(new Tracer(
+        Double.parseDouble(Main.getEnvOrDefault("TRACE_SAMPLE_RATE", "0.01")),
+        Long.parseLong(Main.getEnvOrDefault("TRACE_SLOW_MS", "500")),
+        new OtlpJsonFileExporter(Path.of(traceFile), "todos-server")));
+    }
+
+    controllers.addAll(List.of(
+      // Records each request in the JDK Flight Recorder, when it's recording.
+      new HandlerEvents(),
+      // Logs `ACCESS_LOG` (`off`, `errors`, or `all`) requests, where `errors` includes
+      // the ones slower than `ACCESS_LOG_SLOW_MS`.
+      new AccessLog(
+        AccessLog.Mode.of(Main.getEnvOrDefault("ACCESS_LOG", "off")),
+        Long.parseLong(Main.getEnvOrDefault("ACCESS_LOG_SLOW_MS", "1000"))),
+      // Sets each request's deadline, and reports the requests that run out of time.
+      deadlines,
       // You would add additional controllers here, as you create them,
       // although you need to make sure that each of your new controllers implements
       // the `Controller` interface.
       //
       // You can also remove this UserController once you don't need it.
-      new UserController(database),
-      new TodoController(database)
-    };
-    return controllers;
+      new UserController(userRepository, new UserController.Options()
+        .passthroughReads(passthroughReads)
+        .sharedReads(singleFlightReads ? userReads : null)
+        .sorts(userSorts)),
+      new TodoController(todoRepository, new TodoController.Options()
+        .passthroughReads(passthroughReads)
+        .writes(todoWrites)
+        .sharedReads(singleFlightReads ? todoReads : null)
+        .sorts(todoSorts)
+        .statsCache(todoStats)),
+      new MetricsController(Map.of("users", userReads, "todos", todoReads), knownIds, deadlines,
+        Map.of("users", userSorts, "todos", todoSorts),
+        todoStats == null ? Map.of() : Map.of("todoStats", todoStats)),
+      // Runs the requests in a batch by sending them back to this server, at the
+      // address each batch arrived on.
+      new BatchController()
+    ));
+    return controllers.toArray(new Controller[0]);
   }
 
 }
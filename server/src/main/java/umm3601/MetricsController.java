@@ -0,0 +1,148 @@
+package umm3601;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.logging.AsyncLogProvider;
+import umm3601.storage.KnownIds;
+import umm3601.storage.SortPlanner;
+
+/**
+ * Controller that reports how the server's shared machinery is doing, for
+ * dashboards and load tests rather than for the client app.
+ */
+public class MetricsController implements Controller {
+
+  private static final String API_SINGLE_FLIGHT = "/api/metrics/single-flight";
+  private static final String API_KNOWN_IDS = "/api/metrics/known-ids";
+  private static final String API_DEADLINES = "/api/metrics/deadlines";
+  private static final String API_LOGGING = "/api/metrics/logging";
+  private static final String API_SORTS = "/api/metrics/sorts";
+  private static final String API_CACHES = "/api/metrics/caches";
+
+  private final Map<String, SingleFlight<?, ?>> singleFlights;
+  private final Map<String, KnownIds> knownIds;
+  private final RequestDeadlines deadlines;
+  private final Map<String, SortPlanner> sorts;
+  private final Map<String, TtlCache<?, ?>> caches;
+
+  /**
+   * Construct a controller for metrics.
+   *
+   * @param singleFlights the `SingleFlight`s to report on, by name (e.g., "todos")
+   * @param knownIds the `KnownIds` to report on, by name
+   * @param deadlines the server's `RequestDeadlines`
+   * @param sorts the `SortPlanner`s to report on, by name
+   * @param caches the `TtlCache`s to report on, by name
+   */
+  public MetricsController(Map<String, SingleFlight<?, ?>> singleFlights, Map<String, KnownIds> knownIds,
+      RequestDeadlines deadlines, Map<String, SortPlanner> sorts, Map<String, TtlCache<?, ?>> caches) {
+    this.singleFlights = singleFlights;
+    this.knownIds = knownIds;
+    this.deadlines = deadlines;
+    this.sorts = sorts;
+    this.caches = caches;
+  }
+
+  /**
+   * Set the JSON body of the response to be the `SingleFlight.Stats` for
+   * each of the `SingleFlight`s, by name: how many requests actually ran
+   * their query, and how many were collapsed into one that was already running.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getSingleFlightStats(Context ctx) {
+    Map<String, SingleFlight.Stats> stats = new LinkedHashMap<>();
+    singleFlights.forEach((name, singleFlight) -> stats.put(name, singleFlight.stats()));
+    ctx.json(stats);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be the `KnownIds.Stats` for each
+   * collection, by name: how many lookups of IDs that don't exist were
+   * answered without asking the database.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getKnownIdStats(Context ctx) {
+    Map<String, KnownIds.Stats> stats = new LinkedHashMap<>();
+    knownIds.forEach((name, ids) -> stats.put(name, ids.stats()));
+    ctx.json(stats);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be the `RequestDeadlines.Stats`:
+   * how many requests ran out of time, and at which point.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getDeadlineStats(Context ctx) {
+    ctx.json(deadlines.stats());
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be the `SortPlanner.Stats` for each
+   * collection, by name: how many sorts an index supported, and how many it
+   * didn't, so they had to spill to disk or were rejected.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getSortStats(Context ctx) {
+    Map<String, SortPlanner.Stats> stats = new LinkedHashMap<>();
+    sorts.forEach((name, planner) -> stats.put(name, planner.stats()));
+    ctx.json(stats);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be the `TtlCache.Stats` for each
+   * of the caches, by name: how many requests were answered from the cache,
+   * and how many had to work out their response.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getCacheStats(Context ctx) {
+    Map<String, TtlCache.Stats> stats = new LinkedHashMap<>();
+    caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+    ctx.json(stats);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be how many log messages have been
+   * dropped because the log writer couldn't keep up.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getLoggingStats(Context ctx) {
+    ctx.json(Map.of("dropped", AsyncLogProvider.dropped()));
+    ctx.status(HttpStatus.OK);
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    // Get the single-flight stats for the list endpoints
+    server.get(API_SINGLE_FLIGHT, this::getSingleFlightStats);
+
+    // Get the stats for lookups of IDs that don't exist
+    server.get(API_KNOWN_IDS, this::getKnownIdStats);
+
+    // Get the number of requests that ran out of time
+    server.get(API_DEADLINES, this::getDeadlineStats);
+
+    // Get the number of sorts that weren't supported by an index
+    server.get(API_SORTS, this::getSortStats);
+
+    // Get the hits and misses for the caches of responses
+    server.get(API_CACHES, this::getCacheStats);
+
+    // Get the number of log messages that were dropped
+    server.get(API_LOGGING, this::getLoggingStats);
+  }
+}
@@ -0,0 +1,99 @@
+package umm3601;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Query;
+import umm3601.storage.Repository;
+
+/**
+ * Streams everything in a repository that matches a query to the client as
+ * newline-delimited JSON, for the `/export` endpoints.
+ *
+ * The normal list endpoints build one big JSON array, which is fine for a
+ * page of results but means a nightly job pulling a whole collection has to
+ * wait for (and the server has to hold) all of it at once. Here the
+ * repository writes each document to the response as it comes off the
+ * cursor, a batch at a time, so memory use stays the same however big the
+ * collection gets. If the client accepts gzip, the stream is compressed
+ * on the fly as well.
+ */
+public final class NdjsonExport {
+
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+  public static final String BATCH_SIZE_KEY = "batchSize";
+  public static final int DEFAULT_BATCH_SIZE = 1_000;
+  public static final int MAX_BATCH_SIZE = 10_000;
+
+  // The size of the buffer the gzip compressor writes through; big enough
+  // to compress efficiently, small enough that it doesn't matter.
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private NdjsonExport() {
+  }
+
+  /**
+   * Stream the items that match `query` to the response.
+   *
+   * The `batchSize` query parameter (between 1 and `MAX_BATCH_SIZE`, with a
+   * default of `DEFAULT_BATCH_SIZE`) sets how many documents are read from the
+   * database at a time.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param name the name of the thing being exported, used for the download's file name
+   * @param repository where the items come from
+   * @param query which items to export
+   * @throws IOException if there's a problem writing the response
+   */
+  public static void export(Context ctx, String name, Repository<?> repository, Query query) throws IOException {
+    int batchSize = DEFAULT_BATCH_SIZE;
+    if (ctx.queryParamMap().containsKey(BATCH_SIZE_KEY)) {
+      batchSize = ctx.queryParamAsClass(BATCH_SIZE_KEY, Integer.class)
+        .check(it -> it > 0 && it <= MAX_BATCH_SIZE,
+          "The export batch size must be between 1 and " + MAX_BATCH_SIZE + "; you gave "
+            + ctx.queryParam(BATCH_SIZE_KEY))
+        .get();
+    }
+
+    // Everything about the response has to be set before we start writing it.
+    ctx.status(HttpStatus.OK);
+    ctx.contentType(CONTENT_TYPE);
+    ctx.header(Header.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".ndjson\"");
+    ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+
+    if (acceptsGzip(ctx.header(Header.ACCEPT_ENCODING))) {
+      // Javalin leaves responses that already have a `Content-Encoding` alone,
+      // so this won't get compressed twice.
+      ctx.header(Header.CONTENT_ENCODING, "gzip");
+      GZIPOutputStream gzip = new GZIPOutputStream(RequestDeadlines.streamTo(ctx), GZIP_BUFFER_SIZE);
+      repository.writeNdjson(query, batchSize, gzip);
+      gzip.finish();
+    } else {
+      OutputStream out = RequestDeadlines.streamTo(ctx);
+      repository.writeNdjson(query, batchSize, out);
+    }
+  }
+
+  /**
+   * @param acceptEncoding the value of an `Accept-Encoding` header, which may be `null`
+   * @return whether the header allows a gzip-compressed response
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      boolean refused = parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?");
+      if ((name.equalsIgnoreCase("gzip") || name.equals("*")) && !refused) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
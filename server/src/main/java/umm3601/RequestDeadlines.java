@@ -0,0 +1,235 @@
+package umm3601;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mongodb.MongoExecutionTimeoutException;
+
+import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Deadline;
+
+/**
+ * Gives every API request a deadline, which the MongoDB repositories apply
+ * as the `maxTime` of each query they run for it (see `Deadline`).
+ *
+ * Without one, nothing bounds how long a `?body=` regex scan or the
+ * users-by-company aggregation can run, and a single bad pattern can hold
+ * a thread and a database operation for seconds. The deadline comes from
+ * the request's `X-Request-Timeout` header (in milliseconds, up to
+ * `MAX_TIMEOUT_MILLIS`) if it has one, and otherwise from the default for
+ * its route.
+ *
+ * When it runs out, the client gets a 504 (Gateway Timeout) if MongoDB
+ * stopped a query part way through, or a 503 (Service Unavailable) if the
+ * time was gone before the next query could even start. Both are counted
+ * in `stats()`.
+ *
+ * Handlers that stream their response as the query runs (the passthrough
+ * lists and the exports) have already sent a 200 and part of the body by
+ * the time a later batch of the query runs out of time, so it's too late
+ * for a 504. Ending the response normally would leave the client with what
+ * looks like a complete, but truncated, list, so instead the connection is
+ * aborted, and the client sees the response fail. Those handlers write
+ * through `streamTo()`, which is how we know they've started, and check
+ * the deadline before they start, so a query that's out of time before
+ * sending anything still gets a 503 or 504. The aborts are counted too.
+ *
+ * This doesn't add any routes of its own, just handlers that run around
+ * everyone else's, so it can go anywhere in the list of controllers.
+ */
+public class RequestDeadlines implements Controller {
+
+  public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+  // The most a client can ask for, so the header can't be used to lift the bound.
+  static final long MAX_TIMEOUT_MILLIS = 30_000;
+
+  // The attribute `streamTo()` sets once a response has started going out.
+  static final String STREAMING_ATTRIBUTE = "requestDeadlines.streaming";
+
+  /**
+   * How many requests ran out of time.
+   *
+   * @param timedOut how many had a query stopped by MongoDB (504)
+   * @param expired how many ran out before a query started (503)
+   * @param aborted how many of those had already started streaming their
+   *   response, so their connection was aborted instead
+   */
+  public record Stats(long timedOut, long expired, long aborted) {
+  }
+
+  private final long defaultMillis;
+  private final Map<String, Long> routeMillis;
+
+  private final LongAdder timedOut = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final LongAdder aborted = new LongAdder();
+
+  /**
+   * Construct the deadlines for the server's requests.
+   *
+   * @param defaultMillis the deadline for requests to routes without one of
+   *   their own, in milliseconds, or 0 for none
+   * @param routeMillis the deadlines for particular routes, by path prefix
+   *   (the longest matching one wins), in milliseconds, or 0 for none. The
+   *   exports, for instance, stream whole collections and shouldn't have one.
+   */
+  public RequestDeadlines(long defaultMillis, Map<String, Long> routeMillis) {
+    this.defaultMillis = defaultMillis;
+    this.routeMillis = Map.copyOf(routeMillis);
+  }
+
+  /**
+   * Start the deadline for a request, before it's handled.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws BadRequestResponse if the `X-Request-Timeout` header isn't a
+   *   positive number of milliseconds up to `MAX_TIMEOUT_MILLIS`
+   */
+  public void start(Context ctx) {
+    // Clear anything left on this thread first, in case the header is bad.
+    Deadline.clear();
+    Deadline.start(timeoutMillis(ctx), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * The deadline for a request, in milliseconds, or 0 if it doesn't have one.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the request's timeout
+   */
+  long timeoutMillis(Context ctx) {
+    String header = ctx.header(TIMEOUT_HEADER);
+    if (header == null) {
+      return routeTimeoutMillis(ctx.path());
+    }
+    long millis;
+    try {
+      millis = Long.parseLong(header.trim());
+    } catch (NumberFormatException e) {
+      millis = 0;
+    }
+    if (millis <= 0 || millis > MAX_TIMEOUT_MILLIS) {
+      throw new BadRequestResponse("The " + TIMEOUT_HEADER + " header must be a number of milliseconds from 1 to "
+        + MAX_TIMEOUT_MILLIS + "; you gave " + header);
+    }
+    return millis;
+  }
+
+  /**
+   * The default deadline for requests to a path.
+   *
+   * @param path the path of the request
+   * @return the timeout of the longest route prefix that matches, or the
+   *   default, in milliseconds
+   */
+  long routeTimeoutMillis(String path) {
+    String longest = null;
+    for (String route : routeMillis.keySet()) {
+      if (path.startsWith(route) && (longest == null || route.length() > longest.length())) {
+        longest = route;
+      }
+    }
+    return longest == null ? defaultMillis : routeMillis.get(longest);
+  }
+
+  /**
+   * Respond to a query MongoDB stopped because the request's deadline passed.
+   *
+   * @param e the exception from the driver
+   * @param ctx a Javalin HTTP context
+   */
+  public void timedOut(MongoExecutionTimeoutException e, Context ctx) {
+    timedOut.increment();
+    fail(ctx, e, HttpStatus.GATEWAY_TIMEOUT, "The request's query took longer than its deadline");
+  }
+
+  /**
+   * Respond to a request that ran out of time before its next query started.
+   *
+   * @param e the exception from `Deadline`
+   * @param ctx a Javalin HTTP context
+   */
+  public void expired(Deadline.DeadlineExceededException e, Context ctx) {
+    expired.increment();
+    fail(ctx, e, HttpStatus.SERVICE_UNAVAILABLE, "The request's deadline passed before its query could start");
+  }
+
+  private void fail(Context ctx, RuntimeException e, HttpStatus status, String title) {
+    if (Boolean.TRUE.equals(ctx.attribute(STREAMING_ATTRIBUTE))) {
+      aborted.increment();
+      // Jetty ends the response without its last chunk and closes the
+      // connection, so the client can't take what it got as the whole body.
+      if (ctx.res() instanceof org.eclipse.jetty.server.Response response) {
+        response.getHttpChannel().abort(e);
+      }
+      return;
+    }
+    // The same shape as the responses for Javalin's own `HttpResponseException`s.
+    ctx.json(Map.of("title", title, "status", status.getCode()));
+    ctx.status(status);
+  }
+
+  /**
+   * The stream for a handler to write its response to as its query runs,
+   * rather than setting the response once it's done.
+   *
+   * This checks the request's deadline first, so a request that's already
+   * out of time gets a 503 rather than the start of a response. Once
+   * anything has been written, running out of time aborts the connection
+   * (see above).
+   *
+   * @param ctx a Javalin HTTP context, whose status and headers must
+   *   already be set
+   * @return the response's output stream
+   * @throws Deadline.DeadlineExceededException if the deadline has already passed
+   */
+  public static OutputStream streamTo(Context ctx) {
+    Deadline.maxTimeMillis();
+    return new FilterOutputStream(ctx.outputStream()) {
+      private boolean started;
+
+      @Override
+      public void write(int b) throws IOException {
+        start();
+        out.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        start();
+        out.write(b, off, len);
+      }
+
+      private void start() {
+        if (!started) {
+          started = true;
+          ctx.attribute(STREAMING_ATTRIBUTE, true);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return how many requests have run out of time so far
+   */
+  public Stats stats() {
+    return new Stats(timedOut.sum(), expired.sum(), aborted.sum());
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    server.before(this::start);
+    // After handlers run whatever happened, so the thread is always left clean.
+    server.after(ctx -> Deadline.clear());
+    server.exception(MongoExecutionTimeoutException.class, this::timedOut);
+    server.exception(Deadline.DeadlineExceededException.class, this::expired);
+  }
+}
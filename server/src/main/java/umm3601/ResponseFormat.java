@@ -0,0 +1,134 @@
+package umm3601;
+
+import java.io.IOException;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+
+/**
+ * The formats the API can send responses in, chosen by the request's
+ * `Accept` header.
+ *
+ * JSON is the default, and what browsers and most clients get. Services that
+ * pull lots of todos or users can ask for one of the binary formats instead:
+ * they all encode the same `Todo`/`User` shape through the same Jackson model
+ * (each one is just a different `JsonFactory` under an `ObjectMapper`), but
+ * they're both smaller and faster to produce and parse than JSON text, since
+ * numbers and booleans aren't turned into digits and field names can be
+ * written compactly.
+ */
+public enum ResponseFormat {
+  JSON("application/json", JsonMappers.http()),
+  SMILE("application/x-jackson-smile", JsonMappers.tuned(new ObjectMapper(new SmileFactory()))),
+  CBOR("application/cbor", JsonMappers.tuned(new ObjectMapper(new CBORFactory()))),
+  MESSAGE_PACK("application/x-msgpack", JsonMappers.tuned(new ObjectMapper(new MessagePackFactory())));
+
+  private final String contentType;
+  private final ObjectMapper mapper;
+
+  ResponseFormat(String contentType, ObjectMapper mapper) {
+    this.contentType = contentType;
+    this.mapper = mapper;
+  }
+
+  /**
+   * @return the media type this format is sent as
+   */
+  public String contentType() {
+    return contentType;
+  }
+
+  /**
+   * @return the (shared) mapper that reads and writes this format
+   */
+  public ObjectMapper mapper() {
+    return mapper;
+  }
+
+  /**
+   * Work out which format to respond to a request in.
+   *
+   * Since the response then depends on the `Accept` header, this also sets
+   * `Vary: Accept` so caches don't hand one client's format to another.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the format that best matches the request's `Accept` header
+   */
+  public static ResponseFormat negotiate(Context ctx) {
+    ctx.header(Header.VARY, Header.ACCEPT);
+    return negotiate(ctx.header(Header.ACCEPT));
+  }
+
+  /**
+   * Choose the format with the highest quality (`q`) in an `Accept` header,
+   * preferring formats that are listed first when there's a tie.
+   *
+   * Wildcard ranges count as asking for JSON, and types we don't support
+   * are ignored (falling back to JSON), so clients that don't know about the
+   * binary formats keep getting what they always have.
+   *
+   * @param accept the value of an `Accept` header, which may be `null`
+   * @return the best matching format
+   */
+  public static ResponseFormat negotiate(String accept) {
+    ResponseFormat best = JSON;
+    double bestQuality = 0;
+    if (accept == null) {
+      return best;
+    }
+    for (String range : accept.split(",")) {
+      String[] parts = range.split(";");
+      ResponseFormat format = forContentType(parts[0].trim());
+      double quality = quality(parts);
+      if (format != null && quality > bestQuality) {
+        best = format;
+        bestQuality = quality;
+      }
+    }
+    return best;
+  }
+
+  private static ResponseFormat forContentType(String contentType) {
+    if (contentType.endsWith("/*")) {
+      return contentType.equals("*/*") || contentType.equalsIgnoreCase("application/*") ? JSON : null;
+    }
+    for (ResponseFormat format : values()) {
+      if (format.contentType.equalsIgnoreCase(contentType)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Set the body of the response to `value`, encoded in this format.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param value the value to encode
+   * @throws IOException if there's a problem encoding `value`
+   */
+  public void write(Context ctx, Object value) throws IOException {
+    ctx.contentType(contentType);
+    ctx.result(mapper.writeValueAsBytes(value));
+  }
+}
@@ -10,7 +10,11 @@ import com.mongodb.client.MongoClients;
 import org.bson.UuidRepresentation;
 
 import io.javalin.Javalin;
+import io.javalin.http.Context;
 import io.javalin.http.InternalServerErrorResponse;
+import io.javalin.http.RequestLogger;
+import umm3601.profiling.MongoCommandEvents;
+import umm3601.tracing.MongoCommandSpans;
 
 /**
  * The class used to configure and start a Javalin server.
@@ -18,7 +22,7 @@ import io.javalin.http.InternalServerErrorResponse;
 public class Server {
 
   // The port that the server should run on.
-  private static final int SERVER_PORT = 4567;
+  static final int SERVER_PORT = 4567;
 
   // The `mongoClient` field is used to access the MongoDB
   private final MongoClient mongoClient;
@@ -68,6 +72,11 @@ public class Server {
       // a non-standard way. This option says to use the standard encoding.
       // See: https://studio3t.com/knowledge-base/articles/mongodb-best-practices-uuid-data/
       .uuidRepresentation(UuidRepresentation.STANDARD)
+      // Adds a span for each command to the trace of the request that sent it,
+      // when there is one (see `Tracer`).
+      .addCommandListener(new MongoCommandSpans())
+      // Records each command in the JDK Flight Recorder, when it's recording (see `HandlerEvents`).
+      .addCommandListener(new MongoCommandEvents())
       .build());
 
     return mongoClient;
@@ -113,9 +122,20 @@ public class Server {
      * what HTTP methods they use. (Replace `localhost` and `4567` with whatever server
      * and  port you're actually using, if they are different.)
      */
-    Javalin server = Javalin.create(config ->
-      config.bundledPlugins.enableRouteOverview("/api")
-    );
+    Javalin server = Javalin.create(config -> {
+      config.bundledPlugins.enableRouteOverview("/api");
+      // Use our shared, tuned Jackson mapper for request and response bodies
+      // instead of Javalin's default one. See `JsonMappers` for the details.
+      config.jsonMapper(JsonMappers.javalin());
+      // Handle each request on its own virtual thread. Requests spend most of their
+      // time waiting for MongoDB, and `/api/batch` waits for the requests it sends
+      // back to us, which with a fixed pool of threads could use them all up.
+      config.useVirtualThreads = true;
+      // Javalin calls its request logger once each response has been sent, so
+      // any controllers that want to know about that (like the `Tracer`) are
+      // `RequestLogger`s too.
+      config.requestLogger.http(this::logRequest);
+    });
 
     // Configure the MongoDB client and the Javalin server to shut down gracefully.
     configureShutdowns(server);
@@ -136,6 +156,21 @@ public class Server {
     return server;
   }
 
+  /**
+   * Pass a finished request on to each of the controllers that's a `RequestLogger`.
+   *
+   * @param ctx the request's Javalin HTTP context
+   * @param executionTimeMs how long the request took
+   * @throws Exception if one of them does
+   */
+  private void logRequest(Context ctx, Float executionTimeMs) throws Exception {
+    for (Controller controller : controllers) {
+      if (controller instanceof RequestLogger logger) {
+        logger.handle(ctx, executionTimeMs);
+      }
+    }
+  }
+
   /**
    * Configure the server and the MongoDB client to shut down gracefully.
    *
@@ -0,0 +1,145 @@
+package umm3601;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import umm3601.storage.Deadline;
+
+/**
+ * Lets concurrent calls for the same key share a single execution.
+ *
+ * The first call for a key runs its loader; any calls for the same key that
+ * arrive while that's still running don't run their own, but wait for and
+ * return the first call's result (or throw its exception). Nothing is kept
+ * once the call finishes, so unlike a cache this never returns stale data:
+ * every result was loaded after the request asking for it arrived.
+ *
+ * The controllers can use this for their list endpoints, keyed by
+ * `RequestKey`, so a burst of identical requests (e.g., a room full of
+ * dashboards all refreshing at once) costs one database query and one
+ * serialized body. That body has to be built in memory before anyone can
+ * have it, though, rather than streamed out as the query runs, so it's
+ * only turned on if `SINGLE_FLIGHT_READS` asks for it.
+ *
+ * A call that's waiting for another's result only waits until its own
+ * request's deadline (see `Deadline.await()`), however long the call it's
+ * sharing has left.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+  /**
+   * Loads a result.
+   *
+   * @param <V> the type of the result
+   */
+  @FunctionalInterface
+  public interface Loader<V> {
+    /**
+     * @return the result
+     * @throws IOException if there's a problem loading the result
+     */
+    V load() throws IOException;
+  }
+
+  /**
+   * What a `SingleFlight` has done so far.
+   *
+   * @param executions the number of calls that ran their loader
+   * @param collapsed the number of calls that shared another call's result instead
+   */
+  public record Stats(long executions, long collapsed) {
+  }
+
+  /**
+   * A normalized description of a read request, for use as a key: requests
+   * with the same key are guaranteed to get the same response.
+   *
+   * @param route the route the request was for
+   * @param params the request's query parameters, sorted by name
+   * @param format the format of the response
+   */
+  public record RequestKey(String route, Map<String, List<String>> params, ResponseFormat format) {
+    /**
+     * @param route the route the request was for
+     * @param params the request's query parameters, in any order
+     * @param format the format of the response
+     * @return the key for the request
+     */
+    public static RequestKey of(String route, Map<String, List<String>> params, ResponseFormat format) {
+      return new RequestKey(route, new TreeMap<>(params), format);
+    }
+  }
+
+  private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder executions = new LongAdder();
+  private final LongAdder collapsed = new LongAdder();
+
+  /**
+   * Get the result for `key`, either by running `loader`, or by waiting for
+   * a call for the same key that's already running.
+   *
+   * @param key identifies the result; calls with equal keys must want equal results
+   * @param loader loads the result if there isn't already a call for `key` running
+   * @return the result
+   * @throws IOException if the loader (ours or the shared one) did
+   * @throws Deadline.DeadlineExceededException if the current request's
+   *   deadline passed while it waited for another call's result
+   */
+  public V run(K key, Loader<V> loader) throws IOException {
+    CompletableFuture<V> ours = new CompletableFuture<>();
+    CompletableFuture<V> running = inFlight.putIfAbsent(key, ours);
+    if (running != null) {
+      collapsed.increment();
+      return await(running);
+    }
+
+    executions.increment();
+    try {
+      V result = loader.load();
+      ours.complete(result);
+      return result;
+    } catch (IOException | RuntimeException | Error e) {
+      ours.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, ours);
+    }
+  }
+
+  /**
+   * @return what this has done so far
+   */
+  public Stats stats() {
+    return new Stats(executions.sum(), collapsed.sum());
+  }
+
+  private static <V> V await(CompletableFuture<V> running) throws IOException {
+    try {
+      return Deadline.await(running);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a shared call");
+    } catch (ExecutionException e) {
+      // Throw whatever the call we were sharing threw, just as if we'd made it ourselves.
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      } else if (cause instanceof RuntimeException runtime) {
+        throw runtime;
+      } else if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
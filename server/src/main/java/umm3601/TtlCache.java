@@ -0,0 +1,117 @@
+package umm3601;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps results for a short, fixed time, for endpoints whose answers are
+ * expensive to work out but fine to be a few seconds out of date, like
+ * `GET /api/todos/stats`.
+ *
+ * Unlike `SingleFlight`, this does return stale data: a result can be up
+ * to `ttl` older than the request asking for it, and writes in the
+ * meantime don't invalidate it. Misses for the same key that arrive
+ * together still only load the result once (through a `SingleFlight`).
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class TtlCache<K, V> {
+
+  // Bigger than this, and we stop caching new results until some expire.
+  private static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+  /**
+   * What a `TtlCache` has done so far.
+   *
+   * @param hits the number of calls answered from the cache
+   * @param misses the number of calls that had to load (or wait for) a result
+   */
+  public record Stats(long hits, long misses) {
+  }
+
+  private record Entry<V>(V value, long expiry) {
+  }
+
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final LongSupplier nanoTime;
+
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final SingleFlight<K, V> loads = new SingleFlight<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Construct an empty cache.
+   *
+   * @param ttl how long to keep each result
+   * @param unit the unit of `ttl`
+   */
+  public TtlCache(long ttl, TimeUnit unit) {
+    this(ttl, unit, DEFAULT_MAX_ENTRIES, System::nanoTime);
+  }
+
+  // For tests that don't want to wait for results to expire.
+  TtlCache(long ttl, TimeUnit unit, int maxEntries, LongSupplier nanoTime) {
+    this.ttlNanos = unit.toNanos(ttl);
+    this.maxEntries = maxEntries;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * @return how long each result is kept, in seconds (rounded down), e.g.,
+   *   for a `Cache-Control` header
+   */
+  public long ttlSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(ttlNanos);
+  }
+
+  /**
+   * Get the result for `key` from the cache, or load it with `loader` (and
+   * keep it) if there isn't one that's still fresh.
+   *
+   * @param key identifies the result; calls with equal keys must want equal results
+   * @param loader loads the result if it isn't cached
+   * @return the result
+   * @throws IOException if the loader did
+   */
+  public V get(K key, SingleFlight.Loader<V> loader) throws IOException {
+    Entry<V> entry = entries.get(key);
+    if (entry != null) {
+      if (entry.expiry() - nanoTime.getAsLong() > 0) {
+        hits.increment();
+        return entry.value();
+      }
+      entries.remove(key, entry);
+    }
+    misses.increment();
+    return loads.run(key, () -> {
+      V value = loader.load();
+      put(key, value);
+      return value;
+    });
+  }
+
+  private void put(K key, V value) {
+    long now = nanoTime.getAsLong();
+    if (entries.size() >= maxEntries) {
+      entries.values().removeIf(entry -> entry.expiry() - now <= 0);
+      if (entries.size() >= maxEntries) {
+        return;
+      }
+    }
+    entries.put(key, new Entry<>(value, now + ttlNanos));
+  }
+
+  /**
+   * @return what this has done so far
+   */
+  public Stats stats() {
+    return new Stats(hits.sum(), misses.sum());
+  }
+}
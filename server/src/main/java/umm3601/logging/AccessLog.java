@@ -0,0 +1,133 @@
+package umm3601.logging;
+
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.RequestLogger;
+import umm3601.Controller;
+import umm3601.tracing.Tracer;
+
+/**
+ * Logs a line for each request once its response has been sent (Javalin
+ * calls `handle` as a `RequestLogger`), to the `umm3601.access` logger.
+ *
+ * Each line has the request's method, path, route, and query string, and
+ * the response's status, size, and how long it took, as fields of their
+ * own, plus the trace ID when the request was traced. Like everything
+ * else that's logged, it's written on the log writer's thread, so it
+ * doesn't hold up the request.
+ */
+public class AccessLog implements Controller, RequestLogger {
+
+  /** The name of the logger the access log goes to. */
+  public static final String LOGGER_NAME = "umm3601.access";
+
+  private static final int CLIENT_ERROR = 400;
+
+  /**
+   * Which requests get logged.
+   */
+  public enum Mode {
+    /** No requests. */
+    OFF,
+    /** Only the ones that failed (with a 4xx or 5xx) or were slow. */
+    ERRORS,
+    /** Every request. */
+    ALL;
+
+    /**
+     * Parse a mode from its (case-insensitive) name.
+     *
+     * @param name the name, e.g., "errors"
+     * @return the mode
+     * @throws IllegalArgumentException if there's no mode with that name
+     */
+    public static Mode of(String name) {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private final Logger logger;
+  private final Mode mode;
+  private final long slowMillis;
+
+  /**
+   * Make an access log.
+   *
+   * @param mode which requests to log
+   * @param slowMillis how long (in milliseconds) a request has to take to
+   *   count as slow, and be logged even in `ERRORS` mode
+   */
+  public AccessLog(Mode mode, long slowMillis) {
+    this(LoggerFactory.getLogger(LOGGER_NAME), mode, slowMillis);
+  }
+
+  AccessLog(Logger logger, Mode mode, long slowMillis) {
+    this.logger = logger;
+    this.mode = mode;
+    this.slowMillis = slowMillis;
+  }
+
+  /**
+   * Decide whether to log a request.
+   *
+   * @param status the HTTP status of the response
+   * @param executionTimeMs how long the request took
+   * @return `true` if it should be logged
+   */
+  boolean shouldLog(int status, float executionTimeMs) {
+    return switch (mode) {
+      case OFF -> false;
+      case ERRORS -> status >= CLIENT_ERROR || executionTimeMs >= slowMillis;
+      case ALL -> true;
+    };
+  }
+
+  /**
+   * Log a request, once its response has been sent.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param executionTimeMs how long Javalin says the request took
+   */
+  @Override
+  public void handle(Context ctx, Float executionTimeMs) {
+    int status = ctx.statusCode();
+    if (!shouldLog(status, executionTimeMs) || !logger.isInfoEnabled()) {
+      return;
+    }
+    String method = ctx.method().toString();
+    LoggingEventBuilder event = logger.atInfo()
+      .addKeyValue("method", method)
+      .addKeyValue("path", ctx.path())
+      .addKeyValue("status", status)
+      .addKeyValue("durationMs", executionTimeMs);
+    String route = ctx.endpointHandlerPath();
+    if (route != null && !route.isEmpty()) {
+      event = event.addKeyValue("route", route);
+    }
+    String query = ctx.queryString();
+    if (query != null) {
+      event = event.addKeyValue("query", query);
+    }
+    // Jetty counts what it actually wrote, which (unlike `Content-Length`)
+    // works for streamed and compressed responses too.
+    if (ctx.res() instanceof org.eclipse.jetty.server.Response response) {
+      event = event.addKeyValue("bytes", response.getHttpChannel().getBytesWritten());
+    }
+    String traceId = ctx.res().getHeader(Tracer.TRACE_ID_HEADER);
+    if (traceId != null) {
+      event = event.addKeyValue("traceId", traceId);
+    }
+    event.log("{} {} {}", method, ctx.path(), status);
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    // Nothing to route: Javalin calls `handle` for every request.
+  }
+}
@@ -0,0 +1,94 @@
+package umm3601.logging;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.BasicMDCAdapter;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+/**
+ * Plugs our asynchronous JSON logging into SLF4J, so it's what Javalin,
+ * Jetty, the MongoDB driver, and our own code all log to. SLF4J finds it
+ * through `META-INF/services/org.slf4j.spi.SLF4JServiceProvider`.
+ *
+ * It's configured with environment variables, since it's set up before
+ * `Main` runs:
+ *
+ * - `LOG_LEVEL`: the least important level to log (default `info`)
+ * - `LOG_FILE`: a file to append the log to (default standard error)
+ * - `LOG_BUFFER_SIZE`: how many messages can be waiting to be written
+ *   before more are dropped (default 8192)
+ */
+public class AsyncLogProvider implements SLF4JServiceProvider {
+
+  private static final String DEFAULT_BUFFER_SIZE = "8192";
+
+  private final IMarkerFactory markerFactory = new BasicMarkerFactory();
+  private final MDCAdapter mdcAdapter = new BasicMDCAdapter();
+  private AsyncLoggerFactory loggerFactory;
+
+  private static String getEnvOrDefault(String name, String defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
+  @Override
+  public void initialize() {
+    Level level = Level.valueOf(getEnvOrDefault("LOG_LEVEL", "info").toUpperCase());
+    int bufferSize = Integer.parseInt(getEnvOrDefault("LOG_BUFFER_SIZE", DEFAULT_BUFFER_SIZE));
+    String file = getEnvOrDefault("LOG_FILE", "");
+    Writer out;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(
+        file.isEmpty() ? System.err : new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't open the log file " + file, e);
+    }
+    AsyncLogWriter writer = new AsyncLogWriter(out, bufferSize);
+    // Write whatever's left when the JVM shuts down.
+    Runtime.getRuntime().addShutdownHook(new Thread(writer::close));
+    loggerFactory = new AsyncLoggerFactory(level, writer);
+  }
+
+  @Override
+  public ILoggerFactory getLoggerFactory() {
+    return loggerFactory;
+  }
+
+  @Override
+  public IMarkerFactory getMarkerFactory() {
+    return markerFactory;
+  }
+
+  @Override
+  public MDCAdapter getMDCAdapter() {
+    return mdcAdapter;
+  }
+
+  @Override
+  public String getRequestedApiVersion() {
+    return "2.0.99";
+  }
+
+  /**
+   * How many log messages have been dropped because the buffer was full.
+   *
+   * @return the number dropped, or 0 if SLF4J isn't using this provider
+   */
+  public static long dropped() {
+    if (LoggerFactory.getILoggerFactory() instanceof AsyncLoggerFactory factory) {
+      return factory.writer().dropped();
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,136 @@
+package umm3601.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.event.KeyValuePair;
+import org.slf4j.event.Level;
+
+/**
+ * Writes log records on a thread of its own, so that logging never makes
+ * a request wait on a disk or a terminal.
+ *
+ * Loggers `offer` records to a `RingBuffer`, and a daemon thread takes them
+ * out, formats them as JSON lines (see `JsonLines`), and writes them,
+ * flushing whenever it catches up. If the buffer is full, the record is
+ * dropped and counted rather than making the logger wait, and the writer
+ * logs how many were dropped once it catches up.
+ */
+final class AsyncLogWriter implements AutoCloseable {
+
+  // How long the writer's thread sleeps when there's nothing to write.
+  private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  // How long `close` waits for the writer to catch up.
+  private static final long CLOSE_TIMEOUT_MILLIS = 2_000;
+
+  private final RingBuffer<LogRecord> buffer;
+  private final Writer out;
+  private final Thread thread;
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean running = true;
+  // How many of the dropped records the writer has already reported.
+  private long reported;
+
+  /**
+   * Make a writer, and start its thread.
+   *
+   * @param out where to write the records
+   * @param capacity how many records can be waiting to be written
+   */
+  AsyncLogWriter(Writer out, int capacity) {
+    this.buffer = new RingBuffer<>(capacity);
+    this.out = out;
+    this.thread = Thread.ofPlatform().name("log-writer").daemon().start(this::run);
+  }
+
+  /**
+   * Hand a record to the writer, without waiting.
+   *
+   * @param record the record to write
+   * @return `true` if it will be written, or `false` if it was dropped
+   *   because the buffer was full (or the writer was closed)
+   */
+  boolean offer(LogRecord record) {
+    if (running && buffer.offer(record)) {
+      return true;
+    }
+    dropped.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * @return how many records have been dropped so far
+   */
+  long dropped() {
+    return dropped.get();
+  }
+
+  private void run() {
+    StringBuilder line = new StringBuilder();
+    boolean unflushed = false;
+    while (true) {
+      LogRecord record = buffer.poll();
+      if (record != null) {
+        unflushed |= write(line, record);
+        continue;
+      }
+      // We've caught up, so this is a good time to mention what we missed, and flush.
+      long missed = dropped.get() - reported;
+      if (missed > 0) {
+        reported += missed;
+        unflushed |= write(line, new LogRecord(System.currentTimeMillis(), Level.WARN,
+          AsyncLogWriter.class.getName(), Thread.currentThread().getName(),
+          "Dropped {} log messages because the buffer was full", new Object[] { missed },
+          List.of(new KeyValuePair("dropped", missed)), null));
+      }
+      if (unflushed) {
+        flush();
+        unflushed = false;
+      }
+      if (!running && buffer.isEmpty()) {
+        return;
+      }
+      LockSupport.parkNanos(this, IDLE_NANOS);
+    }
+  }
+
+  private boolean write(StringBuilder line, LogRecord record) {
+    line.setLength(0);
+    try {
+      JsonLines.append(line, record);
+      out.append(line);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // There's nowhere left to log this to, and the logger mustn't die.
+      System.err.println("Couldn't write a log message: " + e);
+      return false;
+    }
+  }
+
+  private void flush() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Couldn't flush the log: " + e);
+    }
+  }
+
+  /**
+   * Stop taking records, and wait (a little while) for the ones already
+   * offered to be written.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
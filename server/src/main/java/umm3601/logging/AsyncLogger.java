@@ -0,0 +1,96 @@
+package umm3601.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.event.LoggingEvent;
+import org.slf4j.helpers.LegacyAbstractLogger;
+import org.slf4j.spi.LoggingEventAware;
+
+/**
+ * An SLF4J logger that hands what's logged to an `AsyncLogWriter`.
+ *
+ * Messages below the logger's level are skipped before anything is
+ * allocated. The others are wrapped in a `LogRecord` (with their
+ * arguments, unformatted) and offered to the writer, which is all the
+ * logging thread does. Key-value pairs from SLF4J's fluent API, e.g.,
+ * `logger.atInfo().addKeyValue("status", 200).log("...")`, are written as
+ * fields of their own.
+ */
+class AsyncLogger extends LegacyAbstractLogger implements LoggingEventAware {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient AsyncLogWriter writer;
+  private final int threshold;
+
+  /**
+   * Make a logger.
+   *
+   * @param name the logger's name
+   * @param level the least important level it logs
+   * @param writer where it sends what's logged
+   */
+  AsyncLogger(String name, Level level, AsyncLogWriter writer) {
+    this.name = name;
+    this.threshold = level.toInt();
+    this.writer = writer;
+  }
+
+  // Virtual threads (which handle the requests) don't have names, so they go by their IDs.
+  private static String threadName() {
+    Thread thread = Thread.currentThread();
+    String threadName = thread.getName();
+    return threadName.isEmpty() ? "#" + thread.threadId() : threadName;
+  }
+
+  private boolean isEnabled(Level level) {
+    return level.toInt() >= threshold;
+  }
+
+  @Override
+  public boolean isTraceEnabled() {
+    return isEnabled(Level.TRACE);
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return isEnabled(Level.DEBUG);
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return isEnabled(Level.INFO);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return isEnabled(Level.WARN);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return isEnabled(Level.ERROR);
+  }
+
+  @Override
+  protected String getFullyQualifiedCallerName() {
+    return null;
+  }
+
+  @Override
+  protected void handleNormalizedLoggingCall(Level level, Marker marker, String message, Object[] arguments,
+      Throwable error) {
+    writer.offer(new LogRecord(System.currentTimeMillis(), level, name, threadName(),
+      message, arguments, null, error));
+  }
+
+  @Override
+  public void log(LoggingEvent event) {
+    if (!isEnabled(event.getLevel())) {
+      return;
+    }
+    long time = event.getTimeStamp() == 0 ? System.currentTimeMillis() : event.getTimeStamp();
+    writer.offer(new LogRecord(time, event.getLevel(), name, threadName(),
+      event.getMessage(), event.getArgumentArray(), event.getKeyValuePairs(), event.getThrowable()));
+  }
+}
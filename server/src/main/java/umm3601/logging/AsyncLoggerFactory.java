@@ -0,0 +1,42 @@
+package umm3601.logging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+/**
+ * Makes (and remembers) the `AsyncLogger`s, which all share one level and
+ * one writer.
+ */
+class AsyncLoggerFactory implements ILoggerFactory {
+
+  private final Level level;
+  private final AsyncLogWriter writer;
+  private final Map<String, Logger> loggers = new ConcurrentHashMap<>();
+
+  /**
+   * Make a factory.
+   *
+   * @param level the least important level the loggers log
+   * @param writer where the loggers send what's logged
+   */
+  AsyncLoggerFactory(Level level, AsyncLogWriter writer) {
+    this.level = level;
+    this.writer = writer;
+  }
+
+  @Override
+  public Logger getLogger(String name) {
+    return loggers.computeIfAbsent(name, n -> new AsyncLogger(n, level, writer));
+  }
+
+  /**
+   * @return the writer the loggers send what's logged to
+   */
+  AsyncLogWriter writer() {
+    return writer;
+  }
+}
@@ -0,0 +1,124 @@
+package umm3601.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.event.KeyValuePair;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Writes `LogRecord`s as JSON objects, one per line, e.g.,
+ *
+ * ```
+ * {"time":"2025-01-31T17:02:11.204Z","level":"INFO","logger":"umm3601.access",
+ *   "thread":"...","message":"GET /api/todos 200","status":200,"durationMs":3.1}
+ * ```
+ *
+ * (but all on one line). Structured fields go after the standard ones,
+ * with numbers and booleans as JSON numbers and booleans and everything
+ * else as strings.
+ */
+final class JsonLines {
+
+  private static final int CONTROL_CHARACTERS = 0x20;
+
+  private JsonLines() {
+  }
+
+  /**
+   * Append a record, as a line of JSON, to a buffer.
+   *
+   * @param line the buffer to append it to
+   * @param record the record
+   */
+  static void append(StringBuilder line, LogRecord record) {
+    line.append("{\"time\":\"");
+    DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(record.epochMillis()), line);
+    line.append("\",\"level\":\"").append(record.level()).append('"');
+    field(line, "logger", record.logger());
+    field(line, "thread", record.thread());
+
+    Throwable error = record.error();
+    if (record.arguments() == null || record.arguments().length == 0) {
+      field(line, "message", record.message());
+    } else {
+      FormattingTuple formatted = MessageFormatter.arrayFormat(record.message(), record.arguments());
+      field(line, "message", formatted.getMessage());
+      if (error == null) {
+        error = formatted.getThrowable();
+      }
+    }
+
+    if (record.keyValues() != null) {
+      for (KeyValuePair pair : record.keyValues()) {
+        if (isJsonLiteral(pair.value)) {
+          line.append(",\"");
+          escape(line, pair.key);
+          line.append("\":").append(pair.value);
+        } else {
+          field(line, pair.key, pair.value == null ? null : pair.value.toString());
+        }
+      }
+    }
+
+    if (error != null) {
+      StringWriter trace = new StringWriter();
+      error.printStackTrace(new PrintWriter(trace));
+      field(line, "error", trace.toString());
+    }
+    line.append("}\n");
+  }
+
+  // Numbers (other than NaN and the infinities) and booleans can be written as they are.
+  private static boolean isJsonLiteral(Object value) {
+    if (value instanceof Double d) {
+      return Double.isFinite(d);
+    }
+    if (value instanceof Float f) {
+      return Float.isFinite(f);
+    }
+    return value instanceof Number || value instanceof Boolean;
+  }
+
+  private static void field(StringBuilder line, String name, String value) {
+    line.append(",\"");
+    escape(line, name);
+    line.append("\":");
+    if (value == null) {
+      line.append("null");
+    } else {
+      line.append('"');
+      escape(line, value);
+      line.append('"');
+    }
+  }
+
+  /**
+   * Append a string, escaped for the inside of a JSON string.
+   *
+   * @param line the buffer to append it to
+   * @param text the string
+   */
+  static void escape(StringBuilder line, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"' -> line.append("\\\"");
+        case '\\' -> line.append("\\\\");
+        case '\n' -> line.append("\\n");
+        case '\r' -> line.append("\\r");
+        case '\t' -> line.append("\\t");
+        default -> {
+          if (c < CONTROL_CHARACTERS) {
+            line.append(String.format("\\u%04x", (int) c));
+          } else {
+            line.append(c);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package umm3601.logging;
+
+import java.util.List;
+
+import org.slf4j.event.KeyValuePair;
+import org.slf4j.event.Level;
+
+/**
+ * One message, as it's handed from the thread that logged it to the log
+ * writer's thread.
+ *
+ * The message isn't formatted until it's written, so logging costs the
+ * caller little more than making this.
+ *
+ * @param epochMillis when it was logged
+ * @param level its level
+ * @param logger the name of the logger it was logged to
+ * @param thread the name of the thread that logged it
+ * @param message the message, with `{}` where each of the arguments goes
+ * @param arguments the arguments, or `null`
+ * @param keyValues any structured fields, each written as a field of its own, or `null`
+ * @param error the exception that was logged with it, or `null`
+ */
+record LogRecord(
+  long epochMillis,
+  Level level,
+  String logger,
+  String thread,
+  String message,
+  Object[] arguments,
+  List<KeyValuePair> keyValues,
+  Throwable error) {
+}
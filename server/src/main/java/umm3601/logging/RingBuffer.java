@@ -0,0 +1,109 @@
+package umm3601.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and one consumer (the
+ * log writer's thread).
+ *
+ * Each slot has a sequence number that says whose turn it is: a producer
+ * claims the next slot by moving `tail` forward with a compare-and-set, and
+ * then publishes its item by bumping the slot's sequence; the consumer takes
+ * an item once its sequence says it's been published, and hands the slot
+ * back to the producers a lap later. (This is Dmitry Vyukov's bounded
+ * queue.) A producer never waits: if the buffer is full, `offer` just
+ * returns `false`.
+ *
+ * @param <T> the type of the items in the buffer
+ */
+final class RingBuffer<T> {
+
+  private final int mask;
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  // The position the next producer will claim.
+  private final AtomicLong tail = new AtomicLong();
+  // The position the consumer will take from next. Only the consumer changes it.
+  private volatile long head;
+
+  /**
+   * Make an empty buffer.
+   *
+   * @param capacity the least number of items it should hold, which is
+   *   rounded up to a power of two
+   */
+  RingBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity must be positive, not " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    mask = size - 1;
+    items = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return how many items the buffer can hold
+   */
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Add an item to the buffer, if there's room. Any thread can call this.
+   *
+   * @param item the item to add, which can't be `null`
+   * @return `true` if it was added, or `false` if the buffer was full
+   */
+  boolean offer(T item) {
+    while (true) {
+      long position = tail.get();
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          items.lazySet(index, item);
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+      } else if (difference < 0) {
+        // The consumer hasn't taken the item from a lap ago yet.
+        return false;
+      }
+      // Otherwise another producer got this slot first, so try the next one.
+    }
+  }
+
+  /**
+   * Take the oldest item out of the buffer. Only the consumer calls this.
+   *
+   * @return the item, or `null` if there isn't one (yet)
+   */
+  T poll() {
+    long position = head;
+    int index = (int) position & mask;
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    T item = items.get(index);
+    items.lazySet(index, null);
+    sequences.lazySet(index, position + mask + 1);
+    head = position + 1;
+    return item;
+  }
+
+  /**
+   * @return `true` if there's nothing for the consumer to take
+   */
+  boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+}
@@ -0,0 +1,74 @@
+package umm3601.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for one HTTP request, from just before its handler runs to
+ * just after its response has been sent (see `HandlerEvents`).
+ *
+ * In a recording, this is what ties the samples and allocations on a
+ * request thread to the endpoint they were for.
+ */
+@Name("umm3601.Handler")
+@Label("HTTP Handler")
+@Category({ "umm3601", "HTTP" })
+@Description("An HTTP request handled by one of the server's controllers")
+@StackTrace(false)
+class HandlerEvent extends Event {
+
+  @Label("Method")
+  private String method;
+
+  @Label("Route")
+  @Description("The route that handled the request, e.g., /api/todos/{id}")
+  private String route;
+
+  @Label("Query Shape")
+  @Description("The names (not the values) of the query parameters, in order, e.g., limit&owner")
+  private String queryShape;
+
+  @Label("Status")
+  private int status;
+
+  @Label("Documents Returned")
+  @Description("How many documents MongoDB sent back for the request, over all its commands")
+  private long documents;
+
+  @Label("Bytes Written")
+  @DataAmount
+  private long bytesWritten;
+
+  void setMethod(String method) {
+    this.method = method;
+  }
+
+  void setRoute(String route) {
+    this.route = route;
+  }
+
+  String getRoute() {
+    return route;
+  }
+
+  void setQueryShape(String queryShape) {
+    this.queryShape = queryShape;
+  }
+
+  void setStatus(int status) {
+    this.status = status;
+  }
+
+  void addDocuments(long count) {
+    this.documents += count;
+  }
+
+  void setBytesWritten(long bytesWritten) {
+    this.bytesWritten = bytesWritten;
+  }
+}
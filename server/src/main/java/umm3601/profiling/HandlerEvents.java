@@ -0,0 +1,125 @@
+package umm3601.profiling;
+
+import java.util.TreeSet;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.RequestLogger;
+import umm3601.Controller;
+
+/**
+ * Records a `HandlerEvent` in the JDK Flight Recorder for each request,
+ * when a recording is running, so a profile can be broken down by endpoint.
+ *
+ * The event begins before the request's handler runs and is committed once
+ * the response has been sent (Javalin calls `handle` as a `RequestLogger`),
+ * so it covers serializing the response too. With no recording running,
+ * `isEnabled()` is false and this costs next to nothing.
+ */
+public class HandlerEvents implements Controller, RequestLogger {
+
+  // The event for the request the current thread is handling, if it's being recorded.
+  private static final ThreadLocal<HandlerEvent> CURRENT = new ThreadLocal<>();
+
+  /**
+   * The route of the request the current thread is handling, once it's
+   * known, so other events can say which endpoint they were for.
+   *
+   * @return the route, or the path if the route isn't known yet, or `null`
+   *   if there's no request being recorded
+   */
+  static String currentRoute() {
+    HandlerEvent event = CURRENT.get();
+    return event == null ? null : event.getRoute();
+  }
+
+  /**
+   * Count documents MongoDB sent back toward the current request.
+   *
+   * @param count how many documents were in a reply
+   */
+  static void addDocuments(long count) {
+    HandlerEvent event = CURRENT.get();
+    if (event != null) {
+      event.addDocuments(count);
+    }
+  }
+
+  /**
+   * The "shape" of a query string, i.e., the names of its parameters, sorted
+   * and without their values, so requests that differ only in their values
+   * group together, e.g., `limit&owner` for `?owner=Fry&limit=5`.
+   *
+   * @param names the names of the query parameters
+   * @return the shape, which is empty if there aren't any
+   */
+  static String queryShape(Iterable<String> names) {
+    TreeSet<String> sorted = new TreeSet<>();
+    names.forEach(sorted::add);
+    return String.join("&", sorted);
+  }
+
+  /**
+   * Begin the event for a request, before it's handled.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void start(Context ctx) {
+    HandlerEvent event = new HandlerEvent();
+    if (!event.isEnabled()) {
+      CURRENT.remove();
+      return;
+    }
+    event.setMethod(ctx.method().toString());
+    event.setRoute(ctx.path());
+    event.setQueryShape(queryShape(ctx.queryParamMap().keySet()));
+    event.begin();
+    CURRENT.set(event);
+  }
+
+  /**
+   * Once the request's been handled, replace its path with the route that
+   * handled it, e.g., `/api/todos/{id}`, so events for the same endpoint
+   * group together.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void handled(Context ctx) {
+    HandlerEvent event = CURRENT.get();
+    String route = ctx.endpointHandlerPath();
+    if (event != null && route != null && !route.isEmpty()) {
+      event.setRoute(route);
+    }
+  }
+
+  /**
+   * Commit the event once the response has been sent.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param executionTimeMs how long Javalin says the request took
+   */
+  @Override
+  public void handle(Context ctx, Float executionTimeMs) {
+    HandlerEvent event = CURRENT.get();
+    CURRENT.remove();
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.setStatus(ctx.statusCode());
+      // Jetty counts what it actually wrote, which (unlike `Content-Length`)
+      // works for streamed and compressed responses too.
+      if (ctx.res() instanceof org.eclipse.jetty.server.Response response) {
+        event.setBytesWritten(response.getHttpChannel().getBytesWritten());
+      }
+      event.commit();
+    }
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    server.before(this::start);
+    server.after(this::handled);
+  }
+}
@@ -0,0 +1,63 @@
+package umm3601.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for one command the MongoDB driver sent (`find`, `getMore`,
+ * `aggregate`, ...), from when it was sent until the reply came back (see
+ * `MongoCommandEvents`). Its stack trace shows which repository method
+ * sent it.
+ */
+@Name("umm3601.MongoCommand")
+@Label("MongoDB Command")
+@Category({ "umm3601", "MongoDB" })
+@Description("A command sent to MongoDB")
+class MongoCommandEvent extends Event {
+
+  @Label("Command")
+  private String command;
+
+  @Label("Database")
+  private String database;
+
+  @Label("Collection")
+  private String collection;
+
+  @Label("Route")
+  @Description("The route of the request that sent the command, if any")
+  private String route;
+
+  @Label("Documents Returned")
+  private long documents;
+
+  @Label("Succeeded")
+  private boolean succeeded;
+
+  void setCommand(String command) {
+    this.command = command;
+  }
+
+  void setDatabase(String database) {
+    this.database = database;
+  }
+
+  void setCollection(String collection) {
+    this.collection = collection;
+  }
+
+  void setRoute(String route) {
+    this.route = route;
+  }
+
+  void setDocuments(long documents) {
+    this.documents = documents;
+  }
+
+  void setSucceeded(boolean succeeded) {
+    this.succeeded = succeeded;
+  }
+}
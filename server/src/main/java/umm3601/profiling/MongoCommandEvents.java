@@ -0,0 +1,96 @@
+package umm3601.profiling;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Records a `MongoCommandEvent` in the JDK Flight Recorder for each command
+ * the MongoDB driver sends, when a recording is running, and counts the
+ * documents in each reply toward the request that sent it (see
+ * `HandlerEvents`).
+ *
+ * The synchronous driver calls this on the thread that's running the
+ * command, which is the thread handling the request, so the event's stack
+ * trace and route both point back at the code that sent it.
+ */
+public class MongoCommandEvents implements CommandListener {
+
+  // The events of the commands that are still running, by the driver's request ID.
+  private final Map<Integer, MongoCommandEvent> running = new ConcurrentHashMap<>();
+
+  /**
+   * How many documents are in a command's reply: the batch of a cursor, for
+   * `find`, `aggregate`, and `getMore`, or else `n`, e.g., for `count` or
+   * `insert`.
+   *
+   * @param reply the reply to a command
+   * @return the number of documents, or 0 if the reply doesn't say
+   */
+  static long documentsIn(BsonDocument reply) {
+    if (reply == null) {
+      return 0;
+    }
+    BsonValue cursor = reply.get("cursor");
+    if (cursor != null && cursor.isDocument()) {
+      for (String batch : new String[] { "firstBatch", "nextBatch" }) {
+        BsonValue documents = cursor.asDocument().get(batch);
+        if (documents != null && documents.isArray()) {
+          return documents.asArray().size();
+        }
+      }
+      return 0;
+    }
+    BsonValue n = reply.get("n");
+    return n != null && n.isNumber() ? n.asNumber().longValue() : 0;
+  }
+
+  @Override
+  public void commandStarted(CommandStartedEvent event) {
+    MongoCommandEvent command = new MongoCommandEvent();
+    if (!command.isEnabled()) {
+      return;
+    }
+    command.setCommand(event.getCommandName());
+    command.setDatabase(event.getDatabaseName());
+    // Most commands name their collection as the value of the command itself,
+    // e.g., `{"find": "todos", ...}`.
+    BsonDocument body = event.getCommand();
+    BsonValue collection = body == null ? null : body.get(event.getCommandName());
+    if (collection != null && collection.isString()) {
+      command.setCollection(collection.asString().getValue());
+    }
+    command.setRoute(HandlerEvents.currentRoute());
+    command.begin();
+    running.put(event.getRequestId(), command);
+  }
+
+  @Override
+  public void commandSucceeded(CommandSucceededEvent event) {
+    MongoCommandEvent command = running.remove(event.getRequestId());
+    if (command == null) {
+      return;
+    }
+    long documents = documentsIn(event.getResponse());
+    HandlerEvents.addDocuments(documents);
+    command.setDocuments(documents);
+    command.setSucceeded(true);
+    command.commit();
+  }
+
+  @Override
+  public void commandFailed(CommandFailedEvent event) {
+    MongoCommandEvent command = running.remove(event.getRequestId());
+    if (command != null) {
+      command.setSucceeded(false);
+      command.commit();
+    }
+  }
+}
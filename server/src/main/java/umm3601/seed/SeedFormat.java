@@ -0,0 +1,71 @@
+package umm3601.seed;
+
+import java.nio.file.Path;
+
+/**
+ * The two file layouts that `mongoimport` accepts for seed data.
+ *
+ * `JSON_ARRAY` is a single JSON array of documents (what's in
+ * `database/seed/` and needs `mongoimport --jsonArray`), and
+ * `NDJSON` is one document per line, which can be written and read
+ * one document at a time regardless of how big the file is.
+ */
+public enum SeedFormat {
+  JSON_ARRAY(".json"),
+  NDJSON(".ndjson");
+
+  private final String extension;
+
+  SeedFormat(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return the file extension (including the leading `.`) used for this format
+   */
+  public String extension() {
+    return extension;
+  }
+
+  /**
+   * Parse a format name as it would be given on the command line.
+   *
+   * @param name either `json` or `ndjson` (case insensitive)
+   * @return the matching format
+   */
+  public static SeedFormat fromName(String name) {
+    switch (name.toLowerCase()) {
+      case "json":
+        return JSON_ARRAY;
+      case "ndjson":
+        return NDJSON;
+      default:
+        throw new IllegalArgumentException("Seed format must be 'json' or 'ndjson'; you gave " + name);
+    }
+  }
+
+  /**
+   * Work out the format of an existing seed file from its extension.
+   *
+   * @param file the seed file
+   * @return the format of that file, or `null` if it isn't a seed file
+   */
+  public static SeedFormat fromPath(Path file) {
+    String name = file.getFileName().toString();
+    if (name.endsWith(NDJSON.extension)) {
+      return NDJSON;
+    } else if (name.endsWith(JSON_ARRAY.extension)) {
+      return JSON_ARRAY;
+    }
+    return null;
+  }
+
+  /**
+   * @param file a seed file
+   * @return the name of the collection the file seeds, i.e., the file name without its extension
+   */
+  public static String collectionName(Path file) {
+    String name = file.getFileName().toString();
+    return name.substring(0, name.lastIndexOf('.'));
+  }
+}
@@ -0,0 +1,379 @@
+package umm3601.seed;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generates synthetic `todos` and `users` seed data at (nearly) any scale.
+ *
+ * The few hundred documents in `database/seed/` are fine for development,
+ * but far too small to say anything meaningful about performance. This
+ * writes as many todos and users as you ask for, in either of the formats
+ * `mongoimport` understands (see `SeedFormat`), one document at a time, so
+ * memory use doesn't grow with the size of the data set.
+ *
+ * Everything is driven by a single seed value, so running the generator
+ * twice with the same options produces byte-for-byte identical files. The
+ * owners, categories, companies, and roles are drawn from Zipf-like
+ * distributions (see `ZipfSampler`) so a few values are very common and
+ * there's a long tail of rare ones, like in real data.
+ *
+ * Run it with, e.g.,
+ *
+ * ```
+ * ./gradlew generateSeedData --args="--todos=1000000 --users=100000 --format=ndjson --out=../database/generated"
+ * ```
+ *
+ * and then seed the database from that directory with
+ * `SEED_DIR=generated ./mongoseed.sh` in the `database` directory.
+ */
+public class SeedGenerator {
+
+  static final long DEFAULT_SEED = 3601L;
+  static final long DEFAULT_TODO_COUNT = 100_000L;
+  static final long DEFAULT_USER_COUNT = 10_000L;
+  static final int DEFAULT_OWNER_COUNT = 1_000;
+  static final int DEFAULT_COMPANY_COUNT = 500;
+
+  // How skewed the various distributions are. An exponent of 1 is
+  // "classic" Zipf, where the most common value shows up twice as often
+  // as the second most common, three times as often as the third, etc.
+  private static final double OWNER_SKEW = 1.1;
+  private static final double CATEGORY_SKEW = 0.9;
+  private static final double COMPANY_SKEW = 1.0;
+  private static final double ROLE_SKEW = 1.2;
+
+  // The chance that a generated todo is complete; the original seed
+  // data is almost evenly split.
+  private static final double COMPLETE_PROBABILITY = 0.48;
+
+  private static final int MIN_BODY_WORDS = 8;
+  private static final int MAX_BODY_WORDS = 24;
+  private static final int MIN_AGE = 18;
+  private static final int MAX_AGE = 75;
+
+  // The `_id`s are ObjectIds whose timestamps start at the same time as
+  // those in the original seed data (Feb 2017) and go up by a second
+  // per document, so they sort in insertion order.
+  private static final int BASE_TIMESTAMP = 0x58af3a60;
+  private static final long MACHINE_MASK = 0xFF_FFFF_FFFFL;
+  private static final int COUNTER_MASK = 0xFF_FFFF;
+  private static final int MACHINE_HEX_DIGITS = 10;
+  private static final int COUNTER_HEX_DIGITS = 6;
+
+  // Used to give the users their own stream of random numbers, so the users
+  // generated don't change when you change the number of todos.
+  private static final long USER_STREAM_SALT = 0x5DEECE66DL;
+
+  private static final String[] OWNERS = {
+    "Fry", "Barry", "Dawn", "Workman", "Roberta", "Blanche"
+  };
+
+  private static final String[] CATEGORIES = {
+    "homework", "groceries", "software design", "video games",
+    "chores", "errands", "work", "reading", "fitness", "finance", "travel", "health"
+  };
+
+  private static final String[] COMPANIES = {
+    "OHMNET", "NIQUENT", "MOMENTIA", "DATAGENE", "SURELOGIC",
+    "VINCH", "RECOGNIA", "ESCENTA", "KINETICUT"
+  };
+
+  private static final String[] COMPANY_SYLLABLES = {
+    "OHM", "NIQ", "MOM", "DAT", "SUR", "VIN", "REC", "ESC", "KIN", "ZEN",
+    "TRI", "LUX", "QUA", "ORB", "PAX", "GEN", "NET", "LOG", "ENT", "IA"
+  };
+
+  private static final String[] ROLES = {"viewer", "editor", "admin"};
+
+  private static final String[] FIRST_NAMES = {
+    "Connie", "Lynn", "Roseann", "Stokes", "Valerie", "Kitty", "Bolton", "Marguerite",
+    "Merrill", "Cervantes", "Chris", "Pat", "Jamie", "Sam", "Alex", "Robin", "Jordan",
+    "Casey", "Morgan", "Taylor"
+  };
+
+  private static final String[] LAST_NAMES = {
+    "Stewart", "Ferguson", "Roberson", "Clayton", "Erickson", "Page", "Monroe", "Norton",
+    "Parker", "Morin", "Lee", "Nguyen", "Garcia", "Olsen", "Schmidt", "Kowalski",
+    "Johnson", "Larson", "Hanson", "Berg"
+  };
+
+  private static final String[] WORDS = {
+    "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipisicing", "elit",
+    "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+    "magna", "aliqua", "enim", "ad", "minim", "veniam", "quis", "nostrud", "exercitation",
+    "ullamco", "laboris", "nisi", "aliquip", "ex", "ea", "commodo", "consequat", "duis",
+    "aute", "irure", "in", "reprehenderit", "voluptate", "velit", "esse", "cillum",
+    "fugiat", "nulla", "pariatur", "excepteur", "sint", "occaecat", "cupidatat", "non",
+    "proident", "sunt", "culpa", "qui", "officia", "deserunt", "mollit", "anim", "id", "est"
+  };
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private static final HexFormat HEX = HexFormat.of();
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final long seed;
+  private final SeedFormat format;
+  private final ZipfSampler ownerSampler;
+  private final ZipfSampler categorySampler;
+  private final ZipfSampler companySampler;
+  private final ZipfSampler roleSampler;
+
+  /**
+   * Construct a generator.
+   *
+   * @param seed the seed for the random number generators; the same seed
+   *   (and other options) always produce the same data
+   * @param format the layout of the files to write
+   * @param ownerCount the number of distinct todo owners to choose between
+   * @param companyCount the number of distinct user companies to choose between
+   */
+  public SeedGenerator(long seed, SeedFormat format, int ownerCount, int companyCount) {
+    this.seed = seed;
+    this.format = format;
+    this.ownerSampler = new ZipfSampler(ownerCount, OWNER_SKEW);
+    this.categorySampler = new ZipfSampler(CATEGORIES.length, CATEGORY_SKEW);
+    this.companySampler = new ZipfSampler(companyCount, COMPANY_SKEW);
+    this.roleSampler = new ZipfSampler(ROLES.length, ROLE_SKEW);
+  }
+
+  /**
+   * Write `count` generated todos to the given stream.
+   *
+   * The stream is flushed, but not closed.
+   *
+   * @param out where to write the todos
+   * @param count the number of todos to write
+   * @throws IOException if there's a problem writing to `out`
+   */
+  public void writeTodos(OutputStream out, long count) throws IOException {
+    SplittableRandom random = new SplittableRandom(seed);
+    long machine = random.nextLong() & MACHINE_MASK;
+    StringBuilder body = new StringBuilder();
+    try (JsonGenerator json = startDocuments(out)) {
+      for (long i = 0; i < count; i++) {
+        json.writeStartObject();
+        writeObjectId(json, machine, i);
+        json.writeStringField("owner", owner(ownerSampler.sample(random)));
+        json.writeBooleanField("status", random.nextDouble() < COMPLETE_PROBABILITY);
+        json.writeStringField("body", body(random, body));
+        json.writeStringField("category", CATEGORIES[categorySampler.sample(random)]);
+        json.writeEndObject();
+        endDocument(json);
+      }
+      endDocuments(json);
+    }
+  }
+
+  /**
+   * Write `count` generated users to the given stream.
+   *
+   * The stream is flushed, but not closed.
+   *
+   * @param out where to write the users
+   * @param count the number of users to write
+   * @throws IOException if there's a problem writing to `out`
+   */
+  public void writeUsers(OutputStream out, long count) throws IOException {
+    SplittableRandom random = new SplittableRandom(seed ^ USER_STREAM_SALT);
+    long machine = random.nextLong() & MACHINE_MASK;
+    // There are a lot fewer distinct emails than users, so we cache the avatars
+    // rather than computing an MD5 hash for every single user.
+    Map<String, String> avatars = new HashMap<>();
+    try (JsonGenerator json = startDocuments(out)) {
+      for (long i = 0; i < count; i++) {
+        String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        String company = company(companySampler.sample(random));
+        String email = (first + last + "@" + company + ".com").toLowerCase();
+
+        json.writeStartObject();
+        writeObjectId(json, machine, i);
+        json.writeStringField("name", first + " " + last);
+        json.writeNumberField("age", MIN_AGE + random.nextInt(MAX_AGE - MIN_AGE + 1));
+        json.writeStringField("company", company);
+        json.writeStringField("email", email);
+        json.writeStringField("role", ROLES[roleSampler.sample(random)]);
+        json.writeStringField("avatar", avatars.computeIfAbsent(email, SeedGenerator::avatar));
+        json.writeEndObject();
+        endDocument(json);
+      }
+      endDocuments(json);
+    }
+  }
+
+  /**
+   * Write the todos and users to `todos.<ext>` and `users.<ext>` in the given directory,
+   * creating it if necessary.
+   *
+   * @param directory the directory to write the seed files to
+   * @param todoCount the number of todos to generate
+   * @param userCount the number of users to generate
+   * @throws IOException if there's a problem writing the files
+   */
+  public void writeSeedFiles(Path directory, long todoCount, long userCount) throws IOException {
+    Files.createDirectories(directory);
+    try (OutputStream out = new BufferedOutputStream(
+        Files.newOutputStream(directory.resolve("todos" + format.extension())))) {
+      writeTodos(out, todoCount);
+    }
+    try (OutputStream out = new BufferedOutputStream(
+        Files.newOutputStream(directory.resolve("users" + format.extension())))) {
+      writeUsers(out, userCount);
+    }
+  }
+
+  private JsonGenerator startDocuments(OutputStream out) throws IOException {
+    JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    // We don't own the stream, so the caller gets to decide when to close it.
+    json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    if (format == SeedFormat.JSON_ARRAY) {
+      json.writeStartArray();
+    } else {
+      // NDJSON documents are separated by the newlines we write ourselves.
+      json.setRootValueSeparator(null);
+    }
+    return json;
+  }
+
+  private void endDocument(JsonGenerator json) throws IOException {
+    if (format == SeedFormat.NDJSON) {
+      json.writeRaw('\n');
+    }
+  }
+
+  private void endDocuments(JsonGenerator json) throws IOException {
+    if (format == SeedFormat.JSON_ARRAY) {
+      json.writeEndArray();
+      json.writeRaw('\n');
+    }
+    json.flush();
+  }
+
+  /**
+   * Write the `_id` field in MongoDB extended JSON (`{"$oid": "..."}`), which is
+   * what `mongoimport` expects.
+   */
+  private static void writeObjectId(JsonGenerator json, long machine, long index) throws IOException {
+    json.writeObjectFieldStart("_id");
+    json.writeStringField("$oid", objectId(machine, index));
+    json.writeEndObject();
+  }
+
+  static String objectId(long machine, long index) {
+    String machineHex = HEX.toHexDigits(machine);
+    String counterHex = HEX.toHexDigits((int) index & COUNTER_MASK);
+    return HEX.toHexDigits(BASE_TIMESTAMP + (int) index)
+      + machineHex.substring(machineHex.length() - MACHINE_HEX_DIGITS)
+      + counterHex.substring(counterHex.length() - COUNTER_HEX_DIGITS);
+  }
+
+  static String owner(int rank) {
+    if (rank < OWNERS.length) {
+      return OWNERS[rank];
+    }
+    return FIRST_NAMES[rank % FIRST_NAMES.length] + rank;
+  }
+
+  static String company(int rank) {
+    if (rank < COMPANIES.length) {
+      return COMPANIES[rank];
+    }
+    // Build a (deterministic) made up company name out of syllables, using
+    // the rank as a number written in "base COMPANY_SYLLABLES.length".
+    StringBuilder name = new StringBuilder();
+    int remaining = rank;
+    do {
+      name.append(COMPANY_SYLLABLES[remaining % COMPANY_SYLLABLES.length]);
+      remaining /= COMPANY_SYLLABLES.length;
+    } while (remaining > 0);
+    return name.append("CO").toString();
+  }
+
+  private static String body(SplittableRandom random, StringBuilder body) {
+    body.setLength(0);
+    int words = MIN_BODY_WORDS + random.nextInt(MAX_BODY_WORDS - MIN_BODY_WORDS + 1);
+    for (int i = 0; i < words; i++) {
+      String word = WORDS[random.nextInt(WORDS.length)];
+      if (i == 0) {
+        body.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+      } else {
+        body.append(' ').append(word);
+      }
+    }
+    return body.append('.').toString();
+  }
+
+  // This is the same Gravatar URI that `UserController.generateAvatar()` builds
+  // for new users, so generated users look just like ones added through the API.
+  private static String avatar(String email) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+      byte[] hash = md.digest(email.getBytes(StandardCharsets.UTF_8));
+      return "https://gravatar.com/avatar/" + HEX.formatHex(hash) + "?d=identicon";
+    } catch (NoSuchAlgorithmException e) {
+      return "https://gravatar.com/avatar/?d=mp";
+    }
+  }
+
+  /**
+   * Generate seed files from the command line.
+   *
+   * Supported options (all optional) are `--todos=N`, `--users=N`, `--seed=N`,
+   * `--owners=N`, `--companies=N`, `--format=json|ndjson`, and `--out=DIRECTORY`.
+   *
+   * @param args the command line arguments
+   * @throws IOException if there's a problem writing the files
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = parseOptions(args);
+
+    long todoCount = Long.parseLong(options.getOrDefault("todos", String.valueOf(DEFAULT_TODO_COUNT)));
+    long userCount = Long.parseLong(options.getOrDefault("users", String.valueOf(DEFAULT_USER_COUNT)));
+    long seed = Long.parseLong(options.getOrDefault("seed", String.valueOf(DEFAULT_SEED)));
+    int owners = Integer.parseInt(options.getOrDefault("owners", String.valueOf(DEFAULT_OWNER_COUNT)));
+    int companies = Integer.parseInt(options.getOrDefault("companies", String.valueOf(DEFAULT_COMPANY_COUNT)));
+    SeedFormat format = SeedFormat.fromName(options.getOrDefault("format", "ndjson"));
+    Path out = Paths.get(options.getOrDefault("out", "generated"));
+
+    long start = System.nanoTime();
+    new SeedGenerator(seed, format, owners, companies).writeSeedFiles(out, todoCount, userCount);
+    double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+    System.out.printf("Wrote %d todos and %d users to %s in %.1fs%n",
+      todoCount, userCount, out.toAbsolutePath(), seconds);
+  }
+
+  /**
+   * Turn `--key=value` command line arguments into a map from keys to values.
+   *
+   * @param args the command line arguments
+   * @return a map from option names (without the leading `--`) to their values
+   */
+  static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Options must look like --name=value; you gave " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+    return options;
+  }
+}
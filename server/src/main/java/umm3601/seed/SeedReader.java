@@ -0,0 +1,191 @@
+package umm3601.seed;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the documents in a seed file one at a time, so we never need to hold
+ * more than one document of the file in memory no matter how big it is.
+ *
+ * This understands both `SeedFormat`s, and the bits of MongoDB extended JSON
+ * that show up in seed files (`{"$oid": ...}`, `{"$date": ...}`, and
+ * `{"$numberLong": ...}`), which are turned into the matching BSON types
+ * just like `mongoimport` would.
+ *
+ * The documents are built directly from the Jackson token stream instead
+ * of going through `Document.parse()`, which would mean turning each
+ * document back into a `String` and parsing it a second time.
+ */
+public class SeedReader implements Closeable {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final JsonParser parser;
+  private final SeedFormat format;
+  private boolean started;
+
+  /**
+   * Construct a reader for seed data in the given stream.
+   *
+   * @param in the seed data; it's closed when this reader is closed
+   * @param format the layout of the seed data
+   * @throws IOException if there's a problem reading from `in`
+   */
+  public SeedReader(InputStream in, SeedFormat format) throws IOException {
+    this.parser = JSON_FACTORY.createParser(in);
+    this.format = format;
+  }
+
+  /**
+   * Open a seed file, working out its format from its extension.
+   *
+   * @param file the seed file to read
+   * @return a reader for the documents in `file`
+   * @throws IOException if the file can't be opened
+   */
+  public static SeedReader open(Path file) throws IOException {
+    SeedFormat format = SeedFormat.fromPath(file);
+    if (format == null) {
+      throw new IllegalArgumentException(file + " isn't a seed file (.json or .ndjson)");
+    }
+    return new SeedReader(new BufferedInputStream(Files.newInputStream(file)), format);
+  }
+
+  /**
+   * Read the next document.
+   *
+   * @return the next document, or `null` if there aren't any more
+   * @throws IOException if there's a problem reading, or the data isn't valid seed data
+   */
+  public Document next() throws IOException {
+    if (!started) {
+      started = true;
+      if (format == SeedFormat.JSON_ARRAY) {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+          return null;
+        }
+        expect(token, JsonToken.START_ARRAY);
+      }
+    }
+    JsonToken token = parser.nextToken();
+    if (token == null || token == JsonToken.END_ARRAY && format == SeedFormat.JSON_ARRAY) {
+      return null;
+    }
+    expect(token, JsonToken.START_OBJECT);
+    return readDocument();
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+
+  /**
+   * Read the fields of an object up to (and including) its closing `}`; the
+   * opening `{` has already been read.
+   */
+  private Document readDocument() throws IOException {
+    Document document = new Document();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      document.put(name, readValue(parser.nextToken()));
+    }
+    return document;
+  }
+
+  private Object readValue(JsonToken token) throws IOException {
+    switch (token) {
+      case START_OBJECT:
+        return readObject();
+      case START_ARRAY:
+        List<Object> values = new ArrayList<>();
+        for (JsonToken next = parser.nextToken(); next != JsonToken.END_ARRAY; next = parser.nextToken()) {
+          values.add(readValue(next));
+        }
+        return values;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+        return parser.getNumberType() == JsonParser.NumberType.INT ? parser.getIntValue() : parser.getLongValue();
+      case VALUE_NUMBER_FLOAT:
+        return parser.getDoubleValue();
+      case VALUE_TRUE:
+        return true;
+      case VALUE_FALSE:
+        return false;
+      case VALUE_NULL:
+        return null;
+      default:
+        throw new JsonParseException(parser, "Unexpected " + token + " in seed data");
+    }
+  }
+
+  /**
+   * Read a nested object, which is either an extended JSON value like
+   * `{"$oid": "..."}` or an ordinary embedded document.
+   */
+  private Object readObject() throws IOException {
+    if (parser.nextToken() != JsonToken.FIELD_NAME) {
+      return new Document();
+    }
+    String name = parser.currentName();
+    Object value;
+    switch (name) {
+      case "$oid":
+        parser.nextToken();
+        value = new ObjectId(parser.getText());
+        break;
+      case "$numberLong":
+        parser.nextToken();
+        value = Long.parseLong(parser.getText());
+        break;
+      case "$date":
+        value = readDate(parser.nextToken());
+        break;
+      default:
+        Document document = new Document(name, readValue(parser.nextToken()));
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          document.put(parser.currentName(), readValue(parser.nextToken()));
+        }
+        return document;
+    }
+    expect(parser.nextToken(), JsonToken.END_OBJECT);
+    return value;
+  }
+
+  // Dates are either ISO-8601 strings (relaxed extended JSON) or milliseconds
+  // since the epoch, possibly wrapped in `{"$numberLong": ...}` (canonical).
+  private Date readDate(JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_STRING) {
+      return Date.from(Instant.parse(parser.getText()));
+    }
+    Object millis = readValue(token);
+    if (millis instanceof Number number) {
+      return new Date(number.longValue());
+    }
+    throw new JsonParseException(parser, "A $date must be a string or a number of milliseconds");
+  }
+
+  private void expect(JsonToken actual, JsonToken expected) throws IOException {
+    if (actual != expected) {
+      throw new JsonParseException(parser, "Expected " + expected + " in seed data but found " + actual);
+    }
+  }
+}
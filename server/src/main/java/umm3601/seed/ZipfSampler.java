@@ -0,0 +1,69 @@
+package umm3601.seed;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks from a Zipf-like distribution, where rank `k` (counting from
+ * zero) is chosen with probability proportional to `1 / (k + 1)^exponent`.
+ *
+ * This is how real data tends to be skewed: a handful of owners, companies,
+ * or categories account for most of the documents, and there is a long tail
+ * of rarely used values. Using this instead of a uniform choice gives the
+ * generated seed data the same kind of "hot keys" our indexes and caches see
+ * in production.
+ *
+ * The cumulative distribution is computed once in the constructor, so each
+ * call to `sample()` is just a binary search.
+ */
+public class ZipfSampler {
+
+  private final double[] cumulative;
+
+  /**
+   * Construct a sampler over the ranks `0` through `size - 1`.
+   *
+   * @param size the number of distinct values to choose between
+   * @param exponent the skew of the distribution; `0` is uniform, and larger
+   *   values concentrate more of the weight on the first few ranks
+   */
+  public ZipfSampler(int size, double exponent) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("A Zipf sampler needs at least one value; size was " + size);
+    }
+    if (exponent < 0) {
+      throw new IllegalArgumentException("The Zipf exponent can't be negative; exponent was " + exponent);
+    }
+    cumulative = new double[size];
+    double total = 0;
+    for (int rank = 0; rank < size; rank++) {
+      total += 1.0 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = total;
+    }
+    for (int rank = 0; rank < size; rank++) {
+      cumulative[rank] /= total;
+    }
+  }
+
+  /**
+   * @return the number of distinct ranks this sampler chooses between
+   */
+  public int size() {
+    return cumulative.length;
+  }
+
+  /**
+   * Choose a rank using the given source of randomness.
+   *
+   * @param random the random number generator to draw from
+   * @return a rank between `0` and `size() - 1`
+   */
+  public int sample(SplittableRandom random) {
+    double target = random.nextDouble();
+    int index = Arrays.binarySearch(cumulative, target);
+    // `binarySearch` returns `-(insertionPoint) - 1` when the exact value
+    // isn't present, and the insertion point is the rank we want.
+    int rank = index >= 0 ? index : -index - 1;
+    return Math.min(rank, cumulative.length - 1);
+  }
+}
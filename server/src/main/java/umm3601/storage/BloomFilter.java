@@ -0,0 +1,99 @@
+package umm3601.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings: a compact set that can say for sure that a
+ * string was never added, but only that one "might" have been (with a
+ * chosen false positive rate) otherwise. Strings can't be removed.
+ *
+ * It's safe to add and check strings from several threads at once.
+ */
+public class BloomFilter {
+
+  // The constants for 64-bit FNV-1a, and for the SplitMix64 finalizer.
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final long MIX_MULTIPLIER_1 = 0xbf58476d1ce4e5b9L;
+  private static final long MIX_MULTIPLIER_2 = 0x94d049bb133111ebL;
+  private static final int MIX_SHIFT_1 = 30;
+  private static final int MIX_SHIFT_2 = 27;
+  private static final int MIX_SHIFT_3 = 31;
+
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+
+  /**
+   * Construct an empty filter that is big enough to hold `expected` strings
+   * with the given false positive rate. It still works with more than
+   * that, but the false positive rate goes up.
+   *
+   * @param expected how many strings we expect to add
+   * @param falsePositiveRate the chance that `mightContain()` is `true` for
+   *   a string that was never added, once there are `expected` strings
+   */
+  public BloomFilter(long expected, double falsePositiveRate) {
+    if (expected < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Bloom filters need a positive size and a rate between 0 and 1");
+    }
+    // The standard sizes: m = -n ln(p) / ln(2)^2 bits, and k = (m / n) ln(2) hashes.
+    double ln2 = Math.log(2);
+    long wanted = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (ln2 * ln2));
+    words = new AtomicLongArray((int) Math.max(1, (wanted + Long.SIZE - 1) / Long.SIZE));
+    bits = (long) words.length() * Long.SIZE;
+    hashes = (int) Math.max(1, Math.round((double) bits / expected * ln2));
+  }
+
+  /**
+   * @param string the string to add
+   */
+  public void add(String string) {
+    long hash = hash(string);
+    long step = mix(hash);
+    for (int i = 0; i < hashes; i++) {
+      long bit = (hash & Long.MAX_VALUE) % bits;
+      long mask = 1L << bit;
+      words.getAndAccumulate((int) (bit / Long.SIZE), mask, (word, m) -> word | m);
+      hash += step;
+    }
+  }
+
+  /**
+   * @param string the string to look for
+   * @return `false` if `string` was definitely never added, and `true` if it might have been
+   */
+  public boolean mightContain(String string) {
+    long hash = hash(string);
+    long step = mix(hash);
+    for (int i = 0; i < hashes; i++) {
+      long bit = (hash & Long.MAX_VALUE) % bits;
+      if ((words.get((int) (bit / Long.SIZE)) & (1L << bit)) == 0) {
+        return false;
+      }
+      hash += step;
+    }
+    return true;
+  }
+
+  // 64-bit FNV-1a, with a final mix so that strings that differ only in
+  // their last few characters (like ObjectIds made close together) still
+  // end up far apart. The `k` hashes are then `hash + i * mix(hash)`.
+  private static long hash(String string) {
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : string.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= FNV_PRIME;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long value) {
+    long z = value + GOLDEN_GAMMA;
+    z = (z ^ (z >>> MIX_SHIFT_1)) * MIX_MULTIPLIER_1;
+    z = (z ^ (z >>> MIX_SHIFT_2)) * MIX_MULTIPLIER_2;
+    return z ^ (z >>> MIX_SHIFT_3);
+  }
+}
@@ -0,0 +1,133 @@
+package umm3601.storage;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A single condition on one field of the items in a `Repository`, e.g.,
+ * "`status` is `true`" or "`body` matches the regex `/homework/i`".
+ *
+ * A `Query` matches an item if _all_ of its conditions match.
+ *
+ * @param field the name of the field the condition tests
+ * @param operator how the field's value is compared to `value`
+ * @param value the value to compare against; a `Pattern` for `MATCHES` conditions, and a
+ *   `String` for the ones that ignore case
+ */
+public record Condition(String field, Operator operator, Object value) {
+
+  /**
+   * The kinds of comparison a condition can make.
+   */
+  public enum Operator {
+    /** The field's value is equal to the condition's value. */
+    EQUALS,
+    /** The field's value is a string with a match for the condition's regex somewhere in it. */
+    MATCHES,
+    /** The field's value is a string equal to the condition's string, ignoring case. */
+    EQUALS_IGNORE_CASE,
+    /** The field's value is a string that starts with the condition's string, ignoring case. */
+    STARTS_WITH_IGNORE_CASE,
+    /** The field's value is of the same kind as the condition's value, and sorts at or after it. */
+    GREATER_THAN_OR_EQUAL,
+    /** The field's value is of the same kind as the condition's value, and sorts before it. */
+    LESS_THAN
+  }
+
+  /**
+   * @param field the name of the field to test
+   * @param value the value the field must equal
+   * @return a condition that matches items whose `field` equals `value`
+   */
+  public static Condition eq(String field, Object value) {
+    return new Condition(field, Operator.EQUALS, value);
+  }
+
+  /**
+   * @param field the name of the field to test
+   * @param pattern the regex to look for
+   * @return a condition that matches items whose `field` contains a match for `pattern`
+   */
+  public static Condition matches(String field, Pattern pattern) {
+    return new Condition(field, Operator.MATCHES, pattern);
+  }
+
+  /**
+   * Unlike a case-insensitive regex, this can use an index (with the same
+   * case-insensitive collation; see `MongoQueries.CASE_INSENSITIVE`).
+   *
+   * @param field the name of the field to test
+   * @param text the text the field must equal, ignoring case
+   * @return a condition that matches items whose `field` equals `text`, ignoring case
+   */
+  public static Condition eqIgnoreCase(String field, String text) {
+    return new Condition(field, Operator.EQUALS_IGNORE_CASE, text);
+  }
+
+  /**
+   * Unlike a case-insensitive regex, this can use an index (with the same
+   * case-insensitive collation; see `MongoQueries.CASE_INSENSITIVE`).
+   *
+   * @param field the name of the field to test
+   * @param prefix the text the field must start with, ignoring case
+   * @return a condition that matches items whose `field` starts with `prefix`, ignoring case
+   */
+  public static Condition startsWithIgnoreCase(String field, String prefix) {
+    return new Condition(field, Operator.STARTS_WITH_IGNORE_CASE, prefix);
+  }
+
+  /**
+   * @param field the name of the field to test
+   * @param value the smallest value the field may have
+   * @return a condition that matches items whose `field` is at least `value`
+   */
+  public static Condition gte(String field, Object value) {
+    return new Condition(field, Operator.GREATER_THAN_OR_EQUAL, value);
+  }
+
+  /**
+   * @param field the name of the field to test
+   * @param value the value the field must be less than
+   * @return a condition that matches items whose `field` is less than `value`
+   */
+  public static Condition lt(String field, Object value) {
+    return new Condition(field, Operator.LESS_THAN, value);
+  }
+
+  /**
+   * @return `true` if this condition compares strings ignoring case, so a
+   *   query with it has to be run with a case-insensitive collation
+   */
+  public boolean ignoresCase() {
+    return operator == Operator.EQUALS_IGNORE_CASE || operator == Operator.STARTS_WITH_IGNORE_CASE;
+  }
+
+  /**
+   * Check whether a field value satisfies this condition. This has the same
+   * semantics as the equivalent MongoDB filter, e.g., regexes only match
+   * strings, and can match anywhere in the string, and ranges only match
+   * values of the same kind as their bound.
+   *
+   * @param fieldValue the value of this condition's field in some item
+   * @return `true` if `fieldValue` satisfies this condition
+   */
+  public boolean test(Object fieldValue) {
+    switch (operator) {
+      case EQUALS:
+        return Objects.equals(Values.normalize(fieldValue), Values.normalize(value));
+      case MATCHES:
+        return fieldValue instanceof String && ((Pattern) value).matcher((String) fieldValue).find();
+      case EQUALS_IGNORE_CASE:
+        return fieldValue instanceof String && ((String) fieldValue).equalsIgnoreCase((String) value);
+      case STARTS_WITH_IGNORE_CASE:
+        return fieldValue instanceof String
+          && ((String) fieldValue).regionMatches(true, 0, (String) value, 0, ((String) value).length());
+      case GREATER_THAN_OR_EQUAL:
+        return Values.sameKind(fieldValue, value) && Values.compare(fieldValue, value) >= 0;
+      case LESS_THAN:
+        return Values.sameKind(fieldValue, value) && Values.compare(fieldValue, value) < 0;
+      default:
+        throw new IllegalStateException("Unknown operator " + operator);
+    }
+  }
+}
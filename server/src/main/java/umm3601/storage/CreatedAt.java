@@ -0,0 +1,107 @@
+package umm3601.storage;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.bson.types.ObjectId;
+
+/**
+ * When items were created, worked out from their `_id`s rather than stored.
+ *
+ * The first four bytes of an ObjectId are the time (in whole seconds) it
+ * was made, and the `_id`s of our todos and users are made when they're
+ * added. So "created between these times" is a range of `_id`s, which the
+ * `_id` index (that every collection has) can answer with a range scan,
+ * without a timestamp field or another index.
+ *
+ * Because the ObjectIds only record the second, times are rounded down to
+ * the second: `after(t)` also matches items created earlier in the second
+ * `t` is in, and `before(t)` doesn't match any of them.
+ */
+public final class CreatedAt {
+
+  /**
+   * The name of the (read-only) field with the time an item was created.
+   */
+  public static final String FIELD = "createdAt";
+
+  // The latest time an ObjectId can record: its timestamp is an unsigned 32-bit number.
+  private static final long MAX_SECONDS = 0xFFFFFFFFL;
+  // The rest of the smallest ObjectId made in a given second.
+  private static final String ZEROS = "0000000000000000";
+
+  private CreatedAt() {
+  }
+
+  /**
+   * @param id an item's `_id`
+   * @return the time the item was created, as an ISO-8601 instant, e.g.,
+   *   `2024-01-31T12:00:00Z`, or `null` if `id` isn't an ObjectId (e.g., the
+   *   item hasn't been added yet)
+   */
+  public static String of(String id) {
+    if (id == null || !ObjectId.isValid(id)) {
+      return null;
+    }
+    return of(new ObjectId(id));
+  }
+
+  /**
+   * @param id an item's `_id`
+   * @return the time the item was created, as an ISO-8601 instant
+   */
+  public static String of(ObjectId id) {
+    return Instant.ofEpochSecond(id.getTimestamp() & MAX_SECONDS).toString();
+  }
+
+  /**
+   * Parse a time given in a query parameter. That can be an ISO-8601
+   * instant, e.g., `2024-01-31T12:00:00Z`, or just a date, e.g.,
+   * `2024-01-31`, which means the start of that day (in UTC).
+   *
+   * @param text the time
+   * @return the time as an `Instant`
+   * @throws IllegalArgumentException if `text` isn't either of those
+   */
+  public static Instant parse(String text) {
+    try {
+      if (text.indexOf('T') < 0) {
+        return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant();
+      }
+      return Instant.parse(text);
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Not an ISO-8601 date or time: " + text, e);
+    }
+  }
+
+  /**
+   * @param time the earliest creation time to match
+   * @return a condition that matches items created at or after `time`
+   */
+  public static Condition after(Instant time) {
+    return Condition.gte("_id", firstId(time));
+  }
+
+  /**
+   * @param time the creation time items must be older than
+   * @return a condition that matches items created before `time`
+   */
+  public static Condition before(Instant time) {
+    return Condition.lt("_id", firstId(time));
+  }
+
+  /**
+   * The smallest possible ObjectId made in the same second as `time`, as
+   * the hex string our model classes use for `_id`s. (Times ObjectIds
+   * can't record are clamped to the earliest or latest ones they can.)
+   *
+   * @param time any time
+   * @return the first `_id` for that second
+   */
+  static String firstId(Instant time) {
+    long seconds = Math.min(Math.max(time.getEpochSecond(), 0), MAX_SECONDS);
+    return String.format("%08x", seconds) + ZEROS;
+  }
+}
@@ -0,0 +1,124 @@
+package umm3601.storage;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The deadline for the request the current thread is handling, if it has
+ * one, so the MongoDB repositories can stop their queries when it passes.
+ *
+ * The repositories pass `maxTimeMillis()` as the `maxTime` of every find,
+ * count, and aggregate, so MongoDB itself gives up on a slow regex scan or
+ * aggregation (with a `MongoExecutionTimeoutException`) instead of holding
+ * on to a thread and a database operation long after the client has stopped
+ * waiting. Threading the deadline through every repository method would
+ * change all their signatures for something only the MongoDB ones need, so
+ * it lives here with the thread instead. Javalin handles each request on a
+ * thread of its own, and `RequestDeadlines` sets and clears the deadline
+ * around it.
+ *
+ * Threads without a deadline (tests, the write coalescer, startup) aren't
+ * limited at all.
+ */
+public final class Deadline {
+
+  // When the current request's time runs out, as a `System.nanoTime()`.
+  private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+  private Deadline() {
+  }
+
+  /**
+   * Give the current thread's queries until `timeout` from now.
+   *
+   * @param timeout how long they have, or 0 for no limit
+   * @param unit the unit of `timeout`
+   */
+  public static void start(long timeout, TimeUnit unit) {
+    if (timeout <= 0) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(System.nanoTime() + unit.toNanos(timeout));
+    }
+  }
+
+  /**
+   * Remove the current thread's deadline, if it has one.
+   */
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  /**
+   * How long the current thread's next query may take, as a `maxTime` for
+   * MongoDB, where 0 means there's no limit.
+   *
+   * @return the milliseconds left (at least 1), or 0 if there's no deadline
+   * @throws DeadlineExceededException if the deadline has already passed,
+   *   so there's no point starting the query
+   */
+  public static long maxTimeMillis() {
+    Long deadline = CURRENT.get();
+    if (deadline == null) {
+      return 0;
+    }
+    long remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      throw new DeadlineExceededException();
+    }
+    // Round up, so there's always some time left rather than "no limit".
+    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+  }
+
+  /**
+   * Like `maxTimeMillis()`, but never more than `limit`, even on a thread
+   * without a deadline, for queries that should always be cut short.
+   *
+   * @param limit the most milliseconds the query may take
+   * @return the milliseconds left, but at most `limit`
+   * @throws DeadlineExceededException if the deadline has already passed
+   */
+  public static long maxTimeMillis(long limit) {
+    long maxTime = maxTimeMillis();
+    return maxTime == 0 ? limit : Math.min(maxTime, limit);
+  }
+
+  /**
+   * Wait for something another thread is doing for this one, like a query
+   * `SingleFlight` is sharing, but only until the current thread's deadline,
+   * so a request never waits longer for someone else's query than it would
+   * for its own.
+   *
+   * @param <V> the type of the result
+   * @param future the result to wait for
+   * @return the result
+   * @throws DeadlineExceededException if the deadline passes first (or had
+   *   already passed)
+   * @throws ExecutionException if the work failed
+   * @throws InterruptedException if the thread was interrupted while waiting
+   */
+  public static <V> V await(Future<V> future) throws ExecutionException, InterruptedException {
+    long maxTime = maxTimeMillis();
+    if (maxTime == 0) {
+      return future.get();
+    }
+    try {
+      return future.get(maxTime, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new DeadlineExceededException();
+    }
+  }
+
+  /**
+   * Thrown when a query would start after the current request's deadline
+   * has already passed, or the request ran out of time waiting for a
+   * query another request started.
+   */
+  public static class DeadlineExceededException extends RuntimeException {
+    DeadlineExceededException() {
+      super("The request's deadline passed before its query could start");
+    }
+  }
+}
@@ -0,0 +1,393 @@
+package umm3601.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * An indexed, in-memory collection of documents that supports the same
+ * filtering, sorting, limiting, and grouping as we use in MongoDB.
+ *
+ * Each collection knows how to read a set of named fields from its documents
+ * (via the `fields` map given to the constructor), and can keep two kinds of
+ * index on those fields:
+ *
+ * - A _hash index_ maps each distinct value of a field to the documents with
+ *   that value. These are used to narrow down the candidates for a query
+ *   before checking the rest of its conditions, and are good for fields like
+ *   `status`, `category`, or `company`, which have relatively few distinct
+ *   values. Regex conditions on a hash-indexed field are checked against the
+ *   distinct values, rather than every document.
+ * - A _sorted index_ keeps the distinct values of a field in (MongoDB) sort
+ *   order. When a query sorts by a field with a sorted index we can walk the
+ *   index in order and stop as soon as we've found `limit` matches, instead of
+ *   sorting everything.
+ *
+ * Documents are never copied, so callers mustn't modify a document after
+ * it's been added to the collection (use `put()` again with a new object
+ * instead). Reads can happen concurrently; writes are exclusive.
+ *
+ * @param <T> the type of the documents in the collection
+ */
+public class InMemoryCollection<T> {
+
+  // If the hash indexes narrow a query down to fewer than 1/INDEX_SCAN_RATIO of
+  // the documents, sorting those candidates directly is cheaper than walking the
+  // whole sorted index looking for them.
+  private static final int INDEX_SCAN_RATIO = 8;
+
+  /**
+   * A document along with its ID and the order it was added to the collection.
+   * The sequence number breaks ties when sorting, so results are deterministic.
+   *
+   * Entries use identity equality (rather than the document's `equals()`), which
+   * is both what we want in the index sets and cheaper to compute.
+   */
+  private static final class Entry<T> {
+    private final long sequence;
+    private final String id;
+    private final T document;
+
+    Entry(long sequence, String id, T document) {
+      this.sequence = sequence;
+      this.id = id;
+      this.document = document;
+    }
+
+    long sequence() {
+      return sequence;
+    }
+
+    String id() {
+      return id;
+    }
+
+    T document() {
+      return document;
+    }
+  }
+
+  private final Map<String, Function<T, Object>> fields;
+  private final Map<String, Entry<T>> documents = new HashMap<>();
+  private final Map<String, Map<Object, Set<Entry<T>>>> hashIndexes = new HashMap<>();
+  private final Map<String, NavigableMap<Object, Set<Entry<T>>>> sortedIndexes = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private long nextSequence;
+
+  /**
+   * Construct an empty collection.
+   *
+   * @param fields a map from field names to functions that read that field
+   *   from a document; fields that aren't in this map are treated as missing
+   * @param hashIndexedFields the fields to keep hash indexes on
+   * @param sortIndexedFields the fields to keep sorted indexes on
+   */
+  public InMemoryCollection(
+      Map<String, Function<T, Object>> fields,
+      Collection<String> hashIndexedFields,
+      Collection<String> sortIndexedFields) {
+    this.fields = Map.copyOf(fields);
+    for (String field : hashIndexedFields) {
+      hashIndexes.put(field, new HashMap<>());
+    }
+    for (String field : sortIndexedFields) {
+      sortedIndexes.put(field, new TreeMap<>(Values.MONGO_ORDER));
+    }
+  }
+
+  /**
+   * Add a document to the collection, replacing any existing document with the same ID.
+   *
+   * @param id the document's ID
+   * @param document the document
+   */
+  public void put(String id, T document) {
+    lock.writeLock().lock();
+    try {
+      Entry<T> old = documents.get(id);
+      if (old != null) {
+        unindex(old);
+      }
+      Entry<T> entry = new Entry<>(nextSequence++, id, document);
+      documents.put(id, entry);
+      index(entry);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param id a document ID
+   * @return the document with that ID, or `null` if there isn't one
+   */
+  public T get(String id) {
+    lock.readLock().lock();
+    try {
+      Entry<T> entry = documents.get(id);
+      return entry == null ? null : entry.document();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param id the ID of the document to remove
+   * @return `true` if a document was removed
+   */
+  public boolean remove(String id) {
+    lock.writeLock().lock();
+    try {
+      Entry<T> entry = documents.remove(id);
+      if (entry == null) {
+        return false;
+      }
+      unindex(entry);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of documents in the collection
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return documents.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the documents matching a query, in the order (and up to the limit)
+   * the query specifies. Documents that tie on all the sort keys are returned
+   * in the order they were added to the collection.
+   *
+   * @param query the query to run
+   * @return a new list of the matching documents
+   */
+  public List<T> find(Query query) {
+    lock.readLock().lock();
+    try {
+      Set<Entry<T>> candidates = candidates(query.conditions());
+      List<SortKey> sortKeys = query.sortKeys();
+      List<Entry<T>> results;
+      if (!sortKeys.isEmpty()
+          && sortedIndexes.containsKey(sortKeys.get(0).field())
+          && (candidates == null || candidates.size() > documents.size() / INDEX_SCAN_RATIO)) {
+        results = scanSortedIndex(query, candidates);
+      } else {
+        results = sortCandidates(query, candidates == null ? documents.values() : candidates);
+      }
+      List<T> found = new ArrayList<>(results.size());
+      for (Entry<T> entry : results) {
+        found.add(entry.document());
+      }
+      return found;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Group all the documents by the value of a field, like a MongoDB `$group`
+   * stage with `_id` set to that field. Documents that don't have the field
+   * are grouped under `null`.
+   *
+   * @param field the field to group by
+   * @return a map from each distinct value of the field to the documents with that value
+   */
+  public Map<Object, List<T>> groupBy(String field) {
+    lock.readLock().lock();
+    try {
+      Map<Object, List<T>> groups = new LinkedHashMap<>();
+      Map<Object, Set<Entry<T>>> index = hashIndexes.get(field);
+      if (index != null) {
+        for (Map.Entry<Object, Set<Entry<T>>> bucket : index.entrySet()) {
+          List<T> group = new ArrayList<>(bucket.getValue().size());
+          for (Entry<T> entry : bucket.getValue()) {
+            group.add(entry.document());
+          }
+          groups.put(bucket.getKey(), group);
+        }
+      } else {
+        for (Entry<T> entry : inInsertionOrder(documents.values())) {
+          groups.computeIfAbsent(Values.normalize(valueOf(entry, field)), k -> new ArrayList<>())
+            .add(entry.document());
+        }
+      }
+      return groups;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Use the hash indexes to find a (hopefully small) set of documents that
+   * includes every document that could match the conditions.
+   *
+   * @return the smallest candidate set we could find, or `null` if none of
+   *   the conditions are on indexed fields (i.e., every document is a candidate)
+   */
+  private Set<Entry<T>> candidates(List<Condition> conditions) {
+    Set<Entry<T>> best = null;
+    for (Condition condition : conditions) {
+      Map<Object, Set<Entry<T>>> index = hashIndexes.get(condition.field());
+      if (index == null) {
+        continue;
+      }
+      Set<Entry<T>> postings;
+      if (condition.operator() == Condition.Operator.EQUALS) {
+        postings = index.getOrDefault(Values.normalize(condition.value()), Collections.emptySet());
+      } else {
+        // Check the condition against each distinct value once, rather than
+        // against every document.
+        postings = new HashSet<>();
+        for (Map.Entry<Object, Set<Entry<T>>> bucket : index.entrySet()) {
+          if (condition.test(bucket.getKey())) {
+            postings.addAll(bucket.getValue());
+          }
+        }
+      }
+      if (best == null || postings.size() < best.size()) {
+        best = postings;
+      }
+    }
+    return best;
+  }
+
+  private List<Entry<T>> scanSortedIndex(Query query, Set<Entry<T>> candidates) {
+    List<SortKey> sortKeys = query.sortKeys();
+    NavigableMap<Object, Set<Entry<T>>> index = sortedIndexes.get(sortKeys.get(0).field());
+    NavigableMap<Object, Set<Entry<T>>> ordered = sortKeys.get(0).descending() ? index.descendingMap() : index;
+    Comparator<Entry<T>> tieBreaker = comparator(sortKeys.subList(1, sortKeys.size()));
+    int limit = query.limit();
+
+    List<Entry<T>> results = new ArrayList<>();
+    for (Set<Entry<T>> bucket : ordered.values()) {
+      List<Entry<T>> matching = new ArrayList<>();
+      for (Entry<T> entry : bucket) {
+        if ((candidates == null || candidates.contains(entry)) && matches(entry, query.conditions())) {
+          matching.add(entry);
+        }
+      }
+      matching.sort(tieBreaker);
+      for (Entry<T> entry : matching) {
+        results.add(entry);
+        if (limit > 0 && results.size() >= limit) {
+          return results;
+        }
+      }
+    }
+    return results;
+  }
+
+  private List<Entry<T>> sortCandidates(Query query, Collection<Entry<T>> candidates) {
+    Comparator<Entry<T>> order = comparator(query.sortKeys());
+    int limit = query.limit();
+    if (limit > 0 && limit < candidates.size()) {
+      // Keep just the best `limit` matches in a heap, with the "worst" of
+      // them on top so it can be replaced by anything better.
+      PriorityQueue<Entry<T>> best = new PriorityQueue<>(limit + 1, order.reversed());
+      for (Entry<T> entry : candidates) {
+        if (matches(entry, query.conditions())) {
+          best.add(entry);
+          if (best.size() > limit) {
+            best.poll();
+          }
+        }
+      }
+      List<Entry<T>> results = new ArrayList<>(best);
+      results.sort(order);
+      return results;
+    }
+    List<Entry<T>> results = new ArrayList<>();
+    for (Entry<T> entry : candidates) {
+      if (matches(entry, query.conditions())) {
+        results.add(entry);
+      }
+    }
+    results.sort(order);
+    return results;
+  }
+
+  private boolean matches(Entry<T> entry, List<Condition> conditions) {
+    for (Condition condition : conditions) {
+      if (!condition.test(valueOf(entry, condition.field()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Comparator<Entry<T>> comparator(List<SortKey> sortKeys) {
+    Comparator<Entry<T>> order = (a, b) -> 0;
+    for (SortKey key : sortKeys) {
+      Comparator<Entry<T>> byKey = (a, b) -> Values.compare(valueOf(a, key.field()), valueOf(b, key.field()));
+      order = order.thenComparing(key.descending() ? byKey.reversed() : byKey);
+    }
+    return order.thenComparingLong(Entry::sequence);
+  }
+
+  private List<Entry<T>> inInsertionOrder(Collection<Entry<T>> entries) {
+    List<Entry<T>> ordered = new ArrayList<>(entries);
+    ordered.sort(Comparator.comparingLong(Entry::sequence));
+    return ordered;
+  }
+
+  private Object valueOf(Entry<T> entry, String field) {
+    if ("_id".equals(field)) {
+      return entry.id();
+    }
+    Function<T, Object> accessor = fields.get(field);
+    return accessor == null ? null : accessor.apply(entry.document());
+  }
+
+  private void index(Entry<T> entry) {
+    for (Map.Entry<String, Map<Object, Set<Entry<T>>>> index : hashIndexes.entrySet()) {
+      index.getValue()
+        .computeIfAbsent(Values.normalize(valueOf(entry, index.getKey())), k -> new LinkedHashSet<>())
+        .add(entry);
+    }
+    for (Map.Entry<String, NavigableMap<Object, Set<Entry<T>>>> index : sortedIndexes.entrySet()) {
+      index.getValue()
+        .computeIfAbsent(valueOf(entry, index.getKey()), k -> new LinkedHashSet<>())
+        .add(entry);
+    }
+  }
+
+  private void unindex(Entry<T> entry) {
+    for (Map.Entry<String, Map<Object, Set<Entry<T>>>> index : hashIndexes.entrySet()) {
+      removeFromBucket(index.getValue(), Values.normalize(valueOf(entry, index.getKey())), entry);
+    }
+    for (Map.Entry<String, NavigableMap<Object, Set<Entry<T>>>> index : sortedIndexes.entrySet()) {
+      removeFromBucket(index.getValue(), valueOf(entry, index.getKey()), entry);
+    }
+  }
+
+  private void removeFromBucket(Map<Object, Set<Entry<T>>> index, Object key, Entry<T> entry) {
+    Set<Entry<T>> bucket = index.get(key);
+    if (bucket != null) {
+      bucket.remove(entry);
+      if (bucket.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package umm3601.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of which IDs exist in a collection, well enough to answer
+ * most lookups of IDs that don't exist without asking the database.
+ *
+ * There are two parts to this:
+ *   - A `BloomFilter` of every ID that has been added. If an ID isn't in
+ *     it, it definitely doesn't exist.
+ *   - A short-lived cache of IDs the database has just said don't exist,
+ *     for the few that get past the filter: false positives, and IDs that
+ *     have been deleted (which can't be taken out of a Bloom filter).
+ *     Entries expire after a few seconds, so this can only ever be briefly
+ *     wrong about something another server inserted directly.
+ *
+ * This only knows about IDs that go through `add()` (or that were there when
+ * the filter was last built), so anything that inserts into the collection
+ * some other way can't be seen until the filter is built again with
+ * `rebuild()`. With a `maxAge`, a filter that hasn't been rebuilt for that
+ * long isn't trusted any more: every lookup it would have ruled out goes to
+ * the database instead, until the next rebuild.
+ */
+public class KnownIds {
+
+  // Bigger than this, and we start again rather than keep cleaning up.
+  private static final int MAX_CACHED_MISSES = 100_000;
+
+  private final double falsePositiveRate;
+  private final long missTtlNanos;
+  private final long maxAgeNanos;
+  private final LongSupplier nanoTime;
+
+  private volatile BloomFilter filter;
+  // When the scan `filter` was built from started, as a `nanoTime`.
+  private volatile long builtAt;
+  // The filter `rebuild()` is filling in, which `add()` has to add to as well.
+  private volatile BloomFilter rebuilding;
+
+  // The IDs that the database said didn't exist, and when to stop believing it.
+  private final Map<String, Long> misses = new ConcurrentHashMap<>();
+
+  // Counts calls to `add()`, so a miss that raced with one isn't cached.
+  private final AtomicLong additions = new AtomicLong();
+
+  private final LongAdder filtered = new LongAdder();
+  private final LongAdder cached = new LongAdder();
+  private final LongAdder stale = new LongAdder();
+
+  /**
+   * What a `KnownIds` has done so far.
+   *
+   * @param filtered the number of lookups the Bloom filter ruled out
+   * @param cached the number of lookups ruled out by a recent miss instead
+   * @param stale the number of lookups the Bloom filter would have ruled out,
+   *   but that went to the database because the filter was too old to trust
+   */
+  public record Stats(long filtered, long cached, long stale) {
+  }
+
+  /**
+   * Construct an empty set of known IDs.
+   *
+   * @param expected how many IDs we expect the collection to grow to
+   * @param falsePositiveRate the chance that an ID that doesn't exist gets
+   *   past the Bloom filter (see `BloomFilter`)
+   * @param missTtl how long to remember that an ID doesn't exist
+   * @param unit the unit of `missTtl`
+   */
+  public KnownIds(long expected, double falsePositiveRate, long missTtl, TimeUnit unit) {
+    this(expected, falsePositiveRate, missTtl, 0, unit);
+  }
+
+  /**
+   * Construct an empty set of known IDs, which stops ruling out lookups if
+   * it isn't rebuilt often enough.
+   *
+   * @param expected how many IDs we expect the collection to grow to
+   * @param falsePositiveRate the chance that an ID that doesn't exist gets
+   *   past the Bloom filter (see `BloomFilter`)
+   * @param missTtl how long to remember that an ID doesn't exist
+   * @param maxAge how long after the filter was (re)built to trust it, or 0
+   *   to trust it forever
+   * @param unit the unit of `missTtl` and `maxAge`
+   */
+  public KnownIds(long expected, double falsePositiveRate, long missTtl, long maxAge, TimeUnit unit) {
+    this(expected, falsePositiveRate, missTtl, maxAge, unit, System::nanoTime);
+  }
+
+  // For tests that don't want to wait for misses to expire.
+  KnownIds(long expected, double falsePositiveRate, long missTtl, long maxAge, TimeUnit unit,
+      LongSupplier nanoTime) {
+    this.falsePositiveRate = falsePositiveRate;
+    this.missTtlNanos = unit.toNanos(missTtl);
+    this.maxAgeNanos = unit.toNanos(maxAge);
+    this.nanoTime = nanoTime;
+    this.filter = new BloomFilter(expected, falsePositiveRate);
+    this.builtAt = nanoTime.getAsLong();
+  }
+
+  /**
+   * Note that an item with this ID now exists.
+   *
+   * @param id the ID
+   */
+  public void add(String id) {
+    // Check for a rebuild first: if there isn't one yet, any scan that starts
+    // later will find the item itself, and if it's just finished, `filter`
+    // is already the new one.
+    BloomFilter next = rebuilding;
+    filter.add(id);
+    if (next != null) {
+      next.add(id);
+    }
+    additions.incrementAndGet();
+    misses.remove(id);
+  }
+
+  /**
+   * Build the Bloom filter again from scratch, from every ID the collection
+   * has now, e.g., to pick up items something else inserted, and drop the
+   * ones that have been deleted. Lookups keep using the old filter (and
+   * `add()` adds to both) until the new one is finished.
+   *
+   * @param expected how many IDs we now expect the collection to grow to
+   * @param ids calls its argument with every ID in the collection
+   */
+  public synchronized void rebuild(long expected, Consumer<Consumer<String>> ids) {
+    long started = nanoTime.getAsLong();
+    BloomFilter fresh = new BloomFilter(expected, falsePositiveRate);
+    rebuilding = fresh;
+    try {
+      ids.accept(fresh::add);
+      filter = fresh;
+      builtAt = started;
+    } finally {
+      rebuilding = null;
+    }
+  }
+
+  /**
+   * @return a token to pass to `recordMiss()`, taken before asking the database
+   */
+  public long additions() {
+    return additions.get();
+  }
+
+  /**
+   * Note that the database just said there's no item with this ID.
+   *
+   * If anything was added since `additionsBefore` was taken, the item might
+   * have been added after the database looked, so the miss isn't kept.
+   *
+   * @param id the ID
+   * @param additionsBefore what `additions()` returned before asking the database
+   */
+  public void recordMiss(String id, long additionsBefore) {
+    long now = nanoTime.getAsLong();
+    if (misses.size() >= MAX_CACHED_MISSES) {
+      misses.values().removeIf(expiry -> expiry - now <= 0);
+      if (misses.size() >= MAX_CACHED_MISSES) {
+        misses.clear();
+      }
+    }
+    Long expiry = now + missTtlNanos;
+    misses.put(id, expiry);
+    if (additions.get() != additionsBefore) {
+      misses.remove(id, expiry);
+    }
+  }
+
+  /**
+   * @param id the ID to look for
+   * @return `false` if there's definitely no item with this ID, so there's
+   *   no need to ask the database
+   */
+  public boolean mightExist(String id) {
+    if (!filter.mightContain(id)) {
+      if (maxAgeNanos > 0 && nanoTime.getAsLong() - builtAt > maxAgeNanos) {
+        // Something else may have added it since the filter was built.
+        stale.increment();
+        return true;
+      }
+      filtered.increment();
+      return false;
+    }
+    Long expiry = misses.get(id);
+    if (expiry != null) {
+      if (expiry - nanoTime.getAsLong() > 0) {
+        cached.increment();
+        return false;
+      }
+      misses.remove(id, expiry);
+    }
+    return true;
+  }
+
+  /**
+   * @return what this has done so far
+   */
+  public Stats stats() {
+    return new Stats(filtered.sum(), cached.sum(), stale.sum());
+  }
+}
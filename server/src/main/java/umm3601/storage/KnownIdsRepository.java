@@ -0,0 +1,278 @@
+package umm3601.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+/**
+ * A repository that answers lookups of IDs that don't exist without asking
+ * another ("backing") repository, like a `MongoTodoRepository`, using a
+ * `KnownIds`.
+ *
+ * Broken clients and scrapers ask for a lot of stale IDs, and every one of
+ * those used to cost a database round trip just to find out it wasn't
+ * there. Now `findById()`, `findJsonById()`, `update()`, and `deleteById()`
+ * only go to the backing repository if the ID might exist.
+ *
+ * The IDs that exist are read from the backing repository when this is
+ * constructed (see `Repository.forEachId()`), and every insert adds to
+ * them. Items that something else inserts (say, `mongoseed.sh`, or another
+ * server) are only seen when the IDs are read again with `refresh()`, so
+ * until then they'd get a 404. With a refresh interval, this reads them
+ * again that often in the background, and if it hasn't managed to for two
+ * intervals (say the database was down), it stops trusting the filter and
+ * passes every lookup on until it has.
+ *
+ * @param <T> the type of the items in the repository
+ */
+public class KnownIdsRepository<T> implements Repository<T> {
+
+  // Room for the collection to double before the filter gets much worse than 1%.
+  private static final int GROWTH_FACTOR = 2;
+  private static final long MIN_EXPECTED_IDS = 100_000;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final long MISS_TTL_SECONDS = 5;
+
+  private final Repository<T> backing;
+  private final Function<T, String> idOf;
+  private final KnownIds knownIds;
+
+  /**
+   * Construct a repository that filters lookups for the given one, reading
+   * all its IDs first.
+   *
+   * @param backing the repository to pass everything else on to
+   * @param idOf gets an item's `_id`, which may be `null` before it's inserted
+   */
+  public KnownIdsRepository(Repository<T> backing, Function<T, String> idOf) {
+    this(backing, idOf, 0, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Construct a repository that filters lookups for the given one, reading
+   * all its IDs first, and again every `refreshInterval` on a background
+   * thread.
+   *
+   * @param backing the repository to pass everything else on to
+   * @param idOf gets an item's `_id`, which may be `null` before it's inserted
+   * @param refreshInterval how often to read the IDs again, or 0 to only
+   *   read them once (and trust them forever)
+   * @param unit the unit of `refreshInterval`
+   */
+  public KnownIdsRepository(Repository<T> backing, Function<T, String> idOf, long refreshInterval, TimeUnit unit) {
+    this(backing, idOf, new KnownIds(expectedIds(backing), FALSE_POSITIVE_RATE,
+      TimeUnit.SECONDS.toMillis(MISS_TTL_SECONDS), 2 * unit.toMillis(refreshInterval), TimeUnit.MILLISECONDS));
+    if (refreshInterval > 0) {
+      Thread refresher = new Thread(() -> refreshEvery(unit.toMillis(refreshInterval)),
+        "known-ids-refresh-" + System.identityHashCode(this));
+      refresher.setDaemon(true);
+      refresher.start();
+    }
+  }
+
+  /**
+   * Construct a repository that filters lookups for the given one using the
+   * given `KnownIds`, after adding all the backing repository's IDs to it.
+   *
+   * @param backing the repository to pass everything else on to
+   * @param idOf gets an item's `_id`, which may be `null` before it's inserted
+   * @param knownIds where to keep track of the IDs
+   */
+  public KnownIdsRepository(Repository<T> backing, Function<T, String> idOf, KnownIds knownIds) {
+    this.backing = backing;
+    this.idOf = idOf;
+    this.knownIds = knownIds;
+    backing.forEachId(id -> knownIds.add(key(id)));
+  }
+
+  /**
+   * Read all the backing repository's IDs again, to pick up items inserted
+   * by anything else (and forget deleted ones). Lookups keep using the old
+   * IDs until this is finished.
+   */
+  public void refresh() {
+    knownIds.rebuild(expectedIds(backing), add -> backing.forEachId(id -> add.accept(key(id))));
+  }
+
+  private void refreshEvery(long intervalMillis) {
+    while (true) {
+      try {
+        Thread.sleep(intervalMillis);
+        refresh();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        // Try again next time; if that keeps failing, the filter goes stale
+        // and lookups go to the backing repository (see `KnownIds.Stats`).
+      }
+    }
+  }
+
+  private static long expectedIds(Repository<?> backing) {
+    return Math.max(GROWTH_FACTOR * backing.count(), MIN_EXPECTED_IDS);
+  }
+
+  /**
+   * @return the IDs this knows about, e.g., for their `stats()`
+   */
+  public KnownIds knownIds() {
+    return knownIds;
+  }
+
+  @Override
+  public T findById(String id) {
+    if (!mightExist(id)) {
+      return null;
+    }
+    long additions = knownIds.additions();
+    T item = backing.findById(id);
+    if (item == null) {
+      knownIds.recordMiss(key(id), additions);
+    }
+    return item;
+  }
+
+  @Override
+  public String findJsonById(String id) throws IOException {
+    if (!mightExist(id)) {
+      return null;
+    }
+    long additions = knownIds.additions();
+    String json = backing.findJsonById(id);
+    if (json == null) {
+      knownIds.recordMiss(key(id), additions);
+    }
+    return json;
+  }
+
+  @Override
+  public List<T> findByIds(Collection<String> ids) {
+    List<String> candidates = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      if (mightExist(id)) {
+        candidates.add(id);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return new ArrayList<>();
+    }
+    // We don't record the misses here, since working out which they were
+    // would take another pass, and batches are rarely repeated exactly.
+    return backing.findByIds(candidates);
+  }
+
+  @Override
+  public List<T> find(Query query) {
+    return backing.find(query);
+  }
+
+  @Override
+  public void writeJson(Query query, OutputStream out) throws IOException {
+    backing.writeJson(query, out);
+  }
+
+  @Override
+  public void writeNdjson(Query query, int batchSize, OutputStream out) throws IOException {
+    backing.writeNdjson(query, batchSize, out);
+  }
+
+  @Override
+  public void forEachId(Consumer<String> action) {
+    backing.forEachId(action);
+  }
+
+  @Override
+  public QueryPlan explain(Query query, long maxTimeMillis) {
+    return backing.explain(query, maxTimeMillis);
+  }
+
+  @Override
+  public List<T> sample(Query query, int n) {
+    return backing.sample(query, n);
+  }
+
+  @Override
+  public long count() {
+    return backing.count();
+  }
+
+  @Override
+  public void insert(T item) {
+    // If the item already has its ID, it's known before it can be found, so
+    // nobody can be told it doesn't exist once it does. Otherwise the backing
+    // repository assigns it, and nobody can be asking for it yet anyway.
+    addId(item);
+    backing.insert(item);
+    addId(item);
+  }
+
+  @Override
+  public int insertAll(List<T> items) {
+    items.forEach(this::addId);
+    int inserted = backing.insertAll(items);
+    items.forEach(this::addId);
+    return inserted;
+  }
+
+  @Override
+  public boolean update(String id, String field, Object value) {
+    return mightExist(id) && backing.update(id, field, value);
+  }
+
+  @Override
+  public List<Boolean> writeAll(List<Write<T>> writes) {
+    for (Write<T> write : writes) {
+      if (write instanceof Write.Insert<T> insert) {
+        addId(insert.item());
+      }
+    }
+    List<Boolean> results = backing.writeAll(writes);
+    for (Write<T> write : writes) {
+      if (write instanceof Write.Insert<T> insert) {
+        addId(insert.item());
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public boolean deleteById(String id) {
+    if (!mightExist(id)) {
+      return false;
+    }
+    long additions = knownIds.additions();
+    boolean deleted = backing.deleteById(id);
+    // Either way, it isn't there now.
+    knownIds.recordMiss(key(id), additions);
+    return deleted;
+  }
+
+  private boolean mightExist(String id) {
+    // Illegal IDs still have to be reported as such, not just as missing.
+    if (!ObjectId.isValid(id)) {
+      throw new IllegalArgumentException("invalid hexadecimal representation of an ObjectId: [" + id + "]");
+    }
+    return knownIds.mightExist(key(id));
+  }
+
+  // ObjectIds are case-insensitive, but the IDs we learn from the backing
+  // repository and from inserted items are always in lower case.
+  private static String key(String id) {
+    return id.toLowerCase(Locale.ROOT);
+  }
+
+  private void addId(T item) {
+    String id = idOf.apply(item);
+    if (id != null) {
+      knownIds.add(key(id));
+    }
+  }
+}
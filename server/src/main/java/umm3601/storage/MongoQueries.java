@@ -0,0 +1,276 @@
+package umm3601.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Translates store-independent `Query`s into the Bson filter and sort
+ * documents the MongoDB driver expects, along with the other reads the
+ * MongoDB repositories have in common.
+ */
+public class MongoQueries {
+
+  // How many `_id`s to fetch per round trip when listing them all.
+  private static final int ID_BATCH_SIZE = 10_000;
+
+  /**
+   * The collation for comparing strings ignoring case (but not accents),
+   * for the `Condition`s that ignore case. An index can only help with
+   * those if it was built with this same collation (see the repositories'
+   * `CASE_INSENSITIVE_INDEXES`).
+   */
+  public static final Collation CASE_INSENSITIVE = Collation.builder()
+    .locale("en")
+    .collationStrength(CollationStrength.SECONDARY)
+    .build();
+
+  // Sorts after every other character in MongoDB's (ICU's) collations, which
+  // makes it the upper bound for a range of strings with the same prefix.
+  private static final String MAX_CHARACTER = "\uFFFF";
+
+  /**
+   * Build a Bson filter that matches the same documents as the query's conditions.
+   *
+   * @param query the query to translate
+   * @return a Bson filter document for use in `find`
+   */
+  public static Bson filter(Query query) {
+    List<Bson> filters = new ArrayList<>();
+    for (Condition condition : query.conditions()) {
+      filters.add(filter(condition));
+    }
+    return filters.isEmpty() ? new Document() : and(filters);
+  }
+
+  /**
+   * Build a Bson filter for a single condition.
+   *
+   * @param condition the condition to translate
+   * @return a Bson filter document equivalent to the condition
+   */
+  public static Bson filter(Condition condition) {
+    switch (condition.operator()) {
+      case EQUALS:
+        return eq(condition.field(), toBsonValue(condition.field(), condition.value()));
+      case MATCHES:
+        return regex(condition.field(), (Pattern) condition.value());
+      case EQUALS_IGNORE_CASE:
+        // Case-insensitive because the query is run with the `CASE_INSENSITIVE` collation.
+        return eq(condition.field(), condition.value());
+      case STARTS_WITH_IGNORE_CASE:
+        // A range, rather than a regex, so it can use the index.
+        return and(gte(condition.field(), condition.value()),
+          lt(condition.field(), condition.value() + MAX_CHARACTER));
+      case GREATER_THAN_OR_EQUAL:
+        return gte(condition.field(), toBsonValue(condition.field(), condition.value()));
+      case LESS_THAN:
+        return lt(condition.field(), toBsonValue(condition.field(), condition.value()));
+      default:
+        throw new IllegalStateException("Unknown operator " + condition.operator());
+    }
+  }
+
+  /**
+   * Build the aggregation pipeline for `Repository.sample()`: `$sample`,
+   * after a `$match` for the query's conditions if it has any.
+   *
+   * Without conditions `$sample` is the first stage, so for an `n` under 5%
+   * of the collection MongoDB picks the documents with a random cursor, and
+   * the cost depends on `n` rather than on the size of the collection. With
+   * them, the `$match` (and whatever index it uses) finds the matching
+   * documents first, and `$sample` picks from those.
+   *
+   * @param query the query whose conditions the documents must match
+   * @param n how many documents to pick
+   * @return the pipeline, to run with the query's `collation()`
+   */
+  public static List<Bson> sample(Query query, int n) {
+    List<Bson> pipeline = new ArrayList<>();
+    if (!query.conditions().isEmpty()) {
+      pipeline.add(Aggregates.match(filter(query)));
+    }
+    pipeline.add(Aggregates.sample(n));
+    return pipeline;
+  }
+
+  /**
+   * Build a Bson sort document from the query's sort keys.
+   *
+   * @param query the query to translate
+   * @return a Bson sort document for use in `sort`
+   */
+  public static Bson sort(Query query) {
+    List<Bson> sorts = new ArrayList<>();
+    for (SortKey key : query.sortKeys()) {
+      sorts.add(key.descending() ? Sorts.descending(key.field()) : Sorts.ascending(key.field()));
+    }
+    return Sorts.orderBy(sorts);
+  }
+
+  /**
+   * The collation for a query's `find`.
+   *
+   * @param query the query to translate
+   * @return `CASE_INSENSITIVE` if any of the query's conditions ignore case,
+   *   or else `null` (which leaves the collection's default)
+   */
+  public static Collation collation(Query query) {
+    for (Condition condition : query.conditions()) {
+      if (condition.ignoresCase()) {
+        return CASE_INSENSITIVE;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The `allowDiskUse` option for a query's `find`.
+   *
+   * This is `null` (which leaves the option out) rather than `false` when
+   * the query doesn't allow it, so the server's default still applies.
+   *
+   * @param query the query to translate
+   * @return `true` if the query allows sorting on disk, or else `null`
+   */
+  public static Boolean allowDiskUse(Query query) {
+    return query.allowDiskUse() ? Boolean.TRUE : null;
+  }
+
+  /**
+   * Explain a `find`, for `Repository.explain()`: run it with
+   * `executionStats` verbosity, but for no more than `maxTimeMillis`. If it
+   * takes longer than that, explain it again without running it (with
+   * `queryPlanner` verbosity), so the plan is still reported.
+   *
+   * @param find the find to explain, with its filter, sort, and options already set
+   * @param maxTimeMillis how long running the find may take
+   * @return a summary of the explain output
+   */
+  public static QueryPlan explain(FindIterable<?> find, long maxTimeMillis) {
+    find.maxTime(maxTimeMillis, TimeUnit.MILLISECONDS);
+    try {
+      return queryPlan(find.explain(ExplainVerbosity.EXECUTION_STATS));
+    } catch (MongoExecutionTimeoutException e) {
+      return queryPlan(find.explain(ExplainVerbosity.QUERY_PLANNER));
+    }
+  }
+
+  /**
+   * Summarise the output of MongoDB's `explain` for a `find`.
+   *
+   * @param explain the output, with `executionStats` if the find was run
+   * @return the plan, with the counts from `executionStats`, or marked as
+   *   timed out if there aren't any
+   */
+  static QueryPlan queryPlan(Document explain) {
+    Document winningPlan = explain.get("queryPlanner", new Document()).get("winningPlan", new Document());
+    // Servers using the slot-based execution engine nest the plan one level further down.
+    winningPlan = winningPlan.get("queryPlan", winningPlan);
+    List<String> stages = new ArrayList<>();
+    List<String> indexes = new ArrayList<>();
+    String plan = describe(winningPlan, stages, indexes);
+    Document stats = explain.get("executionStats", Document.class);
+    if (stats == null) {
+      return new QueryPlan(plan, indexes, stages.contains("COLLSCAN"), stages.contains("SORT"), true, 0, 0, 0, 0);
+    }
+    return new QueryPlan(plan, indexes, stages.contains("COLLSCAN"), stages.contains("SORT"), false,
+      count(stats, "nReturned"), count(stats, "totalKeysExamined"), count(stats, "totalDocsExamined"),
+      count(stats, "executionTimeMillis"));
+  }
+
+  // Describe a stage and the stages it reads from, e.g., `FETCH > IXSCAN`,
+  // or `OR(IXSCAN, IXSCAN)` for a stage with more than one input, and
+  // collect the names of all of them and the indexes they use.
+  private static String describe(Document stage, List<String> stages, List<String> indexes) {
+    String name = stage.get("stage", "?");
+    stages.add(name);
+    String index = stage.getString("indexName");
+    if (index != null && !indexes.contains(index)) {
+      indexes.add(index);
+    }
+    Document input = stage.get("inputStage", Document.class);
+    if (input != null) {
+      return name + " > " + describe(input, stages, indexes);
+    }
+    List<Document> inputs = stage.getList("inputStages", Document.class);
+    if (inputs != null) {
+      List<String> described = new ArrayList<>();
+      for (Document each : inputs) {
+        described.add(describe(each, stages, indexes));
+      }
+      return name + "(" + String.join(", ", described) + ")";
+    }
+    return name;
+  }
+
+  private static long count(Document stats, String field) {
+    Object value = stats.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  /**
+   * Call `action` with the `_id` (as a hex string) of every document in a
+   * collection, for `Repository.forEachId()`.
+   *
+   * Asking for just the `_id`, and hinting the `_id` index, makes this a
+   * covered query: MongoDB reads the IDs from the index and never has to
+   * load the documents themselves.
+   *
+   * @param collection the collection, read without decoding the documents
+   * @param action what to do with each ID
+   */
+  public static void forEachId(MongoCollection<RawBsonDocument> collection, Consumer<String> action) {
+    Iterable<RawBsonDocument> ids = collection.find()
+      .projection(Projections.include("_id"))
+      .hint(Sorts.ascending("_id"))
+      .batchSize(ID_BATCH_SIZE);
+    for (RawBsonDocument document : ids) {
+      BsonValue id = document.get("_id");
+      // Anything else couldn't be looked up by ID anyway.
+      if (id != null && id.isObjectId()) {
+        action.accept(id.asObjectId().getValue().toHexString());
+      }
+    }
+  }
+
+  /**
+   * Our model classes store `_id`s as hex strings, but in the database
+   * they're ObjectIds, so those need converting before they go in a filter.
+   *
+   * @param field the name of the field being filtered on
+   * @param value the value as given in the condition
+   * @return the value as it's stored in the database
+   * @throws IllegalArgumentException if `field` is `_id` and `value` isn't a legal ObjectId
+   */
+  static Object toBsonValue(String field, Object value) {
+    if ("_id".equals(field) && value instanceof String) {
+      return new ObjectId((String) value);
+    }
+    return value;
+  }
+}
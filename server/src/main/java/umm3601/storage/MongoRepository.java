@@ -0,0 +1,240 @@
+package umm3601.storage;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.mongojack.JacksonMongoCollection;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Updates;
+
+import umm3601.JsonMappers;
+
+/**
+ * A `Repository` that keeps its items in a collection of a MongoDB
+ * database. `MongoTodoRepository` and `MongoUserRepository` extend this
+ * with the aggregations that only make sense for their own items.
+ *
+ * @param <T> the type of the items in the collection
+ */
+public abstract class MongoRepository<T> implements Repository<T> {
+
+  private final Class<T> type;
+
+  private final JacksonMongoCollection<T> collection;
+
+  // The same collection, but without decoding the documents, for when all
+  // we're going to do is send them straight back out as JSON.
+  private final MongoCollection<RawBsonDocument> rawCollection;
+
+  // The fields of a `T`, so the raw documents have the same shape as ours.
+  private final Bson fields;
+
+  // Unordered inserts don't stop at the first document that fails.
+  private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+  /**
+   * Construct a repository for the items in the named collection, and make
+   * sure the collection has the given indexes.
+   *
+   * Creating an index that's already there (with the same keys and options)
+   * doesn't do anything, so the indexes the queries and `SortPlanner`
+   * count on are there however the data got into the database, whether or
+   * not `SeedLoader` loaded it.
+   *
+   * @param database the database containing the collection
+   * @param collectionName the name of the collection
+   * @param type the class the documents are decoded to
+   * @param fields a projection of the fields of a `T`, which is applied
+   *   to the documents that are sent out as JSON without being decoded
+   * @param indexes the collection's secondary indexes (see `indexModels()`)
+   */
+  protected MongoRepository(MongoDatabase database, String collectionName, Class<T> type, Bson fields,
+      List<IndexModel> indexes) {
+    this.type = type;
+    this.collection = JacksonMongoCollection.builder()
+        .withObjectMapper(JsonMappers.mongo())
+        .build(
+            database,
+            collectionName,
+            type,
+            UuidRepresentation.STANDARD);
+    this.rawCollection = database.getCollection(collectionName, RawBsonDocument.class);
+    this.fields = fields;
+    if (!indexes.isEmpty()) {
+      rawCollection.createIndexes(indexes);
+    }
+  }
+
+  /**
+   * Build the indexes a collection should have, e.g., for creating them.
+   *
+   * @param indexes the keys of its indexes with the default collation
+   * @param caseInsensitiveIndexes the keys of its indexes with the
+   *   case-insensitive collation (see `SortPlanner.caseInsensitiveIndexModel()`)
+   * @return models of all the indexes
+   */
+  public static List<IndexModel> indexModels(List<List<SortKey>> indexes,
+      List<List<SortKey>> caseInsensitiveIndexes) {
+    List<IndexModel> models = new ArrayList<>();
+    indexes.forEach(keys -> models.add(SortPlanner.indexModel(keys)));
+    caseInsensitiveIndexes.forEach(keys -> models.add(SortPlanner.caseInsensitiveIndexModel(keys)));
+    return models;
+  }
+
+  /**
+   * @return the collection, for the aggregations subclasses add
+   */
+  protected JacksonMongoCollection<T> collection() {
+    return collection;
+  }
+
+  @Override
+  public T findById(String id) {
+    return collection.find(eq("_id", new ObjectId(id)))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .first();
+  }
+
+  @Override
+  public List<T> findByIds(Collection<String> ids) {
+    List<ObjectId> objectIds = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      objectIds.add(new ObjectId(id));
+    }
+    // One `$in` query for all of them, rather than a round trip each.
+    return collection.find(in("_id", objectIds))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .into(new ArrayList<>());
+  }
+
+  @Override
+  public List<T> find(Query query) {
+    // All three of the find, sort, and into steps happen "in parallel" inside the
+    // database system. So MongoDB is going to find the items with the specified
+    // properties, return those sorted in the specified manner, and put the
+    // results into an initially empty ArrayList.
+    return collection
+      .find(MongoQueries.filter(query))
+      .collation(MongoQueries.collation(query))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .sort(MongoQueries.sort(query))
+      .allowDiskUse(MongoQueries.allowDiskUse(query))
+      .limit(query.limit())
+      .into(new ArrayList<>());
+  }
+
+  @Override
+  public String findJsonById(String id) {
+    RawBsonDocument item = rawCollection
+      .find(eq("_id", new ObjectId(id)))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .projection(fields)
+      .first();
+    return item == null ? null : RawJson.toJson(item);
+  }
+
+  @Override
+  public void writeJson(Query query, OutputStream out) throws IOException {
+    FindIterable<RawBsonDocument> items = rawFind(query)
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS);
+    RawJson.writeArray(items, out);
+  }
+
+  @Override
+  public void writeNdjson(Query query, int batchSize, OutputStream out) throws IOException {
+    // The driver only holds one batch of documents from the cursor at a time.
+    FindIterable<RawBsonDocument> items = rawFind(query)
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .batchSize(batchSize);
+    RawJson.writeLines(items, out);
+  }
+
+  @Override
+  public QueryPlan explain(Query query, long maxTimeMillis) {
+    // The same find as `writeJson()`, which is what the list endpoints normally run.
+    return MongoQueries.explain(rawFind(query), maxTimeMillis);
+  }
+
+  // The find that sends the matching documents out as JSON, as they're stored.
+  private FindIterable<RawBsonDocument> rawFind(Query query) {
+    return rawCollection
+      .find(MongoQueries.filter(query))
+      .collation(MongoQueries.collation(query))
+      .projection(fields)
+      .sort(MongoQueries.sort(query))
+      .allowDiskUse(MongoQueries.allowDiskUse(query))
+      .limit(query.limit());
+  }
+
+  @Override
+  public List<T> sample(Query query, int n) {
+    return collection
+      .aggregate(MongoQueries.sample(query, n), type)
+      .collation(MongoQueries.collation(query))
+      .allowDiskUse(MongoQueries.allowDiskUse(query))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .into(new ArrayList<>());
+  }
+
+  @Override
+  public void forEachId(Consumer<String> action) {
+    MongoQueries.forEachId(rawCollection, action);
+  }
+
+  @Override
+  public long count() {
+    return collection.countDocuments(new Document(),
+      new CountOptions().maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS));
+  }
+
+  @Override
+  public void insert(T item) {
+    collection.insertOne(item);
+  }
+
+  @Override
+  public int insertAll(List<T> items) {
+    try {
+      collection.insertMany(items, UNORDERED);
+      return items.size();
+    } catch (MongoBulkWriteException e) {
+      // Since the insert is unordered, everything but the failed documents still went in.
+      return e.getWriteResult().getInsertedCount();
+    }
+  }
+
+  @Override
+  public boolean update(String id, String field, Object value) {
+    return collection.updateOne(eq("_id", new ObjectId(id)), Updates.set(field, value)).getMatchedCount() == 1;
+  }
+
+  @Override
+  public List<Boolean> writeAll(List<Write<T>> writes) {
+    return MongoWrites.bulkWrite(collection, writes);
+  }
+
+  @Override
+  public boolean deleteById(String id) {
+    return collection.deleteOne(eq("_id", new ObjectId(id))).getDeletedCount() == 1;
+  }
+}
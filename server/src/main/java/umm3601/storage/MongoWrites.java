@@ -0,0 +1,100 @@
+package umm3601.storage;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Applies batches of `Write`s to a MongoDB collection with a single
+ * `bulkWrite()`, for the repositories' `writeAll()`.
+ */
+public class MongoWrites {
+
+  // Unordered, so the server can apply the writes however it likes and
+  // one failing doesn't stop the rest.
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+  /**
+   * Apply a batch of writes to a collection in one round trip.
+   *
+   * @param collection the collection to write to
+   * @param writes the writes to apply
+   * @param <T> the type of the documents in the collection
+   * @return whether each write succeeded, in the same order as `writes`
+   * @throws IllegalArgumentException if an update's ID isn't a legal ObjectId
+   */
+  public static <T> List<Boolean> bulkWrite(MongoCollection<T> collection, List<Write<T>> writes) {
+    List<WriteModel<T>> models = new ArrayList<>(writes.size());
+    int updates = 0;
+    for (Write<T> write : writes) {
+      if (write instanceof Write.Update<T> update) {
+        models.add(new UpdateOneModel<>(
+          eq("_id", new ObjectId(update.id())), Updates.set(update.field(), update.value())));
+        updates++;
+      } else {
+        models.add(new InsertOneModel<>(((Write.Insert<T>) write).item()));
+      }
+    }
+
+    Boolean[] results = new Boolean[writes.size()];
+    Arrays.fill(results, true);
+    int matched;
+    try {
+      matched = collection.bulkWrite(models, UNORDERED).getMatchedCount();
+    } catch (MongoBulkWriteException e) {
+      for (BulkWriteError error : e.getWriteErrors()) {
+        results[error.getIndex()] = false;
+        if (writes.get(error.getIndex()) instanceof Write.Update) {
+          updates--;
+        }
+      }
+      matched = e.getWriteResult().getMatchedCount();
+    }
+
+    // The bulk write only tells us how many updates matched a document in
+    // total, not which ones. Usually that's all of them, but if not we have
+    // to go and look for the ones that didn't.
+    if (matched < updates) {
+      markMissing(collection, writes, results);
+    }
+    return Arrays.asList(results);
+  }
+
+  private static <T> void markMissing(MongoCollection<T> collection, List<Write<T>> writes, Boolean[] results) {
+    Set<ObjectId> ids = new HashSet<>();
+    for (Write<T> write : writes) {
+      if (write instanceof Write.Update<T> update) {
+        ids.add(new ObjectId(update.id()));
+      }
+    }
+    Set<ObjectId> found = new HashSet<>();
+    for (Document document : collection.withDocumentClass(Document.class)
+        .find(in("_id", ids))
+        .projection(Projections.include("_id"))) {
+      found.add(document.getObjectId("_id"));
+    }
+    for (int i = 0; i < writes.size(); i++) {
+      if (writes.get(i) instanceof Write.Update<T> update && !found.contains(new ObjectId(update.id()))) {
+        results[i] = false;
+      }
+    }
+  }
+}
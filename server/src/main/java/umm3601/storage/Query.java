@@ -0,0 +1,105 @@
+package umm3601.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A store-independent description of a `find`: which items to match,
+ * how to sort them, and how many to return.
+ *
+ * These are built up by the controllers from the request's query parameters,
+ * e.g.,
+ *
+ * ```
+ * new Query()
+ *   .where(Condition.eq("status", true))
+ *   .sortBy(SortKey.ascending("owner"))
+ *   .limit(10);
+ * ```
+ *
+ * and then turned into a Mongo filter (see `MongoQueries`) or run directly
+ * against an `InMemoryCollection`.
+ */
+public class Query {
+
+  private final List<Condition> conditions = new ArrayList<>();
+  private final List<SortKey> sortKeys = new ArrayList<>();
+  private int limit;
+  private boolean allowDiskUse;
+
+  /**
+   * Add a condition that matching items must satisfy.
+   *
+   * @param condition the condition to add
+   * @return this query, so calls can be chained
+   */
+  public Query where(Condition condition) {
+    conditions.add(condition);
+    return this;
+  }
+
+  /**
+   * Add a field to sort by. Results are sorted by the first key,
+   * then ties are broken by the second key, and so on.
+   *
+   * @param key the field (and direction) to sort by
+   * @return this query, so calls can be chained
+   */
+  public Query sortBy(SortKey key) {
+    sortKeys.add(key);
+    return this;
+  }
+
+  /**
+   * Set the maximum number of items to return.
+   *
+   * @param max the maximum number of items to return; `0` (the default) means no limit
+   * @return this query, so calls can be chained
+   */
+  public Query limit(int max) {
+    this.limit = max;
+    return this;
+  }
+
+  /**
+   * Let the store sort on disk, if it has to, rather than fail when sorting
+   * in memory would take too much memory. (See `SortPlanner`, which decides
+   * this.)
+   *
+   * @param allowed `true` to allow sorting on disk
+   * @return this query, so calls can be chained
+   */
+  public Query allowDiskUse(boolean allowed) {
+    this.allowDiskUse = allowed;
+    return this;
+  }
+
+  /**
+   * @return the conditions that matching items must satisfy
+   */
+  public List<Condition> conditions() {
+    return Collections.unmodifiableList(conditions);
+  }
+
+  /**
+   * @return the keys to sort the results by, most significant first
+   */
+  public List<SortKey> sortKeys() {
+    return Collections.unmodifiableList(sortKeys);
+  }
+
+  /**
+   * @return the maximum number of items to return, or `0` for no limit
+   */
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * @return whether the store may sort on disk
+   */
+  public boolean allowDiskUse() {
+    return allowDiskUse;
+  }
+}
@@ -0,0 +1,33 @@
+package umm3601.storage;
+
+import java.util.List;
+
+/**
+ * How a store ran (or would run) a query, from `Repository.explain()`, so
+ * we can tell which combinations of filters and sorts are expensive.
+ *
+ * The counts are only known if the query was actually run. If running it
+ * took longer than it was allowed, `timedOut` is `true` and they're all 0,
+ * but the plan is still the one the store would have used.
+ *
+ * @param plan the stages of the plan, outermost first, e.g., `LIMIT > FETCH > IXSCAN`
+ * @param indexes the names of the indexes the plan reads
+ * @param collectionScan whether the plan reads every document in the collection
+ * @param inMemorySort whether the plan has to sort the results itself,
+ *   rather than reading them from an index in order
+ * @param timedOut whether running the query took too long, so only the plan is known
+ * @param returned how many items the query returned
+ * @param keysExamined how many index keys the query looked at
+ * @param docsExamined how many documents the query looked at
+ * @param millis how long the query took to run
+ */
+public record QueryPlan(String plan, List<String> indexes, boolean collectionScan, boolean inMemorySort,
+    boolean timedOut, long returned, long keysExamined, long docsExamined, long millis) {
+
+  /**
+   * How long explaining a query may spend running it, even for a request
+   * with more time left than that, so explaining a slow query is never
+   * itself slow.
+   */
+  public static final long MAX_TIME_MILLIS = 1_000;
+}
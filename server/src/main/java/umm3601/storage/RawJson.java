@@ -0,0 +1,119 @@
+package umm3601.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonElement;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Transcodes `RawBsonDocument`s (the undecoded bytes of a document as they
+ * came off the wire from MongoDB) straight to JSON.
+ *
+ * This skips both halves of the usual path, where MongoJack decodes the BSON
+ * into a `Todo` or `User` and Jackson then encodes that object as JSON. The
+ * BSON reader walks the raw bytes and the JSON writer emits each value as it
+ * goes, so no intermediate objects are built for the fields at all.
+ *
+ * The JSON looks just like what Jackson writes for our model classes: an
+ * `ObjectId` becomes its hex string (not extended JSON's `{"$oid": ...}`)
+ * and numbers are plain JSON numbers. A document with an ObjectId `_id`
+ * also gets the same `createdAt` field the model classes have (see
+ * `CreatedAt`), added after its stored fields.
+ */
+public final class RawJson {
+
+  /**
+   * The settings used to write the JSON.
+   */
+  public static final JsonWriterSettings SETTINGS = JsonWriterSettings.builder()
+    .outputMode(JsonMode.RELAXED)
+    .objectIdConverter((id, writer) -> writer.writeString(id.toHexString()))
+    .build();
+
+  private RawJson() {
+  }
+
+  /**
+   * @param document the document to transcode
+   * @return the document as JSON
+   */
+  public static String toJson(RawBsonDocument document) {
+    StringWriter writer = new StringWriter();
+    write(document, writer);
+    return writer.toString();
+  }
+
+  /**
+   * Write the documents as a JSON array to the given stream, one document
+   * at a time. The stream is flushed, but not closed.
+   *
+   * @param documents the documents to write, e.g., a `FindIterable`
+   * @param out where to write the JSON
+   * @throws IOException if there's a problem writing to `out`
+   */
+  public static void writeArray(Iterable<RawBsonDocument> documents, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write('[');
+    boolean first = true;
+    for (RawBsonDocument document : documents) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      write(document, writer);
+    }
+    writer.write(']');
+    writer.flush();
+  }
+
+  /**
+   * Write the documents as newline-delimited JSON (one document per line)
+   * to the given stream, one document at a time. The stream is flushed,
+   * but not closed.
+   *
+   * @param documents the documents to write, e.g., a `FindIterable`
+   * @param out where to write the JSON
+   * @throws IOException if there's a problem writing to `out`
+   */
+  public static void writeLines(Iterable<RawBsonDocument> documents, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    for (RawBsonDocument document : documents) {
+      write(document, writer);
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+
+  /**
+   * Write a single document as JSON to the given writer.
+   *
+   * @param document the document to write
+   * @param writer where to write the JSON
+   */
+  public static void write(RawBsonDocument document, Writer writer) {
+    try (BsonBinaryReader reader = new BsonBinaryReader(document.getByteBuffer().asNIO())) {
+      new JsonWriter(writer, SETTINGS).pipe(reader, derivedFields(document));
+    }
+  }
+
+  private static List<BsonElement> derivedFields(RawBsonDocument document) {
+    BsonValue id = document.get("_id");
+    if (id == null || !id.isObjectId()) {
+      return List.of();
+    }
+    return List.of(new BsonElement(CreatedAt.FIELD, new BsonString(CreatedAt.of(id.asObjectId().getValue()))));
+  }
+}
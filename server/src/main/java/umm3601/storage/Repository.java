@@ -0,0 +1,272 @@
+package umm3601.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import umm3601.JsonMappers;
+
+/**
+ * The operations the controllers need from wherever their data is stored.
+ *
+ * The controllers used to talk to a `JacksonMongoCollection` directly, which
+ * meant there was no way to run them (or test or benchmark them) without a
+ * live MongoDB. Going through this interface instead lets us swap in a
+ * different store, e.g., the in-memory one built on `InMemoryCollection`.
+ *
+ * IDs are always the hex string form of a Mongo ObjectId, and implementations
+ * should throw an `IllegalArgumentException` if handed an ID that isn't a
+ * legal ObjectId, just like `new ObjectId(id)` does.
+ *
+ * @param <T> the type of the items in the repository
+ */
+public interface Repository<T> {
+
+  /**
+   * Find the item with the given ID.
+   *
+   * @param id the ID of the item
+   * @return the item, or `null` if there's no item with that ID
+   * @throws IllegalArgumentException if `id` isn't a legal ObjectId
+   */
+  T findById(String id);
+
+  /**
+   * Find all the items with the given IDs, e.g., for a batch lookup.
+   *
+   * By default this just calls `findById()` for each ID, but stores that
+   * can find many items in a single round trip (like MongoDB, with an
+   * `$in` query) should override it.
+   *
+   * @param ids the IDs of the items, which should all be legal ObjectIds
+   * @return a (mutable) list of the items that exist, in no particular order
+   * @throws IllegalArgumentException if any of the IDs isn't a legal ObjectId
+   */
+  default List<T> findByIds(Collection<String> ids) {
+    List<T> items = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      T item = findById(id);
+      if (item != null) {
+        items.add(item);
+      }
+    }
+    return items;
+  }
+
+  /**
+   * Find all the items that match the given query, sorted and
+   * limited as specified by the query.
+   *
+   * @param query the query describing which items to return, and in what order
+   * @return a (mutable) list of the matching items
+   */
+  List<T> find(Query query);
+
+  /**
+   * Find the item with the given ID, already encoded as JSON.
+   *
+   * By default this just encodes the result of `findById()`, but stores
+   * that can produce JSON more cheaply (like MongoDB, which can transcode
+   * the raw BSON) should override it.
+   *
+   * @param id the ID of the item
+   * @return the item as JSON, or `null` if there's no item with that ID
+   * @throws IOException if there's a problem encoding the item
+   * @throws IllegalArgumentException if `id` isn't a legal ObjectId
+   */
+  default String findJsonById(String id) throws IOException {
+    T item = findById(id);
+    return item == null ? null : JsonMappers.http().writeValueAsString(item);
+  }
+
+  /**
+   * Write all the items that match the given query to `out` as a JSON
+   * array, in the same order `find()` would return them. The stream is
+   * flushed, but not closed.
+   *
+   * By default this just encodes the result of `find()`, but stores that
+   * can produce JSON more cheaply should override it.
+   *
+   * @param query the query describing which items to write, and in what order
+   * @param out where to write the JSON
+   * @throws IOException if there's a problem writing to `out`
+   */
+  default void writeJson(Query query, OutputStream out) throws IOException {
+    try (JsonGenerator json = JsonMappers.http().createGenerator(out)) {
+      // We don't own the stream, so we leave closing it to the caller.
+      json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      json.writeObject(find(query));
+    }
+  }
+
+  /**
+   * Write all the items that match the given query to `out` as
+   * newline-delimited JSON (one item per line), for exports. The stream
+   * is flushed, but not closed.
+   *
+   * Implementations should read the items a batch at a time rather than
+   * all at once, so exporting a huge collection doesn't need a huge heap.
+   *
+   * @param query the query describing which items to write
+   * @param batchSize how many items to read from the store at a time
+   * @param out where to write the JSON
+   * @throws IOException if there's a problem writing to `out`
+   */
+  default void writeNdjson(Query query, int batchSize, OutputStream out) throws IOException {
+    try (JsonGenerator json = JsonMappers.http().createGenerator(out)) {
+      json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      // We write the newlines between the items ourselves.
+      json.setRootValueSeparator(null);
+      for (T item : find(query)) {
+        json.writeObject(item);
+        json.writeRaw('\n');
+      }
+    }
+  }
+
+  /**
+   * Call `action` with the ID of every item in the repository, e.g., to
+   * build an index of which IDs exist (see `KnownIds`).
+   *
+   * By default this reads every item with `find()` and takes its `_id`,
+   * but stores that can list just the IDs more cheaply (like MongoDB, which
+   * can read them straight from the `_id` index) should override it.
+   *
+   * @param action what to do with each ID
+   */
+  default void forEachId(Consumer<String> action) {
+    for (T item : find(new Query())) {
+      JsonNode id = JsonMappers.http().valueToTree(item).get("_id");
+      if (id != null && id.isTextual()) {
+        action.accept(id.asText());
+      }
+    }
+  }
+
+  /**
+   * Explain how the store runs a query: the plan it picks, the indexes it
+   * uses, and how much it has to look at. This runs the query (without
+   * returning its items), so it has to be cut short by `maxTimeMillis`.
+   *
+   * Only stores that have a query planner to ask (like MongoDB) can do
+   * this, so by default it's unsupported.
+   *
+   * @param query the query to explain
+   * @param maxTimeMillis how long running the query may take
+   * @return how the query ran, or would have run if it had had time
+   * @throws UnsupportedOperationException if the store can't explain queries
+   */
+  default QueryPlan explain(Query query, long maxTimeMillis) {
+    throw new UnsupportedOperationException("This store can't explain its queries");
+  }
+
+  /**
+   * Pick `n` of the items that match the query's conditions at random (or
+   * all of them, if fewer match), ignoring its sort and limit.
+   *
+   * By default this finds every matching item and picks from those, but
+   * stores that can sample without reading every item (like MongoDB, with
+   * `$sample`) should override it.
+   *
+   * @param query the query whose conditions the items must match
+   * @param n how many items to pick
+   * @return a (mutable) list of the items, in random order
+   */
+  default List<T> sample(Query query, int n) {
+    Query matching = new Query();
+    query.conditions().forEach(matching::where);
+    List<T> items = find(matching);
+    Random random = ThreadLocalRandom.current();
+    int size = Math.min(n, items.size());
+    // The first `size` steps of a Fisher-Yates shuffle.
+    for (int i = 0; i < size; i++) {
+      Collections.swap(items, i, i + random.nextInt(items.size() - i));
+    }
+    return new ArrayList<>(items.subList(0, size));
+  }
+
+  /**
+   * @return the total number of items in the repository
+   */
+  long count();
+
+  /**
+   * Add a new item to the repository. The item's `_id` is set as a
+   * side effect.
+   *
+   * @param item the item to add
+   */
+  void insert(T item);
+
+  /**
+   * Add a batch of new items to the repository, e.g., for a bulk import.
+   * Items that can't be added (say, because their `_id` is already taken)
+   * are skipped, and the rest are still added.
+   *
+   * By default this just calls `insert()` on each item, but stores that
+   * can add many items at once more cheaply should override it.
+   *
+   * @param items the items to add
+   * @return the number of items that were actually added
+   */
+  default int insertAll(List<T> items) {
+    for (T item : items) {
+      insert(item);
+    }
+    return items.size();
+  }
+
+  /**
+   * Set one field of an existing item.
+   *
+   * @param id the ID of the item to change
+   * @param field the field to set
+   * @param value the new value of the field
+   * @return `true` if the item was changed, `false` if there was no item with that ID
+   * @throws IllegalArgumentException if `id` isn't a legal ObjectId
+   */
+  boolean update(String id, String field, Object value);
+
+  /**
+   * Apply a batch of inserts and updates, e.g., the ones a `WriteCoalescer`
+   * has collected from concurrent requests. The writes are independent of
+   * each other, so one failing doesn't stop the rest.
+   *
+   * By default this just applies the writes one at a time, but stores
+   * that can apply many writes in a single round trip should override it.
+   *
+   * @param writes the writes to apply
+   * @return whether each write succeeded, in the same order as `writes`;
+   *   an update of an item that doesn't exist counts as failing
+   */
+  default List<Boolean> writeAll(List<Write<T>> writes) {
+    List<Boolean> results = new ArrayList<>(writes.size());
+    for (Write<T> write : writes) {
+      if (write instanceof Write.Update<T> update) {
+        results.add(update(update.id(), update.field(), update.value()));
+      } else {
+        insert(((Write.Insert<T>) write).item());
+        results.add(true);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Delete the item with the given ID.
+   *
+   * @param id the ID of the item to delete
+   * @return `true` if an item was deleted, `false` if there was no item with that ID
+   * @throws IllegalArgumentException if `id` isn't a legal ObjectId
+   */
+  boolean deleteById(String id);
+}
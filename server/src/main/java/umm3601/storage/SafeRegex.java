@@ -0,0 +1,324 @@
+package umm3601.storage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Turns regexes (and plain text) from query parameters into `Pattern`s for
+ * `MATCHES` conditions that can't take more than about linear time to run
+ * from each place in a string they try to match.
+ *
+ * MongoDB runs regexes with PCRE, and `InMemoryCollection` with
+ * `java.util.regex`, and both of those backtrack. A pattern like `(a+)+$`
+ * can take exponential time on a string of a few dozen characters, over
+ * every document in the collection, and hold a database operation and one
+ * of our threads for as long as it runs. So `compile()` only accepts a
+ * subset of regexes (in the spirit of RE2's), and rejects anything with
+ *
+ * - backreferences, lookarounds, or atomic groups, which can't be matched
+ *   in linear time at all,
+ * - a quantified group with a quantifier or alternation inside it, like
+ *   `(a+)+`, `(a|ab)*`, or `(a?){30}`, the usual cause of catastrophic
+ *   backtracking. This goes for every quantifier on the group, even `?`
+ *   and `{n}`: `(a|aa){60}` only repeats a fixed number of times, but it
+ *   can still try an exponential number of ways to split the string,
+ * - more than one quantifier that can match any number of times (`*`,
+ *   `+`, `{n,}`, or a `{n,m}` with room for more than one extra match),
+ *   since each one can multiply the work by the length of the string, so
+ *   `.*.*.*x` or `\w*\w*x` would be polynomial with a large power,
+ * - more than `MAX_OPTIONAL` optional parts (`?`, or `{n,n+1}`), each of
+ *   which can double the work (so `a?a?a?...aaa` is out too), or counts over
+ *   `MAX_COUNT` in `{n,m}`,
+ * - more than `MAX_LENGTH` characters.
+ *
+ * It also rewrites the most common patterns, which are really just text,
+ * so they don't need a regex engine's full power. Plain text like `Fry`
+ * becomes an escaped substring match, and a literal prefix like `^Fry` (or
+ * `^Fry.*`) becomes an anchored, escaped prefix, which MongoDB can answer
+ * from an index on the field rather than by reading every document.
+ *
+ * All the patterns are case-insensitive, like the filters always were.
+ */
+public final class SafeRegex {
+
+  public static final int MAX_LENGTH = 200;
+
+  // Each optional part can double the backtracking, so a handful of them is
+  // as far as we go. (Only one quantifier can match any number of times.)
+  static final int MAX_OPTIONAL = 4;
+
+  // The largest count allowed in `{n}`, `{n,}`, or `{n,m}`.
+  static final int MAX_COUNT = 100;
+
+  private static final String META = "\\^$.|?*+()[]{}";
+
+  private SafeRegex() {
+  }
+
+  /**
+   * A pattern that matches `text` anywhere in a string, ignoring case, with
+   * none of its characters treated as regex syntax.
+   *
+   * @param text the text to look for
+   * @return a case-insensitive pattern for `text`
+   */
+  public static Pattern literal(String text) {
+    return Pattern.compile(escape(text), Pattern.CASE_INSENSITIVE);
+  }
+
+  /**
+   * A pattern that matches strings starting with `text`, ignoring case.
+   *
+   * @param text the text the strings must start with
+   * @return a case-insensitive, anchored pattern for `text`
+   */
+  public static Pattern prefix(String text) {
+    return Pattern.compile("^" + escape(text), Pattern.CASE_INSENSITIVE);
+  }
+
+  /**
+   * Compile a regex from a client, if it's safe to run against every
+   * document, rewriting it to a `literal()` or `prefix()` pattern if that's
+   * all it really is.
+   *
+   * @param regex the regex
+   * @return an equivalent case-insensitive pattern
+   * @throws IllegalArgumentException if the regex isn't legal, or isn't in
+   *   the safe subset, with a message saying why
+   */
+  public static Pattern compile(String regex) {
+    if (regex.length() > MAX_LENGTH) {
+      throw new IllegalArgumentException("it's longer than " + MAX_LENGTH + " characters");
+    }
+    String text = unescapeLiteral(regex);
+    if (text != null) {
+      return literal(text);
+    }
+    if (regex.startsWith("^")) {
+      String body = regex.endsWith(".*") && !regex.endsWith("\\.*")
+        ? regex.substring(1, regex.length() - 2)
+        : regex.substring(1);
+      text = unescapeLiteral(body);
+      if (text != null) {
+        return prefix(text);
+      }
+    }
+    check(regex);
+    try {
+      return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+    } catch (PatternSyntaxException e) {
+      throw new IllegalArgumentException("it isn't a legal regex: " + e.getDescription(), e);
+    }
+  }
+
+  /**
+   * Escape the regex syntax in `text` with backslashes, one character at a
+   * time. (MongoDB only recognizes a prefix for an index scan in this form,
+   * not in `\Q...\E`.)
+   *
+   * @param text the text to escape
+   * @return a regex that matches exactly `text`
+   */
+  static String escape(String text) {
+    StringBuilder escaped = new StringBuilder(text.length() + text.length() / 2);
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (META.indexOf(c) >= 0) {
+        escaped.append('\\');
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  /**
+   * If `regex` only matches one literal string, what that string is.
+   *
+   * @param regex the regex
+   * @return the text it matches, or `null` if it uses any regex syntax
+   *   other than escaped punctuation
+   */
+  static String unescapeLiteral(String regex) {
+    StringBuilder text = new StringBuilder(regex.length());
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+          // A class like `\d`, a backreference, or a dangling backslash.
+          return null;
+        }
+        c = regex.charAt(++i);
+      } else if (META.indexOf(c) >= 0) {
+        return null;
+      }
+      text.append(c);
+    }
+    return text.toString();
+  }
+
+  // What we know about each group that's still open, or the whole regex.
+  private static final class Group {
+    private boolean repeats;
+    private boolean alternates;
+  }
+
+  /**
+   * Check that a regex is in the safe subset.
+   *
+   * @param regex the regex
+   * @throws IllegalArgumentException if it isn't
+   */
+  static void check(String regex) {
+    Deque<Group> groups = new ArrayDeque<>();
+    groups.push(new Group());
+    boolean repeatsFreely = false;
+    int optional = 0;
+    // Whether the last thing we read was a group, and if so what was in it.
+    Group lastGroup = null;
+    boolean canRepeat = false;
+
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      Group closed = null;
+      boolean atom = true;
+      switch (c) {
+        case '\\':
+          if (i + 1 == regex.length()) {
+            throw new IllegalArgumentException("it ends with a backslash");
+          }
+          char next = regex.charAt(++i);
+          if ((next >= '1' && next <= '9') || next == 'k') {
+            throw new IllegalArgumentException("backreferences aren't allowed");
+          }
+          break;
+        case '[':
+          i = endOfClass(regex, i);
+          break;
+        case '(':
+          if (regex.startsWith("(?", i) && !regex.startsWith("(?:", i)) {
+            throw new IllegalArgumentException("only plain `(...)` and `(?:...)` groups are allowed");
+          }
+          if (regex.startsWith("(?:", i)) {
+            i += 2;
+          }
+          groups.push(new Group());
+          atom = false;
+          break;
+        case ')':
+          if (groups.size() == 1) {
+            throw new IllegalArgumentException("it has an unmatched `)`");
+          }
+          closed = groups.pop();
+          // Whatever's in a group is in the groups around it too.
+          groups.peek().repeats |= closed.repeats;
+          groups.peek().alternates |= closed.alternates;
+          break;
+        case '|':
+          groups.peek().alternates = true;
+          atom = false;
+          break;
+        case '^':
+        case '$':
+          atom = false;
+          break;
+        case '*':
+        case '+':
+        case '?':
+        case '{':
+          if (!canRepeat) {
+            throw new IllegalArgumentException("it repeats something that can't be repeated");
+          }
+          // How many more times it can match than it has to, or -1 for any number.
+          int spread;
+          if (c == '{') {
+            int end = regex.indexOf('}', i);
+            if (end < 0) {
+              throw new IllegalArgumentException("it has an unclosed `{`");
+            }
+            spread = checkCount(regex.substring(i + 1, end));
+            i = end;
+          } else {
+            spread = c == '?' ? 1 : -1;
+          }
+          // Lazy and possessive repetitions backtrack just as much.
+          if (i + 1 < regex.length() && (regex.charAt(i + 1) == '?' || regex.charAt(i + 1) == '+')) {
+            i++;
+          }
+          if (lastGroup != null && (lastGroup.repeats || lastGroup.alternates)) {
+            throw new IllegalArgumentException(
+              "a repeated or optional group can't have repetition, `?`, or alternation inside it");
+          }
+          if (spread == 1 && ++optional > MAX_OPTIONAL) {
+            throw new IllegalArgumentException("it has more than " + MAX_OPTIONAL + " optional parts");
+          }
+          if (spread < 0 || spread > 1) {
+            if (repeatsFreely) {
+              throw new IllegalArgumentException("it can only have one `*`, `+`, `{n,}`, or `{n,m}`");
+            }
+            repeatsFreely = true;
+          }
+          groups.peek().repeats = true;
+          lastGroup = null;
+          canRepeat = false;
+          continue;
+        default:
+          break;
+      }
+      lastGroup = closed;
+      canRepeat = atom;
+    }
+    if (groups.size() != 1) {
+      throw new IllegalArgumentException("it has an unclosed `(`");
+    }
+  }
+
+  // Check the `n`, `n,`, or `n,m` inside `{...}`, and say how many more times than `n` it can match (-1 for any).
+  private static int checkCount(String count) {
+    String[] bounds = count.split(",", -1);
+    if (bounds.length > 2) {
+      throw new IllegalArgumentException("`{" + count + "}` isn't a legal count");
+    }
+    try {
+      for (String bound : bounds) {
+        if (!bound.isEmpty() && Integer.parseInt(bound.trim()) > MAX_COUNT) {
+          throw new IllegalArgumentException("counts in `{...}` can be at most " + MAX_COUNT);
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("`{" + count + "}` isn't a legal count", e);
+    }
+    if (bounds.length == 1) {
+      return 0;
+    }
+    if (bounds[1].isEmpty()) {
+      return -1;
+    }
+    int min = bounds[0].isEmpty() ? 0 : Integer.parseInt(bounds[0].trim());
+    return Math.max(0, Integer.parseInt(bounds[1].trim()) - min);
+  }
+
+  // The index of the `]` that closes the character class starting at `start`.
+  private static int endOfClass(String regex, int start) {
+    int i = start + 1;
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      i++;
+    }
+    // A `]` straight after the `[` (or `[^`) is part of the class.
+    if (i < regex.length() && regex.charAt(i) == ']') {
+      i++;
+    }
+    for (; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        throw new IllegalArgumentException("nested character classes aren't allowed");
+      } else if (c == ']') {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("it has an unclosed `[`");
+  }
+}
@@ -0,0 +1,26 @@
+package umm3601.storage;
+
+/**
+ * One of the fields a `Query` sorts its results by.
+ *
+ * @param field the name of the field to sort by
+ * @param descending `true` to sort from largest to smallest
+ */
+public record SortKey(String field, boolean descending) {
+
+  /**
+   * @param field the name of the field to sort by
+   * @return a key that sorts by `field`, smallest first
+   */
+  public static SortKey ascending(String field) {
+    return new SortKey(field, false);
+  }
+
+  /**
+   * @param field the name of the field to sort by
+   * @return a key that sorts by `field`, largest first
+   */
+  public static SortKey descending(String field) {
+    return new SortKey(field, true);
+  }
+}
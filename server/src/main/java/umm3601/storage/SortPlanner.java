@@ -0,0 +1,258 @@
+package umm3601.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+
+/**
+ * Turns the sort a client asks for into `SortKey`s, checking it against
+ * the indexes the collection is declared to have.
+ *
+ * A sort is a comma-separated list of fields, most significant first, each
+ * optionally prefixed with `-` to sort it largest first (or suffixed with
+ * `:asc` or `:desc`), e.g., `owner,-status`. Fields without a direction use
+ * the request's default one. Only the fields in the whitelist can be sorted
+ * on, and `_id` is always added at the end as a tie-breaker, so that items
+ * that are equal in every other key still come back in the same order
+ * every time (which paging through results depends on).
+ *
+ * MongoDB can only return a sort without sorting in memory (and running
+ * into its memory limit on big collections) if an index has the same keys
+ * in the same order, as a prefix, with either the same directions or all of
+ * them reversed. Sorts that no declared index supports are either rejected
+ * or allowed to spill to disk (`Query.allowDiskUse()`), and either way
+ * they're counted, so we can tell which indexes we're missing. (This
+ * doesn't give credit for equality filters on an index's leading fields,
+ * so it errs on the side of calling a sort unindexed.) A query with
+ * conditions that ignore case runs with a case-insensitive collation, and
+ * then only the indexes with that collation count. That includes the
+ * `_id` index, which has the default collation like every other index
+ * MongoDB builds for us, so under the case-insensitive collation even a
+ * sort by just `_id` needs an index of our own.
+ */
+public class SortPlanner {
+
+  /** The most keys a client can sort by. */
+  public static final int MAX_KEYS = 4;
+
+  private static final String ID = "_id";
+
+  /**
+   * How many sorts have been planned, by what their plan was.
+   *
+   * @param indexed how many an index supported
+   * @param onDisk how many no index supported, and were allowed to spill to disk
+   * @param rejected how many were rejected, as unindexed or not allowed
+   */
+  public record Stats(long indexed, long onDisk, long rejected) {
+  }
+
+  private final Set<String> fields;
+  // The indexes with the default collation, including the one on `_id`.
+  private final List<List<SortKey>> indexes;
+  // The indexes with the case-insensitive collation, which don't include `_id`'s.
+  private final List<List<SortKey>> caseInsensitiveIndexes;
+  private final boolean allowDiskUse;
+
+  private final LongAdder indexed = new LongAdder();
+  private final LongAdder onDisk = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Make a planner.
+   *
+   * @param fields the fields clients can sort by (`_id` is always allowed)
+   * @param indexes the keys of the collection's indexes (besides the one
+   *   on `_id`, which every collection has)
+   * @param allowDiskUse `true` to run sorts no index supports with
+   *   `allowDiskUse`, or `false` to reject them
+   */
+  public SortPlanner(Set<String> fields, List<List<SortKey>> indexes, boolean allowDiskUse) {
+    this(fields, indexes, List.of(), allowDiskUse);
+  }
+
+  /**
+   * Make a planner for a collection that also has indexes with the
+   * case-insensitive collation (`MongoQueries.CASE_INSENSITIVE`).
+   *
+   * @param fields the fields clients can sort by (`_id` is always allowed)
+   * @param indexes the keys of the collection's indexes (besides the one
+   *   on `_id`, which every collection has)
+   * @param caseInsensitiveIndexes the keys of its case-insensitive indexes
+   * @param allowDiskUse `true` to run sorts no index supports with
+   *   `allowDiskUse`, or `false` to reject them
+   */
+  public SortPlanner(Set<String> fields, List<List<SortKey>> indexes, List<List<SortKey>> caseInsensitiveIndexes,
+      boolean allowDiskUse) {
+    this.fields = fields;
+    this.indexes = new ArrayList<>(indexes);
+    this.indexes.add(List.of(SortKey.ascending(ID)));
+    this.caseInsensitiveIndexes = caseInsensitiveIndexes;
+    this.allowDiskUse = allowDiskUse;
+  }
+
+  /**
+   * Build the index for a list of keys, e.g., for creating it.
+   *
+   * @param keys the keys of the index, most significant first
+   * @return a model of the index
+   */
+  public static IndexModel indexModel(List<SortKey> keys) {
+    return new IndexModel(indexKeys(keys));
+  }
+
+  /**
+   * Build the case-insensitive index for a list of keys, e.g., for creating
+   * it. Its name ends in `_ci`, so it can sit alongside an index with the
+   * same keys and the default collation.
+   *
+   * @param keys the keys of the index, most significant first
+   * @return a model of the index, with the `MongoQueries.CASE_INSENSITIVE` collation
+   */
+  public static IndexModel caseInsensitiveIndexModel(List<SortKey> keys) {
+    StringBuilder name = new StringBuilder();
+    for (SortKey key : keys) {
+      name.append(key.field()).append(key.descending() ? "_-1_" : "_1_");
+    }
+    name.append("ci");
+    return new IndexModel(indexKeys(keys),
+      new IndexOptions().collation(MongoQueries.CASE_INSENSITIVE).name(name.toString()));
+  }
+
+  private static Document indexKeys(List<SortKey> keys) {
+    Document document = new Document();
+    for (SortKey key : keys) {
+      document.append(key.field(), key.descending() ? -1 : 1);
+    }
+    return document;
+  }
+
+  /**
+   * Add the sort a client asked for to a query.
+   *
+   * @param query the query to add the sort to
+   * @param sort the fields to sort by, e.g., `owner,-status`
+   * @param descendingByDefault whether fields without a direction are sorted largest first
+   * @return the query, so calls can be chained
+   * @throws IllegalArgumentException if the sort isn't allowed, or no index supports it
+   *   (and sorting on disk isn't allowed)
+   */
+  public Query sort(Query query, String sort, boolean descendingByDefault) {
+    List<SortKey> keys;
+    try {
+      keys = parse(sort, descendingByDefault);
+    } catch (IllegalArgumentException e) {
+      rejected.increment();
+      throw e;
+    }
+    if (isIndexed(keys, MongoQueries.collation(query) != null)) {
+      indexed.increment();
+    } else if (allowDiskUse) {
+      onDisk.increment();
+      query.allowDiskUse(true);
+    } else {
+      rejected.increment();
+      throw new IllegalArgumentException("there's no index for sorting by " + sort);
+    }
+    for (SortKey key : keys) {
+      query.sortBy(key);
+    }
+    return query;
+  }
+
+  /**
+   * Parse a sort into keys, with `_id` added at the end.
+   *
+   * @param sort the fields to sort by, e.g., `owner,-status`
+   * @param descendingByDefault whether fields without a direction are sorted largest first
+   * @return the keys to sort by, ending with `_id`
+   * @throws IllegalArgumentException if the sort isn't allowed
+   */
+  List<SortKey> parse(String sort, boolean descendingByDefault) {
+    String[] parts = sort.split(",", -1);
+    if (parts.length > MAX_KEYS) {
+      throw new IllegalArgumentException("can't sort by more than " + MAX_KEYS + " fields");
+    }
+    List<SortKey> keys = new ArrayList<>();
+    for (String part : parts) {
+      String field = part.trim();
+      boolean descending = descendingByDefault;
+      if (field.startsWith("-")) {
+        field = field.substring(1);
+        descending = true;
+      } else if (field.endsWith(":desc")) {
+        field = field.substring(0, field.length() - ":desc".length());
+        descending = true;
+      } else if (field.endsWith(":asc")) {
+        field = field.substring(0, field.length() - ":asc".length());
+        descending = false;
+      }
+      if (!field.equals(ID) && !fields.contains(field)) {
+        throw new IllegalArgumentException("can't sort by '" + field + "'; try one of " + fields);
+      }
+      for (SortKey key : keys) {
+        if (key.field().equals(field)) {
+          throw new IllegalArgumentException("can't sort by '" + field + "' twice");
+        }
+      }
+      keys.add(new SortKey(field, descending));
+      if (field.equals(ID)) {
+        // `_id`s are unique, so nothing after it would make any difference.
+        return keys;
+      }
+    }
+    // Break ties by `_id`, in the same direction as the last key, so an index
+    // on the same fields plus `_id` can be read forwards or backwards.
+    keys.add(new SortKey(ID, keys.get(keys.size() - 1).descending()));
+    return keys;
+  }
+
+  /**
+   * Check whether one of the declared indexes can return items in this order.
+   *
+   * An index only counts if it has the same collation as the query, since
+   * MongoDB won't read one with a different collation to return a sort.
+   *
+   * @param keys the keys to sort by
+   * @param caseInsensitive whether the query is run with the case-insensitive collation
+   * @return `true` if an index supports the sort
+   */
+  boolean isIndexed(List<SortKey> keys, boolean caseInsensitive) {
+    for (List<SortKey> index : caseInsensitive ? caseInsensitiveIndexes : indexes) {
+      if (supports(index, keys)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean supports(List<SortKey> index, List<SortKey> keys) {
+    if (keys.size() > index.size()) {
+      return false;
+    }
+    // The index can be read backwards, so it's enough for every key to agree
+    // with it, or every key to disagree.
+    boolean reversed = keys.get(0).descending() != index.get(0).descending();
+    for (int i = 0; i < keys.size(); i++) {
+      SortKey key = keys.get(i);
+      SortKey indexKey = index.get(i);
+      if (!key.field().equals(indexKey.field()) || (key.descending() != indexKey.descending()) != reversed) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return how many sorts have been planned, by what their plan was
+   */
+  public Stats stats() {
+    return new Stats(indexed.sum(), onDisk.sum(), rejected.sum());
+  }
+}
@@ -0,0 +1,77 @@
+package umm3601.storage;
+
+import java.util.Locale;
+
+/**
+ * How a text filter, like `owner` on todos or `company` on users, matches
+ * the field, as chosen with `?match=`. Every endpoint with text filters
+ * takes the same names (the enum constants, in lower case), though each
+ * picks its own default.
+ *
+ * `REGEX` and `LITERAL` look anywhere in the field, so they have to check
+ * every item. `EXACT` and `PREFIX` ignore case with the case-insensitive
+ * collation rather than a regex, so they can use the `_ci` indexes.
+ */
+public enum TextMatch {
+  /** A regex found anywhere in the field, ignoring case; only ones `SafeRegex` allows. */
+  REGEX,
+  /** Plain text found anywhere in the field, ignoring case. */
+  LITERAL,
+  /** The whole field, ignoring case. */
+  EXACT,
+  /** The start of the field, ignoring case. */
+  PREFIX;
+
+  /**
+   * Parse a match from its (case-insensitive) name.
+   *
+   * @param name the name, e.g., "prefix"
+   * @return the match
+   * @throws IllegalArgumentException if there's no match with that name
+   */
+  public static TextMatch of(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * @return the names of all the matches, for error messages, e.g.,
+   *   `'regex', 'literal', 'exact', or 'prefix'`
+   */
+  public static String names() {
+    StringBuilder names = new StringBuilder();
+    TextMatch[] matches = values();
+    for (int i = 0; i < matches.length; i++) {
+      if (i > 0) {
+        names.append(i == matches.length - 1 ? ", or " : ", ");
+      }
+      names.append('\'').append(matches[i]).append('\'');
+    }
+    return names.toString();
+  }
+
+  /**
+   * The condition for matching `value` against a field this way.
+   *
+   * @param field the field to match
+   * @param value the text (or, for `REGEX`, the pattern) to look for
+   * @return the condition
+   * @throws IllegalArgumentException if this is `REGEX` and `value` isn't a
+   *   regex `SafeRegex` allows
+   */
+  public Condition condition(String field, String value) {
+    return switch (this) {
+      case REGEX -> Condition.matches(field, SafeRegex.compile(value));
+      case LITERAL -> Condition.matches(field, SafeRegex.literal(value));
+      case EXACT -> Condition.eqIgnoreCase(field, value);
+      case PREFIX -> Condition.startsWithIgnoreCase(field, value);
+    };
+  }
+
+  /**
+   * @return the name used in query parameters, e.g., "prefix"
+   */
+  @Override
+  public String toString() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,95 @@
+package umm3601.storage;
+
+import java.util.Comparator;
+
+/**
+ * Helpers for comparing field values the way MongoDB does, so the
+ * in-memory store sorts and matches the same way the database would.
+ */
+public class Values {
+
+  /**
+   * Orders values like MongoDB's sort does: `null` (i.e., a missing field)
+   * first, then numbers, then strings, then booleans. Values of the same
+   * kind are compared naturally.
+   */
+  public static final Comparator<Object> MONGO_ORDER = Values::compare;
+
+  private static final int NULL_RANK = 0;
+  private static final int NUMBER_RANK = 1;
+  private static final int STRING_RANK = 2;
+  private static final int BOOLEAN_RANK = 3;
+  private static final int OTHER_RANK = 4;
+
+  /**
+   * Convert a value to a canonical form so that equal values are `equals()`,
+   * e.g., `25`, `25L` and `25.0` are all the same number to MongoDB.
+   *
+   * @param value a field value
+   * @return the canonical form of that value
+   */
+  public static Object normalize(Object value) {
+    if (value instanceof Number) {
+      double number = ((Number) value).doubleValue();
+      if (number == Math.rint(number) && !Double.isInfinite(number)) {
+        return (long) number;
+      }
+      return number;
+    }
+    return value;
+  }
+
+  /**
+   * Compare two field values in MongoDB sort order.
+   *
+   * @param a the first value
+   * @param b the second value
+   * @return a negative number, zero, or a positive number as `a` sorts before,
+   *   the same as, or after `b`
+   */
+  public static int compare(Object a, Object b) {
+    int rankA = rank(a);
+    int rankB = rank(b);
+    if (rankA != rankB) {
+      return Integer.compare(rankA, rankB);
+    }
+    switch (rankA) {
+      case NULL_RANK:
+        return 0;
+      case NUMBER_RANK:
+        return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+      case STRING_RANK:
+        return ((String) a).compareTo((String) b);
+      case BOOLEAN_RANK:
+        return Boolean.compare((Boolean) a, (Boolean) b);
+      default:
+        return a.toString().compareTo(b.toString());
+    }
+  }
+
+  /**
+   * Whether a range comparison can match: MongoDB's `$gt`, `$lt`, etc.,
+   * only match values of the same kind as the bound, so, e.g., no string is
+   * `$gte` a number, and a missing field is never in a range.
+   *
+   * @param value a field value
+   * @param bound the bound of the range
+   * @return `true` if both are present and of the same kind
+   */
+  public static boolean sameKind(Object value, Object bound) {
+    return value != null && bound != null && rank(value) == rank(bound);
+  }
+
+  private static int rank(Object value) {
+    if (value == null) {
+      return NULL_RANK;
+    } else if (value instanceof Number) {
+      return NUMBER_RANK;
+    } else if (value instanceof String) {
+      return STRING_RANK;
+    } else if (value instanceof Boolean) {
+      return BOOLEAN_RANK;
+    }
+    return OTHER_RANK;
+  }
+}
@@ -0,0 +1,31 @@
+package umm3601.storage;
+
+/**
+ * A single write to a repository, so writes can be collected up and
+ * applied together with `Repository.writeAll()`.
+ *
+ * @param <T> the type of the items in the repository
+ */
+public sealed interface Write<T> {
+
+  /**
+   * Add a new item. The item should already have its `_id` set, so the
+   * caller knows what it is without waiting to hear back from the store.
+   *
+   * @param item the item to add
+   * @param <T> the type of the item
+   */
+  record Insert<T>(T item) implements Write<T> {
+  }
+
+  /**
+   * Set one field of an existing item.
+   *
+   * @param id the ID of the item to change
+   * @param field the field to set
+   * @param value the new value of the field
+   * @param <T> the type of the item
+   */
+  record Update<T>(String id, String field, Object value) implements Write<T> {
+  }
+}
@@ -0,0 +1,365 @@
+package umm3601.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import umm3601.JsonMappers;
+
+/**
+ * A repository that accepts new items by appending them to a local
+ * `WriteLog`, and adds them to another ("backing") repository, like a
+ * `MongoUserRepository`, later.
+ *
+ * If the database is slow or briefly unavailable (say, during a replica set
+ * failover), inserts still succeed straight away, since all they wait for is
+ * the log. A background thread drains the log into the backing repository in
+ * batches, retrying (with a growing delay) until the database is back, and
+ * only moves the log's checkpoint forward once a batch is safely in. If the
+ * server stops before then, whatever is left in the log is drained when it
+ * starts again (and can be found by ID until it is).
+ *
+ * A record in the log that can't be read back as an item would stop the
+ * drain for good, so it's set aside instead (see `WriteLog.setAside()`), and
+ * reported on standard error. If the log itself is in trouble (say, the disk
+ * is full, so the checkpoint can't be saved), the drainer keeps retrying, but
+ * inserts fail until it's working again, rather than being acknowledged with
+ * nothing to drain them.
+ *
+ * Items get their `_id` before they go in the log, so a batch that's
+ * inserted twice (because we stopped after inserting it but before saving
+ * the checkpoint) just has its duplicates skipped.
+ *
+ * Reads go to the backing repository, so items only show up in `find()`
+ * once they've been drained, although `findById()` also looks at the items
+ * still in the log. Deletes and updates need to know whether their item
+ * exists, so they wait for the log to drain and then go straight to the
+ * backing repository.
+ *
+ * @param <T> the type of the items in the repository
+ */
+public class WriteBehindRepository<T> implements Repository<T>, Closeable {
+
+  public static final int DRAIN_BATCH_SIZE = 500;
+
+  // How long the drainer sleeps when there's nothing to do (it's also woken
+  // by every insert), and how long it waits before retrying a failed batch.
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindRepository.class);
+
+  private static final long IDLE_MILLIS = 100;
+  private static final long MIN_RETRY_MILLIS = 50;
+  private static final long MAX_RETRY_MILLIS = 5_000;
+
+  // How long deletes and updates wait for the log to drain.
+  private static final long DRAIN_TIMEOUT_MILLIS = 10_000;
+
+  private final Repository<T> backing;
+  private final WriteLog log;
+  private final Class<T> type;
+  private final Function<T, String> assignId;
+  private final ObjectMapper mapper = JsonMappers.http();
+
+  // The items that are in the log but haven't been drained yet, by ID.
+  private final Map<String, T> pending = new ConcurrentHashMap<>();
+
+  // Used to wake the drainer when there's work, and to tell anyone waiting
+  // for the log to drain that the checkpoint has moved.
+  private final Object signal = new Object();
+  private final Thread drainer;
+  private volatile boolean closed;
+  // Why the drainer couldn't get through the log the last time it tried, or
+  // `null` if it could.
+  private volatile Exception failure;
+
+  /**
+   * Construct a write-behind repository, and start draining anything
+   * already in the log into the backing repository.
+   *
+   * @param backing the repository that items are eventually added to, and that reads go to
+   * @param log the log that new items are written to first
+   * @param type the class of the items, for reading them back from the log
+   * @param assignId gives an item an `_id` if it doesn't already have one, and returns it
+   * @throws UncheckedIOException if what's already in the log can't be read
+   */
+  public WriteBehindRepository(Repository<T> backing, WriteLog log, Class<T> type, Function<T, String> assignId) {
+    this.backing = backing;
+    this.log = log;
+    this.type = type;
+    this.assignId = assignId;
+    // What was left in the log last time can still be found by ID until it's drained.
+    try {
+      List<WriteLog.Entry> entries = log.read(log.checkpoint(), DRAIN_BATCH_SIZE);
+      while (!entries.isEmpty()) {
+        for (WriteLog.Entry entry : entries) {
+          T item = decode(entry);
+          if (item != null) {
+            pending.put(assignId.apply(item), item);
+          }
+        }
+        entries = log.read(entries.get(entries.size() - 1).next(), DRAIN_BATCH_SIZE);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't read the write log", e);
+    }
+    drainer = new Thread(this::drain, "write-behind-" + type.getSimpleName());
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public T findById(String id) {
+    T item = pending.get(id);
+    return item != null ? item : backing.findById(id);
+  }
+
+  @Override
+  public List<T> findByIds(Collection<String> ids) {
+    List<T> items = new ArrayList<>();
+    List<String> drained = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      T item = pending.get(id);
+      if (item != null) {
+        items.add(item);
+      } else {
+        drained.add(id);
+      }
+    }
+    if (!drained.isEmpty()) {
+      items.addAll(backing.findByIds(drained));
+    }
+    return items;
+  }
+
+  @Override
+  public List<T> find(Query query) {
+    return backing.find(query);
+  }
+
+  @Override
+  public String findJsonById(String id) throws IOException {
+    T item = pending.get(id);
+    return item != null ? mapper.writeValueAsString(item) : backing.findJsonById(id);
+  }
+
+  @Override
+  public void writeJson(Query query, OutputStream out) throws IOException {
+    backing.writeJson(query, out);
+  }
+
+  @Override
+  public void writeNdjson(Query query, int batchSize, OutputStream out) throws IOException {
+    backing.writeNdjson(query, batchSize, out);
+  }
+
+  @Override
+  public void forEachId(Consumer<String> action) {
+    // Anything drained while we're listing the backing repository might be
+    // listed twice, which is fine for building an index.
+    pending.keySet().forEach(action);
+    backing.forEachId(action);
+  }
+
+  @Override
+  public QueryPlan explain(Query query, long maxTimeMillis) {
+    return backing.explain(query, maxTimeMillis);
+  }
+
+  @Override
+  public List<T> sample(Query query, int n) {
+    return backing.sample(query, n);
+  }
+
+  @Override
+  public long count() {
+    return backing.count();
+  }
+
+  /**
+   * Add a new item to the log, to be added to the backing repository
+   * later. The item's `_id` is set as a side effect.
+   *
+   * @param item the item to add
+   * @throws UncheckedIOException if the item can't be written to the log,
+   *   or the log isn't being drained
+   */
+  @Override
+  public void insert(T item) {
+    if (!isHealthy()) {
+      throw new UncheckedIOException(new IOException("The write log isn't being drained", failure));
+    }
+    String id = assignId.apply(item);
+    try {
+      byte[] json = mapper.writeValueAsBytes(item);
+      pending.put(id, item);
+      log.append(json);
+    } catch (IOException e) {
+      pending.remove(id);
+      throw new UncheckedIOException("Couldn't add the new item to the write log", e);
+    }
+    synchronized (signal) {
+      signal.notifyAll();
+    }
+  }
+
+  @Override
+  public int insertAll(List<T> items) {
+    for (T item : items) {
+      insert(item);
+    }
+    return items.size();
+  }
+
+  @Override
+  public boolean update(String id, String field, Object value) {
+    awaitDrained();
+    return backing.update(id, field, value);
+  }
+
+  @Override
+  public List<Boolean> writeAll(List<Write<T>> writes) {
+    awaitDrained();
+    return backing.writeAll(writes);
+  }
+
+  @Override
+  public boolean deleteById(String id) {
+    awaitDrained();
+    return backing.deleteById(id);
+  }
+
+  /**
+   * @return whether the log is being drained, so that new items will (once
+   *   the backing repository is available) be added to it
+   */
+  public boolean isHealthy() {
+    return failure == null && drainer.isAlive();
+  }
+
+  /**
+   * Wait until everything that's in the log now has been added to the
+   * backing repository.
+   *
+   * @throws IllegalStateException if that takes too long, e.g., because
+   *   the database is down
+   */
+  public void awaitDrained() {
+    WriteLog.Position end = log.end();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+    synchronized (signal) {
+      signal.notifyAll();
+      while (log.checkpoint().compareTo(end) < 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          throw new IllegalStateException("Timed out waiting for the write log to drain");
+        }
+        try {
+          signal.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for the write log to drain", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop draining the log. Anything left in it is drained the next time
+   * a `WriteBehindRepository` is opened on the same log.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    drainer.interrupt();
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log.close();
+  }
+
+  private void drain() {
+    long retryMillis = MIN_RETRY_MILLIS;
+    while (!closed) {
+      try {
+        List<WriteLog.Entry> entries = log.read(log.checkpoint(), DRAIN_BATCH_SIZE);
+        if (entries.isEmpty()) {
+          failure = null;
+          synchronized (signal) {
+            signal.notifyAll();
+            if (log.isDrained()) {
+              signal.wait(IDLE_MILLIS);
+            }
+          }
+          continue;
+        }
+        List<T> items = new ArrayList<>(entries.size());
+        for (WriteLog.Entry entry : entries) {
+          try {
+            items.add(mapper.readValue(entry.data(), type));
+          } catch (IOException e) {
+            log.setAside(entry.data());
+            LOGGER.warn("Set aside a write log record that isn't a {}", type.getSimpleName(), e);
+          }
+        }
+        if (!items.isEmpty()) {
+          try {
+            backing.insertAll(items);
+          } catch (RuntimeException e) {
+            // Probably the database is unavailable; try the same batch again later.
+            Thread.sleep(retryMillis);
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            continue;
+          }
+        }
+        log.checkpoint(entries.get(entries.size() - 1).next());
+        failure = null;
+        retryMillis = MIN_RETRY_MILLIS;
+        for (T item : items) {
+          pending.remove(assignId.apply(item));
+        }
+        synchronized (signal) {
+          signal.notifyAll();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        // The log itself is in trouble. Retrying might not fix that, but
+        // giving up certainly won't, and inserts fail until it's fixed.
+        if (failure == null) {
+          LOGGER.error("Couldn't drain the write log, retrying", e);
+        }
+        failure = e;
+        try {
+          Thread.sleep(retryMillis);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+        retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+      }
+    }
+  }
+
+  // The item in a log record, or `null` if it isn't one (so it has to be set aside).
+  private T decode(WriteLog.Entry entry) {
+    try {
+      return mapper.readValue(entry.data(), type);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package umm3601.storage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers single-item writes from concurrent requests into batches, and
+ * applies each batch with one `Repository.writeAll()` call ("group commit").
+ *
+ * When lots of clients each send one small write, doing a database round
+ * trip per request means throughput is limited by round trips, not by how
+ * much the database can actually do. Here each write is put on a queue, and
+ * a single background thread takes the first write off the queue, waits up
+ * to `window` for more to arrive (or until it has `maxBatchSize`), and then
+ * writes them all at once. Every caller still gets its own result back.
+ *
+ * Under light load that adds at most `window` to a write's latency; under
+ * heavy load the batches fill up straight away and there's no waiting at all.
+ *
+ * A coalescer with a `maxBatchSize` of 1 doesn't batch anything: each write
+ * is applied straight away, on the caller's thread.
+ *
+ * @param <T> the type of the items in the repository
+ */
+public class WriteCoalescer<T> implements Closeable {
+
+  /**
+   * A write that's waiting to be applied, and where its result goes.
+   */
+  private record Pending<T>(Write<T> write, CompletableFuture<Boolean> result) {
+  }
+
+  private final Repository<T> repository;
+  private final int maxBatchSize;
+  private final long windowNanos;
+  private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+  private Thread writer;
+  private boolean closed;
+
+  /**
+   * Construct a coalescer for the given repository.
+   *
+   * @param repository where to apply the writes
+   * @param maxBatchSize the most writes to apply at once
+   * @param window how long to wait for more writes to arrive after the first
+   *   one in a batch
+   * @param unit the unit of `window`
+   */
+  public WriteCoalescer(Repository<T> repository, int maxBatchSize, long window, TimeUnit unit) {
+    if (maxBatchSize < 1 || window < 0) {
+      throw new IllegalArgumentException("The batch size must be positive, and the window can't be negative");
+    }
+    this.repository = repository;
+    this.maxBatchSize = maxBatchSize;
+    this.windowNanos = unit.toNanos(window);
+  }
+
+  /**
+   * Construct a coalescer that doesn't batch anything, and applies each
+   * write straight away.
+   *
+   * @param repository where to apply the writes
+   * @param <T> the type of the items in the repository
+   * @return a coalescer with a batch size of 1
+   */
+  public static <T> WriteCoalescer<T> direct(Repository<T> repository) {
+    return new WriteCoalescer<>(repository, 1, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Queue a write to be applied with the next batch.
+   *
+   * @param write the write to apply
+   * @return the write's result: whether it succeeded (see `Repository.writeAll()`)
+   */
+  public CompletableFuture<Boolean> submit(Write<T> write) {
+    if (maxBatchSize == 1) {
+      try {
+        return CompletableFuture.completedFuture(repository.writeAll(List.of(write)).get(0));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+    Pending<T> pending = new Pending<>(write, new CompletableFuture<>());
+    if (!enqueue(pending)) {
+      return CompletableFuture.failedFuture(new IllegalStateException("The write coalescer was closed"));
+    }
+    return pending.result();
+  }
+
+  /**
+   * Apply a write with the next batch, and wait for it to finish.
+   *
+   * @param write the write to apply
+   * @return whether the write succeeded (see `Repository.writeAll()`)
+   */
+  public boolean write(Write<T> write) {
+    try {
+      return submit(write).join();
+    } catch (CompletionException e) {
+      // Rethrow what actually went wrong (say, a `MongoException`), so it's
+      // handled just like it would have been without the coalescer.
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  // Queue a write for the background thread, unless we've been closed. This
+  // holds the same lock as `close()`, so a write is either queued before the
+  // thread is interrupted (and then failed along with the rest of the queue),
+  // or not queued at all, never left waiting for a thread that's gone. It
+  // starts the thread the first time it's needed, so coalescers that never
+  // see a write don't cost a thread.
+  private synchronized boolean enqueue(Pending<T> pending) {
+    if (closed) {
+      return false;
+    }
+    if (writer == null) {
+      writer = new Thread(this::run, "write-coalescer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+    queue.add(pending);
+    return true;
+  }
+
+  private void run() {
+    List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+    try {
+      while (true) {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+          Pending<T> next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        apply(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // We've been closed; fail whatever's left so nobody waits forever.
+      batch.addAll(queue);
+      for (Pending<T> pending : batch) {
+        pending.result().completeExceptionally(new IllegalStateException("The write coalescer was closed"));
+      }
+    }
+  }
+
+  private void apply(List<Pending<T>> batch) {
+    List<Write<T>> writes = new ArrayList<>(batch.size());
+    for (Pending<T> pending : batch) {
+      writes.add(pending.write());
+    }
+    try {
+      List<Boolean> results = repository.writeAll(writes);
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).result().complete(results.get(i));
+      }
+    } catch (RuntimeException e) {
+      // If the whole batch failed (say, the database is down), so did each write.
+      for (Pending<T> pending : batch) {
+        pending.result().completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Stop the background thread. Writes that haven't been applied yet fail.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (writer != null) {
+      writer.interrupt();
+    }
+  }
+}
@@ -0,0 +1,341 @@
+package umm3601.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A durable, append-only log of records (arbitrary byte arrays), kept in a
+ * directory of memory-mapped segment files.
+ *
+ * Appending a record is just a copy into a mapped page (plus, if `sync` is
+ * on, an `msync` of that page), so it's fast and, unlike a database call,
+ * takes the same time whatever state the database is in. Records are read
+ * back in order from a checkpoint, which whoever is consuming the log moves
+ * forward (and which is saved, so it survives restarts) once it has dealt
+ * with them. Segments entirely before the checkpoint are deleted.
+ *
+ * Each record is stored as its length, a CRC-32 of its bytes, and then the
+ * bytes. The length is written last, and the segment files start out full of
+ * zeros, so a record that was only partly written when the process died
+ * either has a length of zero or fails its checksum; either way it (and
+ * anything after it) is ignored when the log is opened again, and new
+ * records are written over it.
+ *
+ * The checkpoint is saved by writing a new file, flushing it to disk, and
+ * renaming it over the old one (then flushing the directory, so the rename
+ * itself survives a crash), so there's always a whole checkpoint to read.
+ */
+public class WriteLog implements Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  // Each record starts with its length and checksum, as two ints.
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final String SET_ASIDE_FILE = "rejected";
+
+  /**
+   * A place in the log: a segment and an offset within it.
+   *
+   * @param segment the segment's sequence number
+   * @param offset the offset of a record in the segment
+   */
+  public record Position(long segment, int offset) implements Comparable<Position> {
+    @Override
+    public int compareTo(Position other) {
+      int bySegment = Long.compare(segment, other.segment);
+      return bySegment != 0 ? bySegment : Integer.compare(offset, other.offset);
+    }
+  }
+
+  /**
+   * A record read from the log.
+   *
+   * @param data the record's bytes
+   * @param next the position just after the record, i.e., the checkpoint
+   *   to save once this record has been dealt with
+   */
+  public record Entry(byte[] data, Position next) {
+  }
+
+  private final Path directory;
+  private final int segmentSize;
+  private final boolean sync;
+
+  private long writeSegment;
+  private MappedByteBuffer writeBuffer;
+  private Position checkpoint;
+  // Read-only mappings of the older segments we're still reading from.
+  private final Map<Long, ByteBuffer> readBuffers = new HashMap<>();
+
+  /**
+   * Open the log in the given directory, creating it if need be. Any
+   * records after the saved checkpoint are there to be read again.
+   *
+   * @param directory where to keep the log's files
+   * @param segmentSize the size of each segment file, which is also the
+   *   most space a single record (plus 8 bytes) can take
+   * @param sync whether to flush each record to disk before `append()`
+   *   returns, so it survives the machine (and not just the process) crashing
+   * @throws IOException if there's a problem with the log's files
+   */
+  public WriteLog(Path directory, int segmentSize, boolean sync) throws IOException {
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("The segment size must be more than " + HEADER_SIZE + " bytes");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.sync = sync;
+
+    List<Long> segments = segments();
+    checkpoint = readCheckpoint(segments.isEmpty() ? 0 : segments.get(0));
+    writeSegment = segments.isEmpty() ? checkpoint.segment() : segments.get(segments.size() - 1);
+    writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+    // Carry on writing after the last intact record.
+    Position end = new Position(writeSegment, 0);
+    Entry entry = readAt(writeBuffer, end);
+    while (entry != null) {
+      end = entry.next();
+      entry = readAt(writeBuffer, end);
+    }
+    writeBuffer.position(end.offset());
+  }
+
+  /**
+   * Add a record to the end of the log.
+   *
+   * @param data the record, which can't be empty
+   * @return the position just after the record
+   * @throws IOException if there's a problem starting a new segment
+   */
+  public synchronized Position append(byte[] data) throws IOException {
+    if (data.length == 0) {
+      // A zero length is how `readAt()` knows it's reached the end of the log.
+      throw new IllegalArgumentException("An empty record can't be told apart from the end of the log");
+    }
+    int size = HEADER_SIZE + data.length;
+    if (size > segmentSize) {
+      throw new IllegalArgumentException("A " + data.length + " byte record won't fit in a segment");
+    }
+    if (writeBuffer.remaining() < size) {
+      writeSegment++;
+      writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+    }
+    int start = writeBuffer.position();
+    writeBuffer.putInt(start + Integer.BYTES, checksum(data));
+    writeBuffer.put(start + HEADER_SIZE, data);
+    // Writing the length is what makes the record visible, so it goes last.
+    writeBuffer.putInt(start, data.length);
+    writeBuffer.position(start + size);
+    if (sync) {
+      writeBuffer.force(start, size);
+    }
+    return new Position(writeSegment, start + size);
+  }
+
+  /**
+   * Read records, in order, starting at the given position.
+   *
+   * @param from where to start reading, e.g., the `checkpoint()`
+   * @param max the most records to read
+   * @return the records (if any) from `from` on
+   * @throws IOException if there's a problem mapping a segment
+   */
+  public synchronized List<Entry> read(Position from, int max) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    Position position = from;
+    while (entries.size() < max) {
+      Entry entry = readAt(bufferFor(position.segment()), position);
+      if (entry != null) {
+        entries.add(entry);
+        position = entry.next();
+      } else if (position.segment() < writeSegment) {
+        // That's the end of an older segment, so on to the next one.
+        position = new Position(position.segment() + 1, 0);
+      } else {
+        break;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @return where to start reading records that haven't been dealt with yet
+   */
+  public synchronized Position checkpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Save a new checkpoint, once all the records before it have been dealt
+   * with, and delete any segments that are entirely before it.
+   *
+   * @param position the new checkpoint, e.g., the `next()` of the last record dealt with
+   * @throws IOException if there's a problem saving the checkpoint
+   */
+  public synchronized void checkpoint(Position position) throws IOException {
+    ByteBuffer contents = ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+      .putLong(position.segment())
+      .putInt(position.offset());
+    Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      contents.flip();
+      while (contents.hasRemaining()) {
+        channel.write(contents);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, directory.resolve(CHECKPOINT_FILE),
+      StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory();
+    checkpoint = position;
+
+    for (long segment : segments()) {
+      if (segment < position.segment()) {
+        readBuffers.remove(segment);
+        Files.deleteIfExists(segmentPath(segment));
+      }
+    }
+  }
+
+  /**
+   * Keep a copy of a record that can't be dealt with (e.g., it can't be
+   * decoded), so moving the checkpoint past it doesn't lose it. The copies
+   * are appended to the `rejected` file in the log's directory, each
+   * followed by a newline (so JSON records are one per line).
+   *
+   * @param data the record
+   * @throws IOException if there's a problem writing the copy
+   */
+  public synchronized void setAside(byte[] data) throws IOException {
+    try (FileChannel channel = FileChannel.open(directory.resolve(SET_ASIDE_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer record = ByteBuffer.allocate(data.length + 1).put(data).put((byte) '\n').flip();
+      while (record.hasRemaining()) {
+        channel.write(record);
+      }
+      channel.force(true);
+    }
+  }
+
+  /**
+   * @return the position just after the last record in the log
+   */
+  public synchronized Position end() {
+    return new Position(writeSegment, writeBuffer.position());
+  }
+
+  /**
+   * @return whether every record has been dealt with (the checkpoint is at the end of the log)
+   */
+  public synchronized boolean isDrained() {
+    return checkpoint.compareTo(end()) >= 0;
+  }
+
+  @Override
+  public synchronized void close() {
+    // There's no way to unmap a buffer besides letting it be garbage
+    // collected, but we can at least make sure everything is on disk.
+    writeBuffer.force();
+    readBuffers.clear();
+  }
+
+  // The record at `position` in `buffer`, or `null` if there isn't an intact
+  // one there. This only uses absolute gets, so it doesn't move the buffer's position.
+  private Entry readAt(ByteBuffer buffer, Position position) {
+    int start = position.offset();
+    if (buffer == null || start + HEADER_SIZE > buffer.limit()) {
+      return null;
+    }
+    int length = buffer.getInt(start);
+    if (length <= 0 || length > buffer.limit() - start - HEADER_SIZE) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    buffer.get(start + HEADER_SIZE, data);
+    if (checksum(data) != buffer.getInt(start + Integer.BYTES)) {
+      return null;
+    }
+    return new Entry(data, new Position(position.segment(), start + HEADER_SIZE + length));
+  }
+
+  // Flush the directory's entries, e.g., a rename, to disk.
+  private void syncDirectory() throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // Some platforms (Windows) won't open a directory, and don't need this.
+      return;
+    }
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  private ByteBuffer bufferFor(long segment) throws IOException {
+    if (segment == writeSegment) {
+      return writeBuffer;
+    }
+    if (!readBuffers.containsKey(segment)) {
+      readBuffers.put(segment, Files.exists(segmentPath(segment)) ? map(segment, FileChannel.MapMode.READ_ONLY) : null);
+    }
+    return readBuffers.get(segment);
+  }
+
+  private MappedByteBuffer map(long segment, FileChannel.MapMode mode) throws IOException {
+    try (FileChannel channel = mode == FileChannel.MapMode.READ_WRITE
+        ? FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)
+        : FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+      // Mapping a new file for writing makes it `segmentSize` bytes of zeros.
+      long size = mode == FileChannel.MapMode.READ_WRITE ? segmentSize : channel.size();
+      return channel.map(mode, 0, size);
+    }
+  }
+
+  private Path segmentPath(long segment) {
+    return directory.resolve(String.format("%016d%s", segment, SEGMENT_SUFFIX));
+  }
+
+  private List<Long> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+        .map(file -> file.getFileName().toString())
+        .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+        .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+        .sorted()
+        .toList();
+    }
+  }
+
+  private Position readCheckpoint(long firstSegment) throws IOException {
+    Path file = directory.resolve(CHECKPOINT_FILE);
+    if (!Files.exists(file)) {
+      return new Position(firstSegment, 0);
+    }
+    ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file));
+    return new Position(contents.getLong(), contents.getInt());
+  }
+
+  private static int checksum(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,141 @@
+package umm3601.todos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import umm3601.JsonMappers;
+import umm3601.storage.InMemoryCollection;
+import umm3601.storage.Query;
+import umm3601.storage.Values;
+
+/**
+ * A `TodoRepository` that keeps all the todos in memory, with hash
+ * indexes on the fields we filter on and sorted indexes on the fields
+ * we usually sort by.
+ *
+ * This is handy for tests and benchmarks that shouldn't depend on
+ * (or be slowed down by) a real database, and for running the server
+ * as a read-only replica of a database snapshot.
+ */
+public class InMemoryTodoRepository implements TodoRepository {
+
+  private static final Map<String, Function<Todo, Object>> FIELDS = Map.of(
+    "owner", todo -> todo.owner,
+    "status", todo -> todo.status,
+    "body", todo -> todo.body,
+    "category", todo -> todo.category);
+
+  private static final TypeReference<Map<String, Object>> FIELD_MAP = new TypeReference<>() { };
+
+  private final InMemoryCollection<Todo> todos = new InMemoryCollection<>(
+    FIELDS,
+    List.of("owner", "status", "category"),
+    List.of("owner", "category", "body"));
+
+  /**
+   * Make an in-memory copy of all the todos in another repository, e.g., to
+   * serve reads from memory using a snapshot of the database.
+   *
+   * @param source the repository to copy the todos from
+   * @return a new in-memory repository containing the same todos
+   */
+  public static InMemoryTodoRepository copyOf(TodoRepository source) {
+    InMemoryTodoRepository copy = new InMemoryTodoRepository();
+    for (Todo todo : source.find(new Query())) {
+      copy.insert(todo);
+    }
+    return copy;
+  }
+
+  @Override
+  public Todo findById(String id) {
+    return todos.get(new ObjectId(id).toHexString());
+  }
+
+  @Override
+  public List<Todo> find(Query query) {
+    return todos.find(query);
+  }
+
+  @Override
+  public long count() {
+    return todos.size();
+  }
+
+  @Override
+  public TodoStats stats(Query query, int topOwners) {
+    // There's no limit on what we count, whatever the query says.
+    Query unlimited = new Query();
+    query.conditions().forEach(unlimited::where);
+    List<Todo> matching = todos.find(unlimited);
+    TodoStats stats = new TodoStats();
+    stats.total = matching.size();
+    stats.status = counts(matching, todo -> todo.status, Integer.MAX_VALUE);
+    stats.category = counts(matching, todo -> todo.category, Integer.MAX_VALUE);
+    stats.owners = counts(matching, todo -> todo.owner, topOwners);
+    return stats;
+  }
+
+  private static List<TodoStats.Count> counts(List<Todo> todos, Function<Todo, Object> field, int limit) {
+    Map<Object, Long> counts = new HashMap<>();
+    for (Todo todo : todos) {
+      counts.merge(field.apply(todo), 1L, Long::sum);
+    }
+    // The same order as the `$sort` in `MongoTodoRepository.stats()`.
+    Comparator<TodoStats.Count> order = Comparator.<TodoStats.Count>comparingLong(count -> count.count).reversed()
+      .thenComparing(count -> count._id, Values.MONGO_ORDER);
+    List<TodoStats.Count> sorted = new ArrayList<>(counts.size());
+    counts.forEach((value, count) -> sorted.add(new TodoStats.Count(value, count)));
+    sorted.sort(order);
+    return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, limit)) : sorted;
+  }
+
+  @Override
+  public void insert(Todo todo) {
+    if (todo._id == null) {
+      todo._id = new ObjectId().toHexString();
+    }
+    todos.put(todo._id, todo);
+  }
+
+  @Override
+  public int insertAll(List<Todo> batch) {
+    int added = 0;
+    for (Todo todo : batch) {
+      // Like MongoDB, we won't replace an existing todo that has the same `_id`.
+      if (todo._id == null || todos.get(todo._id) == null) {
+        insert(todo);
+        added++;
+      }
+    }
+    return added;
+  }
+
+  @Override
+  public boolean update(String id, String field, Object value) {
+    String key = new ObjectId(id).toHexString();
+    Todo existing = todos.get(key);
+    if (existing == null) {
+      return false;
+    }
+    // The collection indexes the todo by its current values, so rather than
+    // change it in place we replace it with an updated copy.
+    Map<String, Object> fields = JsonMappers.http().convertValue(existing, FIELD_MAP);
+    fields.put(field, value);
+    todos.put(key, JsonMappers.http().convertValue(fields, Todo.class));
+    return true;
+  }
+
+  @Override
+  public boolean deleteById(String id) {
+    return todos.remove(new ObjectId(id).toHexString());
+  }
+}
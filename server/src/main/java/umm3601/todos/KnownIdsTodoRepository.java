@@ -0,0 +1,45 @@
+package umm3601.todos;
+
+import java.util.concurrent.TimeUnit;
+
+import umm3601.storage.KnownIdsRepository;
+import umm3601.storage.Query;
+
+/**
+ * A `TodoRepository` that answers lookups of Todo IDs that don't exist
+ * without asking another `TodoRepository` (normally a `MongoTodoRepository`);
+ * see `KnownIdsRepository`.
+ */
+public class KnownIdsTodoRepository extends KnownIdsRepository<Todo> implements TodoRepository {
+
+  private final TodoRepository backing;
+
+  /**
+   * Construct a repository that filters lookups of Todos, reading all the
+   * Todos' IDs first.
+   *
+   * @param backing the repository to pass everything else on to
+   */
+  public KnownIdsTodoRepository(TodoRepository backing) {
+    super(backing, todo -> todo._id);
+    this.backing = backing;
+  }
+
+  /**
+   * Construct a repository that filters lookups of Todos, reading all the
+   * Todos' IDs first, and again every `refreshInterval`.
+   *
+   * @param backing the repository to pass everything else on to
+   * @param refreshInterval how often to read the IDs again
+   * @param unit the unit of `refreshInterval`
+   */
+  public KnownIdsTodoRepository(TodoRepository backing, long refreshInterval, TimeUnit unit) {
+    super(backing, todo -> todo._id, refreshInterval, unit);
+    this.backing = backing;
+  }
+
+  @Override
+  public TodoStats stats(Query query, int topOwners) {
+    return backing.stats(query, topOwners);
+  }
+}
@@ -0,0 +1,97 @@
+package umm3601.todos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Facet;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+import umm3601.storage.Deadline;
+import umm3601.storage.MongoQueries;
+import umm3601.storage.MongoRepository;
+import umm3601.storage.Query;
+import umm3601.storage.SortKey;
+
+/**
+ * A `TodoRepository` that keeps the todos in the `todos` collection
+ * of a MongoDB database.
+ */
+public class MongoTodoRepository extends MongoRepository<Todo> implements TodoRepository {
+
+  // The fields of a `Todo`, so the raw documents have the same shape as ours.
+  private static final Bson TODO_FIELDS = Projections.include("_id", "owner", "status", "body", "category");
+
+  /**
+   * The keys of the indexes the `todos` collection should have, besides
+   * the one on `_id`. Each ends in `_id`, so it can support a sort with
+   * `_id` as the tie-breaker (see `SortPlanner`), as well as filters on
+   * its first field. (The repository builds these when it's made.)
+   */
+  public static final List<List<SortKey>> INDEXES = List.of(
+    List.of(SortKey.ascending("owner"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("category"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("status"), SortKey.ascending("_id")));
+
+  /**
+   * The keys of the indexes the `todos` collection should have with the
+   * case-insensitive collation (`MongoQueries.CASE_INSENSITIVE`), for the
+   * `exact` and `prefix` matches on `owner` and `category`. (The repository builds
+   * these when it's made, too.)
+   */
+  public static final List<List<SortKey>> CASE_INSENSITIVE_INDEXES = List.of(
+    List.of(SortKey.ascending("owner"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("category"), SortKey.ascending("_id")));
+
+  /**
+   * Construct a repository for the todos in the given database.
+   *
+   * @param database the database containing Todo data
+   */
+  public MongoTodoRepository(MongoDatabase database) {
+    super(database, "todos", Todo.class, TODO_FIELDS, indexModels(INDEXES, CASE_INSENSITIVE_INDEXES));
+  }
+
+  @Override
+  public TodoStats stats(Query query, int topOwners) {
+    // `$facet` runs each of its pipelines over the same matching todos, so
+    // this is one round trip, and the filter (and whatever index it uses)
+    // is applied once, however many counts we want.
+    List<Bson> owners = new ArrayList<>(countsBy("$owner"));
+    owners.add(Aggregates.limit(topOwners));
+    return collection()
+      .aggregate(
+        List.of(
+          Aggregates.match(MongoQueries.filter(query)),
+          Aggregates.facet(
+            new Facet("total", Aggregates.count("count")),
+            new Facet("status", countsBy("$status")),
+            new Facet("category", countsBy("$category")),
+            new Facet("owners", owners)),
+          // `$count` gives an array with one document (or none, if nothing
+          // matched), so turn that into a plain number.
+          Aggregates.project(new Document("total",
+              new Document("$ifNull", List.of(new Document("$arrayElemAt", List.of("$total.count", 0)), 0)))
+            .append("status", 1)
+            .append("category", 1)
+            .append("owners", 1))),
+        TodoStats.class)
+      .collation(MongoQueries.collation(query))
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .first();
+  }
+
+  // Count the todos with each value of a field, largest count first.
+  private static List<Bson> countsBy(String field) {
+    return List.of(
+      Aggregates.group(field, Accumulators.sum("count", 1)),
+      Aggregates.sort(Sorts.orderBy(Sorts.descending("count"), Sorts.ascending("_id"))));
+  }
+}
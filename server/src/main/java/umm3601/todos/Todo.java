@@ -3,6 +3,11 @@ package umm3601.todos;
 import org.mongojack.Id;
 import org.mongojack.ObjectId;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import umm3601.storage.CreatedAt;
+
 @SuppressWarnings({"VisibilityModifier"})
 
 public class Todo {
@@ -16,6 +21,16 @@ public class Todo {
   public String owner;
   public String category;
 
+  /**
+   * @return when this was created, from its `_id` (see `CreatedAt`); this
+   *   is sent to clients, but never stored, and ignored in request bodies
+   */
+  @JsonProperty(value = CreatedAt.FIELD, access = JsonProperty.Access.READ_ONLY)
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public String getCreatedAt() {
+    return CreatedAt.of(_id);
+  }
+
 
   @Override
   public boolean equals(Object obj) {
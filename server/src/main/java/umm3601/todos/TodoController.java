@@ -1,30 +1,49 @@
 package umm3601.todos;
 
-import static com.mongodb.client.model.Filters.and;
-import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Filters.regex;
-
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
-
+import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.Set;
 
-import org.bson.Document;
-import org.bson.UuidRepresentation;
-import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
-import org.mongojack.JacksonMongoCollection;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Sorts;
 
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
+import io.javalin.http.InternalServerErrorResponse;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.NotImplementedResponse;
+import umm3601.BatchGet;
+import umm3601.BulkImport;
 import umm3601.Controller;
+import umm3601.JsonMappers;
+import umm3601.NdjsonExport;
+import umm3601.RequestDeadlines;
+import umm3601.ResponseFormat;
+import umm3601.SingleFlight;
+import umm3601.TtlCache;
+import umm3601.storage.Condition;
+import umm3601.storage.CreatedAt;
+import umm3601.storage.Deadline;
+import umm3601.storage.Query;
+import umm3601.storage.QueryPlan;
+import umm3601.storage.SafeRegex;
+import umm3601.storage.SortPlanner;
+import umm3601.storage.TextMatch;
+import umm3601.storage.Write;
+import umm3601.storage.WriteCoalescer;
+import umm3601.tracing.Span;
+import umm3601.tracing.Tracer;
 
 /**
  * Controller that manages requests for info about Todos.
@@ -32,16 +51,58 @@ import umm3601.Controller;
 public class TodoController implements Controller {
 
   private static final String API_TODOS = "/api/todos";
+  private static final String API_TODOS_EXPORT = "/api/todos/export";
+  private static final String API_TODOS_EXPLAIN = "/api/todos/explain";
+  private static final String API_TODOS_STATS = "/api/todos/stats";
+  private static final String API_TODOS_SAMPLE = "/api/todos/sample";
+  private static final String API_TODOS_IMPORT = "/api/todos/import";
   private static final String API_TODO_BY_ID = "/api/todos/{id}";
+  private static final String API_TODO_STATUS = "/api/todos/{id}/status";
 
+  public static final String IDS_KEY = "ids";
   public static final String LIMIT_KEY = "limit";
   public static final String STATUS_KEY = "status";
   public static final String BODY_CONTAINS_KEY = "body";
   public static final String OWNER_KEY = "owner";
   public static final String CATEGORY_KEY = "category";
+  public static final String ORDER_BY_KEY = "orderBy";
   public static final String SORT_ORDER_KEY = "sortorder";
+  public static final String MATCH_KEY = "match";
+  public static final String TOP_OWNERS_KEY = "topOwners";
+  public static final String CREATED_AFTER_KEY = "createdAfter";
+  public static final String CREATED_BEFORE_KEY = "createdBefore";
+  public static final String SAMPLE_SIZE_KEY = "n";
+
+  // How many owners `getTodoStats` counts the todos of, unless it's asked for more (or fewer).
+  static final int DEFAULT_TOP_OWNERS = 10;
+  static final int MAX_TOP_OWNERS = 100;
+  // How many todos `sampleTodos` picks, unless it's asked for more (or fewer).
+  static final int DEFAULT_SAMPLE_SIZE = 10;
+  static final int MAX_SAMPLE_SIZE = 1_000;
+  // The fields todos can be sorted by (besides `_id`).
+  static final Set<String> SORT_FIELDS = Set.of("owner", "category", "status", "body");
+
   //private static final String CATEGORY_REGEX = "^(video games|homework|groceries|software design)$";
-  private final JacksonMongoCollection<Todo> todoCollection;
+  private final TodoRepository todoRepository;
+
+  // Whether to send documents to the client as the repository encodes them
+  // (see `Repository.writeJson()`), instead of via `Todo` objects.
+  private final boolean passthroughReads;
+
+  // Where new and changed Todos go; this may batch up writes from
+  // concurrent requests (see `WriteCoalescer`).
+  private final WriteCoalescer<Todo> todoWrites;
+
+  // Lets identical concurrent requests for lists of Todos share one query and
+  // one encoded body (see `SingleFlight`), or `null` to answer each on its own.
+  private final SingleFlight<SingleFlight.RequestKey, byte[]> sharedReads;
+
+  // Checks the sorts clients ask for against the whitelist and the indexes.
+  private final SortPlanner sorts;
+
+  // Keeps the responses to `getTodoStats` for a few seconds (see `TtlCache`),
+  // or `null` to work them out for every request.
+  private final TtlCache<SingleFlight.RequestKey, byte[]> statsCache;
 
   /**
    * Construct a controller for Todos.
@@ -49,30 +110,152 @@ public class TodoController implements Controller {
    * @param database the database containing Todo data
    */
   public TodoController(MongoDatabase database) {
-    todoCollection = JacksonMongoCollection.builder().build(
-        database,
-        "todos",
-        Todo.class,
-        UuidRepresentation.STANDARD);
+    this(new MongoTodoRepository(database));
+  }
+
+  /**
+   * Construct a controller for Todos that get their data from
+   * the given repository, e.g., an `InMemoryTodoRepository`.
+   *
+   * @param todoRepository the repository containing Todo data
+   */
+  public TodoController(TodoRepository todoRepository) {
+    this(todoRepository, new Options());
+  }
+
+  /**
+   * Construct a controller for Todos that get their data from the given
+   * repository, configured by the given `Options`.
+   *
+   * @param todoRepository the repository containing Todo data
+   * @param options how to read and write the repository's data
+   */
+  public TodoController(TodoRepository todoRepository, Options options) {
+    this.todoRepository = todoRepository;
+    this.passthroughReads = options.passthroughReads;
+    this.todoWrites = options.writes != null ? options.writes : WriteCoalescer.direct(todoRepository);
+    this.sharedReads = options.sharedReads;
+    this.sorts = options.sorts != null ? options.sorts : sortPlanner(true);
+    this.statsCache = options.statsCache;
+  }
+
+  /**
+   * The settings for a `TodoController`, beyond the repository it uses.
+   * Everything is off (or the plainest choice) unless it's set here, e.g.,
+   *
+   * ```
+   * new TodoController(repository, new TodoController.Options()
+   *   .passthroughReads(true)
+   *   .statsCache(cache));
+   * ```
+   */
+  public static final class Options {
+    private boolean passthroughReads;
+    private WriteCoalescer<Todo> writes;
+    private SingleFlight<SingleFlight.RequestKey, byte[]> sharedReads;
+    private SortPlanner sorts;
+    private TtlCache<SingleFlight.RequestKey, byte[]> statsCache;
+
+    /**
+     * With `passthroughReads`, `getTodo` and `getTodos` never build `Todo`
+     * objects at all, which is a lot cheaper when the repository can turn
+     * its documents into JSON directly (like `MongoTodoRepository`).
+     *
+     * @param enabled whether to send the repository's JSON directly
+     * @return these options
+     */
+    public Options passthroughReads(boolean enabled) {
+      this.passthroughReads = enabled;
+      return this;
+    }
+
+    /**
+     * @param coalescer the coalescer that single-Todo writes go through, which
+     *   can group writes from concurrent requests into one round trip (by
+     *   default, each goes straight to the repository)
+     * @return these options
+     */
+    public Options writes(WriteCoalescer<Todo> coalescer) {
+      this.writes = coalescer;
+      return this;
+    }
+
+    /**
+     * @param singleFlight lets identical `getTodos` requests that arrive while
+     *   one is already being answered share its result instead of querying
+     *   the database again, or `null` (the default) to answer every request
+     *   separately
+     * @return these options
+     */
+    public Options sharedReads(SingleFlight<SingleFlight.RequestKey, byte[]> singleFlight) {
+      this.sharedReads = singleFlight;
+      return this;
+    }
+
+    /**
+     * @param planner the planner for `getTodos` sorts (by default,
+     *   `sortPlanner(true)`)
+     * @return these options
+     */
+    public Options sorts(SortPlanner planner) {
+      this.sorts = planner;
+      return this;
+    }
+
+    /**
+     * @param cache keeps the encoded responses to `getTodoStats` for a
+     *   while, or `null` (the default) to work them out for every request
+     * @return these options
+     */
+    public Options statsCache(TtlCache<SingleFlight.RequestKey, byte[]> cache) {
+      this.statsCache = cache;
+      return this;
+    }
+  }
+
+  /**
+   * Make a planner for sorting todos by the fields in `SORT_FIELDS`, checked
+   * against the indexes `MongoTodoRepository` declares.
+   *
+   * @param allowDiskUse `true` to run sorts no index supports with
+   *   `allowDiskUse`, or `false` to reject them
+   * @return the planner
+   */
+  public static SortPlanner sortPlanner(boolean allowDiskUse) {
+    return new SortPlanner(SORT_FIELDS, MongoTodoRepository.INDEXES, MongoTodoRepository.CASE_INSENSITIVE_INDEXES,
+      allowDiskUse);
   }
 
   /**
    * Set the JSON body of the response to be the single Todo
    * specified by the `id` parameter in the request
    *
+   * The body is JSON unless the `Accept` header asks for one of the other
+   * `ResponseFormat`s.
+   *
    * @param ctx a Javalin HTTP context
    */
-  public void getTodo(Context ctx) {
+  public void getTodo(Context ctx) throws IOException {
     String id = ctx.pathParam("id");
-    Todo todo;
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    // Passing the repository's JSON straight through only helps if the client wants JSON.
+    boolean passthrough = passthroughReads && format == ResponseFormat.JSON;
+    Object todo;
 
     try {
-      todo = todoCollection.find(eq("_id", new ObjectId(id))).first();
+      todo = passthrough ? todoRepository.findJsonById(id) : todoRepository.findById(id);
     } catch (IllegalArgumentException e) {
       throw new BadRequestResponse("The requested Todo id wasn't a legal Mongo Object ID.");
     }
     if (todo == null) {
       throw new NotFoundResponse("The requested Todo was not found");
+    } else if (passthrough) {
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      ctx.result((String) todo);
+      ctx.status(HttpStatus.OK);
+    } else if (format != ResponseFormat.JSON) {
+      format.write(ctx, todo);
+      ctx.status(HttpStatus.OK);
     } else {
       ctx.json(todo);
       ctx.status(HttpStatus.OK);
@@ -83,29 +266,92 @@ public class TodoController implements Controller {
    * Set the JSON body of the response to be a list of all the Todos returned from the database
    * that match any requested filters and ordering
    *
+   * The body is JSON unless the `Accept` header asks for one of the other
+   * `ResponseFormat`s.
+   *
+   * If there's an `ids` parameter (e.g., `?ids=ID1,ID2`), this looks up those
+   * Todos instead, ignoring any other parameters; see `BatchGet`.
+   *
    * @param ctx a Javalin HTTP context
    */
-  public void getTodos(Context ctx) {
-    Bson combinedFilter = constructFilter(ctx);
-    Bson sortingOrder = constructSortingOrder(ctx);
+  public void getTodos(Context ctx) throws IOException {
+    if (ctx.queryParamMap().containsKey(IDS_KEY)) {
+      BatchGet.respond(ctx, todoRepository, BatchGet.idsFromQuery(ctx.queryParams(IDS_KEY)), todo -> todo._id);
+      return;
+    }
+
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    if (sharedReads != null) {
+      // Requests with the same parameters get the same body, so whichever of them
+      // gets here first builds the query and encodes the todos for all of them.
+      SingleFlight.RequestKey key = SingleFlight.RequestKey.of(API_TODOS, ctx.queryParamMap(), format);
+      byte[] body = sharedReads.run(key, () -> encodeTodos(todosQuery(ctx), format));
+      ctx.contentType(format.contentType());
+      ctx.result(body);
+      ctx.status(HttpStatus.OK);
+      return;
+    }
 
-    ArrayList<Todo> matchingTodos = todoCollection
-      .find(combinedFilter)
-      .sort(sortingOrder)
-      .limit(limit(ctx))
-      .into(new ArrayList<>());
+    Query query = todosQuery(ctx);
+    if (passthroughReads && format == ResponseFormat.JSON) {
+      // The repository writes the todos straight to the response as it reads them.
+      ctx.status(HttpStatus.OK);
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      try (Span span = Tracer.span("todos.writeJson")) {
+        todoRepository.writeJson(query, RequestDeadlines.streamTo(ctx));
+      }
+      return;
+    }
 
+    List<Todo> matchingTodos = findTodos(query);
 
-    ctx.json(matchingTodos);
+    // For JSON, Javalin does most of the encoding as it sends the response,
+    // which shows up in the trace as the `response` span.
+    try (Span span = Tracer.span("todos.encode")) {
+      if (format != ResponseFormat.JSON) {
+        format.write(ctx, matchingTodos);
+      } else {
+        ctx.json(matchingTodos);
+      }
+    }
 
     ctx.status(HttpStatus.OK);
   }
+
+  private Query todosQuery(Context ctx) {
+    try (Span span = Tracer.span("todos.constructFilter")) {
+      return constructSortingOrder(ctx, constructFilter(ctx))
+        .limit(limit(ctx));
+    }
+  }
+
+  private List<Todo> findTodos(Query query) {
+    try (Span span = Tracer.span("todos.find")) {
+      List<Todo> todos = todoRepository.find(query);
+      span.attribute("todos.count", todos.size());
+      return todos;
+    }
+  }
+
+  private byte[] encodeTodos(Query query, ResponseFormat format) throws IOException {
+    if (passthroughReads && format == ResponseFormat.JSON) {
+      try (Span span = Tracer.span("todos.writeJson")) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        todoRepository.writeJson(query, body);
+        return body.toByteArray();
+      }
+    }
+    List<Todo> todos = findTodos(query);
+    try (Span span = Tracer.span("todos.encode")) {
+      return format.mapper().writeValueAsBytes(todos);
+    }
+  }
 // filtering the todos by status, body, category, and owner.
 // Implementing an api/todos?status=complete (or incomplete) endpoint
 // this will let us filter the todos and only return the complete (or incomplete) ones
 
-  private Bson constructFilter(Context ctx) {
-    List<Bson> filters = new ArrayList<>();
+  private Query constructFilter(Context ctx) {
+    Query query = new Query();
     if (ctx.queryParamMap().containsKey(STATUS_KEY)) {
       String statusParam = ctx.queryParam(STATUS_KEY);
       boolean targetStatus;
@@ -117,27 +363,74 @@ public class TodoController implements Controller {
         throw new BadRequestResponse("Todo status must be 'complete', 'incomplete', 'true', or 'false'");
         // Will throw an error if the status is not complete or incomplete
       }
-      filters.add(eq(STATUS_KEY, targetStatus));
+      query.where(Condition.eq(STATUS_KEY, targetStatus));
     }
+    // How `body`, `owner`, and `category` are matched (see `TextMatch`); by default
+    // `body` and `owner` are (safe) regexes.
+    TextMatch match = textMatch(ctx);
     if (ctx.queryParamMap().containsKey(BODY_CONTAINS_KEY)) {
       String targetContent = ctx.queryParam(BODY_CONTAINS_KEY);
-      Pattern pattern = Pattern.compile(targetContent, Pattern.CASE_INSENSITIVE);
-      filters.add(regex("body", pattern));
+      query.where(textCondition(BODY_CONTAINS_KEY, targetContent, match));
     }
 
     if (ctx.queryParamMap().containsKey(OWNER_KEY)) {
       String targetOwner = ctx.queryParam(OWNER_KEY);
-      filters.add(regex("owner", Pattern.compile(targetOwner, Pattern.CASE_INSENSITIVE)));
+      query.where(textCondition(OWNER_KEY, targetOwner, match));
     }
     if (ctx.queryParamMap().containsKey(CATEGORY_KEY)) {
+      String targetCategory = ctx.queryParam(CATEGORY_KEY);
+      if (match == TextMatch.EXACT || match == TextMatch.PREFIX) {
+        query.where(textCondition(CATEGORY_KEY, targetCategory, match));
+      } else {
+        // Without an `exact` or `prefix` match, this is a (slow) search for the text anywhere in the category.
+        query.where(Condition.matches(CATEGORY_KEY, SafeRegex.literal(targetCategory)));
+      }
+    }
+    // Ranges of `_id`s, which the `_id` index answers without a timestamp field.
+    if (ctx.queryParamMap().containsKey(CREATED_AFTER_KEY)) {
+      query.where(CreatedAt.after(createdParam(ctx, CREATED_AFTER_KEY)));
+    }
+    if (ctx.queryParamMap().containsKey(CREATED_BEFORE_KEY)) {
+      query.where(CreatedAt.before(createdParam(ctx, CREATED_BEFORE_KEY)));
+    }
+
+    return query;
+  }
 
-      Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(CATEGORY_KEY)), Pattern.CASE_INSENSITIVE);
-      filters.add(regex(CATEGORY_KEY, pattern));
+  private static Instant createdParam(Context ctx, String key) {
+    try {
+      return CreatedAt.parse(ctx.queryParam(key));
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("Todo " + key + " must be a date or time like 2024-01-31 or "
+        + "2024-01-31T12:00:00Z; you provided " + ctx.queryParam(key));
     }
+  }
 
-    Bson combinedFilter = filters.isEmpty() ? new Document() : and(filters);
+  private static TextMatch textMatch(Context ctx) {
+    String match = ctx.queryParam(MATCH_KEY);
+    if (match == null) {
+      return TextMatch.REGEX;
+    }
+    try {
+      return TextMatch.of(match);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("Todo match must be " + TextMatch.names());
+    }
+  }
 
-    return combinedFilter;
+  /**
+   * The condition for a `body`, `owner`, or `category` filter. A `regex`
+   * has to be one that `SafeRegex` is sure can't run away with the database
+   * (plain text and `^prefix`es are fine, and are rewritten into something
+   * cheaper); with `?match=literal` it's just text to look for.
+   */
+  private static Condition textCondition(String key, String value, TextMatch match) {
+    try {
+      return match.condition(key, value);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("Todo " + key + " isn't a regex we can safely run (" + e.getMessage()
+        + "); use ?" + MATCH_KEY + "=" + TextMatch.LITERAL + " to search for it as plain text");
+    }
   }
 
  // String category = ctx.queryParamAsClass(CATEGORY_KEY, String.class)
@@ -146,18 +439,22 @@ public class TodoController implements Controller {
       // filters.add(eq(CATEGORY_KEY, category));
 
 
-  private Bson constructSortingOrder(Context ctx) {
-  // here we are specifying the order in which we want the return todos to be in
-    String sortBy = Objects.requireNonNullElse(ctx.queryParam("orderBy"), "owner");
-    String sortOrder = Objects.requireNonNullElse(ctx.queryParam("sortorder"), "asc");
-    Bson sortingOrder = sortOrder.equals("desc") ? Sorts.descending(sortBy) : Sorts.ascending(sortBy);
-    return sortingOrder;
+  private Query constructSortingOrder(Context ctx, Query query) {
+  // here we are specifying the order in which we want the return todos to be in:
+  // one or more fields (e.g., `orderBy=owner,-status`), then `_id` to break ties
+    String sortBy = Objects.requireNonNullElse(ctx.queryParam(ORDER_BY_KEY), "owner");
+    boolean descending = "desc".equals(ctx.queryParam(SORT_ORDER_KEY));
+    try {
+      return sorts.sort(query, sortBy, descending);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("Todo " + ORDER_BY_KEY + " isn't a sort we can do (" + e.getMessage() + ")");
+    }
   }
 //Implement an api/todos?limit=7 API endpoint, which lets you specify the maximum
 //number of todos that the server returns.
 //this is the method for limit, the limit is set to 0 (no limit)
   private int limit(Context ctx) {
-    int targetLimit = (int) todoCollection.countDocuments();
+    int targetLimit = (int) todoRepository.count();
     if (ctx.queryParamMap().containsKey(LIMIT_KEY)) {
       while (true) {
         targetLimit = ctx.queryParamAsClass(LIMIT_KEY, Integer.class)
@@ -172,6 +469,231 @@ public class TodoController implements Controller {
   }
 
 
+  /**
+   * Stream all the Todos that match the request's filters (the same ones
+   * `getTodos` understands) as newline-delimited JSON; see `NdjsonExport`.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem writing the response
+   */
+  public void exportTodos(Context ctx) throws IOException {
+    NdjsonExport.export(ctx, "todos", todoRepository, constructFilter(ctx));
+  }
+
+  /**
+   * Explain how the database runs the query `getTodos` would for the same
+   * parameters (see `QueryPlan`), so we can see which combinations of
+   * filters and sorts are expensive before a client starts using them.
+   *
+   * Explaining runs the query, so it's only allowed `QueryPlan.MAX_TIME_MILLIS`
+   * (or less, if the request's deadline is sooner); a query that takes
+   * longer than that gets its plan without any counts.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void explainTodos(Context ctx) {
+    Query query = todosQuery(ctx);
+    QueryPlan plan;
+    try {
+      plan = todoRepository.explain(query, Deadline.maxTimeMillis(QueryPlan.MAX_TIME_MILLIS));
+    } catch (UnsupportedOperationException e) {
+      throw new NotImplementedResponse(e.getMessage());
+    }
+    ctx.json(plan);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be counts of the Todos that match
+   * the request's filters (the same ones `getTodos` understands): in total,
+   * by status, by category, and for the `topOwners` (default 10, at most
+   * 100) owners with the most Todos; see `TodoStats`.
+   *
+   * The counts all come from one aggregation, but that still has to look at
+   * every matching Todo, so with a `statsCache` the response is kept for a
+   * few seconds and shared by every request with the same parameters, and
+   * the `Cache-Control` header lets clients keep it that long too.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem encoding the counts
+   */
+  public void getTodoStats(Context ctx) throws IOException {
+    Query query = constructFilter(ctx);
+    int topOwners = topOwners(ctx);
+
+    if (statsCache == null) {
+      ctx.json(todoRepository.stats(query, topOwners));
+      ctx.status(HttpStatus.OK);
+      return;
+    }
+    SingleFlight.RequestKey key = SingleFlight.RequestKey.of(API_TODOS_STATS, ctx.queryParamMap(),
+      ResponseFormat.JSON);
+    byte[] body = statsCache.get(key,
+      () -> JsonMappers.http().writeValueAsBytes(todoRepository.stats(query, topOwners)));
+    ctx.header(Header.CACHE_CONTROL, "max-age=" + statsCache.ttlSeconds());
+    ctx.contentType(ContentType.APPLICATION_JSON);
+    ctx.result(body);
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static int topOwners(Context ctx) {
+    if (!ctx.queryParamMap().containsKey(TOP_OWNERS_KEY)) {
+      return DEFAULT_TOP_OWNERS;
+    }
+    return ctx.queryParamAsClass(TOP_OWNERS_KEY, Integer.class)
+      .check(it -> it > 0 && it <= MAX_TOP_OWNERS,
+        "Todo " + TOP_OWNERS_KEY + " must be from 1 to " + MAX_TOP_OWNERS + ", you gave "
+          + ctx.queryParam(TOP_OWNERS_KEY))
+      .get();
+  }
+
+  /**
+   * Set the body of the response to be `n` (default 10, at most 1000)
+   * random Todos that match the request's filters (the same ones `getTodos`
+   * understands), e.g., for spot checks, without downloading them all; see
+   * `Repository.sample()`.
+   *
+   * Every request gets a different sample, so unlike `getTodos`, identical
+   * requests don't share a response, and caches are told not to keep it.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem encoding the response
+   */
+  public void sampleTodos(Context ctx) throws IOException {
+    int n = sampleSize(ctx);
+    Query query = constructFilter(ctx);
+    List<Todo> todos;
+    try (Span span = Tracer.span("todos.sample")) {
+      todos = todoRepository.sample(query, n);
+      span.attribute("todos.count", todos.size());
+    }
+
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    if (format != ResponseFormat.JSON) {
+      format.write(ctx, todos);
+    } else {
+      ctx.json(todos);
+    }
+    ctx.header(Header.CACHE_CONTROL, "no-store");
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static int sampleSize(Context ctx) {
+    if (!ctx.queryParamMap().containsKey(SAMPLE_SIZE_KEY)) {
+      return DEFAULT_SAMPLE_SIZE;
+    }
+    return ctx.queryParamAsClass(SAMPLE_SIZE_KEY, Integer.class)
+      .check(it -> it > 0 && it <= MAX_SAMPLE_SIZE,
+        "Todo sample size (n) must be from 1 to " + MAX_SAMPLE_SIZE + ", you gave "
+          + ctx.queryParam(SAMPLE_SIZE_KEY))
+      .get();
+  }
+
+  /**
+   * Add a new Todo using information from the context
+   * (as long as the information gives "legal" values to Todo fields;
+   * see `todoFromJson`). The response is the new Todo's `_id`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void addNewTodo(Context ctx) {
+    Todo newTodo;
+    try {
+      newTodo = todoFromJson(JsonMappers.http().readTree(ctx.body()));
+    } catch (JsonProcessingException | IllegalArgumentException e) {
+      throw new BadRequestResponse("The Todo wasn't legal: " + e.getMessage());
+    }
+    // We choose the ID here, so we know it without waiting for the database.
+    newTodo._id = new ObjectId().toHexString();
+
+    if (!todoWrites.write(new Write.Insert<>(newTodo))) {
+      throw new InternalServerErrorResponse("The new Todo couldn't be added");
+    }
+    ctx.json(Map.of("id", newTodo._id));
+    ctx.status(HttpStatus.CREATED);
+  }
+
+  /**
+   * Set the status of the Todo specified by the `id` parameter in the
+   * request, to the `status` (`true` or `false`) in the JSON body.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void setTodoStatus(Context ctx) {
+    String id = ctx.pathParam("id");
+    if (!ObjectId.isValid(id)) {
+      throw new BadRequestResponse("The requested Todo id wasn't a legal Mongo Object ID.");
+    }
+    JsonNode status;
+    try {
+      status = JsonMappers.http().readTree(ctx.body()).path(STATUS_KEY);
+    } catch (JsonProcessingException e) {
+      throw new BadRequestResponse("The body wasn't legal JSON: " + e.getOriginalMessage());
+    }
+    if (!status.isBoolean()) {
+      throw new BadRequestResponse("The body must have a status of true or false");
+    }
+
+    if (!todoWrites.write(new Write.Update<>(id, STATUS_KEY, status.asBoolean()))) {
+      throw new NotFoundResponse("The requested Todo was not found");
+    }
+    ctx.json(Map.of("id", id, STATUS_KEY, status.asBoolean()));
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Add all the Todos in the request body (a JSON array of Todos, or one
+   * Todo per line) to the database, a batch at a time; see `BulkImport`.
+   * The response summarises how many were added and why any were rejected.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem reading the request body
+   */
+  public void importTodos(Context ctx) throws IOException {
+    BulkImport.importInto(ctx, todoRepository, TodoController::todoFromJson);
+  }
+
+  /**
+   * Check that some JSON is a legal Todo: it has to have a `status` of
+   * `true` or `false`, and a non-empty `owner`, `category`, and `body`.
+   * It can have an `_id`, in which case that has to be a legal Mongo
+   * Object ID, and any other fields are ignored.
+   *
+   * @param json the JSON for a Todo
+   * @return the Todo
+   * @throws IllegalArgumentException if the JSON isn't a legal Todo
+   */
+  static Todo todoFromJson(JsonNode json) {
+    if (!json.isObject()) {
+      throw new IllegalArgumentException("A Todo must be a JSON object");
+    }
+    Todo todo = new Todo();
+    JsonNode id = json.get("_id");
+    if (id != null && !id.isNull()) {
+      if (!id.isTextual() || !ObjectId.isValid(id.asText())) {
+        throw new IllegalArgumentException("A Todo's _id must be a legal Mongo Object ID");
+      }
+      todo._id = new ObjectId(id.asText()).toHexString();
+    }
+    JsonNode status = json.get(STATUS_KEY);
+    if (status == null || !status.isBoolean()) {
+      throw new IllegalArgumentException("A Todo's status must be true or false");
+    }
+    todo.status = status.asBoolean();
+    todo.owner = requiredText(json, OWNER_KEY);
+    todo.category = requiredText(json, CATEGORY_KEY);
+    todo.body = requiredText(json, BODY_CONTAINS_KEY);
+    return todo;
+  }
+
+  private static String requiredText(JsonNode json, String field) {
+    JsonNode value = json.get(field);
+    if (value == null || !value.isTextual() || value.asText().isBlank()) {
+      throw new IllegalArgumentException("A Todo must have a non-empty " + field);
+    }
+    return value.asText();
+  }
+
   /**
    * Get a JSON response with a list of all the Todos.
    *
@@ -179,10 +701,35 @@ public class TodoController implements Controller {
    */
 
   public void addRoutes(Javalin server) {
+    // Export todos as newline-delimited JSON. This has to come before the
+    // route for a single Todo, or "export" would be taken as an ID.
+    server.get(API_TODOS_EXPORT, this::exportTodos);
+
+    // Explain the query for a list of Todos, which also has to come before the
+    // route for a single one.
+    server.get(API_TODOS_EXPLAIN, this::explainTodos);
+
+    // Count the Todos, filtered using query parameters, by status, category, and
+    // owner (this has to come before the route for a single Todo too)
+    server.get(API_TODOS_STATS, this::getTodoStats);
+
+    // Pick random Todos, filtered using query parameters (also before the
+    // route for a single Todo)
+    server.get(API_TODOS_SAMPLE, this::sampleTodos);
+
     // Get the specified Todo
     server.get(API_TODO_BY_ID, this::getTodo);
 
-    // List Todos, filtered using query parameters
+    // Add Todos in bulk, from a JSON array or newline-delimited JSON
+    server.post(API_TODOS_IMPORT, this::importTodos);
+
+    // Add a new Todo
+    server.post(API_TODOS, this::addNewTodo);
+
+    // Set the status of the specified Todo
+    server.put(API_TODO_STATUS, this::setTodoStatus);
+
+    // List Todos, filtered using query parameters, or look up a list of them by ID
     server.get(API_TODOS, this::getTodos);
 
   }
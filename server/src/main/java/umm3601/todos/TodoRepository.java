@@ -0,0 +1,25 @@
+package umm3601.todos;
+
+import umm3601.storage.Query;
+import umm3601.storage.Repository;
+
+/**
+ * Where `TodoController` gets its todos from.
+ *
+ * See `MongoTodoRepository` for the MongoDB-backed version used by the
+ * server, and `InMemoryTodoRepository` for a version that keeps everything
+ * in (indexed) memory.
+ */
+public interface TodoRepository extends Repository<Todo> {
+
+  /**
+   * Count the todos that match a query's conditions, in total and by
+   * status, category, and owner (for the owners with the most todos only).
+   * The query's sort and limit are ignored.
+   *
+   * @param query the query with the conditions the todos have to match
+   * @param topOwners how many owners to count the todos of
+   * @return the counts
+   */
+  TodoStats stats(Query query, int topOwners);
+}
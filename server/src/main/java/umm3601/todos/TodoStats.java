@@ -0,0 +1,45 @@
+package umm3601.todos;
+
+import java.util.List;
+
+/**
+ * Counts of the todos that match a filter, for `GET /api/todos/stats`: in
+ * total, by status, by category, and for the owners with the most todos.
+ * Each list of counts is sorted from the largest count to the smallest,
+ * with ties in order of value.
+ */
+@SuppressWarnings({"VisibilityModifier"})
+public class TodoStats {
+  public long total;
+  public List<Count> status;
+  public List<Count> category;
+  public List<Count> owners;
+
+  /**
+   * How many of the todos have one value of a field, e.g., the category
+   * "homework". (The value is in `_id` because that's what MongoDB's
+   * `$group` calls it.)
+   */
+  @SuppressWarnings({"VisibilityModifier"})
+  public static class Count {
+    // Ignore Checkstyle warning about the identifier name.
+    @SuppressWarnings({"MemberName"})
+    public Object _id;
+    public long count;
+
+    /**
+     * An empty count, for Jackson to fill in.
+     */
+    public Count() {
+    }
+
+    /**
+     * @param value the value of the field
+     * @param count how many todos have that value
+     */
+    public Count(Object value, long count) {
+      this._id = value;
+      this.count = count;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package umm3601.tracing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Makes a span for each command the MongoDB driver sends (`find`,
+ * `getMore`, `aggregate`, ...), in the trace of the request that sent it.
+ *
+ * The synchronous driver calls this on the thread that's running the
+ * command, so the spans end up in the right trace, nested inside whatever
+ * span the request was in, e.g., `todos.find`. Iterating a cursor sends a
+ * `getMore` for each batch, so those show up as separate round trips.
+ */
+public class MongoCommandSpans implements CommandListener {
+
+  // The spans of the commands that are still running, by the driver's request ID.
+  private final Map<Integer, Span> running = new ConcurrentHashMap<>();
+
+  @Override
+  public void commandStarted(CommandStartedEvent event) {
+    Span span = Tracer.span("mongodb." + event.getCommandName(), Span.Kind.CLIENT);
+    if (!span.isRecording()) {
+      return;
+    }
+    span.attribute("db.system", "mongodb");
+    span.attribute("db.name", event.getDatabaseName());
+    span.attribute("db.operation", event.getCommandName());
+    // Most commands name their collection as the value of the command itself,
+    // e.g., `{"find": "todos", ...}`.
+    BsonDocument command = event.getCommand();
+    BsonValue collection = command == null ? null : command.get(event.getCommandName());
+    if (collection != null && collection.isString()) {
+      span.attribute("db.mongodb.collection", collection.asString().getValue());
+    }
+    running.put(event.getRequestId(), span);
+  }
+
+  @Override
+  public void commandSucceeded(CommandSucceededEvent event) {
+    Span span = running.remove(event.getRequestId());
+    if (span != null) {
+      span.close();
+    }
+  }
+
+  @Override
+  public void commandFailed(CommandFailedEvent event) {
+    Span span = running.remove(event.getRequestId());
+    if (span != null) {
+      span.error(String.valueOf(event.getThrowable()));
+      span.close();
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package umm3601.tracing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import umm3601.JsonMappers;
+
+/**
+ * Writes traces to a local file in the OTLP/JSON format, one trace per
+ * line, the same as the OpenTelemetry Collector's file exporter. That
+ * means the file can be read by anything that understands OTLP (e.g.,
+ * replayed into Jaeger with the Collector's `otlpjsonfile` receiver).
+ *
+ * Request threads only put the traces on a queue; a background thread
+ * encodes and writes them. If the queue is full (the disk can't keep up),
+ * traces are dropped, and counted, rather than making requests wait.
+ */
+public class OtlpJsonFileExporter implements TraceExporter {
+
+  // Enough for a burst of slow requests while the writer catches up.
+  private static final int QUEUE_SIZE = 1_024;
+  private static final long CLOSE_TIMEOUT_SECONDS = 5;
+  // How often the writer checks whether it's been closed, when it's idle.
+  private static final long POLL_MILLIS = 100;
+
+  // OTLP's status code for spans that failed.
+  private static final int STATUS_CODE_ERROR = 2;
+
+  private final String serviceName;
+  private final OutputStream out;
+  private final BlockingQueue<List<Span>> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+  private final LongAdder dropped = new LongAdder();
+  private final Thread writer;
+  private volatile boolean closed;
+
+  /**
+   * Construct an exporter that appends to a file, and start its writer thread.
+   *
+   * @param file the file, which is created if it doesn't exist
+   * @param serviceName the `service.name` to give the traces, e.g., `todos-server`
+   * @throws IOException if the file can't be opened
+   */
+  public OtlpJsonFileExporter(Path file, String serviceName) throws IOException {
+    this.serviceName = serviceName;
+    this.out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    this.writer = new Thread(this::writeLoop, "trace-exporter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public void export(List<Span> spans) {
+    if (closed || !queue.offer(spans)) {
+      dropped.increment();
+    }
+  }
+
+  /**
+   * @return how many traces have been dropped because the queue was full
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void close() {
+    // The writer isn't interrupted, since that would close the file's channel
+    // part way through a write; it notices within `POLL_MILLIS` instead.
+    closed = true;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLoop() {
+    List<List<Span>> batch = new ArrayList<>();
+    try (out) {
+      while (!closed || !queue.isEmpty()) {
+        try {
+          List<Span> trace = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (trace == null) {
+            continue;
+          }
+          batch.add(trace);
+        } catch (InterruptedException e) {
+          return;
+        }
+        queue.drainTo(batch);
+        for (List<Span> trace : batch) {
+          out.write(toOtlpJson(trace, serviceName));
+          out.write('\n');
+        }
+        // Flush once per batch, rather than once per trace.
+        out.flush();
+        batch.clear();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't write traces", e);
+    }
+  }
+
+  /**
+   * Encode the spans of a trace as an OTLP/JSON `ExportTraceServiceRequest`.
+   *
+   * @param spans the spans
+   * @param serviceName the `service.name` of the resource they came from
+   * @return the JSON, as UTF-8
+   * @throws IOException if there's a problem encoding them
+   */
+  static byte[] toOtlpJson(List<Span> spans, String serviceName) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonGenerator json = JsonMappers.http().getFactory().createGenerator(bytes)) {
+      json.writeStartObject();
+      json.writeArrayFieldStart("resourceSpans");
+      json.writeStartObject();
+      json.writeObjectFieldStart("resource");
+      writeAttributes(json, Map.of("service.name", serviceName));
+      json.writeEndObject();
+      json.writeArrayFieldStart("scopeSpans");
+      json.writeStartObject();
+      json.writeObjectFieldStart("scope");
+      json.writeStringField("name", "umm3601");
+      json.writeEndObject();
+      json.writeArrayFieldStart("spans");
+      for (Span span : spans) {
+        writeSpan(json, span);
+      }
+      json.writeEndArray();
+      json.writeEndObject();
+      json.writeEndArray();
+      json.writeEndObject();
+      json.writeEndArray();
+      json.writeEndObject();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeSpan(JsonGenerator json, Span span) throws IOException {
+    json.writeStartObject();
+    // OTLP/JSON has IDs in hex, and 64-bit integers as strings.
+    json.writeStringField("traceId", span.traceId());
+    json.writeStringField("spanId", span.spanId());
+    if (span.parentSpanId() != null) {
+      json.writeStringField("parentSpanId", span.parentSpanId());
+    }
+    json.writeStringField("name", span.name());
+    json.writeNumberField("kind", span.kind().otlpCode());
+    json.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos()));
+    json.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos()));
+    writeAttributes(json, span.attributes());
+    if (span.errorMessage() != null) {
+      json.writeObjectFieldStart("status");
+      json.writeNumberField("code", STATUS_CODE_ERROR);
+      json.writeStringField("message", span.errorMessage());
+      json.writeEndObject();
+    }
+    json.writeEndObject();
+  }
+
+  private static void writeAttributes(JsonGenerator json, Map<String, ?> attributes) throws IOException {
+    json.writeArrayFieldStart("attributes");
+    for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+      json.writeStartObject();
+      json.writeStringField("key", attribute.getKey());
+      json.writeObjectFieldStart("value");
+      Object value = attribute.getValue();
+      if (value instanceof Boolean b) {
+        json.writeBooleanField("boolValue", b);
+      } else if (value instanceof Integer || value instanceof Long) {
+        json.writeStringField("intValue", value.toString());
+      } else if (value instanceof Number n) {
+        json.writeNumberField("doubleValue", n.doubleValue());
+      } else {
+        json.writeStringField("stringValue", String.valueOf(value));
+      }
+      json.writeEndObject();
+      json.writeEndObject();
+    }
+    json.writeEndArray();
+  }
+}
@@ -0,0 +1,155 @@
+package umm3601.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed step of handling a request, e.g., building a query, one MongoDB
+ * command, or encoding the response, as part of a trace (see `Tracer`).
+ *
+ * Spans are meant for try-with-resources:
+ *
+ *     try (Span span = Tracer.span("todos.find")) {
+ *       todos = todoRepository.find(query);
+ *       span.attribute("todos.count", todos.size());
+ *     }
+ *
+ * When the current thread isn't tracing a request, `Tracer.span()` gives
+ * back `NOOP`, which ignores everything, so code can always make spans.
+ * A span belongs to the thread that made it, and isn't thread-safe.
+ */
+public final class Span implements AutoCloseable {
+
+  /**
+   * What kind of work a span is, as in OpenTelemetry.
+   */
+  public enum Kind {
+    /** Work inside this server. */
+    INTERNAL(1),
+    /** Handling a request from a client. */
+    SERVER(2),
+    /** A request to another service, i.e., MongoDB. */
+    CLIENT(3);
+
+    private final int otlpCode;
+
+    Kind(int otlpCode) {
+      this.otlpCode = otlpCode;
+    }
+
+    /**
+     * @return the number OTLP uses for this kind
+     */
+    public int otlpCode() {
+      return otlpCode;
+    }
+  }
+
+  /** A span that records nothing, for when there's no trace. */
+  public static final Span NOOP = new Span(null, "", "", null, Kind.INTERNAL, 0);
+
+  private final Trace trace;
+  private final String name;
+  private final String spanId;
+  private final String parentSpanId;
+  private final Kind kind;
+  private final long startNanos;
+  private long endNanos = -1;
+  private final Map<String, Object> attributes = new LinkedHashMap<>();
+  private String error;
+
+  Span(Trace trace, String name, String spanId, String parentSpanId, Kind kind, long startNanos) {
+    this.trace = trace;
+    this.name = name;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.kind = kind;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * Record something about this span, e.g., how many documents it read.
+   *
+   * @param key the name of the attribute, e.g., `db.operation`
+   * @param value its value: a string, number, or boolean
+   * @return this span
+   */
+  public Span attribute(String key, Object value) {
+    if (trace != null && value != null) {
+      attributes.put(key, value);
+    }
+    return this;
+  }
+
+  /**
+   * Mark this span as having failed.
+   *
+   * @param message what went wrong
+   * @return this span
+   */
+  public Span error(String message) {
+    if (trace != null) {
+      error = message == null ? "" : message;
+    }
+    return this;
+  }
+
+  /**
+   * End this span, if it hasn't ended already.
+   */
+  @Override
+  public void close() {
+    if (trace != null && endNanos < 0) {
+      endNanos = System.nanoTime();
+      trace.ended(this);
+    }
+  }
+
+  /**
+   * @return whether this span is actually recording anything
+   */
+  public boolean isRecording() {
+    return trace != null;
+  }
+
+  String name() {
+    return name;
+  }
+
+  String traceId() {
+    return trace.traceId();
+  }
+
+  String spanId() {
+    return spanId;
+  }
+
+  String parentSpanId() {
+    return parentSpanId;
+  }
+
+  Kind kind() {
+    return kind;
+  }
+
+  long startEpochNanos() {
+    return trace.epochNanos(startNanos);
+  }
+
+  long endEpochNanos() {
+    return trace.epochNanos(endNanos);
+  }
+
+  long durationNanos() {
+    return endNanos - startNanos;
+  }
+
+  Map<String, Object> attributes() {
+    return Collections.unmodifiableMap(attributes);
+  }
+
+  String errorMessage() {
+    return error;
+  }
+}
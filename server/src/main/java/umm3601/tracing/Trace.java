@@ -0,0 +1,88 @@
+package umm3601.tracing;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spans of one request, as they're made, on the thread handling it.
+ *
+ * A new span's parent is the innermost span that's still open, so nesting
+ * try-with-resources blocks nests the spans.
+ */
+final class Trace {
+
+  private final String traceId;
+  private final String remoteParentId;
+
+  // Spans time themselves with `System.nanoTime()`, which only this converts
+  // to wall-clock time, so they can't go backwards if the clock is adjusted.
+  private final long epochNanosAtStart;
+  private final long nanoTimeAtStart;
+
+  private final Deque<Span> open = new ArrayDeque<>();
+  private final List<Span> ended = new ArrayList<>();
+
+  /**
+   * Start a trace.
+   *
+   * @param traceId the trace's ID, 32 hex digits
+   * @param remoteParentId the ID of the client's span this is part of, or `null`
+   */
+  Trace(String traceId, String remoteParentId) {
+    this.traceId = traceId;
+    this.remoteParentId = remoteParentId;
+    Instant now = Instant.now();
+    this.nanoTimeAtStart = System.nanoTime();
+    this.epochNanosAtStart = TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+  }
+
+  String traceId() {
+    return traceId;
+  }
+
+  Span start(String name, Span.Kind kind) {
+    String parentId = open.isEmpty() ? remoteParentId : open.peek().spanId();
+    Span span = new Span(this, name, newSpanId(), parentId, kind, System.nanoTime());
+    open.push(span);
+    return span;
+  }
+
+  void ended(Span span) {
+    // Almost always the innermost one, unless spans were closed out of order.
+    open.remove(span);
+    ended.add(span);
+  }
+
+  /**
+   * @return the innermost span that's still open, or `null` if they've all ended
+   */
+  Span innermost() {
+    return open.peek();
+  }
+
+  /**
+   * @return the spans that have ended, in the order they ended
+   */
+  List<Span> endedSpans() {
+    return ended;
+  }
+
+  long epochNanos(long nanoTime) {
+    return epochNanosAtStart + (nanoTime - nanoTimeAtStart);
+  }
+
+  static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return String.format("%016x%016x", random.nextLong(), random.nextLong() | 1);
+  }
+
+  static String newSpanId() {
+    // All zeros isn't a legal ID.
+    return String.format("%016x", ThreadLocalRandom.current().nextLong() | 1);
+  }
+}
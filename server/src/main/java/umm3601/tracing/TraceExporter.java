@@ -0,0 +1,23 @@
+package umm3601.tracing;
+
+import java.util.List;
+
+/**
+ * Somewhere to send the traces a `Tracer` keeps.
+ */
+public interface TraceExporter {
+
+  /**
+   * Send the spans of one trace. This is called on the thread that handled
+   * the request, just after its response was sent, so it shouldn't block.
+   *
+   * @param spans the trace's spans, in the order they ended
+   */
+  void export(List<Span> spans);
+
+  /**
+   * Send anything that's still waiting, and stop. By default this does nothing.
+   */
+  default void close() {
+  }
+}
@@ -0,0 +1,217 @@
+package umm3601.tracing;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.RequestLogger;
+import umm3601.Controller;
+
+/**
+ * Traces requests: times each one, and the steps it goes through (the
+ * `Span`s), and sends some of those traces to a `TraceExporter`.
+ *
+ * When `/api/todos` is slow, a trace shows where the time went: building
+ * the filter, each MongoDB command (from `MongoCommandSpans`), decoding the
+ * results, or encoding the response. Each request gets a trace ID, which
+ * it's told in the `X-Trace-Id` header. A request with a W3C `traceparent`
+ * header joins that trace instead, which is how the requests in an
+ * `/api/batch` end up in the same trace as the batch.
+ *
+ * Every request is traced, since that's just a few small objects, but only
+ * some of the traces are kept: a random `sampleRate` of them, plus every
+ * one that took at least `slowMillis` or failed with a 5xx status. The
+ * decision is made once the request is over, so none of the slow ones get
+ * missed ("tail-based" sampling).
+ *
+ * Like `Deadline`, the trace belongs to the thread handling the request, so
+ * code anywhere can add a span with `Tracer.span()` without passing the
+ * trace around; on other threads (or with no `Tracer` installed) that does
+ * nothing.
+ */
+public class Tracer implements Controller, RequestLogger {
+
+  public static final String TRACE_ID_HEADER = "X-Trace-Id";
+  public static final String TRACEPARENT_HEADER = "traceparent";
+
+  private static final Pattern TRACEPARENT = Pattern.compile("00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}");
+  private static final String NO_TRACE_ID = "0".repeat(32);
+  private static final String NO_SPAN_ID = "0".repeat(16);
+  private static final int SERVER_ERROR = 500;
+
+  private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+  private static final ThreadLocal<Span> ROOT = new ThreadLocal<>();
+
+  private final double sampleRate;
+  private final long slowNanos;
+  private final TraceExporter exporter;
+
+  /**
+   * Construct a tracer.
+   *
+   * @param sampleRate the fraction (from 0 to 1) of ordinary traces to keep
+   * @param slowMillis keep every trace of a request that took at least this long
+   * @param exporter where to send the traces that are kept
+   */
+  public Tracer(double sampleRate, long slowMillis, TraceExporter exporter) {
+    this.sampleRate = sampleRate;
+    this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+    this.exporter = exporter;
+  }
+
+  /**
+   * Start a span in the current thread's trace, as a child of the innermost
+   * span that's still open.
+   *
+   * @param name what the span is doing, e.g., `todos.constructFilter`
+   * @return the span, or `Span.NOOP` if this thread isn't tracing a request
+   */
+  public static Span span(String name) {
+    return span(name, Span.Kind.INTERNAL);
+  }
+
+  /**
+   * Start a span of the given kind in the current thread's trace.
+   *
+   * @param name what the span is doing
+   * @param kind the kind of span
+   * @return the span, or `Span.NOOP` if this thread isn't tracing a request
+   */
+  public static Span span(String name, Span.Kind kind) {
+    Trace trace = CURRENT.get();
+    return trace == null ? Span.NOOP : trace.start(name, kind);
+  }
+
+  /**
+   * A W3C `traceparent` header for requests made as part of the current
+   * thread's trace, so they can join it.
+   *
+   * @return the header, or `null` if this thread isn't tracing a request
+   */
+  public static String traceparent() {
+    Span root = ROOT.get();
+    return root == null ? null : "00-" + root.traceId() + "-" + root.spanId() + "-01";
+  }
+
+  /**
+   * Start tracing a request, before it's handled.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void start(Context ctx) {
+    Span root = begin(ctx.method() + " " + ctx.path(), ctx.header(TRACEPARENT_HEADER));
+    root.attribute("http.request.method", ctx.method().toString());
+    root.attribute("url.path", ctx.path());
+    ctx.header(TRACE_ID_HEADER, root.traceId());
+  }
+
+  /**
+   * Start a trace on this thread, with its root span.
+   *
+   * @param name the name of the root span
+   * @param traceparent the request's `traceparent` header, or `null`
+   * @return the root span
+   */
+  Span begin(String name, String traceparent) {
+    String traceId = Trace.newTraceId();
+    String parentId = null;
+    if (traceparent != null) {
+      Matcher matcher = TRACEPARENT.matcher(traceparent.trim());
+      if (matcher.matches() && !matcher.group(1).equals(NO_TRACE_ID) && !matcher.group(2).equals(NO_SPAN_ID)) {
+        traceId = matcher.group(1);
+        parentId = matcher.group(2);
+      }
+    }
+    Trace trace = new Trace(traceId, parentId);
+    CURRENT.set(trace);
+    Span root = trace.start(name, Span.Kind.SERVER);
+    ROOT.set(root);
+    return root;
+  }
+
+  /**
+   * Once the request's been handled, start a span for sending the response,
+   * which Javalin does (serializing any JSON as it goes) after this.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void handled(Context ctx) {
+    Span root = ROOT.get();
+    if (root == null) {
+      return;
+    }
+    // Name the trace after the route rather than the path, e.g.,
+    // `GET /api/todos/{id}`, so traces of the same endpoint group together.
+    String route = ctx.endpointHandlerPath();
+    if (route != null && !route.isEmpty()) {
+      root.attribute("http.route", route);
+    }
+    span("response");
+  }
+
+  /**
+   * Finish the trace once the response has been sent, and export it if it's
+   * one we keep. (Javalin calls this as a `RequestLogger`.)
+   *
+   * @param ctx a Javalin HTTP context
+   * @param executionTimeMs how long Javalin says the request took
+   */
+  @Override
+  public void handle(Context ctx, Float executionTimeMs) {
+    end(ctx.statusCode());
+  }
+
+  /**
+   * End all the current thread's spans, and export them if they're worth keeping.
+   *
+   * @param status the HTTP status of the response
+   * @return the spans, if they were exported, or `null`
+   */
+  List<Span> end(int status) {
+    Trace trace = CURRENT.get();
+    Span root = ROOT.get();
+    CURRENT.remove();
+    ROOT.remove();
+    if (trace == null) {
+      return null;
+    }
+    root.attribute("http.response.status_code", status);
+    if (status >= SERVER_ERROR) {
+      root.error("HTTP " + status);
+    }
+    // End anything left open (at least the "response" span, and the root),
+    // innermost first.
+    for (Span open = trace.innermost(); open != null; open = trace.innermost()) {
+      open.close();
+    }
+    if (!keep(root.durationNanos(), status)) {
+      return null;
+    }
+    exporter.export(trace.endedSpans());
+    return trace.endedSpans();
+  }
+
+  /**
+   * Decide whether to keep a trace.
+   *
+   * @param durationNanos how long the request took
+   * @param status the HTTP status of the response
+   * @return `true` if it was slow, failed, or was picked at random
+   */
+  boolean keep(long durationNanos, int status) {
+    return durationNanos >= slowNanos
+      || status >= SERVER_ERROR
+      || ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  @Override
+  public void addRoutes(Javalin server) {
+    server.before(this::start);
+    server.after(this::handled);
+    server.events(event -> event.serverStopped(exporter::close));
+  }
+}
@@ -0,0 +1,151 @@
+package umm3601.user;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import umm3601.JsonMappers;
+import umm3601.storage.InMemoryCollection;
+import umm3601.storage.Query;
+import umm3601.storage.SortKey;
+import umm3601.storage.Values;
+
+/**
+ * A `UserRepository` that keeps all the users in memory, with hash
+ * indexes on the fields we filter and group on and sorted indexes
+ * on the fields we usually sort by.
+ *
+ * This is handy for tests and benchmarks that shouldn't depend on
+ * (or be slowed down by) a real database, and for running the server
+ * as a read-only replica of a database snapshot.
+ */
+public class InMemoryUserRepository implements UserRepository {
+
+  private static final Map<String, Function<User, Object>> FIELDS = Map.of(
+    "name", user -> user.name,
+    "age", user -> user.age,
+    "company", user -> user.company,
+    "email", user -> user.email,
+    "avatar", user -> user.avatar,
+    "role", user -> user.role);
+
+  private static final TypeReference<Map<String, Object>> FIELD_MAP = new TypeReference<>() { };
+
+  private final InMemoryCollection<User> users = new InMemoryCollection<>(
+    FIELDS,
+    List.of("age", "company", "role"),
+    List.of("name", "age", "company"));
+
+  /**
+   * Make an in-memory copy of all the users in another repository, e.g., to
+   * serve reads from memory using a snapshot of the database.
+   *
+   * @param source the repository to copy the users from
+   * @return a new in-memory repository containing the same users
+   */
+  public static InMemoryUserRepository copyOf(UserRepository source) {
+    InMemoryUserRepository copy = new InMemoryUserRepository();
+    for (User user : source.find(new Query())) {
+      copy.insert(user);
+    }
+    return copy;
+  }
+
+  @Override
+  public User findById(String id) {
+    return users.get(new ObjectId(id).toHexString());
+  }
+
+  @Override
+  public List<User> find(Query query) {
+    return users.find(query);
+  }
+
+  @Override
+  public long count() {
+    return users.size();
+  }
+
+  @Override
+  public void insert(User user) {
+    if (user._id == null) {
+      user._id = new ObjectId().toHexString();
+    }
+    users.put(user._id, user);
+  }
+
+  @Override
+  public int insertAll(List<User> batch) {
+    int added = 0;
+    for (User user : batch) {
+      // Like MongoDB, we won't replace an existing user that has the same `_id`.
+      if (user._id == null || users.get(user._id) == null) {
+        insert(user);
+        added++;
+      }
+    }
+    return added;
+  }
+
+  @Override
+  public boolean update(String id, String field, Object value) {
+    String key = new ObjectId(id).toHexString();
+    User existing = users.get(key);
+    if (existing == null) {
+      return false;
+    }
+    // The collection indexes the user by its current values, so rather than
+    // change it in place we replace it with an updated copy.
+    Map<String, Object> fields = JsonMappers.http().convertValue(existing, FIELD_MAP);
+    fields.put(field, value);
+    users.put(key, JsonMappers.http().convertValue(fields, User.class));
+    return true;
+  }
+
+  @Override
+  public boolean deleteById(String id) {
+    return users.remove(new ObjectId(id).toHexString());
+  }
+
+  @Override
+  public List<UserByCompany> groupByCompany(SortKey sortKey) {
+    List<UserByCompany> groups = new ArrayList<>();
+    for (Map.Entry<Object, List<User>> group : users.groupBy("company").entrySet()) {
+      UserByCompany byCompany = new UserByCompany();
+      byCompany._id = (String) group.getKey();
+      byCompany.count = group.getValue().size();
+      byCompany.users = new ArrayList<>(group.getValue().size());
+      for (User user : group.getValue()) {
+        UserIdName idName = new UserIdName();
+        idName._id = user._id;
+        idName.name = user.name;
+        byCompany.users.add(idName);
+      }
+      groups.add(byCompany);
+    }
+
+    Comparator<UserByCompany> order = (a, b) -> Values.compare(groupField(a, sortKey.field()),
+      groupField(b, sortKey.field()));
+    // Like the Mongo repository, break ties by company.
+    groups.sort((sortKey.descending() ? order.reversed() : order)
+      .thenComparing((a, b) -> Values.compare(a._id, b._id)));
+    return groups;
+  }
+
+  private static Object groupField(UserByCompany group, String field) {
+    switch (field) {
+      case "_id":
+        return group._id;
+      case "count":
+        return group.count;
+      default:
+        return null;
+    }
+  }
+}
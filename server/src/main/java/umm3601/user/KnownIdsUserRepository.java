@@ -0,0 +1,46 @@
+package umm3601.user;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import umm3601.storage.KnownIdsRepository;
+import umm3601.storage.SortKey;
+
+/**
+ * A `UserRepository` that answers lookups of user IDs that don't exist
+ * without asking another `UserRepository` (normally a `MongoUserRepository`);
+ * see `KnownIdsRepository`.
+ */
+public class KnownIdsUserRepository extends KnownIdsRepository<User> implements UserRepository {
+
+  private final UserRepository backing;
+
+  /**
+   * Construct a repository that filters lookups of users, reading all the
+   * users' IDs first.
+   *
+   * @param backing the repository to pass everything else on to
+   */
+  public KnownIdsUserRepository(UserRepository backing) {
+    super(backing, user -> user._id);
+    this.backing = backing;
+  }
+
+  /**
+   * Construct a repository that filters lookups of Users, reading all the
+   * users' IDs first, and again every `refreshInterval`.
+   *
+   * @param backing the repository to pass everything else on to
+   * @param refreshInterval how often to read the IDs again
+   * @param unit the unit of `refreshInterval`
+   */
+  public KnownIdsUserRepository(UserRepository backing, long refreshInterval, TimeUnit unit) {
+    super(backing, user -> user._id, refreshInterval, unit);
+    this.backing = backing;
+  }
+
+  @Override
+  public List<UserByCompany> groupByCompany(SortKey sortKey) {
+    return backing.groupByCompany(sortKey);
+  }
+}
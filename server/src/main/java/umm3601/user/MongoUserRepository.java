@@ -0,0 +1,92 @@
+package umm3601.user;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+
+import umm3601.storage.Deadline;
+import umm3601.storage.MongoRepository;
+import umm3601.storage.SortKey;
+
+/**
+ * A `UserRepository` that keeps the users in the `users` collection
+ * of a MongoDB database.
+ */
+public class MongoUserRepository extends MongoRepository<User> implements UserRepository {
+
+  // The fields of a `User`, so the raw documents have the same shape as ours.
+  private static final Bson USER_FIELDS =
+    Projections.include("_id", "name", "age", "company", "email", "avatar", "role");
+
+  /**
+   * The keys of the indexes the `users` collection should have, besides
+   * the one on `_id`. Each ends in `_id`, so it can support a sort with
+   * `_id` as the tie-breaker (see `SortPlanner`), as well as filters on
+   * its first field. (The repository builds these when it's made.)
+   */
+  public static final List<List<SortKey>> INDEXES = List.of(
+    List.of(SortKey.ascending("name"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("company"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("age"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("role"), SortKey.ascending("_id")));
+
+  /**
+   * The keys of the indexes the `users` collection should have with the
+   * case-insensitive collation (`MongoQueries.CASE_INSENSITIVE`), for the
+   * `exact` and `prefix` matches on `company`. (The repository builds
+   * these when it's made, too.)
+   */
+  public static final List<List<SortKey>> CASE_INSENSITIVE_INDEXES = List.of(
+    List.of(SortKey.ascending("company"), SortKey.ascending("_id")));
+
+  /**
+   * Construct a repository for the users in the given database.
+   *
+   * @param database the database containing user data
+   */
+  public MongoUserRepository(MongoDatabase database) {
+    super(database, "users", User.class, USER_FIELDS, indexModels(INDEXES, CASE_INSENSITIVE_INDEXES));
+  }
+
+  @Override
+  public List<UserByCompany> groupByCompany(SortKey sortKey) {
+    // The `UserByCompany` class is a simple class that has fields for the company
+    // name, the number of users in that company, and a list of user names and IDs
+    // (using the `UserIdName` class to store the user names and IDs).
+    // We're going to use the aggregation pipeline to group users by company, and
+    // then count the number of users in each company. We'll also collect the user
+    // names and IDs for each user in each company. We'll then convert the results
+    // of the aggregation pipeline to `UserByCompany` objects.
+    return collection()
+      // The following aggregation pipeline groups users by company, and
+      // then counts the number of users in each company. It also collects
+      // the user names and IDs for each user in each company.
+      .aggregate(
+        List.of(
+          // Project the fields we want to use in the next step, i.e., the _id, name, and company fields
+          new Document("$project", new Document("_id", 1).append("name", 1).append("company", 1)),
+          // Group the users by company, and count the number of users in each company
+          new Document("$group", new Document("_id", "$company")
+            // Count the number of users in each company
+            .append("count", new Document("$sum", 1))
+            // Collect the user names and IDs for each user in each company
+            .append("users", new Document("$push", new Document("_id", "$_id").append("name", "$name")))),
+          // Sort the results by the requested field and direction, then by
+          // company, so companies with the same count always come in the same order.
+          new Document("$sort", new Document(sortKey.field(), sortKey.descending() ? -1 : 1).append("_id", 1))
+        ),
+        // Convert the results of the aggregation pipeline to UserGroupResult objects
+        // (i.e., a list of UserGroupResult objects). It is necessary to have a Java type
+        // to convert the results to, and the JacksonMongoCollection will do this for us.
+        UserByCompany.class
+      )
+      .maxTime(Deadline.maxTimeMillis(), TimeUnit.MILLISECONDS)
+      .into(new ArrayList<>());
+  }
+}
@@ -3,6 +3,11 @@ package umm3601.user;
 import org.mongojack.Id;
 import org.mongojack.ObjectId;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import umm3601.storage.CreatedAt;
+
 // There are two examples of suppressing CheckStyle
 // warnings in this class. If you create new classes
 // that mirror data in MongoDB and that will be managed
@@ -35,6 +40,16 @@ public class User {
   public String avatar;
   public String role;
 
+  /**
+   * @return when this was created, from its `_id` (see `CreatedAt`); this
+   *   is sent to clients, but never stored, and ignored in request bodies
+   */
+  @JsonProperty(value = CreatedAt.FIELD, access = JsonProperty.Access.READ_ONLY)
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public String getCreatedAt() {
+    return CreatedAt.of(_id);
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof User)) {
@@ -1,34 +1,42 @@
 package umm3601.user;
 
-import static com.mongodb.client.model.Filters.and;
-import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Filters.regex;
-
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
-
-import org.bson.Document;
-import org.bson.UuidRepresentation;
-import org.bson.conversions.Bson;
-import org.bson.types.ObjectId;
-import org.mongojack.JacksonMongoCollection;
+import java.util.Set;
 
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Sorts;
-import com.mongodb.client.result.DeleteResult;
 
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.NotImplementedResponse;
+import umm3601.BatchGet;
 import umm3601.Controller;
+import umm3601.NdjsonExport;
+import umm3601.RequestDeadlines;
+import umm3601.ResponseFormat;
+import umm3601.SingleFlight;
+import umm3601.storage.Condition;
+import umm3601.storage.CreatedAt;
+import umm3601.storage.Deadline;
+import umm3601.storage.Query;
+import umm3601.storage.QueryPlan;
+import umm3601.storage.SortKey;
+import umm3601.storage.SortPlanner;
+import umm3601.storage.TextMatch;
+import umm3601.tracing.Span;
+import umm3601.tracing.Tracer;
 
 /**
  * Controller that manages requests for info about users.
@@ -36,17 +44,48 @@ import umm3601.Controller;
 public class UserController implements Controller {
 
   private static final String API_USERS = "/api/users";
+  private static final String API_USERS_EXPORT = "/api/users/export";
+  private static final String API_USERS_EXPLAIN = "/api/users/explain";
+  private static final String API_USERS_SAMPLE = "/api/users/sample";
+  private static final String API_USERS_BATCH_GET = "/api/users/batchGet";
   private static final String API_USER_BY_ID = "/api/users/{id}";
+  private static final String API_USERS_BY_COMPANY = "/api/usersByCompany";
   static final String AGE_KEY = "age";
   static final String COMPANY_KEY = "company";
   static final String ROLE_KEY = "role";
+  static final String MATCH_KEY = "match";
+  static final String CREATED_AFTER_KEY = "createdAfter";
+  static final String CREATED_BEFORE_KEY = "createdBefore";
+  static final String SAMPLE_SIZE_KEY = "n";
+
+  static final String SORT_BY_KEY = "sortby";
   static final String SORT_ORDER_KEY = "sortorder";
 
+  // The fields users can be sorted by (besides `_id`).
+  static final Set<String> SORT_FIELDS = Set.of("name", "age", "company", "email", "role");
+  // The fields of a `UserByCompany` the companies can be sorted by.
+  private static final Set<String> COMPANY_SORT_FIELDS = Set.of("_id", "company", "count");
+
+  // How many users `sampleUsers` picks, unless it's asked for more (or fewer).
+  static final int DEFAULT_SAMPLE_SIZE = 10;
+  static final int MAX_SAMPLE_SIZE = 1_000;
+
   private static final int REASONABLE_AGE_LIMIT = 150;
   private static final String ROLE_REGEX = "^(admin|editor|viewer)$";
   public static final String EMAIL_REGEX = "^[a-zA-Z0-9_!#$%&'*+/=?`{|}~^.-]+@[a-zA-Z0-9.-]+$";
 
-  private final JacksonMongoCollection<User> userCollection;
+  private final UserRepository userRepository;
+
+  // Whether to send documents to the client as the repository encodes them
+  // (see `Repository.writeJson()`), instead of via `User` objects.
+  private final boolean passthroughReads;
+
+  // Lets identical concurrent requests for lists of users share one query and
+  // one encoded body (see `SingleFlight`), or `null` to answer each on its own.
+  private final SingleFlight<SingleFlight.RequestKey, byte[]> sharedReads;
+
+  // Checks the sorts clients ask for against the whitelist and the indexes.
+  private final SortPlanner sorts;
 
   /**
    * Construct a controller for users.
@@ -54,30 +93,129 @@ public class UserController implements Controller {
    * @param database the database containing user data
    */
   public UserController(MongoDatabase database) {
-    userCollection = JacksonMongoCollection.builder().build(
-        database,
-        "users",
-        User.class,
-        UuidRepresentation.STANDARD);
+    this(new MongoUserRepository(database));
+  }
+
+  /**
+   * Construct a controller for users that gets its data from
+   * the given repository, e.g., an `InMemoryUserRepository`.
+   *
+   * @param userRepository the repository containing user data
+   */
+  public UserController(UserRepository userRepository) {
+    this(userRepository, new Options());
+  }
+
+  /**
+   * Construct a controller for users that get their data from the given
+   * repository, configured by the given `Options`.
+   *
+   * @param userRepository the repository containing user data
+   * @param options how to read the repository's data
+   */
+  public UserController(UserRepository userRepository, Options options) {
+    this.userRepository = userRepository;
+    this.passthroughReads = options.passthroughReads;
+    this.sharedReads = options.sharedReads;
+    this.sorts = options.sorts != null ? options.sorts : sortPlanner(true);
+  }
+
+  /**
+   * The settings for a `UserController`, beyond the repository it uses.
+   * Everything is off (or the plainest choice) unless it's set here, e.g.,
+   *
+   * ```
+   * new UserController(repository, new UserController.Options()
+   *   .passthroughReads(true)
+   *   .sorts(UserController.sortPlanner(false)));
+   * ```
+   */
+  public static final class Options {
+    private boolean passthroughReads;
+    private SingleFlight<SingleFlight.RequestKey, byte[]> sharedReads;
+    private SortPlanner sorts;
+
+    /**
+     * With `passthroughReads`, `getUser` and `getUsers` never build `User`
+     * objects at all, which is a lot cheaper when the repository can turn
+     * its documents into JSON directly (like `MongoUserRepository`).
+     *
+     * @param enabled whether to send the repository's JSON directly
+     * @return these options
+     */
+    public Options passthroughReads(boolean enabled) {
+      this.passthroughReads = enabled;
+      return this;
+    }
+
+    /**
+     * @param singleFlight lets identical `getUsers` and
+     *   `getUsersGroupedByCompany` requests that arrive while one is already
+     *   being answered share its result instead of querying the database
+     *   again, or `null` (the default) to answer every request separately
+     * @return these options
+     */
+    public Options sharedReads(SingleFlight<SingleFlight.RequestKey, byte[]> singleFlight) {
+      this.sharedReads = singleFlight;
+      return this;
+    }
+
+    /**
+     * @param planner the planner for `getUsers` sorts (by default,
+     *   `sortPlanner(true)`)
+     * @return these options
+     */
+    public Options sorts(SortPlanner planner) {
+      this.sorts = planner;
+      return this;
+    }
+  }
+
+  /**
+   * Make a planner for sorting users by the fields in `SORT_FIELDS`, checked
+   * against the indexes `MongoUserRepository` declares.
+   *
+   * @param allowDiskUse `true` to run sorts no index supports with
+   *   `allowDiskUse`, or `false` to reject them
+   * @return the planner
+   */
+  public static SortPlanner sortPlanner(boolean allowDiskUse) {
+    return new SortPlanner(SORT_FIELDS, MongoUserRepository.INDEXES, MongoUserRepository.CASE_INSENSITIVE_INDEXES,
+      allowDiskUse);
   }
 
   /**
    * Set the JSON body of the response to be the single user
    * specified by the `id` parameter in the request
    *
+   * The body is JSON unless the `Accept` header asks for one of the other
+   * `ResponseFormat`s.
+   *
    * @param ctx a Javalin HTTP context
    */
-  public void getUser(Context ctx) {
+  public void getUser(Context ctx) throws IOException {
     String id = ctx.pathParam("id");
-    User user;
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    // Passing the repository's JSON straight through only helps if the client wants JSON.
+    boolean passthrough = passthroughReads && format == ResponseFormat.JSON;
+    Object user;
 
     try {
-      user = userCollection.find(eq("_id", new ObjectId(id))).first();
+      // With passthrough reads this is the user already encoded as JSON,
+      // otherwise it's a `User` object.
+      user = passthrough ? userRepository.findJsonById(id) : userRepository.findById(id);
     } catch (IllegalArgumentException e) {
       throw new BadRequestResponse("The requested user id wasn't a legal Mongo Object ID.");
     }
     if (user == null) {
       throw new NotFoundResponse("The requested user was not found");
+    } else if (passthrough) {
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      ctx.result((String) user);
+      ctx.status(HttpStatus.OK);
+    } else if (format != ResponseFormat.JSON) {
+      format.write(ctx, user);
+      ctx.status(HttpStatus.OK);
     } else {
       ctx.json(user);
       ctx.status(HttpStatus.OK);
@@ -88,45 +226,104 @@ public class UserController implements Controller {
    * Set the JSON body of the response to be a list of all the users returned from the database
    * that match any requested filters and ordering
    *
+   * The body is JSON unless the `Accept` header asks for one of the other
+   * `ResponseFormat`s.
+   *
    * @param ctx a Javalin HTTP context
    */
-  public void getUsers(Context ctx) {
-    Bson combinedFilter = constructFilter(ctx);
-    Bson sortingOrder = constructSortingOrder(ctx);
-
-    // All three of the find, sort, and into steps happen "in parallel" inside the
-    // database system. So MongoDB is going to find the users with the specified
-    // properties, return those sorted in the specified manner, and put the
-    // results into an initially empty ArrayList.
-    ArrayList<User> matchingUsers = userCollection
-      .find(combinedFilter)
-      .sort(sortingOrder)
-      .into(new ArrayList<>());
-
-    // Set the JSON body of the response to be the list of users returned by the database.
-    // According to the Javalin documentation (https://javalin.io/documentation#context),
-    // this calls result(jsonString), and also sets content type to json
-    ctx.json(matchingUsers);
+  public void getUsers(Context ctx) throws IOException {
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    if (sharedReads != null) {
+      // Requests with the same parameters get the same body, so whichever of them
+      // gets here first builds the query and encodes the users for all of them.
+      SingleFlight.RequestKey key = SingleFlight.RequestKey.of(API_USERS, ctx.queryParamMap(), format);
+      byte[] body = sharedReads.run(key, () -> encodeUsers(usersQuery(ctx), format));
+      ctx.contentType(format.contentType());
+      ctx.result(body);
+      ctx.status(HttpStatus.OK);
+      return;
+    }
+
+    Query query = usersQuery(ctx);
+    if (passthroughReads && format == ResponseFormat.JSON) {
+      // The repository writes the users straight to the response as it reads them,
+      // so we have to set the status and content type first.
+      ctx.status(HttpStatus.OK);
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      try (Span span = Tracer.span("users.writeJson")) {
+        userRepository.writeJson(query, RequestDeadlines.streamTo(ctx));
+      }
+      return;
+    }
+
+    // The repository finds the users with the specified properties and
+    // returns them sorted in the specified manner.
+    List<User> matchingUsers = findUsers(query);
+
+    try (Span span = Tracer.span("users.encode")) {
+      if (format != ResponseFormat.JSON) {
+        // The client asked for one of the binary formats (e.g., CBOR) instead of JSON.
+        format.write(ctx, matchingUsers);
+      } else {
+        // Set the JSON body of the response to be the list of users returned by the database.
+        // According to the Javalin documentation (https://javalin.io/documentation#context),
+        // this calls result(jsonString), and also sets content type to json
+        ctx.json(matchingUsers);
+      }
+    }
 
     // Explicitly set the context status to OK
     ctx.status(HttpStatus.OK);
   }
 
+  private Query usersQuery(Context ctx) {
+    try (Span span = Tracer.span("users.constructFilter")) {
+      return constructSortingOrder(ctx, constructFilter(ctx));
+    }
+  }
+
+  private List<User> findUsers(Query query) {
+    try (Span span = Tracer.span("users.find")) {
+      List<User> users = userRepository.find(query);
+      span.attribute("users.count", users.size());
+      return users;
+    }
+  }
+
+  private byte[] encodeUsers(Query query, ResponseFormat format) throws IOException {
+    if (passthroughReads && format == ResponseFormat.JSON) {
+      try (Span span = Tracer.span("users.writeJson")) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        userRepository.writeJson(query, body);
+        return body.toByteArray();
+      }
+    }
+    List<User> users = findUsers(query);
+    try (Span span = Tracer.span("users.encode")) {
+      return format.mapper().writeValueAsBytes(users);
+    }
+  }
+
   /**
-   * Construct a Bson filter document to use in the `find` method based on the
+   * Construct a query to use in the `find` method based on the
    * query parameters from the context.
    *
    * This checks for the presence of the `age`, `company`, and `role` query
-   * parameters and constructs a filter document that will match users with
+   * parameters and constructs a query that will match users with
    * the specified values for those fields.
+   * `company` is plain text to find anywhere in the company, unless `match`
+   * says otherwise (see `TextMatch`): `exact` and `prefix` ignore case with a
+   * collation instead of a regex, so they can use an index.
+   * `createdAfter` and `createdBefore` (dates or ISO-8601 times) match users
+   * by when they were added, using their `_id`s; see `CreatedAt`.
    *
    * @param ctx a Javalin HTTP context, which contains the query parameters
    *    used to construct the filter
-   * @return a Bson filter document that can be used in the `find` method
-   *   to filter the database collection of users
+   * @return a query that can be used in the `find` method
+   *   to filter the collection of users
    */
-  private Bson constructFilter(Context ctx) {
-    List<Bson> filters = new ArrayList<>(); // start with an empty list of filters
+  private Query constructFilter(Context ctx) {
+    Query query = new Query(); // start with a query with no conditions
 
     if (ctx.queryParamMap().containsKey(AGE_KEY)) {
       int targetAge = ctx.queryParamAsClass(AGE_KEY, Integer.class)
@@ -134,48 +331,152 @@ public class UserController implements Controller {
         .check(it -> it < REASONABLE_AGE_LIMIT,
           "User's age must be less than " + REASONABLE_AGE_LIMIT + "; you provided " + ctx.queryParam(AGE_KEY))
         .get();
-      filters.add(eq(AGE_KEY, targetAge));
+      query.where(Condition.eq(AGE_KEY, targetAge));
     }
     if (ctx.queryParamMap().containsKey(COMPANY_KEY)) {
-      Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(COMPANY_KEY)), Pattern.CASE_INSENSITIVE);
-      filters.add(regex(COMPANY_KEY, pattern));
+      String company = ctx.queryParam(COMPANY_KEY);
+      query.where(textCondition(COMPANY_KEY, company, textMatch(ctx)));
     }
     if (ctx.queryParamMap().containsKey(ROLE_KEY)) {
       String role = ctx.queryParamAsClass(ROLE_KEY, String.class)
         .check(it -> it.matches(ROLE_REGEX), "User must have a legal user role")
         .get();
-      filters.add(eq(ROLE_KEY, role));
+      query.where(Condition.eq(ROLE_KEY, role));
+    }
+    // Ranges of `_id`s, which the `_id` index answers without a timestamp field.
+    if (ctx.queryParamMap().containsKey(CREATED_AFTER_KEY)) {
+      query.where(CreatedAt.after(createdParam(ctx, CREATED_AFTER_KEY)));
+    }
+    if (ctx.queryParamMap().containsKey(CREATED_BEFORE_KEY)) {
+      query.where(CreatedAt.before(createdParam(ctx, CREATED_BEFORE_KEY)));
     }
 
-    // Combine the list of filters into a single filtering document.
-    Bson combinedFilter = filters.isEmpty() ? new Document() : and(filters);
+    return query;
+  }
 
-    return combinedFilter;
+  private static TextMatch textMatch(Context ctx) {
+    String match = ctx.queryParam(MATCH_KEY);
+    if (match == null) {
+      return TextMatch.LITERAL;
+    }
+    try {
+      return TextMatch.of(match);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("User match must be " + TextMatch.names());
+    }
+  }
+
+  private static Condition textCondition(String key, String value, TextMatch match) {
+    try {
+      return match.condition(key, value);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("User " + key + " isn't a regex we can safely run (" + e.getMessage()
+        + "); use ?" + MATCH_KEY + "=" + TextMatch.LITERAL + " to search for it as plain text");
+    }
+  }
+
+  private static Instant createdParam(Context ctx, String key) {
+    try {
+      return CreatedAt.parse(ctx.queryParam(key));
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("User " + key + " must be a date or time like 2024-01-31 or "
+        + "2024-01-31T12:00:00Z; you provided " + ctx.queryParam(key));
+    }
   }
 
   /**
-   * Construct a Bson sorting document to use in the `sort` method based on the
-   * query parameters from the context.
+   * Add the sort to use to a query, based on the query parameters from
+   * the context.
    *
    * This checks for the presence of the `sortby` and `sortorder` query
-   * parameters and constructs a sorting document that will sort users by
-   * the specified field in the specified order. If the `sortby` query
-   * parameter is not present, it defaults to "name". If the `sortorder`
-   * query parameter is not present, it defaults to "asc".
+   * parameters and sorts users by the specified fields in the specified
+   * order, then by `_id` to break ties (see `SortPlanner`). `sortby` can
+   * list several fields, e.g., `company,-age`, and defaults to "name". If
+   * the `sortorder` query parameter is not present, it defaults to "asc".
    *
    * @param ctx a Javalin HTTP context, which contains the query parameters
    *   used to construct the sorting order
-   * @return a Bson sorting document that can be used in the `sort` method
-   *  to sort the database collection of users
+   * @param query the query to sort
+   * @return the query, sorted
+   * @throws BadRequestResponse if the sort isn't allowed, or can't be done
+   *   without an index
    */
-  private Bson constructSortingOrder(Context ctx) {
+  private Query constructSortingOrder(Context ctx, Query query) {
     // Sort the results. Use the `sortby` query param (default "name")
-    // as the field to sort by, and the query param `sortorder` (default
+    // as the fields to sort by, and the query param `sortorder` (default
     // "asc") to specify the sort order.
-    String sortBy = Objects.requireNonNullElse(ctx.queryParam("sortby"), "name");
-    String sortOrder = Objects.requireNonNullElse(ctx.queryParam("sortorder"), "asc");
-    Bson sortingOrder = sortOrder.equals("desc") ?  Sorts.descending(sortBy) : Sorts.ascending(sortBy);
-    return sortingOrder;
+    String sortBy = Objects.requireNonNullElse(ctx.queryParam(SORT_BY_KEY), "name");
+    boolean descending = "desc".equals(ctx.queryParam(SORT_ORDER_KEY));
+    try {
+      return sorts.sort(query, sortBy, descending);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("User " + SORT_BY_KEY + " isn't a sort we can do (" + e.getMessage() + ")");
+    }
+  }
+
+  /**
+   * Set the body of the response to be `n` (default 10, at most 1000)
+   * random users that match the request's filters (the same ones `getUsers`
+   * understands), e.g., for spot checks, without downloading them all; see
+   * `Repository.sample()`.
+   *
+   * Every request gets a different sample, so unlike `getUsers`, identical
+   * requests don't share a response, and caches are told not to keep it.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem encoding the response
+   */
+  public void sampleUsers(Context ctx) throws IOException {
+    int n = sampleSize(ctx);
+    Query query = constructFilter(ctx);
+    List<User> users;
+    try (Span span = Tracer.span("users.sample")) {
+      users = userRepository.sample(query, n);
+      span.attribute("users.count", users.size());
+    }
+
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    if (format != ResponseFormat.JSON) {
+      format.write(ctx, users);
+    } else {
+      ctx.json(users);
+    }
+    ctx.header(Header.CACHE_CONTROL, "no-store");
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static int sampleSize(Context ctx) {
+    if (!ctx.queryParamMap().containsKey(SAMPLE_SIZE_KEY)) {
+      return DEFAULT_SAMPLE_SIZE;
+    }
+    return ctx.queryParamAsClass(SAMPLE_SIZE_KEY, Integer.class)
+      .check(it -> it > 0 && it <= MAX_SAMPLE_SIZE,
+        "User sample size (n) must be from 1 to " + MAX_SAMPLE_SIZE + ", you gave "
+          + ctx.queryParam(SAMPLE_SIZE_KEY))
+      .get();
+  }
+
+  /**
+   * Explain how the database runs the query `getUsers` would for the same
+   * parameters (see `QueryPlan`), so we can see which combinations of
+   * filters and sorts are expensive before a client starts using them.
+   *
+   * Explaining runs the query, so it's only allowed `QueryPlan.MAX_TIME_MILLIS`
+   * (or less, if the request's deadline is sooner); a query that takes
+   * longer than that gets its plan without any counts.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void explainUsers(Context ctx) {
+    Query query = usersQuery(ctx);
+    QueryPlan plan;
+    try {
+      plan = userRepository.explain(query, Deadline.maxTimeMillis(QueryPlan.MAX_TIME_MILLIS));
+    } catch (UnsupportedOperationException e) {
+      throw new NotImplementedResponse(e.getMessage());
+    }
+    ctx.json(plan);
+    ctx.status(HttpStatus.OK);
   }
 
   /**
@@ -191,53 +492,48 @@ public class UserController implements Controller {
    *   used to sort the results. We support either sorting by company name
    *   (in either `asc` or `desc` order) or by the number of users in the
    *   company (`count`, also in either `asc` or `desc` order).
+   * @throws IOException if there's a problem encoding a shared response
    */
-  public void getUsersGroupedByCompany(Context ctx) {
+  public void getUsersGroupedByCompany(Context ctx) throws IOException {
+    if (sharedReads != null) {
+      // This is an aggregation over every user, so it's well worth sharing.
+      SingleFlight.RequestKey key =
+        SingleFlight.RequestKey.of(API_USERS_BY_COMPANY, ctx.queryParamMap(), ResponseFormat.JSON);
+      byte[] body = sharedReads.run(key,
+        () -> ResponseFormat.JSON.mapper().writeValueAsBytes(groupByCompany(ctx)));
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      ctx.result(body);
+      ctx.status(HttpStatus.OK);
+      return;
+    }
+
+    ctx.json(groupByCompany(ctx));
+    ctx.status(HttpStatus.OK);
+  }
+
+  private List<UserByCompany> groupByCompany(Context ctx) {
     // We'll support sorting the results either by company name (in either `asc` or `desc` order)
     // or by the number of users in the company (`count`, also in either `asc` or `desc` order).
     String sortBy = Objects.requireNonNullElse(ctx.queryParam("sortBy"), "_id");
+    if (!COMPANY_SORT_FIELDS.contains(sortBy)) {
+      throw new BadRequestResponse("Companies can only be sorted by 'company', '_id', or 'count', not '"
+        + sortBy + "'");
+    }
     if (sortBy.equals("company")) {
       sortBy = "_id";
     }
     String sortOrder = Objects.requireNonNullElse(ctx.queryParam("sortOrder"), "asc");
-    Bson sortingOrder = sortOrder.equals("desc") ?  Sorts.descending(sortBy) : Sorts.ascending(sortBy);
-
-    // The `UserByCompany` class is a simple class that has fields for the company
-    // name, the number of users in that company, and a list of user names and IDs
-    // (using the `UserIdName` class to store the user names and IDs).
-    // We're going to use the aggregation pipeline to group users by company, and
-    // then count the number of users in each company. We'll also collect the user
-    // names and IDs for each user in each company. We'll then convert the results
-    // of the aggregation pipeline to `UserByCompany` objects.
-
-    ArrayList<UserByCompany> matchingUsers = userCollection
-      // The following aggregation pipeline groups users by company, and
-      // then counts the number of users in each company. It also collects
-      // the user names and IDs for each user in each company.
-      .aggregate(
-        List.of(
-          // Project the fields we want to use in the next step, i.e., the _id, name, and company fields
-          new Document("$project", new Document("_id", 1).append("name", 1).append("company", 1)),
-          // Group the users by company, and count the number of users in each company
-          new Document("$group", new Document("_id", "$company")
-            // Count the number of users in each company
-            .append("count", new Document("$sum", 1))
-            // Collect the user names and IDs for each user in each company
-            .append("users", new Document("$push", new Document("_id", "$_id").append("name", "$name")))),
-          // Sort the results. Use the `sortby` query param (default "company")
-          // as the field to sort by, and the query param `sortorder` (default
-          // "asc") to specify the sort order.
-          new Document("$sort", sortingOrder)
-        ),
-        // Convert the results of the aggregation pipeline to UserGroupResult objects
-        // (i.e., a list of UserGroupResult objects). It is necessary to have a Java type
-        // to convert the results to, and the JacksonMongoCollection will do this for us.
-        UserByCompany.class
-      )
-      .into(new ArrayList<>());
-
-    ctx.json(matchingUsers);
-    ctx.status(HttpStatus.OK);
+    SortKey sortingOrder = sortOrder.equals("desc") ?  SortKey.descending(sortBy) : SortKey.ascending(sortBy);
+
+    // The repository groups the users by company, counts the number of users in
+    // each company, and collects the user names and IDs for each user in each
+    // company (see `MongoUserRepository.groupByCompany()` for the aggregation
+    // pipeline that does this in MongoDB).
+    try (Span span = Tracer.span("users.groupByCompany")) {
+      List<UserByCompany> companies = userRepository.groupByCompany(sortingOrder);
+      span.attribute("companies.count", companies.size());
+      return companies;
+    }
   }
 
   /**
@@ -282,7 +578,7 @@ public class UserController implements Controller {
     newUser.avatar = generateAvatar(newUser.email);
 
     // Add the new user to the database
-    userCollection.insertOne(newUser);
+    userRepository.insert(newUser);
 
     // Set the JSON response to be the `_id` of the newly created user.
     // This gives the client the opportunity to know the ID of the new user,
@@ -303,9 +599,8 @@ public class UserController implements Controller {
    */
   public void deleteUser(Context ctx) {
     String id = ctx.pathParam("id");
-    DeleteResult deleteResult = userCollection.deleteOne(eq("_id", new ObjectId(id)));
     // We should have deleted 1 or 0 users, depending on whether `id` is a valid user ID.
-    if (deleteResult.getDeletedCount() != 1) {
+    if (!userRepository.deleteById(id)) {
       ctx.status(HttpStatus.NOT_FOUND);
       throw new NotFoundResponse(
         "Was unable to delete ID "
@@ -356,10 +651,39 @@ public class UserController implements Controller {
     return result.toString();
   }
 
+  /**
+   * Stream all the users that match the request's filters (the same ones
+   * `getUsers` understands) as newline-delimited JSON; see `NdjsonExport`.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem writing the response
+   */
+  public void exportUsers(Context ctx) throws IOException {
+    NdjsonExport.export(ctx, "users", userRepository, constructFilter(ctx));
+  }
+
+  /**
+   * Look up the users whose IDs are in the JSON body of the request
+   * (`{"ids": [...]}`), responding with whether each was found, in the
+   * same order; see `BatchGet`.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws IOException if there's a problem encoding the response
+   */
+  public void getUsersByIds(Context ctx) throws IOException {
+    BatchGet.respond(ctx, userRepository, BatchGet.idsFromBody(ctx.body()), user -> user._id);
+  }
+
   /**
    * Setup routes for the `user` collection endpoints.
    *
    * These endpoints are:
+   *   - `GET /api/users/export?batchSize=NUMBER`
+   *       - Stream the (filtered) users as newline-delimited JSON
+   *       - Takes the same filters as `GET /api/users`
+   *   - `POST /api/users/batchGet`
+   *       - Look up several users at once
+   *       - The body is like `{"ids": ["ID1", "ID2"]}`
    *   - `GET /api/users/:id`
    *       - Get the specified user
    *   - `GET /api/users?age=NUMBER&company=STRING&name=STRING`
@@ -384,6 +708,18 @@ public class UserController implements Controller {
    * @param userController The controller that handles the user endpoints
    */
   public void addRoutes(Javalin server) {
+    // Export users as newline-delimited JSON. This has to come before the
+    // route for a single user, or "export" would be taken as an ID.
+    server.get(API_USERS_EXPORT, this::exportUsers);
+
+    // Explain the query for a list of users, which also has to come before the
+    // route for a single one.
+    server.get(API_USERS_EXPLAIN, this::explainUsers);
+
+    // Pick random users, filtered using query parameters (also before the
+    // route for a single user)
+    server.get(API_USERS_SAMPLE, this::sampleUsers);
+
     // Get the specified user
     server.get(API_USER_BY_ID, this::getUser);
 
@@ -391,7 +727,10 @@ public class UserController implements Controller {
     server.get(API_USERS, this::getUsers);
 
     // Get the users, possibly filtered, grouped by company
-    server.get("/api/usersByCompany", this::getUsersGroupedByCompany);
+    server.get(API_USERS_BY_COMPANY, this::getUsersGroupedByCompany);
+
+    // Look up a list of users by ID, with the IDs in the JSON body
+    server.post(API_USERS_BATCH_GET, this::getUsersByIds);
 
     // Add new user with the user info being in the JSON body
     // of the HTTP request
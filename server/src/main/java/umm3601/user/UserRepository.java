@@ -0,0 +1,26 @@
+package umm3601.user;
+
+import java.util.List;
+
+import umm3601.storage.Repository;
+import umm3601.storage.SortKey;
+
+/**
+ * Where `UserController` gets its users from.
+ *
+ * See `MongoUserRepository` for the MongoDB-backed version used by the
+ * server, and `InMemoryUserRepository` for a version that keeps everything
+ * in (indexed) memory.
+ */
+public interface UserRepository extends Repository<User> {
+
+  /**
+   * Group the users by company, with a count of the users in each company
+   * and the names and IDs of those users.
+   *
+   * @param sortKey how to sort the groups; `_id` (the company name) and
+   *   `count` are the fields that make sense to sort by
+   * @return a (mutable) list of the groups
+   */
+  List<UserByCompany> groupByCompany(SortKey sortKey);
+}
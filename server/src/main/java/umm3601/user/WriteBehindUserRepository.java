@@ -0,0 +1,40 @@
+package umm3601.user;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import umm3601.storage.SortKey;
+import umm3601.storage.WriteBehindRepository;
+import umm3601.storage.WriteLog;
+
+/**
+ * A `UserRepository` that writes new users to a local log first, and adds
+ * them to another `UserRepository` (normally a `MongoUserRepository`) in
+ * the background; see `WriteBehindRepository`.
+ */
+public class WriteBehindUserRepository extends WriteBehindRepository<User> implements UserRepository {
+
+  private final UserRepository backing;
+
+  /**
+   * Construct a write-behind repository for users.
+   *
+   * @param backing the repository that users are eventually added to, and that reads go to
+   * @param log the log that new users are written to first
+   */
+  public WriteBehindUserRepository(UserRepository backing, WriteLog log) {
+    super(backing, log, User.class, user -> {
+      if (user._id == null) {
+        user._id = new ObjectId().toHexString();
+      }
+      return user._id;
+    });
+    this.backing = backing;
+  }
+
+  @Override
+  public List<UserByCompany> groupByCompany(SortKey sortKey) {
+    return backing.groupByCompany(sortKey);
+  }
+}
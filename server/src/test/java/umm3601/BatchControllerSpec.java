@@ -0,0 +1,183 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.storage.Deadline;
+
+/**
+ * Tests for running batches, against a little HTTP server that stands in
+ * for ours.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class BatchControllerSpec {
+
+  private HttpServer server;
+  private BatchController batchController;
+
+  // Both of the `/api/together` requests have to be running at once for either to finish.
+  private final CountDownLatch together = new CountDownLatch(2);
+  // The `/api/slow` requests wait for this (for up to 5 seconds) before they respond.
+  private final CountDownLatch released = new CountDownLatch(1);
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/api/todos", exchange -> respond(exchange, 200,
+      "[{\"owner\": \"Blanche\", \"query\": \"" + exchange.getRequestURI().getQuery() + "\"}]"));
+    server.createContext("/api/users", exchange -> respond(exchange, 404, "{\"title\": \"Not found\"}"));
+    server.createContext("/api/echo", exchange -> respond(exchange, 201,
+      new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+    server.createContext("/api/empty", exchange -> respond(exchange, 204, ""));
+    server.createContext("/api/together", exchange -> {
+      together.countDown();
+      try {
+        respond(exchange, together.await(5, TimeUnit.SECONDS) ? 200 : 504, "{}");
+      } catch (InterruptedException e) {
+        respond(exchange, 503, "{}");
+      }
+    });
+    server.createContext("/api/slow", exchange -> {
+      try {
+        released.await(5, TimeUnit.SECONDS);
+        respond(exchange, 200, "{}");
+      } catch (InterruptedException e) {
+        respond(exchange, 503, "{}");
+      }
+    });
+    server.createContext("/api/timeout", exchange -> respond(exchange, 200,
+      "{\"timeout\": \"" + exchange.getRequestHeaders().getFirst(RequestDeadlines.TIMEOUT_HEADER) + "\"}"));
+    server.start();
+    batchController = new BatchController(URI.create("http://localhost:" + server.getAddress().getPort()));
+  }
+
+  @AfterEach
+  void stopServer() {
+    released.countDown();
+    server.stop(0);
+    Deadline.clear();
+  }
+
+  @Test
+  void runsEachRequestAndKeepsTheirOrder() {
+    List<BatchController.SubResponse> responses = batchController.dispatch(List.of(
+      new BatchController.SubRequest("todos", "GET", "/api/todos?status=complete", null),
+      new BatchController.SubRequest("sam", "GET", "/api/users/588935f57546a2daea44de7c", null),
+      new BatchController.SubRequest("new", "POST", "/api/echo",
+        JsonMappers.http().createObjectNode().put("owner", "Kim")),
+      new BatchController.SubRequest("empty", "DELETE", "/api/empty", null)));
+
+    assertEquals(4, responses.size());
+    assertEquals("todos", responses.get(0).id());
+    assertEquals(200, responses.get(0).status());
+    assertEquals("status=complete", responses.get(0).body().get(0).get("query").asText());
+    assertEquals(404, responses.get(1).status());
+    assertEquals("Not found", responses.get(1).body().get("title").asText());
+    assertEquals(201, responses.get(2).status());
+    assertEquals("Kim", responses.get(2).body().get("owner").asText());
+    assertEquals(204, responses.get(3).status());
+    assertNull(responses.get(3).body());
+  }
+
+  @Test
+  void runsRequestsInParallel() {
+    List<BatchController.SubResponse> responses = batchController.dispatch(List.of(
+      new BatchController.SubRequest("a", "GET", "/api/together", null),
+      new BatchController.SubRequest("b", "GET", "/api/together", null)));
+
+    assertEquals(200, responses.get(0).status());
+    assertEquals(200, responses.get(1).status());
+  }
+
+  @Test
+  void reportsRequestsThatFail() {
+    server.stop(0);
+    List<BatchController.SubResponse> responses = batchController.dispatch(List.of(
+      new BatchController.SubRequest("todos", "GET", "/api/todos", null)));
+
+    assertEquals(502, responses.get(0).status());
+  }
+
+  @Test
+  void neverPassesOnMoreThanTheHeaderAllows() {
+    // Like a batch with a `REQUEST_TIMEOUT_MS` longer than clients are allowed to ask for.
+    Deadline.start(RequestDeadlines.MAX_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+    List<BatchController.SubResponse> responses = batchController.dispatch(List.of(
+      new BatchController.SubRequest("todos", "GET", "/api/timeout", null)));
+
+    assertEquals(200, responses.get(0).status());
+    assertEquals(Long.toString(RequestDeadlines.MAX_TIMEOUT_MILLIS), responses.get(0).body().get("timeout").asText());
+  }
+
+  @Test
+  void stopsWaitingWhenTheDeadlinePasses() {
+    Deadline.start(200, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    List<BatchController.SubResponse> responses = batchController.dispatch(List.of(
+      new BatchController.SubRequest("slow", "GET", "/api/slow", null)));
+
+    assertEquals(504, responses.get(0).status());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+  }
+
+  @Test
+  void checksTheBatch() {
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of())));
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(
+      Collections.nCopies(BatchController.MAX_REQUESTS + 1,
+        new BatchController.SubRequest("todos", "GET", "/api/todos", null)))));
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of(
+      new BatchController.SubRequest("batch", "POST", "/api/batch", null)))));
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of(
+      new BatchController.SubRequest("outside", "GET", "http://example.com/api/todos", null)))));
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of(
+      new BatchController.SubRequest("patch", "PATCH", "/api/todos", null)))));
+    assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of(
+      new BatchController.SubRequest("spaces", "GET", "/api/todos?owner=Blanche Smith", null)))));
+    BatchController.check(new BatchController.Batch(List.of(
+      new BatchController.SubRequest("todos", "GET", "/api/todos?owner=Blanche%20Smith", null))));
+  }
+
+  @Test
+  void batchesCantHideInsideBatches() {
+    // The server would decode and normalize each of these to `/api/batch`.
+    for (String path : new String[] {
+      "/api/%62atch", "/api/BATCH", "/api/batch/", "/api/./batch", "/api/todos/../batch",
+      "/api/%2e%2e/api/batch", "/api//batch", "/api/batch;x=1", "//localhost/api/batch", "/api/batch#x"}) {
+      assertThrows(BadRequestResponse.class, () -> BatchController.check(new BatchController.Batch(List.of(
+        new BatchController.SubRequest("nested", "POST", path, null)))), path);
+    }
+    assertEquals("/api/todos", BatchController.routedPath("/api/todos?owner=%2e%2e"));
+  }
+}
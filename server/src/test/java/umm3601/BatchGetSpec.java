@@ -0,0 +1,119 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.storage.Query;
+import umm3601.storage.Repository;
+
+/**
+ * Tests for looking up lists of IDs in a repository of strings (each of
+ * which is its own ID), which records the batches it's asked for.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class BatchGetSpec {
+
+  private static final String FIRST = "65a0c0de0000000000000001";
+  private static final String SECOND = "65a0c0de0000000000000002";
+  private static final String MISSING = "65a0c0de00000000000000ff";
+
+  private final List<Collection<String>> batches = new ArrayList<>();
+
+  private final Repository<String> repository = new Repository<>() {
+    private final List<String> items = List.of(FIRST, SECOND);
+
+    @Override
+    public String findById(String id) {
+      return items.contains(id) ? id : null;
+    }
+
+    @Override
+    public List<String> findByIds(Collection<String> ids) {
+      batches.add(new ArrayList<>(ids));
+      List<String> found = new ArrayList<>();
+      for (String item : items) {
+        if (ids.contains(item)) {
+          found.add(item);
+        }
+      }
+      // The order shouldn't matter.
+      Collections.reverse(found);
+      return found;
+    }
+
+    @Override
+    public List<String> find(Query query) {
+      return new ArrayList<>(items);
+    }
+
+    @Override
+    public long count() {
+      return items.size();
+    }
+
+    @Override
+    public void insert(String item) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean update(String id, String field, Object value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  @Test
+  void returnsResultsInTheOrderAskedFor() {
+    List<BatchGet.Result<String>> results = BatchGet.fetch(repository,
+      List.of(FIRST, MISSING, SECOND, FIRST.toUpperCase()), Function.identity());
+
+    assertEquals(List.of(List.of(FIRST, MISSING, SECOND)), batches);
+    assertEquals(4, results.size());
+    assertEquals(new BatchGet.Result<>(FIRST, true, FIRST), results.get(0));
+    assertFalse(results.get(1).found());
+    assertNull(results.get(1).item());
+    assertEquals(SECOND, results.get(2).item());
+    // The ID is given back as it was asked for.
+    assertEquals(FIRST.toUpperCase(), results.get(3).id());
+    assertTrue(results.get(3).found());
+  }
+
+  @Test
+  void checksAllTheIdsFirst() {
+    BadRequestResponse e = assertThrows(BadRequestResponse.class,
+      () -> BatchGet.fetch(repository, List.of(FIRST, "bad", "worse"), Function.identity()));
+    assertEquals("These ids aren't legal Mongo Object IDs: bad, worse", e.getMessage());
+    assertThrows(BadRequestResponse.class, () -> BatchGet.fetch(repository, List.of(), Function.identity()));
+    assertThrows(BadRequestResponse.class,
+      () -> BatchGet.fetch(repository, Collections.nCopies(BatchGet.MAX_IDS + 1, FIRST), Function.identity()));
+    assertTrue(batches.isEmpty());
+  }
+
+  @Test
+  void readsIdsFromQueriesAndBodies() {
+    assertEquals(List.of(FIRST, SECOND, MISSING),
+      BatchGet.idsFromQuery(List.of(FIRST + ", " + SECOND + ",", MISSING)));
+    assertEquals(List.of(FIRST, SECOND),
+      BatchGet.idsFromBody("{\"ids\": [\"" + FIRST + "\", \"" + SECOND + "\"]}"));
+    assertThrows(BadRequestResponse.class, () -> BatchGet.idsFromBody("{\"ids\": \"" + FIRST + "\"}"));
+    assertThrows(BadRequestResponse.class, () -> BatchGet.idsFromBody("{\"ids\": [1, 2]}"));
+    assertThrows(BadRequestResponse.class, () -> BatchGet.idsFromBody("{\"ids\": "));
+  }
+}
@@ -0,0 +1,166 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import umm3601.storage.Query;
+import umm3601.storage.Repository;
+
+/**
+ * Tests for streaming imports, using a repository of plain strings that
+ * remembers the size of every batch it's handed.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class BulkImportSpec {
+
+  private final List<String> stored = new ArrayList<>();
+  private final List<Integer> batchSizes = new ArrayList<>();
+
+  private final Repository<String> repository = new Repository<>() {
+    @Override
+    public String findById(String id) {
+      return null;
+    }
+
+    @Override
+    public List<String> find(Query query) {
+      return stored;
+    }
+
+    @Override
+    public long count() {
+      return stored.size();
+    }
+
+    @Override
+    public void insert(String item) {
+      stored.add(item);
+    }
+
+    @Override
+    public int insertAll(List<String> items) {
+      batchSizes.add(items.size());
+      int added = 0;
+      for (String item : items) {
+        // Pretend "taken" is a duplicate key.
+        if (!item.equals("taken")) {
+          stored.add(item);
+          added++;
+        }
+      }
+      return added;
+    }
+
+    @Override
+    public boolean update(String id, String field, Object value) {
+      return false;
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+      return false;
+    }
+  };
+
+  private static String name(JsonNode json) {
+    if (!json.path("name").isTextual()) {
+      throw new IllegalArgumentException("no name");
+    }
+    return json.get("name").asText();
+  }
+
+  private static InputStream body(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @BeforeEach
+  void setupEach() {
+    stored.clear();
+    batchSizes.clear();
+  }
+
+  @Test
+  void importsAnArray() throws IOException {
+    BulkImport.Summary summary = BulkImport.run(
+      body("[{\"name\": \"a\"}, {\"name\": \"b\"}, {\"name\": \"c\"}]"), repository, BulkImportSpec::name);
+
+    assertEquals(new BulkImport.Summary(3, 0, true, List.of()), summary);
+    assertEquals(List.of("a", "b", "c"), stored);
+  }
+
+  @Test
+  void importsNewlineDelimitedJson() throws IOException {
+    BulkImport.Summary summary = BulkImport.run(
+      body("{\"name\": \"a\"}\n{\"name\": \"b\"}\n\n{\"name\": \"c\"}\n"), repository, BulkImportSpec::name);
+
+    assertEquals(3, summary.inserted());
+    assertTrue(summary.complete());
+    assertEquals(List.of("a", "b", "c"), stored);
+  }
+
+  @Test
+  void insertsInBatches() throws IOException {
+    StringBuilder json = new StringBuilder();
+    int count = BulkImport.BATCH_SIZE * 2 + 5;
+    for (int i = 0; i < count; i++) {
+      json.append("{\"name\": \"").append(i).append("\"}\n");
+    }
+
+    BulkImport.Summary summary = BulkImport.run(body(json.toString()), repository, BulkImportSpec::name);
+
+    assertEquals(count, summary.inserted());
+    assertEquals(List.of(BulkImport.BATCH_SIZE, BulkImport.BATCH_SIZE, 5), batchSizes);
+  }
+
+  @Test
+  void skipsAndReportsRejectedRecords() throws IOException {
+    BulkImport.Summary summary = BulkImport.run(
+      body("[{\"name\": \"a\"}, {\"nom\": \"b\"}, 7, {\"name\": \"taken\"}, {\"name\": \"c\"}]"),
+      repository, BulkImportSpec::name);
+
+    assertEquals(2, summary.inserted());
+    assertEquals(3, summary.rejected());
+    assertTrue(summary.complete());
+    assertEquals(List.of("a", "c"), stored);
+    assertEquals("Record 2: no name", summary.errors().get(0));
+    assertEquals("Record 3: no name", summary.errors().get(1));
+    assertTrue(summary.errors().get(2).contains("refused by the database"));
+  }
+
+  @Test
+  void keepsWhatCameBeforeMalformedJson() throws IOException {
+    BulkImport.Summary summary = BulkImport.run(
+      body("{\"name\": \"a\"}\n{\"name\": \"b\"}\n{\"name\": \n"), repository, BulkImportSpec::name);
+
+    assertFalse(summary.complete());
+    assertEquals(2, summary.inserted());
+    assertEquals(List.of("a", "b"), stored);
+    assertTrue(summary.errors().get(0).startsWith("The body isn't legal JSON at line"));
+  }
+
+  @Test
+  void limitsTheErrorsReported() throws IOException {
+    StringBuilder json = new StringBuilder();
+    for (int i = 0; i < BulkImport.MAX_REPORTED_ERRORS * 2; i++) {
+      json.append("{}\n");
+    }
+
+    BulkImport.Summary summary = BulkImport.run(body(json.toString()), repository, BulkImportSpec::name);
+
+    assertEquals(BulkImport.MAX_REPORTED_ERRORS * 2, summary.rejected());
+    assertEquals(BulkImport.MAX_REPORTED_ERRORS, summary.errors().size());
+  }
+}
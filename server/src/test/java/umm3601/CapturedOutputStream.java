@@ -0,0 +1,48 @@
+package umm3601;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * A `ServletOutputStream` that just collects what's written to it, for
+ * tests of handlers that write to `ctx.outputStream()` on a mocked `Context`.
+ */
+public class CapturedOutputStream extends ServletOutputStream {
+
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+  @Override
+  public void write(int b) {
+    bytes.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    bytes.write(b, off, len);
+  }
+
+  @Override
+  public boolean isReady() {
+    return true;
+  }
+
+  @Override
+  public void setWriteListener(WriteListener writeListener) {
+    // Writes never block, so there's nothing to listen for.
+  }
+
+  /**
+   * @return everything written to this stream so far
+   */
+  public byte[] toByteArray() {
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public String toString() {
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+}
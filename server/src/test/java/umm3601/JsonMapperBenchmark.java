@@ -0,0 +1,96 @@
+package umm3601;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import umm3601.seed.SeedFormat;
+import umm3601.seed.SeedGenerator;
+import umm3601.todos.Todo;
+
+/**
+ * A quick (and admittedly unscientific) benchmark comparing Jackson's default,
+ * reflection-based binding with the tuned mappers in `JsonMappers`.
+ *
+ * It generates a batch of todos with the `SeedGenerator`, and then repeatedly
+ * reads them all from JSON and writes them all back out, which is the same
+ * work a `GET /api/todos` does on the way from MongoJack to the client. Each
+ * mapper gets several warmup rounds first, so the JIT has a chance to do its
+ * thing before we start timing, and we alternate between the mappers for a
+ * few passes.
+ *
+ * Run it with
+ *
+ * ```
+ * ./gradlew jsonBenchmark
+ * ```
+ *
+ * or `./gradlew jsonBenchmark --args="100000 20"` to set the number of todos
+ * and timed rounds.
+ */
+@SuppressWarnings({ "MagicNumber" })
+public final class JsonMapperBenchmark {
+
+  private static final int WARMUP_ROUNDS = 10;
+  private static final int PASSES = 3;
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private JsonMapperBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    int todoCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    byte[] json = generatedTodos(todoCount);
+
+    System.out.printf("%d todos (%d bytes of JSON), %d rounds%n", todoCount, json.length, rounds);
+    // Later runs benefit from JIT work done for earlier ones (in Jackson itself),
+    // so we alternate between the mappers and only the later passes are a fair comparison.
+    ObjectMapper defaultMapper = new ObjectMapper();
+    for (int pass = 1; pass <= PASSES; pass++) {
+      run("pass " + pass + ": default", defaultMapper, json, rounds);
+      run("pass " + pass + ": JsonMappers", JsonMappers.http(), json, rounds);
+    }
+  }
+
+  /**
+   * Generate todos with the `SeedGenerator`, as the JSON our API would send for them.
+   *
+   * @param count the number of todos to generate
+   * @return a JSON array of `count` todos
+   * @throws IOException if there's a problem generating the todos
+   */
+  static byte[] generatedTodos(int count) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SeedGenerator(1, SeedFormat.JSON_ARRAY, 1_000, 500).writeTodos(out, count);
+    // The generated `_id`s are extended JSON (`{"$oid": ...}`), so we turn them
+    // into plain strings like the ones our API sends.
+    return out.toString().replaceAll("\\{\"\\$oid\":(\"[0-9a-f]+\")}", "$1").getBytes();
+  }
+
+  private static void run(String name, ObjectMapper mapper, byte[] json, int rounds) throws IOException {
+    JavaType todoList = mapper.getTypeFactory().constructCollectionType(List.class, Todo.class);
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      mapper.writeValueAsBytes(mapper.readValue(json, todoList));
+    }
+
+    long readNanos = 0;
+    long writeNanos = 0;
+    long todos = 0;
+    for (int i = 0; i < rounds; i++) {
+      long start = System.nanoTime();
+      List<Todo> read = mapper.readValue(json, todoList);
+      long middle = System.nanoTime();
+      mapper.writeValueAsBytes(read);
+      writeNanos += System.nanoTime() - middle;
+      readNanos += middle - start;
+      todos += read.size();
+    }
+    System.out.printf("%-22s read %,12.0f todos/s   write %,12.0f todos/s%n",
+      name, todos * NANOS_PER_SECOND / readNanos, todos * NANOS_PER_SECOND / writeNanos);
+  }
+}
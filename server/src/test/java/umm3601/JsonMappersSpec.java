@@ -0,0 +1,65 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import umm3601.todos.Todo;
+import umm3601.user.User;
+
+/**
+ * Tests for the shared Jackson mappers.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class JsonMappersSpec {
+
+  @Test
+  void mappersAreSharedAndTuned() {
+    assertSame(JsonMappers.http(), JsonMappers.http());
+    assertSame(JsonMappers.mongo(), JsonMappers.mongo());
+    assertNotSame(JsonMappers.http(), JsonMappers.mongo());
+
+    Object blackbird = new BlackbirdModule().getTypeId();
+    assertTrue(JsonMappers.http().getRegisteredModuleIds().contains(blackbird));
+    assertTrue(JsonMappers.mongo().getRegisteredModuleIds().contains(blackbird));
+    assertNotNull(JsonMappers.javalin());
+  }
+
+  @Test
+  void httpMapperRoundTripsTodos() throws IOException {
+    Todo todo = new Todo();
+    todo._id = "58af3a600343927e48e8720f";
+    todo.owner = "Blanche";
+    todo.status = true;
+    todo.body = "Write some tests";
+    todo.category = "homework";
+
+    String json = JsonMappers.http().writeValueAsString(todo);
+    Todo copy = JsonMappers.http().readValue(json, Todo.class);
+
+    assertEquals(todo, copy);
+    assertEquals("Blanche", copy.owner);
+    assertTrue(copy.status);
+    assertEquals("Write some tests", copy.body);
+    assertEquals("homework", copy.category);
+  }
+
+  @Test
+  void httpMapperReadsUsers() throws IOException {
+    User user = JsonMappers.http().readValue(
+      "{\"name\": \"Chris\", \"age\": 25, \"company\": \"UMM\", \"email\": \"chris@this.that\", \"role\": \"admin\"}",
+      User.class);
+
+    assertEquals("Chris", user.name);
+    assertEquals(25, user.age);
+    assertEquals("admin", user.role);
+  }
+}
@@ -0,0 +1,132 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import io.javalin.validation.Validation;
+import io.javalin.validation.ValidationException;
+import umm3601.storage.Condition;
+import umm3601.storage.Query;
+import umm3601.storage.SortKey;
+import umm3601.todos.InMemoryTodoRepository;
+import umm3601.todos.Todo;
+
+/**
+ * Tests for streaming exports, run against the in-memory todo repository.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class NdjsonExportSpec {
+
+  private InMemoryTodoRepository repository;
+  private Context ctx;
+  private CapturedOutputStream out;
+
+  private static Todo todo(String owner, String category, boolean status) {
+    Todo todo = new Todo();
+    todo.owner = owner;
+    todo.category = category;
+    todo.status = status;
+    todo.body = "a todo for " + owner;
+    return todo;
+  }
+
+  @BeforeEach
+  void setupEach() {
+    repository = new InMemoryTodoRepository();
+    repository.insert(todo("Blanche", "homework", true));
+    repository.insert(todo("Fry", "video games", false));
+    repository.insert(todo("Dawn", "homework", true));
+
+    ctx = mock(Context.class);
+    out = new CapturedOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.outputStream()).thenReturn(out);
+  }
+
+  private static List<Todo> parse(String ndjson) throws IOException {
+    String[] lines = ndjson.split("\n");
+    Todo[] todos = new Todo[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      todos[i] = JsonMappers.http().readValue(lines[i], Todo.class);
+    }
+    return Arrays.asList(todos);
+  }
+
+  @Test
+  void writesOneDocumentPerLine() throws IOException {
+    NdjsonExport.export(ctx, "todos", repository,
+      new Query().where(Condition.eq("category", "homework")).sortBy(SortKey.ascending("owner")));
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(NdjsonExport.CONTENT_TYPE);
+    verify(ctx).header(Header.CONTENT_DISPOSITION, "attachment; filename=\"todos.ndjson\"");
+    verify(ctx, never()).header(Header.CONTENT_ENCODING, "gzip");
+
+    String body = out.toString();
+    assertTrue(body.endsWith("\n"));
+    List<Todo> todos = parse(body);
+    assertEquals(2, todos.size());
+    assertEquals("Blanche", todos.get(0).owner);
+    assertEquals("Dawn", todos.get(1).owner);
+  }
+
+  @Test
+  void compressesWhenTheClientAcceptsGzip() throws IOException {
+    when(ctx.header(Header.ACCEPT_ENCODING)).thenReturn("gzip, deflate, br");
+
+    NdjsonExport.export(ctx, "todos", repository, new Query());
+
+    verify(ctx).header(Header.CONTENT_ENCODING, "gzip");
+    verify(ctx).header(Header.VARY, Header.ACCEPT_ENCODING);
+    try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      assertEquals(3, parse(new String(gunzip.readAllBytes(), StandardCharsets.UTF_8)).size());
+    }
+  }
+
+  @Test
+  void checksTheBatchSize() {
+    Map<String, List<String>> queryParams = Map.of(NdjsonExport.BATCH_SIZE_KEY, List.of("0"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(NdjsonExport.BATCH_SIZE_KEY)).thenReturn("0");
+    when(ctx.queryParamAsClass(NdjsonExport.BATCH_SIZE_KEY, Integer.class))
+      .thenReturn(new Validation().validator(NdjsonExport.BATCH_SIZE_KEY, Integer.class, "0"));
+
+    ValidationException exception = assertThrows(ValidationException.class, () -> {
+      NdjsonExport.export(ctx, "todos", repository, new Query());
+    });
+    String message = exception.getErrors().get(NdjsonExport.BATCH_SIZE_KEY).get(0).getMessage();
+    assertTrue(message.contains("you gave 0"));
+    assertEquals(0, out.toByteArray().length);
+  }
+
+  @Test
+  void understandsAcceptEncoding() {
+    assertFalse(NdjsonExport.acceptsGzip(null));
+    assertFalse(NdjsonExport.acceptsGzip("deflate, br"));
+    assertFalse(NdjsonExport.acceptsGzip("gzip;q=0, deflate"));
+    assertTrue(NdjsonExport.acceptsGzip("GZIP"));
+    assertTrue(NdjsonExport.acceptsGzip("deflate, gzip;q=0.5"));
+    assertTrue(NdjsonExport.acceptsGzip("*"));
+  }
+}
@@ -0,0 +1,148 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.mongodb.MongoExecutionTimeoutException;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.storage.Deadline;
+
+/**
+ * Tests for the per-request deadlines in `RequestDeadlines` and `Deadline`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class RequestDeadlinesSpec {
+
+  @Mock
+  private Context ctx;
+
+  private RequestDeadlines deadlines;
+
+  @BeforeEach
+  void setupEach() {
+    MockitoAnnotations.openMocks(this);
+    deadlines = new RequestDeadlines(2_000, Map.of(
+      "/api/todos/export", 0L,
+      "/api/todos", 500L));
+  }
+
+  @AfterEach
+  void teardownEach() {
+    Deadline.clear();
+  }
+
+  @Test
+  void routesGetTheirLongestMatchingDefault() {
+    assertEquals(2_000, deadlines.routeTimeoutMillis("/api/users"));
+    assertEquals(500, deadlines.routeTimeoutMillis("/api/todos"));
+    assertEquals(500, deadlines.routeTimeoutMillis("/api/todos/588935f57546a2daea44de7c"));
+    assertEquals(0, deadlines.routeTimeoutMillis("/api/todos/export"));
+  }
+
+  @Test
+  void theHeaderOverridesTheRouteDefault() {
+    when(ctx.path()).thenReturn("/api/todos");
+    when(ctx.header(RequestDeadlines.TIMEOUT_HEADER)).thenReturn("1500");
+    assertEquals(1_500, deadlines.timeoutMillis(ctx));
+
+    when(ctx.header(RequestDeadlines.TIMEOUT_HEADER)).thenReturn(null);
+    assertEquals(500, deadlines.timeoutMillis(ctx));
+  }
+
+  @Test
+  void theHeaderMustBeALegalTimeout() {
+    when(ctx.path()).thenReturn("/api/todos");
+    for (String header : new String[] {"soon", "0", "-5", Long.toString(RequestDeadlines.MAX_TIMEOUT_MILLIS + 1)}) {
+      when(ctx.header(RequestDeadlines.TIMEOUT_HEADER)).thenReturn(header);
+      assertThrows(BadRequestResponse.class, () -> deadlines.start(ctx));
+    }
+  }
+
+  @Test
+  void startingARequestSetsTheDeadline() {
+    when(ctx.path()).thenReturn("/api/users");
+    deadlines.start(ctx);
+    long maxTime = Deadline.maxTimeMillis();
+    assertTrue(maxTime > 0 && maxTime <= 2_000, "Unexpected maxTime " + maxTime);
+
+    // No deadline means no limit.
+    when(ctx.path()).thenReturn("/api/todos/export");
+    deadlines.start(ctx);
+    assertEquals(0, Deadline.maxTimeMillis());
+  }
+
+  @Test
+  void queriesCantStartAfterTheDeadline() throws InterruptedException {
+    assertEquals(0, Deadline.maxTimeMillis());
+    Deadline.start(1, TimeUnit.MILLISECONDS);
+    Thread.sleep(5);
+    assertThrows(Deadline.DeadlineExceededException.class, Deadline::maxTimeMillis);
+
+    Deadline.clear();
+    assertEquals(0, Deadline.maxTimeMillis());
+  }
+
+  @Test
+  void requestsThatRunOutOfTimeAreCounted() {
+    deadlines.timedOut(new MongoExecutionTimeoutException(50, "operation exceeded time limit"), ctx);
+    verify(ctx).status(HttpStatus.GATEWAY_TIMEOUT);
+
+    deadlines.expired(assertThrows(Deadline.DeadlineExceededException.class, () -> {
+      Deadline.start(1, TimeUnit.NANOSECONDS);
+      Deadline.maxTimeMillis();
+    }), ctx);
+    verify(ctx).status(HttpStatus.SERVICE_UNAVAILABLE);
+
+    assertEquals(new RequestDeadlines.Stats(1, 1, 0), deadlines.stats());
+  }
+
+  @Test
+  void streamsAreMarkedOnceTheyStart() throws IOException {
+    CapturedOutputStream body = new CapturedOutputStream();
+    when(ctx.outputStream()).thenReturn(body);
+    OutputStream out = RequestDeadlines.streamTo(ctx);
+    verify(ctx, never()).attribute(RequestDeadlines.STREAMING_ATTRIBUTE, true);
+
+    out.write(new byte[] {'[', '{'}, 0, 2);
+    out.write('}');
+    verify(ctx, times(1)).attribute(RequestDeadlines.STREAMING_ATTRIBUTE, true);
+    assertEquals("[{}", body.toString());
+  }
+
+  @Test
+  void streamsDontStartAfterTheDeadline() {
+    Deadline.start(1, TimeUnit.NANOSECONDS);
+    assertThrows(Deadline.DeadlineExceededException.class, () -> RequestDeadlines.streamTo(ctx));
+  }
+
+  @Test
+  void streamsThatRunOutOfTimeAreAbortedInsteadOfEnded() {
+    when(ctx.attribute(RequestDeadlines.STREAMING_ATTRIBUTE)).thenReturn(true);
+    deadlines.timedOut(new MongoExecutionTimeoutException(50, "operation exceeded time limit"), ctx);
+
+    // It's too late to change the status, or add an error to the body.
+    verify(ctx, never()).status(any(HttpStatus.class));
+    verify(ctx, never()).json(any());
+    assertEquals(new RequestDeadlines.Stats(1, 0, 1), deadlines.stats());
+  }
+}
@@ -0,0 +1,76 @@
+package umm3601;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import umm3601.todos.Todo;
+
+/**
+ * A quick (and admittedly unscientific) comparison of the `ResponseFormat`s:
+ * how big a batch of todos is in each format, and how fast each format can
+ * write (what the server does) and read (what a client does) them.
+ *
+ * Run it with
+ *
+ * ```
+ * ./gradlew formatBenchmark
+ * ```
+ *
+ * or `./gradlew formatBenchmark --args="100000 20"` to set the number of
+ * todos and timed rounds.
+ */
+@SuppressWarnings({ "MagicNumber" })
+public final class ResponseFormatBenchmark {
+
+  private static final int WARMUP_ROUNDS = 10;
+  private static final int PASSES = 2;
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private ResponseFormatBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    int todoCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    ObjectMapper json = ResponseFormat.JSON.mapper();
+    List<Todo> todos = json.readValue(JsonMapperBenchmark.generatedTodos(todoCount),
+      json.getTypeFactory().constructCollectionType(List.class, Todo.class));
+    int jsonSize = json.writeValueAsBytes(todos).length;
+
+    System.out.printf("%d todos, %d rounds%n", todoCount, rounds);
+    // As in `JsonMapperBenchmark`, later passes are the fairer comparison.
+    for (int pass = 1; pass <= PASSES; pass++) {
+      for (ResponseFormat format : ResponseFormat.values()) {
+        run("pass " + pass + ": " + format, format.mapper(), todos, jsonSize, rounds);
+      }
+    }
+  }
+
+  private static void run(String name, ObjectMapper mapper, List<Todo> todos, int jsonSize, int rounds)
+      throws IOException {
+    JavaType todoList = mapper.getTypeFactory().constructCollectionType(List.class, Todo.class);
+    byte[] encoded = mapper.writeValueAsBytes(todos);
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      mapper.readValue(mapper.writeValueAsBytes(todos), todoList);
+    }
+
+    long writeNanos = 0;
+    long readNanos = 0;
+    for (int i = 0; i < rounds; i++) {
+      long start = System.nanoTime();
+      mapper.writeValueAsBytes(todos);
+      long middle = System.nanoTime();
+      mapper.readValue(encoded, todoList);
+      readNanos += System.nanoTime() - middle;
+      writeNanos += middle - start;
+    }
+    long total = (long) todos.size() * rounds;
+    System.out.printf("%-22s %,11d bytes (%3.0f%% of JSON)   write %,12.0f todos/s   read %,12.0f todos/s%n",
+      name, encoded.length, 100.0 * encoded.length / jsonSize,
+      total * NANOS_PER_SECOND / writeNanos, total * NANOS_PER_SECOND / readNanos);
+  }
+}
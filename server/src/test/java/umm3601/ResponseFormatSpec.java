@@ -0,0 +1,83 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import umm3601.todos.Todo;
+
+/**
+ * Tests for choosing and writing the response formats.
+ */
+class ResponseFormatSpec {
+
+  @Test
+  void jsonIsTheDefault() {
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate((String) null));
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("*/*"));
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("text/html, application/xhtml+xml"));
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("application/json"));
+  }
+
+  @Test
+  void choosesTheRequestedBinaryFormats() {
+    assertEquals(ResponseFormat.SMILE, ResponseFormat.negotiate("application/x-jackson-smile"));
+    assertEquals(ResponseFormat.CBOR, ResponseFormat.negotiate("application/CBOR"));
+    assertEquals(ResponseFormat.MESSAGE_PACK, ResponseFormat.negotiate("application/x-msgpack, */*;q=0.1"));
+  }
+
+  @Test
+  void respectsQualities() {
+    assertEquals(ResponseFormat.CBOR, ResponseFormat.negotiate("application/json;q=0.5, application/cbor"));
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("application/cbor;q=0.5, application/json"));
+    // Ties go to whichever was listed first.
+    assertEquals(ResponseFormat.SMILE, ResponseFormat.negotiate("application/x-jackson-smile, application/cbor"));
+    // Nonsense qualities count as "not acceptable".
+    assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("application/cbor;q=lots"));
+  }
+
+  @Test
+  void everyFormatRoundTripsTodos() throws IOException {
+    Todo todo = new Todo();
+    todo._id = "58af3a600343927e48e8720f";
+    todo.owner = "Blanche";
+    todo.status = true;
+    todo.body = "Pack me";
+    todo.category = "homework";
+
+    int jsonSize = ResponseFormat.JSON.mapper().writeValueAsBytes(todo).length;
+    for (ResponseFormat format : ResponseFormat.values()) {
+      byte[] bytes = format.mapper().writeValueAsBytes(todo);
+      Todo copy = format.mapper().readValue(bytes, Todo.class);
+      assertEquals(todo, copy, format.name());
+      assertEquals("Pack me", copy.body, format.name());
+      assertTrue(copy.status, format.name());
+      assertTrue(bytes.length <= jsonSize, format + " shouldn't be bigger than JSON");
+    }
+  }
+
+  @Test
+  void negotiatesAndWritesThroughTheContext() throws IOException {
+    Context ctx = mock(Context.class);
+    when(ctx.header(Header.ACCEPT)).thenReturn("application/cbor");
+
+    ResponseFormat format = ResponseFormat.negotiate(ctx);
+    format.write(ctx, new String[] {"a", "b"});
+
+    assertEquals(ResponseFormat.CBOR, format);
+    verify(ctx).header(Header.VARY, Header.ACCEPT);
+    verify(ctx).contentType("application/cbor");
+    ArgumentCaptor<byte[]> bytes = ArgumentCaptor.forClass(byte[].class);
+    verify(ctx).result(bytes.capture());
+    assertEquals(2, ResponseFormat.CBOR.mapper().readValue(bytes.getValue(), String[].class).length);
+  }
+}
@@ -0,0 +1,162 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import umm3601.storage.Deadline;
+
+/**
+ * Tests for sharing calls with `SingleFlight`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class SingleFlightSpec {
+
+  private static void waitFor(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Start `followers` calls for `key` while a call that waits for `release` is
+  // running, and wait until they've all joined it, so they can't run their own.
+  private static List<Future<String>> joinWhileRunning(SingleFlight<String, String> singleFlight, String key,
+      int followers, SingleFlight.Loader<String> leader, ExecutorService pool) throws InterruptedException {
+    List<Future<String>> calls = new ArrayList<>();
+    calls.add(pool.submit(() -> singleFlight.run(key, leader)));
+    while (singleFlight.stats().executions() < 1) {
+      Thread.sleep(1);
+    }
+    for (int i = 0; i < followers; i++) {
+      calls.add(pool.submit(() -> singleFlight.run(key, () -> fail("Only the first call should load"))));
+    }
+    while (singleFlight.stats().collapsed() < followers) {
+      Thread.sleep(1);
+    }
+    return calls;
+  }
+
+  @Test
+  void sharesCallsThatOverlap() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> calls = joinWhileRunning(singleFlight, "todos", 7, () -> {
+        loads.incrementAndGet();
+        waitFor(release);
+        return "result";
+      }, pool);
+      release.countDown();
+      for (Future<String> call : calls) {
+        assertEquals("result", call.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(new SingleFlight.Stats(1, 7), singleFlight.stats());
+  }
+
+  @Test
+  void sharesExceptions() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch release = new CountDownLatch(1);
+    IOException failure = new IOException("the database went away");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> calls = joinWhileRunning(singleFlight, "todos", 3, () -> {
+        waitFor(release);
+        throw failure;
+      }, pool);
+      release.countDown();
+      for (Future<String> call : calls) {
+        ExecutionException e = assertThrows(ExecutionException.class, call::get);
+        assertSame(failure, e.getCause());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void followersOnlyWaitUntilTheirOwnDeadline() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader = pool.submit(() -> singleFlight.run("todos", () -> {
+        waitFor(release);
+        return "result";
+      }));
+      while (singleFlight.stats().executions() < 1) {
+        Thread.sleep(1);
+      }
+      Future<String> follower = pool.submit(() -> {
+        Deadline.start(50, TimeUnit.MILLISECONDS);
+        try {
+          return singleFlight.run("todos", () -> fail("Only the first call should load"));
+        } finally {
+          Deadline.clear();
+        }
+      });
+      ExecutionException e = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(Deadline.DeadlineExceededException.class, e.getCause());
+
+      // The call it was waiting for isn't affected.
+      release.countDown();
+      assertEquals("result", leader.get());
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(new SingleFlight.Stats(1, 1), singleFlight.stats());
+  }
+
+  @Test
+  void doesNotKeepResults() throws IOException {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    assertEquals("first", singleFlight.run("todos", () -> "first"));
+    // The first call has finished, so this one loads again rather than getting a stale result.
+    assertEquals("second", singleFlight.run("todos", () -> "second"));
+    assertEquals("users", singleFlight.run("users", () -> "users"));
+    assertEquals(new SingleFlight.Stats(3, 0), singleFlight.stats());
+  }
+
+  @Test
+  void requestKeysIgnoreTheOrderOfParameters() {
+    Map<String, List<String>> params = new LinkedHashMap<>();
+    params.put("owner", List.of("Blanche"));
+    params.put("status", List.of("true"));
+    Map<String, List<String>> reversed = new LinkedHashMap<>();
+    reversed.put("status", List.of("true"));
+    reversed.put("owner", List.of("Blanche"));
+
+    assertEquals(SingleFlight.RequestKey.of("/api/todos", params, ResponseFormat.JSON),
+      SingleFlight.RequestKey.of("/api/todos", reversed, ResponseFormat.JSON));
+    assertNotEquals(SingleFlight.RequestKey.of("/api/todos", params, ResponseFormat.JSON),
+      SingleFlight.RequestKey.of("/api/todos", params, ResponseFormat.CBOR));
+    assertNotEquals(SingleFlight.RequestKey.of("/api/todos", params, ResponseFormat.JSON),
+      SingleFlight.RequestKey.of("/api/users", params, ResponseFormat.JSON));
+  }
+}
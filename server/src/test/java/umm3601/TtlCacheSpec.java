@@ -0,0 +1,65 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for keeping results for a while with `TtlCache`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class TtlCacheSpec {
+
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private String load() {
+    return "result " + loads.incrementAndGet();
+  }
+
+  @Test
+  void keepsResultsUntilTheyExpire() throws IOException {
+    TtlCache<String, String> cache = new TtlCache<>(5, TimeUnit.SECONDS, 10, now::get);
+    assertEquals("result 1", cache.get("a", this::load));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+    assertEquals("result 1", cache.get("a", this::load));
+    // Other keys have results of their own.
+    assertEquals("result 2", cache.get("b", this::load));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals("result 3", cache.get("a", this::load));
+    assertEquals(new TtlCache.Stats(1, 3), cache.stats());
+    assertEquals(5, cache.ttlSeconds());
+  }
+
+  @Test
+  void doesNotKeepFailures() throws IOException {
+    TtlCache<String, String> cache = new TtlCache<>(5, TimeUnit.SECONDS, 10, now::get);
+    assertThrows(IOException.class, () -> cache.get("a", () -> {
+      throw new IOException("Oops");
+    }));
+    assertEquals("result 1", cache.get("a", this::load));
+  }
+
+  @Test
+  void stopsKeepingResultsWhenFull() throws IOException {
+    TtlCache<String, String> cache = new TtlCache<>(5, TimeUnit.SECONDS, 2, now::get);
+    cache.get("a", this::load);
+    cache.get("b", this::load);
+    // There's no room for this one...
+    cache.get("c", this::load);
+    assertEquals("result 4", cache.get("c", this::load));
+    assertEquals("result 1", cache.get("a", this::load));
+
+    // ...until the others have expired.
+    now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    cache.get("c", this::load);
+    assertEquals("result 5", cache.get("c", this::load));
+  }
+}
@@ -0,0 +1,111 @@
+package umm3601.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import umm3601.JsonMappers;
+
+/**
+ * Tests for logging through an `AsyncLogger` to an `AsyncLogWriter`, and
+ * the JSON lines it writes.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class AsyncLoggerSpec {
+
+  private static List<JsonNode> lines(StringWriter out) throws IOException {
+    List<JsonNode> lines = new ArrayList<>();
+    for (String line : out.toString().split("\n")) {
+      lines.add(JsonMappers.http().readTree(line));
+    }
+    return lines;
+  }
+
+  @Test
+  void messagesAreWrittenAsJsonLines() throws IOException {
+    StringWriter out = new StringWriter();
+    AsyncLogWriter writer = new AsyncLogWriter(out, 16);
+    Logger logger = new AsyncLoggerFactory(Level.INFO, writer).getLogger("umm3601.test");
+
+    logger.debug("Not this one");
+    logger.info("Found {} todos for {}", 3, "Fry \"the\" delivery boy\n");
+    logger.atWarn().addKeyValue("status", 504).addKeyValue("owner", "Fry").log("Too slow");
+    logger.error("It broke", new IllegalStateException("Oops"));
+    // Closing waits for the writer to finish.
+    writer.close();
+
+    List<JsonNode> lines = lines(out);
+    assertEquals(3, lines.size());
+
+    JsonNode info = lines.get(0);
+    assertEquals("INFO", info.path("level").asText());
+    assertEquals("umm3601.test", info.path("logger").asText());
+    assertEquals("Found 3 todos for Fry \"the\" delivery boy\n", info.path("message").asText());
+    assertTrue(info.path("time").asText().endsWith("Z"));
+    assertFalse(info.path("thread").asText().isEmpty());
+
+    JsonNode warn = lines.get(1);
+    assertEquals("WARN", warn.path("level").asText());
+    assertEquals("Too slow", warn.path("message").asText());
+    assertTrue(warn.path("status").isInt());
+    assertEquals(504, warn.path("status").asInt());
+    assertEquals("Fry", warn.path("owner").asText());
+
+    JsonNode error = lines.get(2);
+    assertEquals("It broke", error.path("message").asText());
+    assertTrue(error.path("error").asText().startsWith("java.lang.IllegalStateException: Oops"));
+  }
+
+  @Test
+  void controlCharactersAreEscaped() {
+    StringBuilder line = new StringBuilder();
+    JsonLines.escape(line, "a\u0001b\\c\td");
+    assertEquals("a\\u0001b\\\\c\\td", line.toString());
+  }
+
+  @Test
+  void messagesAreDroppedAndCountedWhenTheBufferIsFull() throws IOException, InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    StringWriter out = new StringWriter() {
+      @Override
+      public StringWriter append(CharSequence text) {
+        // Hold the writer up, so the buffer fills.
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.append(text);
+      }
+    };
+    AsyncLogWriter writer = new AsyncLogWriter(out, 4);
+    Logger logger = new AsyncLoggerFactory(Level.INFO, writer).getLogger("umm3601.test");
+    for (int i = 0; i < 20; i++) {
+      logger.info("Message {}", i);
+    }
+    // The writer has (at most) one message in hand, so at least 15 were dropped,
+    // and logging didn't wait for it.
+    long dropped = writer.dropped();
+    assertTrue(dropped >= 15, "Only dropped " + dropped);
+    release.countDown();
+    writer.close();
+
+    List<JsonNode> lines = lines(out);
+    assertEquals(20 - dropped + 1, lines.size());
+    JsonNode report = lines.get(lines.size() - 1);
+    assertEquals("WARN", report.path("level").asText());
+    assertEquals(dropped, report.path("dropped").asLong());
+  }
+}
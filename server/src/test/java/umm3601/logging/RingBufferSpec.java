@@ -0,0 +1,96 @@
+package umm3601.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the lock-free `RingBuffer` between loggers and the log writer.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class RingBufferSpec {
+
+  @Test
+  void capacitiesAreRoundedUpToPowersOfTwo() {
+    assertEquals(1, new RingBuffer<String>(1).capacity());
+    assertEquals(8, new RingBuffer<String>(5).capacity());
+    assertEquals(8, new RingBuffer<String>(8).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new RingBuffer<String>(0));
+  }
+
+  @Test
+  void itemsComeOutInOrderAndAreDroppedWhenFull() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(4);
+    assertTrue(buffer.isEmpty());
+    assertNull(buffer.poll());
+    // Go round a few times, to make sure the slots are reused.
+    for (int lap = 0; lap < 3; lap++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(buffer.offer(i));
+      }
+      assertFalse(buffer.offer(4));
+      assertFalse(buffer.isEmpty());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(i, buffer.poll());
+      }
+      assertNull(buffer.poll());
+      assertTrue(buffer.isEmpty());
+    }
+  }
+
+  @Test
+  void everyItemFromManyProducersComesOutOnce() throws InterruptedException {
+    RingBuffer<Integer> buffer = new RingBuffer<>(64);
+    int producers = 4;
+    int perProducer = 5_000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int first = p * perProducer;
+      threads.add(Thread.ofPlatform().start(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = first; i < first + perProducer; i++) {
+          while (!buffer.offer(i)) {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    start.countDown();
+
+    Set<Integer> seen = new HashSet<>();
+    int[] last = new int[producers];
+    Arrays.fill(last, -1);
+    while (seen.size() < producers * perProducer) {
+      Integer item = buffer.poll();
+      if (item == null) {
+        Thread.yield();
+        continue;
+      }
+      assertTrue(seen.add(item), "Got " + item + " twice");
+      // Each producer's items come out in the order it put them in.
+      int producer = item / perProducer;
+      assertTrue(item > last[producer]);
+      last[producer] = item;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(buffer.isEmpty());
+  }
+}
@@ -0,0 +1,94 @@
+package umm3601.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for recording requests as JFR events.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class HandlerEventsSpec {
+
+  @Mock
+  private Context ctx;
+
+  @TempDir
+  private Path dir;
+
+  private HandlerEvents events;
+
+  @BeforeEach
+  void setupEach() {
+    MockitoAnnotations.openMocks(this);
+    events = new HandlerEvents();
+  }
+
+  @Test
+  void queryShapesAreSortedNamesWithoutValues() {
+    assertEquals("", HandlerEvents.queryShape(List.of()));
+    assertEquals("limit&owner", HandlerEvents.queryShape(List.of("owner", "limit")));
+  }
+
+  @Test
+  void nothingIsKeptWithoutARecording() {
+    when(ctx.method()).thenReturn(HandlerType.GET);
+    when(ctx.path()).thenReturn("/api/todos");
+    when(ctx.queryParamMap()).thenReturn(Map.of());
+    events.start(ctx);
+    assertNull(HandlerEvents.currentRoute());
+    events.handle(ctx, 1.0f);
+  }
+
+  @Test
+  void requestsAreRecordedWithTheirRouteAndDocuments() throws IOException {
+    when(ctx.method()).thenReturn(HandlerType.GET);
+    when(ctx.path()).thenReturn("/api/todos/588935f57546a2daea44de7c");
+    when(ctx.queryParamMap()).thenReturn(Map.of("owner", List.of("Fry"), "limit", List.of("5")));
+    when(ctx.endpointHandlerPath()).thenReturn("/api/todos/{id}");
+    when(ctx.statusCode()).thenReturn(200);
+
+    Path file = dir.resolve("handler.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("umm3601.Handler");
+      recording.start();
+      events.start(ctx);
+      assertEquals("/api/todos/588935f57546a2daea44de7c", HandlerEvents.currentRoute());
+      HandlerEvents.addDocuments(2);
+      events.handled(ctx);
+      assertEquals("/api/todos/{id}", HandlerEvents.currentRoute());
+      HandlerEvents.addDocuments(1);
+      events.handle(ctx, 1.0f);
+      recording.stop();
+      recording.dump(file);
+    }
+    // Committing the event takes it off the thread.
+    assertNull(HandlerEvents.currentRoute());
+
+    List<RecordedEvent> recorded = RecordingFile.readAllEvents(file);
+    assertEquals(1, recorded.size());
+    RecordedEvent event = recorded.get(0);
+    assertEquals("GET", event.getString("method"));
+    assertEquals("/api/todos/{id}", event.getString("route"));
+    assertEquals("limit&owner", event.getString("queryShape"));
+    assertEquals(200, event.getInt("status"));
+    assertEquals(3, event.getLong("documents"));
+  }
+}
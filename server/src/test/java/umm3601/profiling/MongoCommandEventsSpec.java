@@ -0,0 +1,40 @@
+package umm3601.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for counting the documents in MongoDB's replies.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class MongoCommandEventsSpec {
+
+  private static BsonArray documents(int count) {
+    return new BsonArray(Collections.nCopies(count, new BsonDocument("name", new BsonString("Fry"))));
+  }
+
+  @Test
+  void cursorBatchesAreCounted() {
+    assertEquals(3, MongoCommandEvents.documentsIn(
+      new BsonDocument("cursor", new BsonDocument("firstBatch", documents(3)))));
+    assertEquals(2, MongoCommandEvents.documentsIn(
+      new BsonDocument("cursor", new BsonDocument("nextBatch", documents(2)))));
+    assertEquals(0, MongoCommandEvents.documentsIn(
+      new BsonDocument("cursor", new BsonDocument("firstBatch", new BsonArray(List.of())))));
+  }
+
+  @Test
+  void otherRepliesAreCountedByTheirN() {
+    assertEquals(7, MongoCommandEvents.documentsIn(new BsonDocument("n", new BsonInt32(7))));
+    assertEquals(0, MongoCommandEvents.documentsIn(new BsonDocument("ok", new BsonInt32(1))));
+    assertEquals(0, MongoCommandEvents.documentsIn(null));
+  }
+}
@@ -0,0 +1,173 @@
+package umm3601.seed;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the synthetic seed data generator.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class SeedGeneratorSpec {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @TempDir
+  private Path tempDir;
+
+  private byte[] todos(long seed, SeedFormat format, long count) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SeedGenerator(seed, format, 50, 20).writeTodos(out, count);
+    return out.toByteArray();
+  }
+
+  @Test
+  void sameSeedGivesSameData() throws IOException {
+    assertArrayEquals(todos(42, SeedFormat.NDJSON, 500), todos(42, SeedFormat.NDJSON, 500));
+  }
+
+  @Test
+  void differentSeedsGiveDifferentData() throws IOException {
+    assertFalse(Arrays.equals(todos(42, SeedFormat.NDJSON, 500), todos(43, SeedFormat.NDJSON, 500)));
+  }
+
+  @Test
+  void ndjsonHasOneTodoPerLine() throws IOException {
+    String[] lines = new String(todos(7, SeedFormat.NDJSON, 100), StandardCharsets.UTF_8).split("\n");
+    assertEquals(100, lines.length);
+
+    Set<String> ids = new HashSet<>();
+    for (String line : lines) {
+      JsonNode todo = MAPPER.readTree(line);
+      ids.add(todo.get("_id").get("$oid").asText());
+      assertEquals(24, todo.get("_id").get("$oid").asText().length());
+      assertTrue(todo.get("status").isBoolean());
+      assertFalse(todo.get("owner").asText().isEmpty());
+      assertFalse(todo.get("category").asText().isEmpty());
+      assertTrue(todo.get("body").asText().endsWith("."));
+    }
+    // Every todo should get its own `_id`.
+    assertEquals(100, ids.size());
+  }
+
+  @Test
+  void jsonArrayIsASingleArray() throws IOException {
+    JsonNode todos = MAPPER.readTree(todos(7, SeedFormat.JSON_ARRAY, 25));
+    assertTrue(todos.isArray());
+    assertEquals(25, todos.size());
+  }
+
+  @Test
+  void usersLookLikeSeedUsers() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SeedGenerator(1, SeedFormat.JSON_ARRAY, 50, 20).writeUsers(out, 200);
+    JsonNode users = MAPPER.readTree(out.toByteArray());
+
+    assertEquals(200, users.size());
+    Map<String, Integer> roles = new HashMap<>();
+    for (JsonNode user : users) {
+      assertTrue(user.get("email").asText().endsWith("@" + user.get("company").asText().toLowerCase() + ".com"));
+      assertTrue(user.get("age").asInt() > 0 && user.get("age").asInt() < 150);
+      assertTrue(user.get("avatar").asText().startsWith("https://gravatar.com/avatar/"));
+      roles.merge(user.get("role").asText(), 1, Integer::sum);
+    }
+    // Roles are skewed, so there should be more viewers than admins.
+    assertTrue(roles.get("viewer") > roles.get("admin"));
+  }
+
+  @Test
+  void writesSeedFiles() throws IOException {
+    new SeedGenerator(3, SeedFormat.NDJSON, 10, 10).writeSeedFiles(tempDir, 30, 4);
+
+    assertEquals(30, Files.readAllLines(tempDir.resolve("todos.ndjson")).size());
+    assertEquals(4, Files.readAllLines(tempDir.resolve("users.ndjson")).size());
+  }
+
+  @Test
+  void zipfSamplesAreSkewed() {
+    ZipfSampler sampler = new ZipfSampler(100, 1.0);
+    SplittableRandom random = new SplittableRandom(99);
+    int[] counts = new int[sampler.size()];
+    for (int i = 0; i < 100_000; i++) {
+      counts[sampler.sample(random)]++;
+    }
+    // With an exponent of 1, rank 0 should show up about twice as often as rank 1,
+    // and far more often than anything in the tail.
+    assertTrue(counts[0] > 1.8 * counts[1] && counts[0] < 2.2 * counts[1]);
+    assertTrue(counts[0] > 50 * counts[99]);
+  }
+
+  @Test
+  void zipfWithZeroExponentIsUniform() {
+    ZipfSampler sampler = new ZipfSampler(4, 0);
+    SplittableRandom random = new SplittableRandom(5);
+    int[] counts = new int[4];
+    for (int i = 0; i < 40_000; i++) {
+      counts[sampler.sample(random)]++;
+    }
+    for (int count : counts) {
+      assertTrue(Math.abs(count - 10_000) < 500);
+    }
+  }
+
+  @Test
+  void zipfRejectsBadArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(0, 1.0));
+    assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(10, -1.0));
+  }
+
+  @Test
+  void ownersAndCompaniesStartWithTheOriginalSeedValues() {
+    assertEquals("Fry", SeedGenerator.owner(0));
+    assertEquals("OHMNET", SeedGenerator.company(0));
+    assertNotEquals(SeedGenerator.company(100), SeedGenerator.company(101));
+    assertNotEquals(SeedGenerator.owner(100), SeedGenerator.owner(120));
+  }
+
+  @Test
+  void parsesOptionsAndFormats() {
+    Map<String, String> options = SeedGenerator.parseOptions(new String[] {"--todos=10", "--format=json"});
+    assertEquals("10", options.get("todos"));
+    assertEquals(SeedFormat.JSON_ARRAY, SeedFormat.fromName(options.get("format")));
+    assertEquals(SeedFormat.NDJSON, SeedFormat.fromName("NDJSON"));
+    assertThrows(IllegalArgumentException.class, () -> SeedFormat.fromName("xml"));
+    assertThrows(IllegalArgumentException.class, () -> SeedGenerator.parseOptions(new String[] {"todos"}));
+  }
+
+  @Test
+  void recognizesSeedFiles() {
+    assertEquals(SeedFormat.NDJSON, SeedFormat.fromPath(Path.of("seed", "todos.ndjson")));
+    assertEquals(SeedFormat.JSON_ARRAY, SeedFormat.fromPath(Path.of("seed", "users.json")));
+    assertNull(SeedFormat.fromPath(Path.of("seed", "README.md")));
+    assertEquals("todos", SeedFormat.collectionName(Path.of("seed", "todos.ndjson")));
+  }
+
+  @Test
+  void mainWritesFiles() throws IOException {
+    SeedGenerator.main(new String[] {"--todos=3", "--users=2", "--format=json", "--out=" + tempDir});
+    assertEquals(3, MAPPER.readTree(tempDir.resolve("todos.json").toFile()).size());
+    assertEquals(2, MAPPER.readTree(tempDir.resolve("users.json").toFile()).size());
+  }
+}
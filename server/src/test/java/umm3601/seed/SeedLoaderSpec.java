@@ -0,0 +1,192 @@
+package umm3601.seed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Tests for reading seed files and loading them into the database.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class SeedLoaderSpec {
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  @TempDir
+  private Path tempDir;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  private static SeedReader reader(String json, SeedFormat format) throws IOException {
+    return new SeedReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), format);
+  }
+
+  @Test
+  void readsJsonArraysWithExtendedJson() throws IOException {
+    String json = """
+      [
+        {"_id": {"$oid": "58af3a600343927e48e8720f"}, "owner": "Blanche", "status": false,
+         "tags": ["a", "b"], "when": {"$date": "2017-02-23T19:37:04Z"}, "big": {"$numberLong": "5000000000"},
+         "nested": {"count": 3, "ratio": 0.5, "missing": null}},
+        {"owner": "Fry", "when": {"$date": {"$numberLong": "1487878624000"}}}
+      ]
+      """;
+    try (SeedReader reader = reader(json, SeedFormat.JSON_ARRAY)) {
+      Document first = reader.next();
+      assertEquals(new ObjectId("58af3a600343927e48e8720f"), first.getObjectId("_id"));
+      assertEquals("Blanche", first.getString("owner"));
+      assertEquals(false, first.getBoolean("status"));
+      assertEquals(List.of("a", "b"), first.getList("tags", String.class));
+      assertEquals(new Date(1_487_878_624_000L), first.get("when"));
+      assertEquals(5_000_000_000L, first.getLong("big"));
+      Document nested = first.get("nested", Document.class);
+      assertEquals(3, nested.getInteger("count"));
+      assertEquals(0.5, nested.get("ratio"));
+      assertTrue(nested.containsKey("missing"));
+
+      Document second = reader.next();
+      assertEquals(new Date(1_487_878_624_000L), second.get("when"));
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  void readsNdjsonAndEmptyFiles() throws IOException {
+    try (SeedReader reader = reader("{\"n\": 1}\n{\"n\": 2}\n\n{\"n\": 3}\n", SeedFormat.NDJSON)) {
+      List<Integer> values = new ArrayList<>();
+      for (Document document = reader.next(); document != null; document = reader.next()) {
+        values.add(document.getInteger("n"));
+      }
+      assertEquals(List.of(1, 2, 3), values);
+    }
+    try (SeedReader reader = reader("", SeedFormat.JSON_ARRAY)) {
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  void rejectsThingsThatArentSeedData() throws IOException {
+    try (SeedReader reader = reader("{\"n\": 1}", SeedFormat.JSON_ARRAY)) {
+      assertThrows(JsonParseException.class, reader::next);
+    }
+    try (SeedReader reader = reader("[1, 2]", SeedFormat.JSON_ARRAY)) {
+      assertThrows(JsonParseException.class, reader::next);
+    }
+    assertThrows(IllegalArgumentException.class, () -> SeedReader.open(tempDir.resolve("README.md")));
+  }
+
+  @Test
+  void loadsGeneratedSeedFilesInParallelBatches() throws IOException, InterruptedException {
+    new SeedGenerator(11, SeedFormat.NDJSON, 20, 10).writeSeedFiles(tempDir, 2_345, 321);
+    // Something that isn't a seed file, which should be ignored.
+    Files.writeString(tempDir.resolve("README.md"), "Not seed data");
+
+    List<SeedLoader.Report> reports = new SeedLoader(db, 4, 100).loadDirectory(tempDir);
+
+    assertEquals(2, reports.size());
+    assertEquals("todos", reports.get(0).collection());
+    assertEquals(2_345, reports.get(0).documents());
+    assertTrue(reports.get(0).documentsPerSecond() > 0);
+    assertTrue(reports.get(0).toString().contains("2345 documents"));
+    assertEquals("users", reports.get(1).collection());
+    assertEquals(321, reports.get(1).documents());
+
+    assertEquals(2_345, db.getCollection("todos").countDocuments());
+    assertEquals(321, db.getCollection("users").countDocuments());
+    assertInstanceOf(ObjectId.class, db.getCollection("todos").find().first().get("_id"));
+
+    // The `_id` index plus the ones we build after loading.
+    List<Document> indexes = db.getCollection("todos").listIndexes().into(new ArrayList<>());
+    assertEquals(1 + SeedLoader.INDEXES.get("todos").size(), indexes.size());
+  }
+
+  @Test
+  void reloadingReplacesTheCollection() throws IOException, InterruptedException {
+    SeedLoader loader = new SeedLoader(db, 2, 3);
+    String json = "[{\"n\": 1}, {\"n\": 2}, {\"n\": 3}, {\"n\": 4}]";
+    try (SeedReader reader = reader(json, SeedFormat.JSON_ARRAY)) {
+      assertEquals(4, loader.load("numbers", reader).documents());
+    }
+    try (SeedReader reader = reader(json, SeedFormat.JSON_ARRAY)) {
+      assertEquals(4, loader.load("numbers", reader).documents());
+    }
+    assertEquals(4, db.getCollection("numbers").countDocuments());
+  }
+
+  @Test
+  void reportsInsertFailuresAndCarriesOn() throws IOException, InterruptedException {
+    // Two documents with the same `_id` can't both be inserted.
+    String json = "{\"_id\": 1}\n{\"_id\": 2}\n{\"_id\": 1}\n{\"_id\": 3}\n";
+    try (SeedReader reader = reader(json, SeedFormat.NDJSON)) {
+      SeedLoader.Report report = new SeedLoader(db, 2, 2).load("duplicates", reader);
+      assertEquals(3, report.documents());
+      assertEquals(1, report.failed());
+      assertTrue(report.error().contains("duplicate key"), report.error());
+      assertTrue(report.toString().contains("1 failed"));
+    }
+    assertEquals(3, db.getCollection("duplicates").countDocuments());
+  }
+
+  @Test
+  void rejectsTwoFilesForTheSameCollection() throws IOException {
+    Files.writeString(tempDir.resolve("todos.json"), "[{\"n\": 1}]");
+    Files.writeString(tempDir.resolve("todos.ndjson"), "{\"n\": 2}\n");
+    assertThrows(IllegalArgumentException.class, () -> new SeedLoader(db, 1, 10).loadDirectory(tempDir));
+  }
+
+  @Test
+  void rejectsBadSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new SeedLoader(db, 0, 10));
+    assertThrows(IllegalArgumentException.class, () -> new SeedLoader(db, 1, 0));
+  }
+
+  @Test
+  void mainLoadsADirectory() throws IOException, InterruptedException {
+    new SeedGenerator(5, SeedFormat.JSON_ARRAY, 5, 5).writeSeedFiles(tempDir, 30, 7);
+    SeedLoader.main(new String[] {"--dir=" + tempDir, "--db=test", "--workers=2", "--batch=8", "--drop=false"});
+    assertEquals(30, db.getCollection("todos").countDocuments());
+    assertEquals(7, db.getCollection("users").countDocuments());
+  }
+}
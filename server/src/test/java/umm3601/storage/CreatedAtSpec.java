@@ -0,0 +1,64 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for working out creation times from `_id`s, and turning time
+ * windows into ranges of `_id`s.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class CreatedAtSpec {
+
+  private static final Instant NEW_YEAR = Instant.parse("2024-01-01T00:00:00Z");
+
+  @Test
+  void readsTheTimeFromTheId() {
+    String id = new ObjectId(Date.from(NEW_YEAR.plusMillis(1_500))).toHexString();
+    // ObjectIds only record whole seconds.
+    assertEquals("2024-01-01T00:00:01Z", CreatedAt.of(id));
+    assertNull(CreatedAt.of((String) null));
+    assertNull(CreatedAt.of("not an id"));
+  }
+
+  @Test
+  void parsesDatesAndTimes() {
+    assertEquals(NEW_YEAR, CreatedAt.parse("2024-01-01"));
+    assertEquals(NEW_YEAR.plusSeconds(3600), CreatedAt.parse("2024-01-01T01:00:00Z"));
+    assertThrows(IllegalArgumentException.class, () -> CreatedAt.parse("yesterday"));
+    assertThrows(IllegalArgumentException.class, () -> CreatedAt.parse("2024-01-01T01:00"));
+    assertThrows(IllegalArgumentException.class, () -> CreatedAt.parse("2024-13-01"));
+  }
+
+  @Test
+  void firstIdsAreTheSmallestForTheirSecond() {
+    assertEquals("659200800000000000000000", CreatedAt.firstId(NEW_YEAR));
+    assertEquals("659200800000000000000000", CreatedAt.firstId(NEW_YEAR.plusMillis(999)));
+    // Times ObjectIds can't hold are clamped.
+    assertEquals("000000000000000000000000", CreatedAt.firstId(Instant.parse("1900-01-01T00:00:00Z")));
+    assertEquals("ffffffff0000000000000000", CreatedAt.firstId(Instant.parse("2200-01-01T00:00:00Z")));
+  }
+
+  @Test
+  void windowsAreRangesOfIds() {
+    String before = new ObjectId(Date.from(NEW_YEAR.minusSeconds(1))).toHexString();
+    String during = new ObjectId(Date.from(NEW_YEAR)).toHexString();
+    String after = new ObjectId(Date.from(NEW_YEAR.plusSeconds(1))).toHexString();
+
+    Condition from = CreatedAt.after(NEW_YEAR);
+    Condition until = CreatedAt.before(NEW_YEAR.plusSeconds(1));
+    assertFalse(from.test(before));
+    assertTrue(from.test(during));
+    assertTrue(until.test(during));
+    assertFalse(until.test(after));
+  }
+}
@@ -0,0 +1,186 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the in-memory collection engine behind the in-memory repositories.
+ *
+ * The documents here are just `String[]`s of `{name, team, score}`, which keeps
+ * the tests independent of the `Todo` and `User` classes.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class InMemoryCollectionSpec {
+
+  private static final Map<String, Function<Object[], Object>> FIELDS = Map.of(
+    "name", doc -> doc[0],
+    "team", doc -> doc[1],
+    "score", doc -> doc[2]);
+
+  private InMemoryCollection<Object[]> indexed;
+  private InMemoryCollection<Object[]> unindexed;
+
+  @BeforeEach
+  void setupEach() {
+    indexed = new InMemoryCollection<>(FIELDS, List.of("team", "score"), List.of("name", "score"));
+    unindexed = new InMemoryCollection<>(FIELDS, List.of(), List.of());
+    Object[][] docs = {
+      {"Chris", "red", 25},
+      {"Pat", "blue", 37},
+      {"Jamie", "red", 37},
+      {"Sam", "green", 45L},
+      {"Alex", "Red", 12},
+      {"Robin", null, 3.5},
+    };
+    for (int i = 0; i < docs.length; i++) {
+      indexed.put("id" + i, docs[i]);
+      unindexed.put("id" + i, docs[i]);
+    }
+  }
+
+  private static List<Object> names(List<Object[]> docs) {
+    return docs.stream().map(doc -> doc[0]).collect(Collectors.toList());
+  }
+
+  private void assertBoth(List<Object> expected, Query query) {
+    assertEquals(expected, names(indexed.find(query)));
+    assertEquals(expected, names(unindexed.find(query)));
+  }
+
+  @Test
+  void findsEverythingInInsertionOrderByDefault() {
+    assertBoth(List.of("Chris", "Pat", "Jamie", "Sam", "Alex", "Robin"), new Query());
+  }
+
+  @Test
+  void filtersByEquality() {
+    assertBoth(List.of("Chris", "Jamie"), new Query().where(Condition.eq("team", "red")));
+    // Numbers of different types are equal if they have the same value, like in MongoDB.
+    assertBoth(List.of("Sam"), new Query().where(Condition.eq("score", 45)));
+    assertBoth(List.of("Pat", "Jamie"), new Query().where(Condition.eq("score", 37L)));
+    assertBoth(List.of(), new Query().where(Condition.eq("team", "purple")));
+  }
+
+  @Test
+  void filtersByRegex() {
+    Pattern red = Pattern.compile("red", Pattern.CASE_INSENSITIVE);
+    assertBoth(List.of("Chris", "Jamie", "Alex"), new Query().where(Condition.matches("team", red)));
+    // Regexes match anywhere in the string, but only match strings.
+    assertBoth(List.of("Chris"), new Query().where(Condition.matches("name", Pattern.compile("hri"))));
+    assertBoth(List.of(), new Query().where(Condition.matches("score", Pattern.compile("3"))));
+  }
+
+  @Test
+  void filtersIgnoringCase() {
+    assertBoth(List.of("Chris", "Jamie", "Alex"), new Query().where(Condition.eqIgnoreCase("team", "RED")));
+    assertBoth(List.of(), new Query().where(Condition.eqIgnoreCase("team", "re")));
+    assertBoth(List.of("Chris", "Jamie", "Alex"), new Query().where(Condition.startsWithIgnoreCase("team", "rE")));
+    assertBoth(List.of("Jamie"), new Query().where(Condition.startsWithIgnoreCase("name", "ja")));
+    // Like regexes, these only match strings.
+    assertBoth(List.of(), new Query().where(Condition.startsWithIgnoreCase("score", "3")));
+  }
+
+  @Test
+  void filtersByRange() {
+    assertBoth(List.of("Chris", "Pat", "Jamie", "Sam"), new Query().where(Condition.gte("score", 25)));
+    assertBoth(List.of("Alex", "Robin"), new Query().where(Condition.lt("score", 25L)));
+    // Like MongoDB, ranges only match values of the same kind as the bound, so not `null`s.
+    assertBoth(List.of("Chris", "Jamie"), new Query().where(Condition.gte("team", "red")));
+    assertBoth(List.of(), new Query().where(Condition.lt("team", 0)));
+    Query ids = new Query().where(Condition.gte("_id", "id2")).where(Condition.lt("_id", "id4"));
+    assertBoth(List.of("Jamie", "Sam"), ids);
+  }
+
+  @Test
+  void combinesConditions() {
+    Query query = new Query()
+      .where(Condition.matches("team", Pattern.compile("red", Pattern.CASE_INSENSITIVE)))
+      .where(Condition.eq("score", 37));
+    assertBoth(List.of("Jamie"), query);
+  }
+
+  @Test
+  void sortsByIndexedAndUnindexedFields() {
+    assertBoth(List.of("Alex", "Chris", "Jamie", "Pat", "Robin", "Sam"),
+      new Query().sortBy(SortKey.ascending("name")));
+    assertBoth(List.of("Sam", "Robin", "Pat", "Jamie", "Chris", "Alex"),
+      new Query().sortBy(SortKey.descending("name")));
+    // Missing values (`null`) sort before strings, and upper case letters sort
+    // before lower case ones, like in MongoDB.
+    assertBoth(List.of("Robin", "Alex", "Pat", "Sam", "Chris", "Jamie"),
+      new Query().sortBy(SortKey.ascending("team")));
+  }
+
+  @Test
+  void breaksTiesWithLaterSortKeysThenInsertionOrder() {
+    assertBoth(List.of("Sam", "Jamie", "Pat", "Chris", "Alex", "Robin"),
+      new Query().sortBy(SortKey.descending("score")).sortBy(SortKey.ascending("name")));
+    assertBoth(List.of("Sam", "Pat", "Jamie", "Chris", "Alex", "Robin"),
+      new Query().sortBy(SortKey.descending("score")));
+  }
+
+  @Test
+  void limitsResults() {
+    assertBoth(List.of("Alex", "Chris"), new Query().sortBy(SortKey.ascending("name")).limit(2));
+    assertBoth(List.of("Chris", "Pat", "Jamie"), new Query().limit(3));
+    assertBoth(List.of("Jamie"),
+      new Query().where(Condition.eq("team", "red")).sortBy(SortKey.descending("score")).limit(1));
+    // A limit larger than the number of matches is fine.
+    assertBoth(List.of("Chris", "Jamie"), new Query().where(Condition.eq("team", "red")).limit(10));
+  }
+
+  @Test
+  void groupsByField() {
+    Map<Object, List<Object[]>> indexedGroups = indexed.groupBy("team");
+    Map<Object, List<Object[]>> unindexedGroups = unindexed.groupBy("team");
+    for (Map<Object, List<Object[]>> groups : List.of(indexedGroups, unindexedGroups)) {
+      assertEquals(5, groups.size());
+      assertEquals(List.of("Chris", "Jamie"), names(groups.get("red")));
+      assertEquals(List.of("Robin"), names(groups.get(null)));
+    }
+  }
+
+  @Test
+  void replacesAndRemovesDocuments() {
+    indexed.put("id0", new Object[] {"Chris", "blue", 26});
+    assertEquals(6, indexed.size());
+    assertEquals(List.of("Jamie"), names(indexed.find(new Query().where(Condition.eq("team", "red")))));
+    assertEquals(List.of("Pat", "Chris"), names(indexed.find(new Query().where(Condition.eq("team", "blue")))));
+
+    assertTrue(indexed.remove("id1"));
+    assertFalse(indexed.remove("id1"));
+    assertNull(indexed.get("id1"));
+    assertEquals(5, indexed.size());
+    assertEquals(List.of("Chris"), names(indexed.find(new Query().where(Condition.eq("team", "blue")))));
+    assertEquals("Jamie", indexed.get("id2")[0]);
+  }
+
+  @Test
+  void findsById() {
+    assertEquals(List.of("Pat"), names(indexed.find(new Query().where(Condition.eq("_id", "id1")))));
+  }
+
+  @Test
+  void comparesValuesLikeMongo() {
+    assertTrue(Values.compare(null, 1) < 0);
+    assertTrue(Values.compare(1, "a") < 0);
+    assertTrue(Values.compare("a", true) < 0);
+    assertTrue(Values.compare(false, true) < 0);
+    assertTrue(Values.compare(true, new Object()) < 0);
+    assertEquals(0, Values.compare(2, 2.0));
+    assertEquals(0, Values.compare(null, null));
+    assertEquals(2L, Values.normalize(2.0));
+    assertEquals(2.5, Values.normalize(2.5f));
+  }
+}
@@ -0,0 +1,116 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for filtering lookups of a repository of strings (each of which
+ * is its own ID), which counts how often it's asked for one.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class KnownIdsRepositorySpec {
+
+  private static final String FIRST = "65a0c0de0000000000000001";
+  private static final String SECOND = "65a0c0de0000000000000002";
+  private static final String MISSING = "65a0c0de00000000000000ff";
+
+  private static class CountingRepository implements Repository<String> {
+    private final List<String> items = new ArrayList<>(List.of(FIRST));
+    private int lookups;
+
+    @Override
+    public String findById(String id) {
+      lookups++;
+      return items.contains(id) ? id : null;
+    }
+
+    @Override
+    public List<String> find(Query query) {
+      return new ArrayList<>(items);
+    }
+
+    @Override
+    public void forEachId(Consumer<String> action) {
+      items.forEach(action);
+    }
+
+    @Override
+    public long count() {
+      return items.size();
+    }
+
+    @Override
+    public void insert(String item) {
+      items.add(item);
+    }
+
+    @Override
+    public boolean update(String id, String field, Object value) {
+      lookups++;
+      return items.contains(id);
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+      lookups++;
+      return items.remove(id);
+    }
+  }
+
+  @Test
+  void unknownIdsNeverReachTheBackingRepository() {
+    CountingRepository backing = new CountingRepository();
+    Repository<String> repository = new KnownIdsRepository<>(backing, Function.identity());
+
+    assertEquals(FIRST, repository.findById(FIRST));
+    assertNull(repository.findById(MISSING));
+    assertFalse(repository.update(MISSING, "status", true));
+    assertEquals(1, backing.lookups);
+    assertThrows(IllegalArgumentException.class, () -> repository.findById("bad"));
+  }
+
+  @Test
+  void insertedItemsCanBeFound() {
+    CountingRepository backing = new CountingRepository();
+    Repository<String> repository = new KnownIdsRepository<>(backing, Function.identity());
+
+    assertNull(repository.findById(SECOND));
+    repository.insert(SECOND);
+    assertEquals(SECOND, repository.findById(SECOND));
+  }
+
+  @Test
+  void deletedItemsAreRememberedAsMissing() {
+    CountingRepository backing = new CountingRepository();
+    Repository<String> repository = new KnownIdsRepository<>(backing, Function.identity());
+    repository.insert(SECOND);
+
+    assertTrue(repository.deleteById(SECOND));
+    int lookups = backing.lookups;
+    assertNull(repository.findById(SECOND));
+    assertFalse(repository.deleteById(SECOND));
+    assertEquals(lookups, backing.lookups);
+  }
+
+  @Test
+  void refreshingFindsItemsInsertedElsewhere() {
+    CountingRepository backing = new CountingRepository();
+    KnownIdsRepository<String> repository = new KnownIdsRepository<>(backing, Function.identity());
+
+    // Say `mongoseed.sh` inserted it.
+    backing.items.add(SECOND);
+    assertNull(repository.findById(SECOND));
+    repository.refresh();
+    assertEquals(SECOND, repository.findById(SECOND));
+  }
+}
@@ -0,0 +1,111 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the Bloom filter and negative cache that make up `KnownIds`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class KnownIdsSpec {
+
+  // Something that looks like an ObjectId, but is different for each `i`.
+  private static String id(int i) {
+    return String.format("65a0c0de%016x", i);
+  }
+
+  @Test
+  void bloomFilterNeverForgetsAnId() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; i++) {
+      filter.add(id(i));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(filter.mightContain(id(i)));
+      if (filter.mightContain(id(i + 10_000))) {
+        falsePositives++;
+      }
+    }
+    // About 1% of them, but with some room for bad luck.
+    assertTrue(falsePositives < 200, "Too many false positives: " + falsePositives);
+  }
+
+  @Test
+  void remembersMissesForAWhile() {
+    AtomicLong now = new AtomicLong();
+    KnownIds knownIds = new KnownIds(1000, 0.01, 5, 0, TimeUnit.SECONDS, now::get);
+    knownIds.add(id(1));
+    knownIds.add(id(2));
+
+    assertFalse(knownIds.mightExist(id(3)));
+    assertTrue(knownIds.mightExist(id(1)));
+
+    // Say the first one was deleted.
+    knownIds.recordMiss(id(1), knownIds.additions());
+    assertFalse(knownIds.mightExist(id(1)));
+    assertTrue(knownIds.mightExist(id(2)));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(6));
+    assertTrue(knownIds.mightExist(id(1)));
+    assertEquals(new KnownIds.Stats(1, 1, 0), knownIds.stats());
+  }
+
+  @Test
+  void addingAnIdForgetsItsMiss() {
+    KnownIds knownIds = new KnownIds(1000, 0.01, 5, TimeUnit.SECONDS);
+    knownIds.add(id(1));
+    knownIds.recordMiss(id(1), knownIds.additions());
+    assertFalse(knownIds.mightExist(id(1)));
+
+    knownIds.add(id(1));
+    assertTrue(knownIds.mightExist(id(1)));
+  }
+
+  @Test
+  void doesNotKeepAMissThatRacedWithAnAdd() {
+    KnownIds knownIds = new KnownIds(1000, 0.01, 5, TimeUnit.SECONDS);
+    long before = knownIds.additions();
+    // The item was added after we asked the database, but before it answered.
+    knownIds.add(id(1));
+    knownIds.recordMiss(id(1), before);
+    assertTrue(knownIds.mightExist(id(1)));
+  }
+
+  @Test
+  void staleFiltersLetLookupsThrough() {
+    AtomicLong now = new AtomicLong();
+    KnownIds knownIds = new KnownIds(1000, 0.01, 5, 60, TimeUnit.SECONDS, now::get);
+    knownIds.add(id(1));
+    assertFalse(knownIds.mightExist(id(2)));
+
+    // Something else may have inserted it since.
+    now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+    assertTrue(knownIds.mightExist(id(2)));
+    assertTrue(knownIds.mightExist(id(1)));
+
+    knownIds.rebuild(1000, add -> add.accept(id(1)));
+    assertFalse(knownIds.mightExist(id(2)));
+    assertEquals(new KnownIds.Stats(2, 0, 1), knownIds.stats());
+  }
+
+  @Test
+  void rebuildsFromTheIdsThereNow() {
+    KnownIds knownIds = new KnownIds(1000, 0.01, 5, TimeUnit.SECONDS);
+    knownIds.add(id(1));
+    knownIds.rebuild(1000, add -> {
+      add.accept(id(2));
+      // Added while the rebuild is reading the IDs.
+      knownIds.add(id(3));
+    });
+    assertFalse(knownIds.mightExist(id(1)));
+    assertTrue(knownIds.mightExist(id(2)));
+    assertTrue(knownIds.mightExist(id(3)));
+  }
+}
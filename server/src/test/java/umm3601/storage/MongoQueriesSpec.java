@@ -0,0 +1,96 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for how `MongoQueries` summarises MongoDB's `explain` output. (The
+ * filters and sorts it builds are tested against a real database by the
+ * controller specs.)
+ */
+@SuppressWarnings({ "MagicNumber" })
+class MongoQueriesSpec {
+
+  private static Document stage(String name, Document input) {
+    Document stage = new Document("stage", name);
+    return input == null ? stage : stage.append("inputStage", input);
+  }
+
+  private static Document index(String name) {
+    return new Document("stage", "IXSCAN").append("indexName", name);
+  }
+
+  private static Document executionStats() {
+    return new Document("nReturned", 3)
+      .append("executionTimeMillis", 12)
+      .append("totalKeysExamined", 40)
+      .append("totalDocsExamined", 3L);
+  }
+
+  @Test
+  void samplesFirstUnlessThereAreConditions() {
+    // `$sample` only uses a random cursor as the first stage.
+    assertEquals(1, MongoQueries.sample(new Query(), 5).size());
+    assertEquals(2, MongoQueries.sample(new Query().where(Condition.eq("status", true)), 5).size());
+  }
+
+  @Test
+  void summarisesAnIndexedPlan() {
+    Document explain = new Document("queryPlanner",
+        new Document("winningPlan", stage("LIMIT", stage("FETCH", index("owner_1__id_1")))))
+      .append("executionStats", executionStats());
+
+    QueryPlan plan = MongoQueries.queryPlan(explain);
+    assertEquals("LIMIT > FETCH > IXSCAN", plan.plan());
+    assertEquals(List.of("owner_1__id_1"), plan.indexes());
+    assertFalse(plan.collectionScan());
+    assertFalse(plan.inMemorySort());
+    assertFalse(plan.timedOut());
+    assertEquals(3, plan.returned());
+    assertEquals(40, plan.keysExamined());
+    assertEquals(3, plan.docsExamined());
+    assertEquals(12, plan.millis());
+  }
+
+  @Test
+  void findsPlansNestedByTheSlotBasedEngine() {
+    Document winningPlan = new Document("queryPlan", stage("SORT", stage("COLLSCAN", null)))
+      .append("slotBasedPlan", new Document("stages", "..."));
+    Document explain = new Document("queryPlanner", new Document("winningPlan", winningPlan))
+      .append("executionStats", executionStats());
+
+    QueryPlan plan = MongoQueries.queryPlan(explain);
+    assertEquals("SORT > COLLSCAN", plan.plan());
+    assertEquals(List.of(), plan.indexes());
+    assertTrue(plan.collectionScan());
+    assertTrue(plan.inMemorySort());
+  }
+
+  @Test
+  void describesStagesWithSeveralInputs() {
+    Document or = new Document("stage", "OR")
+      .append("inputStages", List.of(index("owner_1__id_1"), index("category_1__id_1"), index("owner_1__id_1")));
+    Document explain = new Document("queryPlanner", new Document("winningPlan", stage("FETCH", or)));
+
+    QueryPlan plan = MongoQueries.queryPlan(explain);
+    assertEquals("FETCH > OR(IXSCAN, IXSCAN, IXSCAN)", plan.plan());
+    assertEquals(List.of("owner_1__id_1", "category_1__id_1"), plan.indexes());
+  }
+
+  @Test
+  void plansWithoutExecutionStatsTimedOut() {
+    Document explain = new Document("queryPlanner", new Document("winningPlan", stage("COLLSCAN", null)));
+
+    QueryPlan plan = MongoQueries.queryPlan(explain);
+    assertEquals("COLLSCAN", plan.plan());
+    assertTrue(plan.timedOut());
+    assertEquals(0, plan.returned());
+    assertEquals(0, plan.docsExamined());
+  }
+}
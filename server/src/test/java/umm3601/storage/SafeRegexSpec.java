@@ -0,0 +1,86 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the checks and rewrites `SafeRegex` makes to regexes from clients.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class SafeRegexSpec {
+
+  @Test
+  void plainTextBecomesAnEscapedSubstring() {
+    Pattern pattern = SafeRegex.compile("Fry");
+    assertEquals("Fry", pattern.pattern());
+    assertTrue(pattern.matcher("Philip J. fry").find());
+
+    // Escaped punctuation is still just text.
+    pattern = SafeRegex.compile("3\\.5 hours");
+    assertEquals("3\\.5 hours", pattern.pattern());
+    assertTrue(pattern.matcher("about 3.5 hours").find());
+    assertFalse(pattern.matcher("about 305 hours").find());
+  }
+
+  @Test
+  void literalPrefixesBecomeAnchoredEscapedPrefixes() {
+    assertEquals("^Fry", SafeRegex.compile("^Fry").pattern());
+    assertEquals("^Fry", SafeRegex.compile("^Fry.*").pattern());
+    assertEquals("^Dr\\. ", SafeRegex.compile("^Dr\\. ").pattern());
+    assertTrue(SafeRegex.compile("^fry").matcher("Fry").find());
+    assertFalse(SafeRegex.compile("^Fry").matcher("Not Fry").find());
+  }
+
+  @Test
+  void literalModeEscapesEverything() {
+    Pattern pattern = SafeRegex.literal("(a+)+$ [x]");
+    assertEquals("\\(a\\+\\)\\+\\$ \\[x\\]", pattern.pattern());
+    assertTrue(pattern.matcher("match (A+)+$ [X] here").find());
+    assertEquals("^C\\+\\+", SafeRegex.prefix("C++").pattern());
+  }
+
+  @Test
+  void ordinaryRegexesAreAllowed() {
+    for (String regex : new String[] {
+      "home(work)?", "^[a-z]+ing$", "\\d{3}-\\d{4}", "colou?r", "(?:video|board) games",
+      "[]a]+", "[^)]*x", "a{2,5}b", "cat|dog", "(ab){3}c", "\\d{2,2}", "^\\w+ ?-?\\d?\\d?$"}) {
+      Pattern pattern = SafeRegex.compile(regex);
+      assertEquals(regex, pattern.pattern());
+      assertEquals(Pattern.CASE_INSENSITIVE, pattern.flags() & Pattern.CASE_INSENSITIVE);
+    }
+  }
+
+  @Test
+  void catastrophicRegexesAreRejected() {
+    for (String regex : new String[] {
+      // Repeated groups with repetition or alternation inside them
+      "(a+)+$", "(a*)*b", "(x+x+)+y", "(a|aa)+", "((ab)*c)+", "(?:a|b)*c", "(a{1,5})*",
+      // ...even when the group is only repeated a fixed number of times, or is optional
+      "(a|aa){60}b", "(.?){25}.{25}z", "(a?){30}a{30}", "(a+)?b", "(?:x|y){2}",
+      // Too many optional parts, which backtrack just like a repeated group
+      "a?a?a?a?a?aaaaa", "\\w?".repeat(30) + "\\w{30}",
+      // Backreferences, lookarounds, and atomic groups
+      "(a)\\1", "(?<n>a)\\k<n>", "a(?=b)", "(?!a)b", "(?<=a)b", "(?>a+)b",
+      // More than one repetition that can match any number of times, even overlapping ones,
+      // too many optional parts, or too large a count
+      ".*.*.*.*x", "\\w*\\w*\\w*x", ".*a.*b", "a+b{2,}", "a{0,50}a{0,50}x",
+      "a*b*c*d*e*", "a{1,2}b{1,2}c{1,2}d{1,2}e{1,2}", "a{1000}", "a{1,1000}",
+      // Not legal regexes at all
+      "(a", "a)", "[abc", "a\\", "*a", "a{x}"}) {
+      assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile(regex), regex);
+    }
+    assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile("a.".repeat(SafeRegex.MAX_LENGTH)));
+  }
+
+  @Test
+  void rejectedRegexesSayWhy() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile("(a+)+$"));
+    assertTrue(e.getMessage().contains("repeated or optional group"), e.getMessage());
+  }
+}
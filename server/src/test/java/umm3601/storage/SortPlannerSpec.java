@@ -0,0 +1,128 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.client.model.IndexModel;
+
+/**
+ * Tests for how `SortPlanner` parses sorts and checks them against indexes.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class SortPlannerSpec {
+
+  private static final List<List<SortKey>> INDEXES = List.of(
+    List.of(SortKey.ascending("owner"), SortKey.ascending("_id")),
+    List.of(SortKey.ascending("category"), SortKey.descending("status"), SortKey.ascending("_id")));
+
+  private static final List<List<SortKey>> CASE_INSENSITIVE_INDEXES = List.of(
+    List.of(SortKey.ascending("owner"), SortKey.ascending("_id")));
+
+  private static SortPlanner planner(boolean allowDiskUse) {
+    return new SortPlanner(Set.of("owner", "category", "status", "body"), INDEXES, CASE_INSENSITIVE_INDEXES,
+      allowDiskUse);
+  }
+
+  @Test
+  void sortsEndWithAnIdTieBreaker() {
+    SortPlanner planner = planner(false);
+    assertEquals(List.of(SortKey.ascending("owner"), SortKey.ascending("_id")), planner.parse("owner", false));
+    assertEquals(List.of(SortKey.descending("owner"), SortKey.descending("_id")), planner.parse("owner", true));
+    assertEquals(
+      List.of(SortKey.ascending("category"), SortKey.descending("status"), SortKey.descending("_id")),
+      planner.parse("category,-status", false));
+    assertEquals(
+      List.of(SortKey.descending("category"), SortKey.ascending("status"), SortKey.ascending("_id")),
+      planner.parse("category:desc, status:asc", false));
+    // Nothing comes after `_id`.
+    assertEquals(List.of(SortKey.descending("_id")), planner.parse("-_id,owner", false));
+  }
+
+  @Test
+  void onlyWhitelistedFieldsCanBeSortedBy() {
+    SortPlanner planner = planner(true);
+    assertThrows(IllegalArgumentException.class, () -> planner.sort(new Query(), "password", false));
+    assertThrows(IllegalArgumentException.class, () -> planner.sort(new Query(), "owner,", false));
+    assertThrows(IllegalArgumentException.class, () -> planner.sort(new Query(), "owner,-owner", false));
+    assertThrows(IllegalArgumentException.class,
+      () -> planner.sort(new Query(), "owner,category,status,body,_id", false));
+    assertEquals(new SortPlanner.Stats(0, 0, 4), planner.stats());
+  }
+
+  @Test
+  void indexesCanBeReadInEitherDirection() {
+    SortPlanner planner = planner(false);
+    assertTrue(planner.isIndexed(planner.parse("owner", false), false));
+    assertTrue(planner.isIndexed(planner.parse("-owner", false), false));
+    assertTrue(planner.isIndexed(planner.parse("_id", true), false));
+    // A prefix of an index is fine, as long as the directions agree...
+    assertTrue(planner.isIndexed(List.of(SortKey.ascending("category")), false));
+    assertTrue(planner.isIndexed(List.of(SortKey.descending("category"), SortKey.ascending("status")), false));
+    // ...but not if only some of them are reversed.
+    assertFalse(planner.isIndexed(List.of(SortKey.ascending("category"), SortKey.ascending("status")), false));
+    // The tie-breaker takes the last key's direction, which doesn't match `_id` here.
+    assertFalse(planner.isIndexed(planner.parse("category,-status", false), false));
+    assertFalse(planner.isIndexed(planner.parse("body", false), false));
+    assertFalse(planner.isIndexed(planner.parse("status", false), false));
+  }
+
+  @Test
+  void unindexedSortsAreRejectedOrSortedOnDisk() {
+    SortPlanner rejecting = planner(false);
+    Query query = rejecting.sort(new Query(), "owner", false);
+    assertFalse(query.allowDiskUse());
+    assertEquals(List.of(SortKey.ascending("owner"), SortKey.ascending("_id")), query.sortKeys());
+    assertThrows(IllegalArgumentException.class, () -> rejecting.sort(new Query(), "body", false));
+    assertEquals(new SortPlanner.Stats(1, 0, 1), rejecting.stats());
+
+    SortPlanner spilling = planner(true);
+    query = spilling.sort(new Query(), "body", true);
+    assertTrue(query.allowDiskUse());
+    assertEquals(List.of(SortKey.descending("body"), SortKey.descending("_id")), query.sortKeys());
+    assertEquals(new SortPlanner.Stats(0, 1, 0), spilling.stats());
+  }
+
+  @Test
+  void queriesThatIgnoreCaseNeedCaseInsensitiveIndexes() {
+    SortPlanner planner = planner(false);
+    Query query = planner.sort(new Query().where(Condition.eqIgnoreCase("owner", "fry")), "owner", false);
+    assertEquals(MongoQueries.CASE_INSENSITIVE, MongoQueries.collation(query));
+    assertNull(MongoQueries.collation(planner.sort(new Query(), "owner", false)));
+    assertEquals(new SortPlanner.Stats(2, 0, 0), planner.stats());
+
+    // An index with the default collation can't be used for this.
+    SortPlanner withoutCaseInsensitiveIndexes = new SortPlanner(Set.of("owner"), INDEXES, false);
+    assertThrows(IllegalArgumentException.class, () -> withoutCaseInsensitiveIndexes.sort(
+      new Query().where(Condition.startsWithIgnoreCase("owner", "f")), "owner", false));
+  }
+
+  @Test
+  void theIdIndexDoesNotCountUnderACaseInsensitiveCollation() {
+    SortPlanner planner = planner(false);
+    assertTrue(planner.isIndexed(planner.parse("_id", false), false));
+    assertFalse(planner.isIndexed(planner.parse("_id", false), true));
+    assertThrows(IllegalArgumentException.class,
+      () -> planner.sort(new Query().where(Condition.eqIgnoreCase("owner", "fry")), "_id", false));
+
+    SortPlanner spilling = planner(true);
+    Query query = spilling.sort(new Query().where(Condition.eqIgnoreCase("owner", "fry")), "-_id", false);
+    assertTrue(query.allowDiskUse());
+    assertEquals(new SortPlanner.Stats(0, 1, 0), spilling.stats());
+  }
+
+  @Test
+  void caseInsensitiveIndexesHaveTheirOwnNames() {
+    IndexModel model = SortPlanner.caseInsensitiveIndexModel(
+      List.of(SortKey.ascending("owner"), SortKey.descending("_id")));
+    assertEquals("owner_1__id_-1_ci", model.getOptions().getName());
+    assertEquals(MongoQueries.CASE_INSENSITIVE, model.getOptions().getCollation());
+  }
+}
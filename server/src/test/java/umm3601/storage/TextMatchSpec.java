@@ -0,0 +1,34 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the `?match=` names and the conditions they make.
+ */
+class TextMatchSpec {
+
+  @Test
+  void parsesTheNamesClientsUse() {
+    assertEquals(TextMatch.PREFIX, TextMatch.of("prefix"));
+    assertEquals(TextMatch.EXACT, TextMatch.of(" Exact "));
+    assertEquals("literal", TextMatch.LITERAL.toString());
+    assertEquals("'regex', 'literal', 'exact', or 'prefix'", TextMatch.names());
+    assertThrows(IllegalArgumentException.class, () -> TextMatch.of("contains"));
+  }
+
+  @Test
+  void makesTheConditionForEachMatch() {
+    assertTrue(TextMatch.REGEX.condition("owner", "^f.y").test("Fry"));
+    assertFalse(TextMatch.LITERAL.condition("owner", "^f.y").test("Fry"));
+    assertTrue(TextMatch.LITERAL.condition("owner", "R").test("Fry"));
+    assertTrue(TextMatch.EXACT.condition("owner", "fRY").test("Fry"));
+    assertFalse(TextMatch.EXACT.condition("owner", "Fr").test("Fry"));
+    assertTrue(TextMatch.PREFIX.condition("owner", "fr").test("Fry"));
+    assertThrows(IllegalArgumentException.class, () -> TextMatch.REGEX.condition("owner", "(a+)+"));
+  }
+}
@@ -0,0 +1,193 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for writing behind to a repository of strings (each of which is its
+ * own ID), which can be made to fail as if the database were down.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class WriteBehindRepositorySpec {
+
+  @TempDir
+  private Path tempDir;
+
+  private static class FlakyRepository implements Repository<String> {
+    private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean down;
+
+    @Override
+    public String findById(String id) {
+      return items.contains(id) ? id : null;
+    }
+
+    @Override
+    public List<String> find(Query query) {
+      return new ArrayList<>(items);
+    }
+
+    @Override
+    public long count() {
+      return items.size();
+    }
+
+    @Override
+    public void insert(String item) {
+      items.add(item);
+    }
+
+    @Override
+    public int insertAll(List<String> batch) {
+      if (down) {
+        throw new IllegalStateException("the database is down");
+      }
+      int added = 0;
+      for (String item : batch) {
+        // Like Mongo, skip anything that's already there.
+        if (!items.contains(item)) {
+          items.add(item);
+          added++;
+        }
+      }
+      return added;
+    }
+
+    @Override
+    public boolean update(String id, String field, Object value) {
+      return items.contains(id);
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+      return items.remove(id);
+    }
+  }
+
+  private WriteBehindRepository<String> open(Repository<String> backing) throws IOException {
+    return new WriteBehindRepository<>(backing, new WriteLog(tempDir, 4096, true), String.class, Function.identity());
+  }
+
+  @Test
+  void acceptsWritesWhileTheDatabaseIsDown() throws IOException {
+    FlakyRepository backing = new FlakyRepository();
+    backing.down = true;
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      repository.insert("a");
+      repository.insert("b");
+
+      // They're not in the database yet, but we can still find them by ID.
+      assertEquals(0, repository.count());
+      assertEquals("a", repository.findById("a"));
+
+      backing.down = false;
+      repository.awaitDrained();
+      assertEquals(List.of("a", "b"), backing.find(new Query()));
+      assertEquals("b", repository.findById("b"));
+    }
+  }
+
+  @Test
+  void drainsWhatsLeftAfterARestart() throws IOException {
+    FlakyRepository backing = new FlakyRepository();
+    backing.down = true;
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      repository.insert("a");
+      repository.insert("b");
+    }
+
+    FlakyRepository newBacking = new FlakyRepository();
+    try (WriteBehindRepository<String> repository = open(newBacking)) {
+      repository.awaitDrained();
+      assertEquals(List.of("a", "b"), newBacking.find(new Query()));
+    }
+  }
+
+  @Test
+  void deletesWaitForTheLogToDrain() throws IOException {
+    FlakyRepository backing = new FlakyRepository();
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      repository.insert("a");
+
+      assertTrue(repository.deleteById("a"));
+      assertFalse(repository.deleteById("a"));
+      assertEquals(0, backing.count());
+    }
+  }
+
+  @Test
+  void doesNotDrainTheSameItemTwice() throws IOException {
+    FlakyRepository backing = new FlakyRepository();
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      for (int i = 0; i < WriteBehindRepository.DRAIN_BATCH_SIZE + 10; i++) {
+        repository.insert("item " + i);
+      }
+      repository.awaitDrained();
+    }
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      repository.insert("one more");
+      repository.awaitDrained();
+    }
+    assertEquals(WriteBehindRepository.DRAIN_BATCH_SIZE + 11, backing.count());
+  }
+
+  @Test
+  void setsAsideRecordsItCantRead() throws IOException {
+    try (WriteLog log = new WriteLog(tempDir, 4096, true)) {
+      log.append("\"a\"".getBytes(StandardCharsets.UTF_8));
+      log.append("not json".getBytes(StandardCharsets.UTF_8));
+      log.append("\"b\"".getBytes(StandardCharsets.UTF_8));
+    }
+
+    FlakyRepository backing = new FlakyRepository();
+    backing.down = true;
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      // What was left in the log can be found before it's drained.
+      assertEquals("b", repository.findById("b"));
+
+      backing.down = false;
+      repository.awaitDrained();
+      assertEquals(List.of("a", "b"), backing.find(new Query()));
+      assertTrue(repository.isHealthy());
+    }
+    assertEquals("not json\n", Files.readString(tempDir.resolve("rejected")));
+  }
+
+  @Test
+  void refusesWritesWhileTheLogCantBeDrained() throws IOException, InterruptedException {
+    FlakyRepository backing = new FlakyRepository();
+    // Saving the checkpoint fails while there's a directory in the way.
+    Path inTheWay = Files.createDirectory(tempDir.resolve("checkpoint.tmp"));
+    try (WriteBehindRepository<String> repository = open(backing)) {
+      repository.insert("a");
+      for (int i = 0; i < 100 && repository.isHealthy(); i++) {
+        Thread.sleep(50);
+      }
+      assertFalse(repository.isHealthy());
+      assertThrows(UncheckedIOException.class, () -> repository.insert("b"));
+
+      // The drainer is still going, so once that's fixed, it catches up.
+      Files.delete(inTheWay);
+      repository.awaitDrained();
+      assertTrue(repository.isHealthy());
+      repository.insert("b");
+      repository.awaitDrained();
+      assertEquals(List.of("a", "b"), backing.find(new Query()));
+    }
+  }
+}
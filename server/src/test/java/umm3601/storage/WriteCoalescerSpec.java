@@ -0,0 +1,201 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for grouping writes, using a repository of strings (keyed by
+ * themselves) that remembers every batch it's handed.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class WriteCoalescerSpec {
+
+  private final Map<String, String> stored = new ConcurrentHashMap<>();
+  private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+  private RuntimeException failure;
+  private WriteCoalescer<String> coalescer;
+
+  private final Repository<String> repository = new Repository<>() {
+    @Override
+    public String findById(String id) {
+      return stored.get(id);
+    }
+
+    @Override
+    public List<String> find(Query query) {
+      return new ArrayList<>(stored.values());
+    }
+
+    @Override
+    public long count() {
+      return stored.size();
+    }
+
+    @Override
+    public void insert(String item) {
+      stored.put(item, item);
+    }
+
+    @Override
+    public boolean update(String id, String field, Object value) {
+      return stored.replace(id, id + ":" + value) != null;
+    }
+
+    @Override
+    public List<Boolean> writeAll(List<Write<String>> writes) {
+      batchSizes.add(writes.size());
+      if (failure != null) {
+        throw failure;
+      }
+      return Repository.super.writeAll(writes);
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+      return stored.remove(id) != null;
+    }
+  };
+
+  @BeforeEach
+  void setupEach() {
+    stored.clear();
+    batchSizes.clear();
+    failure = null;
+    stored.put("a", "a");
+  }
+
+  @AfterEach
+  void teardownEach() {
+    if (coalescer != null) {
+      coalescer.close();
+    }
+  }
+
+  @Test
+  void groupsConcurrentWrites() throws InterruptedException {
+    int writers = 10;
+    // A long window, but the batch fills (and so is sent) as soon as every writer has written.
+    coalescer = new WriteCoalescer<>(repository, writers, 5, TimeUnit.SECONDS);
+    ExecutorService pool = Executors.newFixedThreadPool(writers);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < writers; i++) {
+      Write<String> write = i == 0 ? new Write.Update<>("a", "status", true) : new Write.Insert<>("item " + i);
+      results.add(pool.submit(() -> coalescer.write(write)));
+    }
+
+    try {
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } catch (ExecutionException e) {
+      throw new AssertionError(e);
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(List.of(writers), batchSizes);
+    assertEquals("a:true", stored.get("a"));
+    assertEquals(writers, stored.size());
+  }
+
+  @Test
+  void eachWriteGetsItsOwnResult() {
+    coalescer = new WriteCoalescer<>(repository, 2, 5, TimeUnit.SECONDS);
+    CompletableFuture<Boolean> found = coalescer.submit(new Write.Update<>("a", "status", false));
+    CompletableFuture<Boolean> notFound = coalescer.submit(new Write.Update<>("b", "status", false));
+
+    assertTrue(found.join());
+    assertFalse(notFound.join());
+    assertEquals(List.of(2), batchSizes);
+  }
+
+  @Test
+  void sendsWhatItHasWhenTheWindowCloses() {
+    coalescer = new WriteCoalescer<>(repository, 100, 10, TimeUnit.MILLISECONDS);
+
+    assertTrue(coalescer.write(new Write.Insert<>("b")));
+    assertTrue(coalescer.write(new Write.Insert<>("c")));
+
+    assertEquals(List.of(1, 1), batchSizes);
+  }
+
+  @Test
+  void failsEveryWriteInAFailedBatch() {
+    failure = new IllegalStateException("the database is down");
+    coalescer = new WriteCoalescer<>(repository, 2, 5, TimeUnit.SECONDS);
+    CompletableFuture<Boolean> first = coalescer.submit(new Write.Insert<>("b"));
+
+    RuntimeException thrown = assertThrows(RuntimeException.class, () -> coalescer.write(new Write.Insert<>("c")));
+    assertSame(failure, thrown);
+    assertTrue(first.isCompletedExceptionally());
+  }
+
+  @Test
+  void directCoalescersWriteStraightAway() {
+    coalescer = WriteCoalescer.direct(repository);
+
+    assertTrue(coalescer.write(new Write.Insert<>("b")));
+    assertFalse(coalescer.write(new Write.Update<>("c", "status", true)));
+    assertEquals(List.of(1, 1), batchSizes);
+  }
+
+  @Test
+  void refusesWritesOnceClosed() {
+    coalescer = new WriteCoalescer<>(repository, 10, 1, TimeUnit.MILLISECONDS);
+    assertTrue(coalescer.write(new Write.Insert<>("b")));
+    coalescer.close();
+
+    assertThrows(IllegalStateException.class, () -> coalescer.write(new Write.Insert<>("c")));
+  }
+
+  @Test
+  void writesSubmittedWhileClosingStillFinish() throws InterruptedException {
+    // Race writers against `close()`: each write has to either be applied or
+    // fail, rather than being queued after the background thread has gone.
+    for (int round = 0; round < 50; round++) {
+      WriteCoalescer<String> racing = new WriteCoalescer<>(repository, 10, 1, TimeUnit.MILLISECONDS);
+      racing.write(new Write.Insert<>("start"));
+      List<CompletableFuture<Boolean>> results = Collections.synchronizedList(new ArrayList<>());
+      ExecutorService pool = Executors.newFixedThreadPool(4);
+      for (int i = 0; i < 4; i++) {
+        int writer = i;
+        pool.submit(() -> {
+          for (int j = 0; j < 50; j++) {
+            results.add(racing.submit(new Write.Insert<>("w" + writer + "-" + j)));
+          }
+        });
+      }
+      racing.close();
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+      for (CompletableFuture<Boolean> result : results) {
+        try {
+          result.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+        } catch (TimeoutException e) {
+          throw new AssertionError("A write submitted while closing never finished", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package umm3601.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the memory-mapped write log.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class WriteLogSpec {
+
+  @TempDir
+  private Path tempDir;
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<String> strings(List<WriteLog.Entry> entries) {
+    List<String> strings = new ArrayList<>();
+    for (WriteLog.Entry entry : entries) {
+      strings.add(new String(entry.data(), StandardCharsets.UTF_8));
+    }
+    return strings;
+  }
+
+  private long segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(tempDir)) {
+      return files.filter(file -> file.toString().endsWith(".log")).count();
+    }
+  }
+
+  @Test
+  void readsBackWhatWasAppended() throws IOException {
+    try (WriteLog log = new WriteLog(tempDir, 1024, false)) {
+      assertTrue(log.isDrained());
+      log.append(bytes("one"));
+      WriteLog.Position end = log.append(bytes("two"));
+      log.append(bytes("three"));
+
+      assertFalse(log.isDrained());
+      assertEquals(List.of("one", "two", "three"), strings(log.read(log.checkpoint(), 10)));
+      assertEquals(List.of("one", "two"), strings(log.read(log.checkpoint(), 2)));
+      assertEquals(List.of("three"), strings(log.read(end, 10)));
+    }
+  }
+
+  @Test
+  void rejectsEmptyRecords() throws IOException {
+    try (WriteLog log = new WriteLog(tempDir, 1024, false)) {
+      log.append(bytes("one"));
+      assertThrows(IllegalArgumentException.class, () -> log.append(new byte[0]));
+      log.append(bytes("two"));
+
+      // Which would otherwise have hidden everything after them.
+      assertEquals(List.of("one", "two"), strings(log.read(log.checkpoint(), 10)));
+    }
+  }
+
+  @Test
+  void rollsOverToNewSegments() throws IOException {
+    try (WriteLog log = new WriteLog(tempDir, 64, true)) {
+      for (int i = 0; i < 10; i++) {
+        // Each of these takes up 8 + 20 bytes, so two fit in a segment.
+        log.append(bytes(String.format("record number %6d", i)));
+      }
+      assertEquals(5, segmentFiles());
+      List<WriteLog.Entry> entries = log.read(log.checkpoint(), 100);
+      assertEquals(10, entries.size());
+      assertEquals("record number      9", strings(entries).get(9));
+
+      // Once we're past them, the old segments go away.
+      log.checkpoint(entries.get(6).next());
+      assertEquals(2, segmentFiles());
+      assertEquals(3, log.read(log.checkpoint(), 100).size());
+      assertThrows(IllegalArgumentException.class, () -> log.append(new byte[100]));
+    }
+  }
+
+  @Test
+  void picksUpWhereItLeftOff() throws IOException {
+    try (WriteLog log = new WriteLog(tempDir, 1024, true)) {
+      log.append(bytes("one"));
+      log.checkpoint(log.append(bytes("two")));
+      log.append(bytes("three"));
+    }
+
+    try (WriteLog log = new WriteLog(tempDir, 1024, true)) {
+      assertEquals(List.of("three"), strings(log.read(log.checkpoint(), 10)));
+      log.append(bytes("four"));
+      assertEquals(List.of("three", "four"), strings(log.read(log.checkpoint(), 10)));
+    }
+  }
+
+  @Test
+  void ignoresATornRecord() throws IOException {
+    WriteLog.Position end;
+    try (WriteLog log = new WriteLog(tempDir, 1024, true)) {
+      log.append(bytes("one"));
+      end = log.append(bytes("two"));
+      log.append(bytes("three"));
+    }
+    // Scribble over the last record, as if we'd died half way through writing it.
+    try (RandomAccessFile segment = new RandomAccessFile(tempDir.resolve("0000000000000000.log").toFile(), "rw")) {
+      segment.seek(end.offset() + 10);
+      segment.write(bytes("xx"));
+    }
+
+    try (WriteLog log = new WriteLog(tempDir, 1024, true)) {
+      assertEquals(List.of("one", "two"), strings(log.read(log.checkpoint(), 10)));
+      assertEquals(end, log.end());
+      // New records go where the broken one was.
+      log.append(bytes("four"));
+      assertEquals(List.of("one", "two", "four"), strings(log.read(log.checkpoint(), 10)));
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import umm3601.CapturedOutputStream;
+import umm3601.JsonMappers;
+import umm3601.storage.Condition;
+import umm3601.storage.Query;
+import umm3601.storage.SortKey;
+import umm3601.todos.InMemoryTodoRepository;
+import umm3601.todos.Todo;
+import umm3601.todos.TodoController;
+import umm3601.todos.TodoStats;
+
+/**
+ * Tests for the in-memory todo repository, including running
+ * `TodoController` on top of it (without any database).
+ */
+@SuppressWarnings({ "MagicNumber" })
+class InMemoryTodoRepositorySpec {
+
+  private InMemoryTodoRepository repository;
+
+  @Mock
+  private Context ctx;
+
+  @Captor
+  private ArgumentCaptor<ArrayList<Todo>> todoArrayListCaptor;
+
+  private static Todo todo(String owner, String category, boolean status, String body) {
+    Todo todo = new Todo();
+    todo.owner = owner;
+    todo.category = category;
+    todo.status = status;
+    todo.body = body;
+    return todo;
+  }
+
+  @BeforeEach
+  void setupEach() {
+    MockitoAnnotations.openMocks(this);
+    repository = new InMemoryTodoRepository();
+    repository.insert(todo("Blanche", "homework", true, "do 3601 homework"));
+    repository.insert(todo("Fry", "video games", false, "beat the game"));
+    repository.insert(todo("Dawn", "homework", true, "read chapter 3"));
+    repository.insert(todo("Barry", "groceries", false, "buy milk"));
+  }
+
+  @Test
+  void findsWithFiltersSortingAndLimits() {
+    List<Todo> todos = repository.find(new Query()
+      .where(Condition.eq("status", true))
+      .sortBy(SortKey.ascending("owner")));
+    assertEquals(2, todos.size());
+    assertEquals("Blanche", todos.get(0).owner);
+    assertEquals("Dawn", todos.get(1).owner);
+
+    todos = repository.find(new Query().sortBy(SortKey.descending("owner")).limit(1));
+    assertEquals("Fry", todos.get(0).owner);
+  }
+
+  @Test
+  void findsAndDeletesById() {
+    Todo todo = repository.find(new Query()).get(0);
+    assertEquals(todo, repository.findById(todo._id));
+    assertTrue(repository.deleteById(todo._id));
+    assertFalse(repository.deleteById(todo._id));
+    assertNull(repository.findById(todo._id));
+    assertEquals(3, repository.count());
+    assertThrows(IllegalArgumentException.class, () -> repository.findById("frogs"));
+  }
+
+  @Test
+  void updatesKeepTheIndexesUpToDate() {
+    Todo fry = repository.find(new Query().where(Condition.eq("owner", "Fry"))).get(0);
+
+    assertTrue(repository.update(fry._id, "status", true));
+    assertFalse(repository.update(new ObjectId().toHexString(), "status", true));
+
+    assertEquals(true, repository.findById(fry._id).status);
+    assertEquals(3, repository.find(new Query().where(Condition.eq("status", true))).size());
+    assertEquals(1, repository.find(new Query().where(Condition.eq("status", false))).size());
+  }
+
+  private static List<Object> counts(List<TodoStats.Count> counts) {
+    List<Object> flattened = new ArrayList<>();
+    for (TodoStats.Count count : counts) {
+      flattened.add(count._id);
+      flattened.add(count.count);
+    }
+    return flattened;
+  }
+
+  @Test
+  void countsByStatusCategoryAndTopOwners() {
+    TodoStats stats = repository.stats(new Query().limit(1), 2);
+    // The limit doesn't apply to the counts.
+    assertEquals(4, stats.total);
+    // Biggest counts first, then in order of value.
+    assertEquals(List.of(false, 2L, true, 2L), counts(stats.status));
+    assertEquals(List.of("homework", 2L, "groceries", 1L, "video games", 1L), counts(stats.category));
+    assertEquals(List.of("Barry", 1L, "Blanche", 1L), counts(stats.owners));
+
+    stats = repository.stats(new Query().where(Condition.eq("status", true)), 10);
+    assertEquals(2, stats.total);
+    assertEquals(List.of(true, 2L), counts(stats.status));
+    assertEquals(List.of("Blanche", 1L, "Dawn", 1L), counts(stats.owners));
+  }
+
+  @Test
+  void samplesMatchingTodos() {
+    Query homework = new Query().where(Condition.eq("category", "homework"));
+    List<Todo> sample = repository.sample(homework, 1);
+    assertEquals(1, sample.size());
+    assertEquals("homework", sample.get(0).category);
+
+    // Asking for more than match gets all of them, once each.
+    sample = repository.sample(homework, 10);
+    assertEquals(2, sample.size());
+    assertEquals(2, sample.stream().map(todo -> todo._id).distinct().count());
+    assertEquals(4, repository.sample(new Query().limit(1), 4).size());
+  }
+
+  @Test
+  void copiesAnotherRepository() {
+    assertEquals(4, InMemoryTodoRepository.copyOf(repository).count());
+  }
+
+  @Test
+  void controllerWorksWithoutADatabase() throws IOException {
+    TodoController controller = new TodoController(repository);
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList(new String[] {"HOMEwork"}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("HOMEwork");
+
+    controller.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(2, todoArrayListCaptor.getValue().size());
+    for (Todo todo : todoArrayListCaptor.getValue()) {
+      assertEquals("homework", todo.category);
+    }
+  }
+
+  @Test
+  void controllerCanPassJsonThroughWithoutADatabase() throws IOException {
+    TodoController controller = new TodoController(repository, new TodoController.Options().passthroughReads(true));
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.outputStream()).thenReturn(out);
+
+    controller.getTodos(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    Todo[] todos = JsonMappers.http().readValue(out.toByteArray(), Todo[].class);
+    assertEquals(4, todos.length);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    when(ctx.pathParam("id")).thenReturn(todos[0]._id);
+    controller.getTodo(ctx);
+    verify(ctx).result(jsonCaptor.capture());
+    assertEquals(todos[0].owner, JsonMappers.http().readValue(jsonCaptor.getValue(), Todo.class).owner);
+  }
+
+  @Test
+  void newIdsAreLegalObjectIds() {
+    for (Todo todo : repository.find(new Query())) {
+      assertTrue(ObjectId.isValid(todo._id));
+    }
+  }
+}
@@ -1,19 +1,28 @@
 package umm3601.todo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
@@ -35,13 +44,35 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.NotImplementedResponse;
 import io.javalin.validation.Validation;
+import io.javalin.validation.ValidationException;
 import io.javalin.validation.Validator;
+import umm3601.BatchGet;
+import umm3601.BulkImport;
+import umm3601.CapturedOutputStream;
+import umm3601.JsonMappers;
+import umm3601.NdjsonExport;
+import umm3601.ResponseFormat;
+import umm3601.SingleFlight;
+import umm3601.TtlCache;
+import umm3601.storage.CreatedAt;
+import umm3601.storage.Deadline;
+import umm3601.storage.QueryPlan;
+import umm3601.storage.TextMatch;
+import umm3601.storage.Write;
+import umm3601.storage.WriteCoalescer;
+import umm3601.todos.InMemoryTodoRepository;
+import umm3601.todos.KnownIdsTodoRepository;
+import umm3601.todos.MongoTodoRepository;
 import umm3601.todos.Todo;
 import umm3601.todos.TodoController;
+import umm3601.todos.TodoStats;
 
 /**
  * Tests the logic of the UserController
@@ -168,6 +199,24 @@ class TodoControllerSpec {
         todoArrayListCaptor.getValue().size());
   }
 
+  @Test
+  void getTodosStopsAtTheRequestDeadline() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+
+    // Plenty of time, so it works as usual, with a `maxTime` on the queries.
+    Deadline.start(10, TimeUnit.SECONDS);
+    try {
+      todoController.getTodos(ctx);
+      verify(ctx).status(HttpStatus.OK);
+
+      // No time at all, so it gives up before asking the database.
+      Deadline.start(1, TimeUnit.NANOSECONDS);
+      assertThrows(Deadline.DeadlineExceededException.class, () -> todoController.getTodos(ctx));
+    } finally {
+      Deadline.clear();
+    }
+  }
+
   /**
    * Confirm that if we process a request for users with age 37,
    * that all returned users have that age, and we get the correct
@@ -362,6 +411,295 @@ class TodoControllerSpec {
     }
   }
 
+  @Test
+  void unsafeBodyRegexesAreRejected() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.BODY_CONTAINS_KEY, Arrays.asList("(a+)+$"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.BODY_CONTAINS_KEY)).thenReturn("(a+)+$");
+
+    BadRequestResponse e = assertThrows(BadRequestResponse.class, () -> todoController.getTodos(ctx));
+    assertTrue(e.getMessage().contains("match=literal"), e.getMessage());
+  }
+
+  @Test
+  void canGetTodosWithLiteralBody() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.BODY_CONTAINS_KEY, Arrays.asList("3601 HOME"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList(TextMatch.LITERAL.toString()));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.BODY_CONTAINS_KEY)).thenReturn("3601 HOME");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn(TextMatch.LITERAL.toString());
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(1, todoArrayListCaptor.getValue().size());
+    assertEquals("do 3601 homework", todoArrayListCaptor.getValue().get(0).body);
+  }
+
+  @Test
+  void canGetTodosWithExactOwnerIgnoringCase() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.OWNER_KEY, Arrays.asList("fRY"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList(TextMatch.EXACT.toString()));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.OWNER_KEY)).thenReturn("fRY");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn(TextMatch.EXACT.toString());
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(1, todoArrayListCaptor.getValue().size());
+    assertEquals("Fry", todoArrayListCaptor.getValue().get(0).owner);
+  }
+
+  @Test
+  void canGetTodosWithCategoryPrefixIgnoringCase() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList("HOME"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList(TextMatch.PREFIX.toString()));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("HOME");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn(TextMatch.PREFIX.toString());
+    when(ctx.queryParam(TodoController.ORDER_BY_KEY)).thenReturn("owner");
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(List.of("Blanche", "Dawn", "Sam"),
+      todoArrayListCaptor.getValue().stream().map(todo -> todo.owner).toList());
+  }
+
+  @Test
+  void getTodosPassingJsonThroughMatchesIgnoringCase() throws IOException {
+    // The list route as the server normally runs it, with the repository's JSON sent straight out.
+    TodoController passthroughController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().passthroughReads(true));
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList("HOME"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList(TextMatch.PREFIX.toString()));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("HOME");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn(TextMatch.PREFIX.toString());
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.outputStream()).thenReturn(out);
+
+    passthroughController.getTodos(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    Todo[] todos = JsonMappers.http().readValue(out.toByteArray(), Todo[].class);
+    assertEquals(List.of("Blanche", "Dawn", "Sam"), Arrays.stream(todos).map(todo -> todo.owner).toList());
+  }
+
+  @Test
+  void todoMatchesMustBeOneWeKnow() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.OWNER_KEY, Arrays.asList("Fry"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList("contains"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.OWNER_KEY)).thenReturn("Fry");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn("contains");
+
+    BadRequestResponse e = assertThrows(BadRequestResponse.class, () -> todoController.getTodos(ctx));
+    assertTrue(e.getMessage().contains(TextMatch.names()), e.getMessage());
+  }
+
+  @Test
+  void canGetTodosCreatedInATimeWindow() throws IOException {
+    ObjectId oldId = new ObjectId(Date.from(Instant.parse("2020-01-01T00:00:00Z")));
+    db.getCollection("todos").insertOne(new Document()
+        .append("_id", oldId)
+        .append("owner", "Leela")
+        .append("status", false)
+        .append("category", "groceries"));
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CREATED_BEFORE_KEY, Arrays.asList("2021-01-01"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CREATED_BEFORE_KEY)).thenReturn("2021-01-01");
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    List<Todo> before = todoArrayListCaptor.getValue();
+    assertEquals(List.of("Leela"), before.stream().map(todo -> todo.owner).toList());
+    assertEquals("2020-01-01T00:00:00Z", before.get(0).getCreatedAt());
+
+    queryParams.clear();
+    queryParams.put(TodoController.CREATED_AFTER_KEY, Arrays.asList("2020-01-01T00:00:01Z"));
+    when(ctx.queryParam(TodoController.CREATED_AFTER_KEY)).thenReturn("2020-01-01T00:00:01Z");
+
+    todoController.getTodos(ctx);
+
+    verify(ctx, times(2)).json(todoArrayListCaptor.capture());
+    assertEquals(4, todoArrayListCaptor.getValue().size());
+    assertFalse(todoArrayListCaptor.getValue().stream().anyMatch(todo -> todo.owner.equals("Leela")));
+  }
+
+  @Test
+  void creationTimesMustBeDatesOrTimes() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CREATED_AFTER_KEY, Arrays.asList("yesterday"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CREATED_AFTER_KEY)).thenReturn("yesterday");
+
+    BadRequestResponse e = assertThrows(BadRequestResponse.class, () -> todoController.getTodos(ctx));
+    assertTrue(e.getMessage().contains("yesterday"));
+  }
+
+  @Test
+  void canExplainTodosQueries() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.OWNER_KEY, Arrays.asList("Fry"));
+    queryParams.put(TodoController.MATCH_KEY, Arrays.asList(TextMatch.EXACT.toString()));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.OWNER_KEY)).thenReturn("Fry");
+    when(ctx.queryParam(TodoController.MATCH_KEY)).thenReturn(TextMatch.EXACT.toString());
+
+    todoController.explainTodos(ctx);
+
+    ArgumentCaptor<QueryPlan> planCaptor = ArgumentCaptor.forClass(QueryPlan.class);
+    verify(ctx).json(planCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    QueryPlan plan = planCaptor.getValue();
+    assertFalse(plan.timedOut());
+    assertEquals(1, plan.returned());
+    // The repository built the case-insensitive index on `owner`, so this
+    // reads just Fry's entry in it (and the one todo it points to).
+    assertFalse(plan.collectionScan(), plan.plan());
+    assertTrue(plan.plan().contains("IXSCAN"), plan.plan());
+    assertEquals(List.of("owner_1__id_1_ci"), plan.indexes());
+    assertEquals(1, plan.docsExamined());
+  }
+
+  @Test
+  void explainingNeedsAStoreThatCanExplain() {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    TodoController inMemoryController = new TodoController(new InMemoryTodoRepository());
+    assertThrows(NotImplementedResponse.class, () -> inMemoryController.explainTodos(ctx));
+  }
+
+  @Test
+  void theRepositoryBuildsItsIndexes() {
+    // `setupEach()` dropped the collection (and its indexes) before making the controller.
+    List<Document> indexes = db.getCollection("todos").listIndexes().into(new ArrayList<>());
+    // The `_id` index plus the ones `MongoTodoRepository` declares.
+    assertEquals(1 + MongoTodoRepository.INDEXES.size() + MongoTodoRepository.CASE_INSENSITIVE_INDEXES.size(),
+      indexes.size());
+
+    // Making another one doesn't do anything.
+    new MongoTodoRepository(db);
+    assertEquals(indexes.size(), db.getCollection("todos").listIndexes().into(new ArrayList<>()).size());
+  }
+
+  @Test
+  void canCountTodosByStatusCategoryAndOwner() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList("homework"));
+    queryParams.put(TodoController.TOP_OWNERS_KEY, Arrays.asList("2"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("homework");
+    Validation validation = new Validation();
+    when(ctx.queryParamAsClass(TodoController.TOP_OWNERS_KEY, Integer.class))
+      .thenReturn(validation.validator(TodoController.TOP_OWNERS_KEY, Integer.class, "2"));
+
+    todoController.getTodoStats(ctx);
+
+    ArgumentCaptor<TodoStats> statsCaptor = ArgumentCaptor.forClass(TodoStats.class);
+    verify(ctx).json(statsCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    TodoStats stats = statsCaptor.getValue();
+    assertEquals(3, stats.total);
+    assertEquals(1, stats.category.size());
+    assertEquals("homework", stats.category.get(0)._id);
+    assertEquals(3, stats.category.get(0).count);
+    // Two of the three have the string "true" as their status, and Sam has `true`.
+    assertEquals(2, stats.status.size());
+    assertEquals("true", stats.status.get(0)._id);
+    assertEquals(2, stats.status.get(0).count);
+    // Everyone has one, so the top two are the first two by name.
+    assertEquals(List.of("Blanche", "Dawn"), stats.owners.stream().map(count -> count._id).toList());
+  }
+
+  @Test
+  void canSampleTodos() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList("homework"));
+    queryParams.put(TodoController.SAMPLE_SIZE_KEY, Arrays.asList("2"));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("homework");
+    Validation validation = new Validation();
+    when(ctx.queryParamAsClass(TodoController.SAMPLE_SIZE_KEY, Integer.class))
+      .thenReturn(validation.validator(TodoController.SAMPLE_SIZE_KEY, Integer.class, "2"));
+
+    todoController.sampleTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).header(Header.CACHE_CONTROL, "no-store");
+    verify(ctx).status(HttpStatus.OK);
+    List<Todo> sample = todoArrayListCaptor.getValue();
+    assertEquals(2, sample.size());
+    assertEquals(2, sample.stream().map(todo -> todo._id).distinct().count());
+    for (Todo todo : sample) {
+      assertEquals("homework", todo.category);
+    }
+
+    when(ctx.queryParamAsClass(TodoController.SAMPLE_SIZE_KEY, Integer.class))
+      .thenReturn(validation.validator(TodoController.SAMPLE_SIZE_KEY, Integer.class, "0"));
+    assertThrows(ValidationException.class, () -> todoController.sampleTodos(ctx));
+  }
+
+  @Test
+  void todoStatsCanBeCachedForAWhile() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    TtlCache<SingleFlight.RequestKey, byte[]> cache = new TtlCache<>(1, TimeUnit.MINUTES);
+    TodoController cachingController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().statsCache(cache));
+
+    cachingController.getTodoStats(ctx);
+    db.getCollection("todos").insertOne(new Document("owner", "Leela").append("category", "homework"));
+    cachingController.getTodoStats(ctx);
+
+    ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(ctx, times(2)).result(bodyCaptor.capture());
+    verify(ctx, times(2)).header(Header.CACHE_CONTROL, "max-age=60");
+    // The second response is the cached one, from before Leela's todo was added.
+    assertEquals(4, JsonMappers.http().readTree(bodyCaptor.getAllValues().get(1)).path("total").asInt());
+    assertEquals(new TtlCache.Stats(1, 1), cache.stats());
+  }
+
+  @Test
+  void canGetTodosSortedByMoreThanOneField() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(TodoController.ORDER_BY_KEY)).thenReturn("category,-owner");
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(todoArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(List.of("Sam", "Dawn", "Blanche", "Fry"),
+      todoArrayListCaptor.getValue().stream().map(todo -> todo.owner).toList());
+  }
+
+  @Test
+  void unknownOrUnindexedSortsAreRejected() {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(TodoController.ORDER_BY_KEY)).thenReturn("password");
+    assertThrows(BadRequestResponse.class, () -> todoController.getTodos(ctx));
+
+    // `body` is allowed, but there's no index for it.
+    TodoController strictController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().sorts(TodoController.sortPlanner(false)));
+    when(ctx.queryParam(TodoController.ORDER_BY_KEY)).thenReturn("body");
+    BadRequestResponse e = assertThrows(BadRequestResponse.class, () -> strictController.getTodos(ctx));
+    assertTrue(e.getMessage().contains("index"), e.getMessage());
+  }
+
   @Test
   void canGetTodosWithStatus() throws IOException {
     Boolean targetOwner = true;
@@ -507,6 +845,271 @@ class TodoControllerSpec {
 
   }
 
+  @Test
+  void canGetTodosAsCbor() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.header(Header.ACCEPT)).thenReturn("application/cbor");
+    ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+
+    // Even with passthrough reads, a binary format has to go through `Todo`s.
+    new TodoController(new MongoTodoRepository(db), new TodoController.Options().passthroughReads(true)).getTodos(ctx);
+
+    verify(ctx).contentType(ResponseFormat.CBOR.contentType());
+    verify(ctx).result(bytesCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    Todo[] todos = ResponseFormat.CBOR.mapper().readValue(bytesCaptor.getValue(), Todo[].class);
+    assertEquals(db.getCollection("todos").countDocuments(), todos.length);
+    assertEquals("Blanche", todos[0].owner);
+  }
+
+  @Test
+  void canGetTodoAsMessagePack() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    when(ctx.header(Header.ACCEPT)).thenReturn("application/x-msgpack");
+    ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+
+    todoController.getTodo(ctx);
+
+    verify(ctx).contentType(ResponseFormat.MESSAGE_PACK.contentType());
+    verify(ctx).result(bytesCaptor.capture());
+    Todo sam = ResponseFormat.MESSAGE_PACK.mapper().readValue(bytesCaptor.getValue(), Todo.class);
+    assertEquals(samsId.toHexString(), sam._id);
+  }
+
+  @Test
+  void getTodosCanPassJsonStraightThrough() throws IOException {
+    TodoController passthroughController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().passthroughReads(true));
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.outputStream()).thenReturn(out);
+
+    passthroughController.getTodos(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    Todo[] todos = JsonMappers.http().readValue(out.toByteArray(), Todo[].class);
+    assertEquals(db.getCollection("todos").countDocuments(), todos.length);
+    // Sorted by owner by default.
+    assertEquals("Blanche", todos[0].owner);
+    assertEquals(samsId.toHexString(), todos[todos.length - 1]._id);
+  }
+
+  @Test
+  void getTodoCanPassJsonStraightThrough() throws IOException {
+    TodoController passthroughController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().passthroughReads(true));
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+
+    passthroughController.getTodo(ctx);
+
+    verify(ctx).result(jsonCaptor.capture());
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    verify(ctx).status(HttpStatus.OK);
+    Todo sam = JsonMappers.http().readValue(jsonCaptor.getValue(), Todo.class);
+    assertEquals(samsId.toHexString(), sam._id);
+    assertEquals("Sam", sam.owner);
+    assertEquals(true, sam.status);
+    // The raw document gets the same derived `createdAt` as a `Todo` would.
+    assertEquals(CreatedAt.of(samsId),
+      JsonMappers.http().readTree(jsonCaptor.getValue()).path(CreatedAt.FIELD).asText());
+  }
+
+  @Test
+  void getTodoPassingJsonThroughStillChecksIds() {
+    TodoController passthroughController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().passthroughReads(true));
+    when(ctx.pathParam("id")).thenReturn("bad");
+    assertThrows(BadRequestResponse.class, () -> passthroughController.getTodo(ctx));
+
+    when(ctx.pathParam("id")).thenReturn("588935f5c668650dc77df581");
+    assertThrows(NotFoundResponse.class, () -> passthroughController.getTodo(ctx));
+  }
+
+  @Test
+  void getTodosCanShareResponses() throws IOException {
+    SingleFlight<SingleFlight.RequestKey, byte[]> sharedReads = new SingleFlight<>();
+    TodoController sharingController = new TodoController(new MongoTodoRepository(db),
+      new TodoController.Options().passthroughReads(true).sharedReads(sharedReads));
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+
+    sharingController.getTodos(ctx);
+
+    verify(ctx).contentType(ResponseFormat.JSON.contentType());
+    verify(ctx).result(bytesCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    Todo[] todos = JsonMappers.http().readValue(bytesCaptor.getValue(), Todo[].class);
+    assertEquals(db.getCollection("todos").countDocuments(), todos.length);
+    assertEquals("Blanche", todos[0].owner);
+    assertEquals(new SingleFlight.Stats(1, 0), sharedReads.stats());
+  }
+
+  @Test
+  void knownIdsComeFromTheDatabase() throws IOException {
+    KnownIdsTodoRepository repository = new KnownIdsTodoRepository(new MongoTodoRepository(db));
+    TodoController knownIdsController = new TodoController(repository);
+
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    knownIdsController.getTodo(ctx);
+    verify(ctx).json(todoCaptor.capture());
+    assertEquals("Sam", todoCaptor.getValue().owner);
+
+    when(ctx.pathParam("id")).thenReturn("588935f5c668650dc77df581");
+    assertThrows(NotFoundResponse.class, () -> knownIdsController.getTodo(ctx));
+    assertEquals(1, repository.knownIds().stats().filtered());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void canGetTodosByIds() throws IOException {
+    String missing = new ObjectId().toHexString();
+    when(ctx.queryParamMap()).thenReturn(Map.of(TodoController.IDS_KEY, List.of("ignored")));
+    when(ctx.queryParams(TodoController.IDS_KEY)).thenReturn(List.of(samsId.toHexString() + "," + missing));
+    ArgumentCaptor<List<BatchGet.Result<Todo>>> resultsCaptor = ArgumentCaptor.forClass(List.class);
+
+    todoController.getTodos(ctx);
+
+    verify(ctx).json(resultsCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    List<BatchGet.Result<Todo>> results = resultsCaptor.getValue();
+    assertEquals(2, results.size());
+    assertEquals("Sam", results.get(0).item().owner);
+    assertEquals(missing, results.get(1).id());
+    assertFalse(results.get(1).found());
+  }
+
+  @Test
+  void addsNewTodos() {
+    when(ctx.body()).thenReturn(
+      "{\"owner\": \"Kim\", \"status\": false, \"category\": \"groceries\", \"body\": \"eggs\"}");
+
+    todoController.addNewTodo(ctx);
+
+    verify(ctx).json(mapCaptor.capture());
+    verify(ctx).status(HttpStatus.CREATED);
+    Document kim = db.getCollection("todos").find(new Document("_id", new ObjectId(mapCaptor.getValue().get("id"))))
+      .first();
+    assertEquals("Kim", kim.getString("owner"));
+    assertEquals(false, kim.getBoolean("status"));
+    assertEquals("eggs", kim.getString("body"));
+  }
+
+  @Test
+  void addNewTodoChecksTheTodo() {
+    when(ctx.body()).thenReturn("{\"owner\": \"Kim\", \"status\": false, \"category\": \"groceries\"}");
+    assertThrows(BadRequestResponse.class, () -> todoController.addNewTodo(ctx));
+
+    when(ctx.body()).thenReturn("{\"owner\": ");
+    assertThrows(BadRequestResponse.class, () -> todoController.addNewTodo(ctx));
+    assertEquals(4, db.getCollection("todos").countDocuments());
+  }
+
+  @Test
+  void setsTodoStatus() {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    when(ctx.body()).thenReturn("{\"status\": false}");
+
+    todoController.setTodoStatus(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(false, db.getCollection("todos").find(new Document("_id", samsId)).first().getBoolean("status"));
+  }
+
+  @Test
+  void setTodoStatusChecksTheRequest() {
+    when(ctx.body()).thenReturn("{\"status\": false}");
+    when(ctx.pathParam("id")).thenReturn("bad");
+    assertThrows(BadRequestResponse.class, () -> todoController.setTodoStatus(ctx));
+
+    when(ctx.pathParam("id")).thenReturn("588935f5c668650dc77df581");
+    assertThrows(NotFoundResponse.class, () -> todoController.setTodoStatus(ctx));
+
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    when(ctx.body()).thenReturn("{\"status\": \"false\"}");
+    assertThrows(BadRequestResponse.class, () -> todoController.setTodoStatus(ctx));
+  }
+
+  @Test
+  void groupsConcurrentWritesIntoOneBulkWrite() {
+    MongoTodoRepository repository = new MongoTodoRepository(db);
+    // The batch is sent when it has all four writes.
+    try (WriteCoalescer<Todo> writes = new WriteCoalescer<>(repository, 4, 10, TimeUnit.SECONDS)) {
+      Todo kim = new Todo();
+      kim._id = new ObjectId().toHexString();
+      kim.owner = "Kim";
+      kim.category = "groceries";
+      kim.body = "eggs";
+      CompletableFuture<Boolean> insert = writes.submit(new Write.Insert<>(kim));
+      CompletableFuture<Boolean> update = writes.submit(new Write.Update<>(samsId.toHexString(), "status", false));
+      CompletableFuture<Boolean> missing = writes.submit(
+        new Write.Update<>("588935f5c668650dc77df581", "status", false));
+      // The same `_id` again, so this insert fails.
+      CompletableFuture<Boolean> duplicate = writes.submit(new Write.Insert<>(kim));
+
+      assertTrue(insert.join());
+      assertTrue(update.join());
+      assertFalse(missing.join());
+      assertFalse(duplicate.join());
+    }
+    MongoCollection<Document> todos = db.getCollection("todos");
+    assertEquals(5, todos.countDocuments());
+    assertEquals(false, todos.find(new Document("_id", samsId)).first().getBoolean("status"));
+  }
+
+  @Test
+  void canImportTodos() throws IOException {
+    String body = "{\"owner\": \"Kim\", \"status\": true, \"category\": \"groceries\", \"body\": \"eggs\"}\n"
+      // Sam's `_id` is already taken.
+      + "{\"_id\": \"" + samsId.toHexString() + "\", \"owner\": \"Sam\", \"status\": false, "
+      + "\"category\": \"homework\", \"body\": \"again\"}\n"
+      // The status has to be a boolean.
+      + "{\"owner\": \"Lee\", \"status\": \"true\", \"category\": \"homework\", \"body\": \"essay\"}\n"
+      // The owner can't be blank.
+      + "{\"owner\": \" \", \"status\": false, \"category\": \"homework\", \"body\": \"essay\"}\n"
+      + "{\"owner\": \"Lee\", \"status\": false, \"category\": \"software design\", \"body\": \"tests\"}\n";
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    ArgumentCaptor<BulkImport.Summary> summaryCaptor = ArgumentCaptor.forClass(BulkImport.Summary.class);
+
+    todoController.importTodos(ctx);
+
+    verify(ctx).json(summaryCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    BulkImport.Summary summary = summaryCaptor.getValue();
+    assertEquals(2, summary.inserted());
+    assertEquals(3, summary.rejected());
+    assertEquals(3, summary.errors().size());
+    assertEquals("Record 3: A Todo's status must be true or false", summary.errors().get(0));
+    assertEquals("Record 4: A Todo must have a non-empty owner", summary.errors().get(1));
+
+    MongoCollection<Document> todos = db.getCollection("todos");
+    assertEquals(6, todos.countDocuments());
+    assertEquals(1, todos.countDocuments(new Document("owner", "Kim")));
+    assertEquals("Sam", todos.find(new Document("_id", samsId)).first().getString("owner"));
+    assertEquals(false, todos.find(new Document("owner", "Lee")).first().getBoolean("status"));
+  }
+
+  @Test
+  void canExportTodosWithCategory() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(TodoController.CATEGORY_KEY, Arrays.asList(new String[] {"homework"}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(TodoController.CATEGORY_KEY)).thenReturn("homework");
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.outputStream()).thenReturn(out);
+
+    todoController.exportTodos(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(NdjsonExport.CONTENT_TYPE);
+    String[] lines = out.toString().split("\n");
+    assertEquals(3, lines.length);
+    for (String line : lines) {
+      assertEquals("homework", JsonMappers.http().readValue(line, Todo.class).category);
+    }
+  }
+
 
 }
 
@@ -1,11 +1,19 @@
 package umm3601.todo;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import umm3601.JsonMappers;
 import umm3601.todos.Todo;
 
 class TodoSpec {
@@ -53,4 +61,16 @@ class TodoSpec {
     // a user is not equal to its id even though id is used for checking equality
     assertFalse(todo1.equals(FAKE_ID_STRING_1));
   }
+
+  @Test
+  void createdAtIsSentToClientsButNotStored() throws IOException {
+    todo1._id = new ObjectId(Date.from(Instant.parse("2024-01-31T12:00:00Z"))).toHexString();
+
+    assertEquals("2024-01-31T12:00:00Z", JsonMappers.http().valueToTree(todo1).path("createdAt").asText());
+    assertFalse(JsonMappers.mongo().valueToTree(todo1).has("createdAt"));
+    // Clients can't set it, but sending it back isn't an error.
+    Todo fromClient = JsonMappers.http().readValue("{\"createdAt\": \"2000-01-01T00:00:00Z\"}", Todo.class);
+    assertNull(fromClient._id);
+    assertNull(fromClient.getCreatedAt());
+  }
 }
@@ -0,0 +1,79 @@
+package umm3601.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import umm3601.JsonMappers;
+
+/**
+ * Tests for writing traces as OTLP/JSON.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class OtlpJsonFileExporterSpec {
+
+  @TempDir
+  private Path dir;
+
+  private static List<Span> trace() {
+    Tracer tracer = new Tracer(1, 0, spans -> { });
+    tracer.begin("GET /api/todos", null).attribute("url.path", "/api/todos");
+    try (Span command = Tracer.span("mongodb.find", Span.Kind.CLIENT)) {
+      command.attribute("db.mongodb.collection", "todos").attribute("cached", false);
+    }
+    return tracer.end(500);
+  }
+
+  @Test
+  void tracesAreEncodedAsOtlpJson() throws IOException {
+    List<Span> spans = trace();
+    JsonNode json = JsonMappers.http().readTree(OtlpJsonFileExporter.toOtlpJson(spans, "todos-server"));
+
+    JsonNode resourceSpans = json.path("resourceSpans").path(0);
+    JsonNode serviceName = resourceSpans.path("resource").path("attributes").path(0);
+    assertEquals("service.name", serviceName.path("key").asText());
+    assertEquals("todos-server", serviceName.path("value").path("stringValue").asText());
+
+    JsonNode encoded = resourceSpans.path("scopeSpans").path(0).path("spans");
+    assertEquals(2, encoded.size());
+    JsonNode command = encoded.path(0);
+    JsonNode root = encoded.path(1);
+    assertEquals("mongodb.find", command.path("name").asText());
+    assertEquals(3, command.path("kind").asInt());
+    assertEquals(spans.get(0).traceId(), command.path("traceId").asText());
+    assertEquals(root.path("spanId").asText(), command.path("parentSpanId").asText());
+    assertFalse(root.has("parentSpanId"));
+    assertEquals(Long.toString(spans.get(0).startEpochNanos()), command.path("startTimeUnixNano").asText());
+    assertEquals("todos", command.path("attributes").path(0).path("value").path("stringValue").asText());
+    assertFalse(command.path("attributes").path(1).path("value").path("boolValue").asBoolean(true));
+    assertEquals("500", root.path("attributes").path(1).path("value").path("intValue").asText());
+    assertEquals(2, root.path("status").path("code").asInt());
+  }
+
+  @Test
+  void tracesAreWrittenOnePerLine() throws IOException {
+    Path file = dir.resolve("traces.jsonl");
+    OtlpJsonFileExporter exporter = new OtlpJsonFileExporter(file, "todos-server");
+    exporter.export(trace());
+    exporter.export(trace());
+    // Closing waits for the writer to finish.
+    exporter.close();
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(2, lines.size());
+    for (String line : lines) {
+      assertEquals(2, JsonMappers.http().readTree(line).path("resourceSpans").path(0)
+        .path("scopeSpans").path(0).path("spans").size());
+    }
+    assertEquals(0, exporter.dropped());
+  }
+}
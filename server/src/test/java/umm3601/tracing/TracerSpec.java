@@ -0,0 +1,119 @@
+package umm3601.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for how `Tracer` builds traces out of spans, and which ones it keeps.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class TracerSpec {
+
+  private final List<List<Span>> exported = new ArrayList<>();
+
+  @AfterEach
+  void teardownEach() {
+    // Don't leave a trace on the thread for the next test.
+    new Tracer(0, 0, spans -> { }).end(200);
+  }
+
+  @Test
+  void spansDoNothingWithoutATrace() {
+    Span span = Tracer.span("todos.find");
+    assertSame(Span.NOOP, span);
+    assertFalse(span.isRecording());
+    span.attribute("todos.count", 3).close();
+    assertNull(Tracer.traceparent());
+  }
+
+  @Test
+  void spansNestInsideEachOther() {
+    Tracer tracer = new Tracer(1, 60_000, exported::add);
+    Span root = tracer.begin("GET /api/todos", null);
+    try (Span find = Tracer.span("todos.find")) {
+      try (Span command = Tracer.span("mongodb.find", Span.Kind.CLIENT)) {
+        command.attribute("db.mongodb.collection", "todos");
+      }
+      find.attribute("todos.count", 3);
+    }
+    try (Span encode = Tracer.span("todos.encode")) {
+      assertTrue(encode.isRecording());
+    }
+    List<Span> spans = tracer.end(200);
+
+    assertEquals(List.of(spans), exported);
+    assertEquals(List.of("mongodb.find", "todos.find", "todos.encode", "GET /api/todos"),
+      spans.stream().map(Span::name).toList());
+    Span command = spans.get(0);
+    Span find = spans.get(1);
+    assertEquals(find.spanId(), command.parentSpanId());
+    assertEquals(root.spanId(), find.parentSpanId());
+    assertEquals(root.spanId(), spans.get(2).parentSpanId());
+    assertNull(root.parentSpanId());
+    assertEquals(Span.Kind.CLIENT, command.kind());
+    assertEquals(Span.Kind.SERVER, root.kind());
+    assertEquals(3, find.attributes().get("todos.count"));
+    assertEquals(200, root.attributes().get("http.response.status_code"));
+    for (Span span : spans) {
+      assertEquals(root.traceId(), span.traceId());
+      assertTrue(span.startEpochNanos() <= span.endEpochNanos());
+    }
+    // Ending the trace takes it off the thread.
+    assertSame(Span.NOOP, Tracer.span("after"));
+  }
+
+  @Test
+  void requestsJoinTheirClientsTrace() {
+    Tracer tracer = new Tracer(1, 60_000, exported::add);
+    String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+    Span root = tracer.begin("GET /api/users", traceparent);
+    assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", root.traceId());
+    assertEquals("00f067aa0ba902b7", root.parentSpanId());
+    assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-" + root.spanId() + "-01", Tracer.traceparent());
+    tracer.end(200);
+
+    // A bad header just means a new trace.
+    root = tracer.begin("GET /api/users", "00-00000000000000000000000000000000-00f067aa0ba902b7-01");
+    assertNotNull(root.traceId());
+    assertFalse(root.traceId().startsWith("0000000000"));
+    assertNull(root.parentSpanId());
+  }
+
+  @Test
+  void onlySlowFailedOrSampledTracesAreKept() {
+    Tracer never = new Tracer(0, 1_000, exported::add);
+    assertFalse(never.keep(1_000_000, 200));
+    assertTrue(never.keep(1_000_000_000, 200));
+    assertTrue(never.keep(1_000_000, 503));
+
+    never.begin("GET /api/todos", null);
+    assertNull(never.end(200));
+    assertTrue(exported.isEmpty());
+
+    Tracer always = new Tracer(1, 1_000, exported::add);
+    assertTrue(always.keep(1_000_000, 200));
+  }
+
+  @Test
+  void failedRequestsAreMarkedAsErrors() {
+    Tracer tracer = new Tracer(0, 60_000, exported::add);
+    tracer.begin("GET /api/todos", null);
+    Span response = Tracer.span("response");
+    List<Span> spans = tracer.end(504);
+
+    // Anything still open is ended along with the trace.
+    assertEquals(2, spans.size());
+    assertSame(response, spans.get(0));
+    assertEquals("HTTP 504", spans.get(1).errorMessage());
+  }
+}
@@ -0,0 +1,119 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import umm3601.storage.Condition;
+import umm3601.storage.Query;
+import umm3601.storage.SortKey;
+
+/**
+ * Tests for the in-memory user repository, using the same
+ * users as `UserControllerSpec`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class InMemoryUserRepositorySpec {
+
+  private InMemoryUserRepository repository;
+  private String samsId;
+
+  private static User user(String name, int age, String company, String role) {
+    User user = new User();
+    user.name = name;
+    user.age = age;
+    user.company = company;
+    user.email = name.toLowerCase() + "@example.com";
+    user.role = role;
+    return user;
+  }
+
+  @BeforeEach
+  void setupEach() {
+    repository = new InMemoryUserRepository();
+    repository.insert(user("Chris", 25, "UMM", "admin"));
+    repository.insert(user("Pat", 37, "IBM", "editor"));
+    repository.insert(user("Jamie", 37, "OHMNET", "viewer"));
+    User sam = user("Sam", 45, "OHMNET", "viewer");
+    samsId = new ObjectId().toHexString();
+    sam._id = samsId;
+    repository.insert(sam);
+  }
+
+  @Test
+  void insertAssignsIds() {
+    for (User user : repository.find(new Query())) {
+      assertNotNull(user._id);
+      assertTrue(ObjectId.isValid(user._id));
+    }
+    assertEquals(4, repository.count());
+  }
+
+  @Test
+  void findsById() {
+    assertEquals("Sam", repository.findById(samsId).name);
+    assertNull(repository.findById(new ObjectId().toHexString()));
+    assertThrows(IllegalArgumentException.class, () -> repository.findById("frogs"));
+  }
+
+  @Test
+  void findsWithFiltersAndSorting() {
+    Query query = new Query()
+      .where(Condition.eq("age", 37))
+      .sortBy(SortKey.descending("name"));
+    List<User> users = repository.find(query);
+    assertEquals(2, users.size());
+    assertEquals("Pat", users.get(0).name);
+    assertEquals("Jamie", users.get(1).name);
+
+    query = new Query().where(Condition.matches("company", Pattern.compile("ohm", Pattern.CASE_INSENSITIVE)));
+    assertEquals(2, repository.find(query).size());
+  }
+
+  @Test
+  void deletesById() {
+    assertTrue(repository.deleteById(samsId));
+    assertFalse(repository.deleteById(samsId));
+    assertEquals(3, repository.count());
+    assertThrows(IllegalArgumentException.class, () -> repository.deleteById("frogs"));
+  }
+
+  @Test
+  void groupsByCompany() {
+    List<UserByCompany> groups = repository.groupByCompany(SortKey.ascending("_id"));
+    assertEquals(3, groups.size());
+    assertEquals("IBM", groups.get(0)._id);
+    assertEquals("OHMNET", groups.get(1)._id);
+    assertEquals(2, groups.get(1).count);
+    assertEquals("Jamie", groups.get(1).users.get(0).name);
+    assertEquals(samsId, groups.get(1).users.get(1)._id);
+    assertEquals("UMM", groups.get(2)._id);
+
+    groups = repository.groupByCompany(SortKey.descending("count"));
+    assertEquals("OHMNET", groups.get(0)._id);
+    // Companies with the same count are in order by name.
+    assertEquals("IBM", groups.get(1)._id);
+    assertEquals("UMM", groups.get(2)._id);
+
+    // Sorting by a field the groups don't have leaves them in (an unspecified) order.
+    assertEquals(3, repository.groupByCompany(SortKey.ascending("frogs")).size());
+  }
+
+  @Test
+  void copiesAnotherRepository() {
+    InMemoryUserRepository copy = InMemoryUserRepository.copyOf(repository);
+    assertEquals(4, copy.count());
+    assertSame(repository.findById(samsId), copy.findById(samsId));
+  }
+}
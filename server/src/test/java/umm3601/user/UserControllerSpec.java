@@ -9,11 +9,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -46,7 +49,9 @@ import com.mongodb.client.MongoDatabase;
 
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
 import io.javalin.json.JavalinJackson;
@@ -55,6 +60,12 @@ import io.javalin.validation.Validation;
 import io.javalin.validation.ValidationError;
 import io.javalin.validation.ValidationException;
 import io.javalin.validation.Validator;
+import umm3601.BatchGet;
+import umm3601.CapturedOutputStream;
+import umm3601.JsonMappers;
+import umm3601.NdjsonExport;
+import umm3601.ResponseFormat;
+import umm3601.storage.TextMatch;
 
 /**
  * Tests the logic of the UserController
@@ -326,9 +337,10 @@ class UserControllerSpec {
    *
    * @throws JsonMappingException
    * @throws JsonProcessingException
+   * @throws IOException
    */
   @Test
-  void canGetUsersWithAge37Redux() throws JsonMappingException, JsonProcessingException {
+  void canGetUsersWithAge37Redux() throws JsonMappingException, JsonProcessingException, IOException {
     // We'll need both `String` and `Integer` representations of
     // the target age, so I'm defining both here.
     Integer targetAge = 37;
@@ -531,6 +543,98 @@ class UserControllerSpec {
     }
   }
 
+  @Test
+  void canGetUsersWithExactOrPrefixCompany() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(UserController.COMPANY_KEY, Arrays.asList(new String[] {"ohm"}));
+    queryParams.put(UserController.MATCH_KEY, Arrays.asList(new String[] {TextMatch.EXACT.toString()}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(UserController.COMPANY_KEY)).thenReturn("ohm");
+    when(ctx.queryParam(UserController.MATCH_KEY)).thenReturn(TextMatch.EXACT.toString());
+
+    // "ohm" isn't the whole of any company...
+    userController.getUsers(ctx);
+    verify(ctx).json(userArrayListCaptor.capture());
+    assertEquals(0, userArrayListCaptor.getValue().size());
+
+    // ...but it starts two of them.
+    when(ctx.queryParam(UserController.MATCH_KEY)).thenReturn(TextMatch.PREFIX.toString());
+    userController.getUsers(ctx);
+    verify(ctx, times(2)).json(userArrayListCaptor.capture());
+    assertEquals(2, userArrayListCaptor.getValue().size());
+    for (User user : userArrayListCaptor.getValue()) {
+      assertEquals("OHMNET", user.company);
+    }
+
+    // The same words as the todos' filters, so a regex works too...
+    when(ctx.queryParam(UserController.MATCH_KEY)).thenReturn(TextMatch.REGEX.toString());
+    when(ctx.queryParam(UserController.COMPANY_KEY)).thenReturn("^ohm|^ibm");
+    userController.getUsers(ctx);
+    verify(ctx, times(3)).json(userArrayListCaptor.capture());
+    assertEquals(3, userArrayListCaptor.getValue().size());
+
+    // ...and anything else doesn't.
+    when(ctx.queryParam(UserController.MATCH_KEY)).thenReturn("contains");
+    assertThrows(BadRequestResponse.class, () -> userController.getUsers(ctx));
+  }
+
+  @Test
+  void canGetUsersCreatedInATimeWindow() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    // Everyone was added just now, in `setupEach()`.
+    String today = LocalDate.now(ZoneOffset.UTC).toString();
+    queryParams.put(UserController.CREATED_AFTER_KEY, Arrays.asList(new String[] {today}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(UserController.CREATED_AFTER_KEY)).thenReturn(today);
+
+    userController.getUsers(ctx);
+    verify(ctx).json(userArrayListCaptor.capture());
+    assertEquals(4, userArrayListCaptor.getValue().size());
+    for (User user : userArrayListCaptor.getValue()) {
+      assertNotNull(user.getCreatedAt());
+    }
+
+    queryParams.put(UserController.CREATED_BEFORE_KEY, Arrays.asList(new String[] {today}));
+    when(ctx.queryParam(UserController.CREATED_BEFORE_KEY)).thenReturn(today);
+    userController.getUsers(ctx);
+    verify(ctx, times(2)).json(userArrayListCaptor.capture());
+    assertEquals(0, userArrayListCaptor.getValue().size());
+
+    when(ctx.queryParam(UserController.CREATED_BEFORE_KEY)).thenReturn("tomorrow");
+    assertThrows(BadRequestResponse.class, () -> userController.getUsers(ctx));
+  }
+
+  @Test
+  void canSampleUsers() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(UserController.SAMPLE_SIZE_KEY, Arrays.asList(new String[] {"3"}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    Validation validation = new Validation();
+    when(ctx.queryParamAsClass(UserController.SAMPLE_SIZE_KEY, Integer.class))
+      .thenReturn(validation.validator(UserController.SAMPLE_SIZE_KEY, Integer.class, "3"));
+
+    userController.sampleUsers(ctx);
+
+    verify(ctx).json(userArrayListCaptor.capture());
+    verify(ctx).header(Header.CACHE_CONTROL, "no-store");
+    assertEquals(3, userArrayListCaptor.getValue().stream().map(user -> user._id).distinct().count());
+
+    // With a filter, it only picks from the users that match, and never more than there are.
+    queryParams.put(UserController.ROLE_KEY, Arrays.asList(new String[] {"viewer"}));
+    when(ctx.queryParamAsClass(UserController.ROLE_KEY, String.class))
+      .thenReturn(validation.validator(UserController.ROLE_KEY, String.class, "viewer"));
+    userController.sampleUsers(ctx);
+    verify(ctx, times(2)).json(userArrayListCaptor.capture());
+    assertEquals(2, userArrayListCaptor.getValue().size());
+    for (User user : userArrayListCaptor.getValue()) {
+      assertEquals("viewer", user.role);
+    }
+
+    when(ctx.queryParamAsClass(UserController.SAMPLE_SIZE_KEY, Integer.class))
+      .thenReturn(validation.validator(UserController.SAMPLE_SIZE_KEY, Integer.class, "1001"));
+    assertThrows(ValidationException.class, () -> userController.sampleUsers(ctx));
+  }
+
   @Test
   void getUsersByRole() throws IOException {
     Map<String, List<String>> queryParams = new HashMap<>();
@@ -617,11 +721,121 @@ class UserControllerSpec {
     assertEquals("The requested user was not found", exception.getMessage());
   }
 
+  @Test
+  void canGetUsersAsSmile() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.header(Header.ACCEPT)).thenReturn("application/x-jackson-smile;q=0.9, application/json;q=0.5");
+    ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+
+    userController.getUsers(ctx);
+
+    verify(ctx).header(Header.VARY, Header.ACCEPT);
+    verify(ctx).contentType(ResponseFormat.SMILE.contentType());
+    verify(ctx).result(bytesCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    User[] users = ResponseFormat.SMILE.mapper().readValue(bytesCaptor.getValue(), User[].class);
+    assertEquals(db.getCollection("users").countDocuments(), users.length);
+    assertEquals("Chris", users[0].name);
+  }
+
+  @Test
+  void getUsersCanPassJsonStraightThrough() throws IOException {
+    UserController passthroughController = new UserController(new MongoUserRepository(db),
+      new UserController.Options().passthroughReads(true));
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.outputStream()).thenReturn(out);
+
+    passthroughController.getUsers(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    User[] users = JsonMappers.http().readValue(out.toByteArray(), User[].class);
+    assertEquals(db.getCollection("users").countDocuments(), users.length);
+    // Sorted by name by default.
+    assertEquals("Chris", users[0].name);
+    assertEquals(samsId.toHexString(), users[users.length - 1]._id);
+  }
+
+  @Test
+  void getUserCanPassJsonStraightThrough() throws IOException {
+    UserController passthroughController = new UserController(new MongoUserRepository(db),
+      new UserController.Options().passthroughReads(true));
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+
+    passthroughController.getUser(ctx);
+
+    verify(ctx).result(jsonCaptor.capture());
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    verify(ctx).status(HttpStatus.OK);
+    // The `_id` should be a plain hex string, just like when it goes through a `User`.
+    User sam = JsonMappers.http().readValue(jsonCaptor.getValue(), User.class);
+    assertEquals(samsId.toHexString(), sam._id);
+    assertEquals("Sam", sam.name);
+  }
+
+  @Test
+  void getUserPassingJsonThroughStillChecksIds() {
+    UserController passthroughController = new UserController(new MongoUserRepository(db),
+      new UserController.Options().passthroughReads(true));
+    when(ctx.pathParam("id")).thenReturn("bad");
+    assertThrows(BadRequestResponse.class, () -> passthroughController.getUser(ctx));
+
+    when(ctx.pathParam("id")).thenReturn("588935f5c668650dc77df581");
+    assertThrows(NotFoundResponse.class, () -> passthroughController.getUser(ctx));
+  }
+
+  @Test
+  void canExportUsersWithCompany() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put(UserController.COMPANY_KEY, Arrays.asList(new String[] {"ohm"}));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.queryParam(UserController.COMPANY_KEY)).thenReturn("ohm");
+    CapturedOutputStream out = new CapturedOutputStream();
+    when(ctx.outputStream()).thenReturn(out);
+
+    userController.exportUsers(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(NdjsonExport.CONTENT_TYPE);
+    String[] lines = out.toString().split("\n");
+    assertEquals(2, lines.length);
+    for (String line : lines) {
+      assertEquals("OHMNET", JsonMappers.http().readValue(line, User.class).company);
+    }
+  }
+
   @Captor
   private ArgumentCaptor<ArrayList<UserByCompany>> userByCompanyListCaptor;
 
   @Test
-  void testGetUsersGroupedByCompany() {
+  @SuppressWarnings("unchecked")
+  void canGetUsersByIds() throws IOException {
+    String missing = new ObjectId().toHexString();
+    when(ctx.body()).thenReturn("{\"ids\": [\"" + missing + "\", \"" + samsId.toHexString() + "\"]}");
+    ArgumentCaptor<List<BatchGet.Result<User>>> resultsCaptor = ArgumentCaptor.forClass(List.class);
+
+    userController.getUsersByIds(ctx);
+
+    verify(ctx).json(resultsCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    List<BatchGet.Result<User>> results = resultsCaptor.getValue();
+    assertEquals(2, results.size());
+    assertEquals(missing, results.get(0).id());
+    assertEquals(false, results.get(0).found());
+    assertEquals(true, results.get(1).found());
+    assertEquals("Sam", results.get(1).item().name);
+  }
+
+  @Test
+  void getUsersByIdsChecksTheIds() {
+    when(ctx.body()).thenReturn("{\"ids\": [\"" + samsId.toHexString() + "\", \"bad\"]}");
+    assertThrows(BadRequestResponse.class, () -> userController.getUsersByIds(ctx));
+  }
+
+  @Test
+  void testGetUsersGroupedByCompany() throws IOException {
     when(ctx.queryParam("sortBy")).thenReturn("company");
     when(ctx.queryParam("sortOrder")).thenReturn("asc");
     userController.getUsersGroupedByCompany(ctx);
@@ -658,7 +872,7 @@ class UserControllerSpec {
   }
 
   @Test
-  void testGetUsersGroupedByCompanyDescending() {
+  void testGetUsersGroupedByCompanyDescending() throws IOException {
     when(ctx.queryParam("sortBy")).thenReturn("company");
     when(ctx.queryParam("sortOrder")).thenReturn("desc");
     userController.getUsersGroupedByCompany(ctx);
@@ -687,7 +901,7 @@ class UserControllerSpec {
   }
 
   @Test
-  void testGetUsersGroupedByCompanyOrderedByCount() {
+  void testGetUsersGroupedByCompanyOrderedByCount() throws IOException {
     when(ctx.queryParam("sortBy")).thenReturn("count");
     when(ctx.queryParam("sortOrder")).thenReturn("asc");
     userController.getUsersGroupedByCompany(ctx);
@@ -723,6 +937,26 @@ class UserControllerSpec {
     assertEquals(2, ohmnet.count);
   }
 
+  @Test
+  void companiesWithTheSameCountAreOrderedByName() throws IOException {
+    when(ctx.queryParam("sortBy")).thenReturn("count");
+    when(ctx.queryParam("sortOrder")).thenReturn("desc");
+    userController.getUsersGroupedByCompany(ctx);
+
+    verify(ctx).json(userByCompanyListCaptor.capture());
+    ArrayList<UserByCompany> result = userByCompanyListCaptor.getValue();
+    assertEquals("OHMNET", result.get(0)._id);
+    assertEquals("IBM", result.get(1)._id);
+    assertEquals("UMM", result.get(2)._id);
+  }
+
+  @Test
+  void companiesCanOnlyBeSortedByFieldsTheyHave() {
+    when(ctx.queryParam("sortBy")).thenReturn("frogs");
+    Throwable exception = assertThrows(BadRequestResponse.class, () -> userController.getUsersGroupedByCompany(ctx));
+    assertEquals("Companies can only be sorted by 'company', '_id', or 'count', not 'frogs'", exception.getMessage());
+  }
+
   @Test
   void addUser() throws IOException {
     // Create a new user to add